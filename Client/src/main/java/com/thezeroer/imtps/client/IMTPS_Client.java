@@ -14,6 +14,8 @@ import com.thezeroer.imtps.client.process.task.AbstractTask;
 import com.thezeroer.imtps.client.process.ProcessingHub;
 import com.thezeroer.imtps.client.session.channel.AcceptChannel;
 import com.thezeroer.imtps.client.session.channel.ImtpsChannel;
+import com.thezeroer.imtps.client.session.channel.MediaChannel;
+import com.thezeroer.imtps.client.worker.MediaManager;
 import com.thezeroer.imtps.client.worker.SessionHandshaker;
 import com.thezeroer.imtps.client.worker.SessionManager;
 
@@ -21,7 +23,9 @@ import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.channels.SocketChannel;
 import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 
 /**
@@ -34,6 +38,7 @@ import java.util.function.Supplier;
 public class IMTPS_Client {
     private final SessionHandshaker sessionHandshaker;
     private final SessionManager sessionManager;
+    private final MediaManager mediaManager;
     private final PacketHandler packetHandler;
     private final ProcessingHub processingHub;
     private final ImtpsLogger imtpsLogger;
@@ -44,7 +49,8 @@ public class IMTPS_Client {
         addressManager = new AddressManager();
         packetHandler = new PacketHandler(imtpsLogger);
         processingHub = new ProcessingHub(packetHandler, imtpsLogger);
-        sessionManager = new SessionManager(packetHandler, processingHub, addressManager, imtpsLogger);
+        mediaManager = new MediaManager(packetHandler, processingHub, imtpsLogger);
+        sessionManager = new SessionManager(packetHandler, processingHub, mediaManager, addressManager, imtpsLogger);
         sessionHandshaker = new SessionHandshaker(sessionManager, imtpsLogger);
         sessionManager.transmitObject(sessionHandshaker);
         processingHub.transmitObject(sessionManager);
@@ -82,6 +88,7 @@ public class IMTPS_Client {
      */
     public void startRunning() {
         sessionManager.startRunning();
+        mediaManager.startRunning();
     }
     /**
      * 停止运行
@@ -89,6 +96,7 @@ public class IMTPS_Client {
      */
     public void stopRunning() {
         sessionManager.stopRunning();
+        mediaManager.stopRunning();
     }
     /**
      * 关闭
@@ -96,6 +104,7 @@ public class IMTPS_Client {
      */
     public void shutdown() {
         sessionManager.shutdown();
+        mediaManager.shutdown();
     }
 
     /**
@@ -109,7 +118,21 @@ public class IMTPS_Client {
         }
     }
     /**
-     * 删除任务
+     * 异步提交任务，响应到达时完成，超时以 TimeoutException 完成，取消时删除任务
+     *
+     * @param task    任务
+     * @param timeout 超时
+     * @param unit    单位
+     * @return {@link CompletableFuture }<{@link T }>
+     */
+    public <T> CompletableFuture<T> submitTask(AbstractTask<T> task, long timeout, TimeUnit unit) {
+        if (task == null) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("Task is null"));
+        }
+        return processingHub.submitTaskAsync(task, timeout, unit);
+    }
+    /**
+     * 删除任务，任务不再发出或等待响应，也不会再回调，异步结果以取消完成
      *
      * @param taskId 任务 ID
      */
@@ -117,6 +140,25 @@ public class IMTPS_Client {
         processingHub.removeTask(taskId);
     }
 
+    /**
+     * 设置队列模式下每个排序键允许同时等待响应的任务数，默认为 1
+     *
+     * @param taskWindowSize 窗口大小
+     * @return {@link IMTPS_Client }
+     */
+    public IMTPS_Client setTaskWindowSize(int taskWindowSize) {
+        processingHub.setTaskWindowSize(taskWindowSize);
+        return this;
+    }
+    /**
+     * 获取等待超时的任务定时器数量
+     *
+     * @return long
+     */
+    public long getPendingTaskTimerCount() {
+        return processingHub.getPendingTimerCount();
+    }
+
     /**
      * 添加处理程序
      *
@@ -127,7 +169,17 @@ public class IMTPS_Client {
         return this;
     }
     /**
-     * 处理中心冻结，完成注册后 freeze 提升查找性能
+     * 删除处理程序，运行期间可直接调用，无需重启
+     *
+     * @param handler 处理器
+     * @return {@link IMTPS_Client }
+     */
+    public IMTPS_Client removeHandler(ImtpsHandler handler) {
+        processingHub.removeHandler(handler);
+        return this;
+    }
+    /**
+     * 处理中心冻结，立即编译路由表，此后注册、注销处理器时即时重建，查找路径上不再编译
      *
      * @return {@link IMTPS_Client }
      */
@@ -169,6 +221,84 @@ public class IMTPS_Client {
         }
         return this;
     }
+    /**
+     * 设置数据通道的可靠传输窗口容量，即已发送未确认数据包的最大数量，0 为不启用（默认），未确认副本的字节数不限制
+     *
+     * @param type     通道类型
+     * @param capacity 容量
+     * @see #setReliableWindow(ImtpsChannel.TYPE, int, long)
+     */
+    public IMTPS_Client setReliableWindow(ImtpsChannel.TYPE type, int capacity) {
+        return setReliableWindow(type, capacity, 0);
+    }
+    /**
+     * 设置数据通道的可靠传输窗口容量与字节上限，容量为 0 时不启用（默认），字节上限为 0 时不限制
+     * <p>启用后数据包带有序号，通道断开时不再清空发送队列，重连后重发未确认的数据包，接收方按序号去重；
+     * 未确认的数量或字节数达到上限时暂停发送，窗口为空时总能发送一个数据包。
+     * 未确认的副本只在数据通道重连时保留：控制连接断开后，服务端未开启会话恢复或宽限期内未能恢复时会话关闭，未确认的数据包随之丢失</p>
+     *
+     * @param type     通道类型
+     * @param capacity 容量
+     * @param maxBytes 未确认副本的字节上限，按数据包头部与正文大小计算
+     */
+    public IMTPS_Client setReliableWindow(ImtpsChannel.TYPE type, int capacity, long maxBytes) {
+        if (type == ImtpsChannel.TYPE.DataBasic || type == ImtpsChannel.TYPE.DataFile) {
+            sessionManager.setReliableWindow(type, capacity, maxBytes);
+        }
+        return this;
+    }
+    /**
+     * 设置 DataBasic 通道是否使用分帧模式，默认不启用
+     * <p>启用后数据包被切分为带流 ID 的帧交错传输，小数据包不再排在大对象之后等待，接收方按流重组；
+     * 每个数据包需完整编码到内存中，传输视图不再报告进度。需服务端支持，对之后建立的连接生效</p>
+     *
+     * @param frameMode 是否分帧
+     */
+    public IMTPS_Client setFrameMode(boolean frameMode) {
+        sessionManager.setFrameMode(frameMode);
+        return this;
+    }
+    /**
+     * 设置是否启用多路复用，默认不启用
+     * <p>启用后控制、DataBasic、DataFile 三条逻辑通道共用控制连接，以带通道标签的帧交错传输，控制包优先，
+     * 两个数据通道之间按帧轮流。握手完成即可发送数据，不再为数据通道请求端口、建立连接与交换令牌，服务端每个会话只占用一个连接。
+     * 数据包边编码边分帧，大文件无需整体载入内存。需服务端支持，对之后建立的会话生效</p>
+     *
+     * @param multiplexMode 是否启用
+     */
+    public IMTPS_Client setMultiplexMode(boolean multiplexMode) {
+        sessionManager.setMultiplexMode(multiplexMode);
+        return this;
+    }
+    /**
+     * 设置是否启用媒体通道，默认不启用
+     * <p>启用后握手完成时向服务端请求媒体端口，之后音频、视频类型且正文为基本类型的数据包以数据报收发，
+     * 不经过可靠传输，丢失的数据包不重发，接收方经抖动缓冲区按序交付。服务端未绑定媒体端口时仍经数据通道发送。
+     * 对之后建立的会话生效</p>
+     *
+     * @param mediaMode 是否启用
+     */
+    public IMTPS_Client setMediaMode(boolean mediaMode) {
+        sessionManager.setMediaMode(mediaMode);
+        return this;
+    }
+    /**
+     * 设置媒体通道抖动缓冲区的保持时间，单位毫秒，默认为 50，对之后打开的媒体通道生效
+     *
+     * @param delay 保持时间
+     */
+    public IMTPS_Client setMediaJitterDelay(int delay) {
+        mediaManager.setJitterDelay(delay);
+        return this;
+    }
+    /**
+     * 获取当前会话的媒体通道，其抖动缓冲区记录接收、丢失与抖动的统计
+     *
+     * @return {@link MediaChannel }，未连接时为 null
+     */
+    public MediaChannel getMediaChannel() {
+        return sessionManager.getImtpsSession() == null ? null : sessionManager.getImtpsSession().getMediaChannel();
+    }
     /**
      * 设置会话管理器线程池
      *
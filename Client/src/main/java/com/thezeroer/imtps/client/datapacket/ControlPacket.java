@@ -14,8 +14,15 @@ public class ControlPacket {
     public static class WAY {
         public static final byte HEART_BEAT = 1;
         public static final byte TOKEN = 2;
+        /** 多路复用，控制、基本数据、文件数据三条逻辑通道共用控制连接；写出方写出该包后、读取方读到该包后，本方向改为带通道标签的帧 */
+        public static final byte MULTIPLEX = 3;
+        /** 可靠传输累计确认，内容为 8 字节的序号 */
+        public static final byte ACK_DATA_BASIC = 101;
+        public static final byte ACK_DATA_FILE = 102;
         public static final byte PORT_DATA_BASIC = 111;
         public static final byte PORT_DATA_FILE = 112;
+        /** 媒体端口，应答内容为 4 字节的端口与 8 字节的媒体通道 ID，未绑定媒体端口时没有内容 */
+        public static final byte PORT_DATA_MEDIA = 113;
         public static final byte READY_DATA_BASIC = 121;
         public static final byte READY_DATA_FILE = 122;
     }
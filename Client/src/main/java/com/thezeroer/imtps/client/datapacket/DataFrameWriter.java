@@ -0,0 +1,279 @@
+package com.thezeroer.imtps.client.datapacket;
+
+import com.thezeroer.imtps.client.security.ImtpsSecretKey;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.List;
+
+/**
+ * 数据帧写出器
+ * <p>分帧模式下数据包先编码为明文，再切分为带流 ID 的帧，多个数据包的帧交错写出：单帧即可写完的小数据包按到达顺序优先写出，
+ * 大数据包之间按帧轮流写出，大数据包不再阻塞其后的小数据包。帧格式为随机数、加密的帧头（流 ID、标志、负载长度）与其认证标签、
+ * 加密的负载与其认证标签，每帧使用独立的随机数。同一时刻只能由一个线程调用</p>
+ * <p>多路复用模式下每个流带通道标签（标志的高 4 位），各通道的流分别排队：控制通道优先，其余通道之间按帧轮流写出，
+ * 文件数据不会挤占基本数据。数据包可由 {@link DataPacketEncoder} 边编码边写出，不必整体编码为明文</p>
+ *
+ * @author NiZhanBo
+ * @since 2026/10/19
+ * @version 1.0.0
+ */
+public class DataFrameWriter {
+    public static final int FRAME_HEADER_SIZE = Integer.BYTES + Byte.BYTES + Integer.BYTES;
+    public static final int AES_FRAME_HEADER_SIZE = ImtpsSecretKey.NONCE_LENGTH + FRAME_HEADER_SIZE + ImtpsSecretKey.TAG_LENGTH;
+    public static final int MAX_FRAME_PAYLOAD = 64 * 1024;
+    /** 同时交错写出的数据包数上限 */
+    public static final int MAX_STREAM_COUNT = 16;
+    /** 流的最后一帧 */
+    public static final byte FLAG_LAST = 1;
+    /** 通道标签在标志中的位移 */
+    public static final int CHANNEL_SHIFT = 4;
+    /** 通道标签的上限，标签为 {@link com.thezeroer.imtps.client.session.channel.ImtpsChannel.TYPE} 的序号 */
+    public static final int MAX_CHANNEL_COUNT = 4;
+
+    private final SelectionKey selectionKey;
+    private final SocketChannel socketChannel;
+    private final ImtpsSecretKey imtpsSecretKey;
+    private final Lane[] lanes;
+    private final ArrayDeque<Stream> finishedDeque;
+    /** 帧头、负载、认证标签三段，复用缓冲区并聚集写出 */
+    private final ByteBuffer[] pendingBuffers;
+    private Stream pendingStream;
+    private ByteBuffer plainBuffer;
+    private int nextStreamId, nextChannel;
+    private boolean blocked;
+
+    public DataFrameWriter(SelectionKey selectionKey, ImtpsSecretKey imtpsSecretKey) {
+        this.selectionKey = selectionKey;
+        this.socketChannel = (SocketChannel) selectionKey.channel();
+        this.imtpsSecretKey = imtpsSecretKey;
+        lanes = new Lane[MAX_CHANNEL_COUNT];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new Lane();
+        }
+        nextChannel = 1;
+        finishedDeque = new ArrayDeque<>();
+        pendingBuffers = new ByteBuffer[] {ByteBuffer.allocate(AES_FRAME_HEADER_SIZE), ByteBuffer.allocate(MAX_FRAME_PAYLOAD), ByteBuffer.allocate(0)};
+    }
+
+    /**
+     * 是否还能加入新的数据包
+     *
+     * @return boolean
+     */
+    public boolean isAcceptable() {
+        return isAcceptable(0);
+    }
+    /**
+     * 通道是否还能加入新的数据包
+     *
+     * @param channel 通道标签
+     * @return boolean
+     */
+    public boolean isAcceptable(int channel) {
+        return lanes[channel].size() < MAX_STREAM_COUNT;
+    }
+    /**
+     * 加入数据包
+     *
+     * @param payload    数据包明文
+     * @param attachment 附件，数据包写完后由 {@link #pollFinished()} 取回
+     */
+    public void offer(byte[] payload, Object attachment) {
+        offer(0, payload, attachment);
+    }
+    /**
+     * 向通道加入数据包明文
+     *
+     * @param channel    通道标签
+     * @param payload    数据包明文
+     * @param attachment 附件，数据包写完后由 {@link #pollFinished()} 取回
+     */
+    public void offer(int channel, byte[] payload, Object attachment) {
+        lanes[channel].add(new Stream(++nextStreamId, channel, payload, null, payload.length, attachment));
+    }
+    /**
+     * 向通道加入数据包，写出时边编码边分帧
+     *
+     * @param channel           通道标签
+     * @param dataPacketEncoder 数据包编码器，写完或 {@link #release()} 时释放
+     * @param attachment        附件，数据包写完后由 {@link #pollFinished()} 取回
+     */
+    public void offer(int channel, DataPacketEncoder dataPacketEncoder, Object attachment) {
+        lanes[channel].add(new Stream(++nextStreamId, channel, null, dataPacketEncoder, dataPacketEncoder.getSize(), attachment));
+    }
+    /**
+     * 写出帧，写满配额、发送缓冲区已满或没有待写出的帧时返回
+     *
+     * @param quantum 配额（字节）
+     * @return long 本次写出的字节数
+     */
+    public long write(long quantum) throws Exception {
+        long written = 0;
+        blocked = false;
+        while (written < quantum) {
+            if (!hasPendingFrame()) {
+                finishPending();
+                if (!nextFrame()) {
+                    break;
+                }
+                continue;
+            }
+            long writeNumber = socketChannel.write(pendingBuffers);
+            if (writeNumber == 0) {
+                blocked = true;
+                break;
+            }
+            written += writeNumber;
+        }
+        if (!hasPendingFrame()) {
+            finishPending();
+        }
+        return written;
+    }
+    public boolean hasPending() {
+        if (hasPendingFrame()) {
+            return true;
+        }
+        for (Lane lane : lanes) {
+            if (lane.size() > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+    /**
+     * 上次写出是否因发送缓冲区已满而停止
+     *
+     * @return boolean
+     */
+    public boolean isBlocked() {
+        return blocked;
+    }
+    public boolean hasFinished() {
+        return !finishedDeque.isEmpty();
+    }
+    /**
+     * 取出已写完的数据包的附件
+     *
+     * @return {@link Object }
+     */
+    public Object pollFinished() {
+        Stream stream = finishedDeque.poll();
+        return stream == null ? null : stream.attachment;
+    }
+    public SelectionKey getSelectionKey() {
+        return selectionKey;
+    }
+    /**
+     * 释放未写完的数据包的编码器，连接关闭时调用
+     */
+    public void release() {
+        for (Lane lane : lanes) {
+            for (ArrayDeque<Stream> deque : List.of(lane.smallDeque, lane.largeDeque)) {
+                for (Stream stream : deque) {
+                    if (stream.encoder != null) {
+                        stream.encoder.release();
+                    }
+                }
+                deque.clear();
+            }
+        }
+    }
+
+    private boolean hasPendingFrame() {
+        return pendingBuffers[2].hasRemaining();
+    }
+    private void finishPending() {
+        if (pendingStream != null) {
+            finishedDeque.addLast(pendingStream);
+            pendingStream = null;
+        }
+    }
+    private boolean nextFrame() throws Exception {
+        Lane lane = nextLane();
+        if (lane == null) {
+            return false;
+        }
+        Stream stream = lane.smallDeque.isEmpty() ? lane.largeDeque.pollFirst() : lane.smallDeque.pollFirst();
+        int length = (int) Math.min(stream.size - stream.offset, MAX_FRAME_PAYLOAD);
+        boolean last = stream.offset + length == stream.size;
+        ByteBuffer plain;
+        if (stream.payload != null) {
+            plain = ByteBuffer.wrap(stream.payload, (int) stream.offset, length);
+        } else {
+            if (plainBuffer == null) {
+                plainBuffer = ByteBuffer.allocate(MAX_FRAME_PAYLOAD);
+            }
+            stream.encoder.encode(plainBuffer.clear().limit(length));
+            plain = plainBuffer.flip();
+            if (plain.remaining() != length) {
+                throw new IllegalStateException("DataPacket encoded less than its size");
+            }
+        }
+        byte flags = (byte) (stream.channel << CHANNEL_SHIFT | (last ? FLAG_LAST : 0));
+        byte[] nonce = ImtpsSecretKey.createNonce();
+        ImtpsSecretKey.EncryptCipher encryptCipher = imtpsSecretKey.createEncryptCipher(nonce);
+        ByteBuffer headerBuffer = ByteBuffer.allocate(FRAME_HEADER_SIZE).putInt(stream.id).put(flags).putInt(length).flip();
+        encryptCipher.doFinal(headerBuffer, pendingBuffers[0].clear().put(nonce)).flip();
+        encryptCipher.update(plain, pendingBuffers[1].clear());
+        pendingBuffers[1].flip();
+        pendingBuffers[2] = ByteBuffer.wrap(encryptCipher.createTag());
+        stream.offset += length;
+        if (last) {
+            pendingStream = stream;
+        } else {
+            lane.largeDeque.addLast(stream);
+        }
+        return true;
+    }
+    /**
+     * 选出下一帧所属的通道：控制通道优先，其余通道轮流
+     */
+    private Lane nextLane() {
+        if (lanes[0].size() > 0) {
+            return lanes[0];
+        }
+        for (int i = 1; i < lanes.length; i++) {
+            Lane lane = lanes[nextChannel];
+            nextChannel = nextChannel % (lanes.length - 1) + 1;
+            if (lane.size() > 0) {
+                return lane;
+            }
+        }
+        return null;
+    }
+
+    private static class Lane {
+        /** 单帧即可写完的小数据包按到达顺序写出，大数据包之间按帧轮流 */
+        private final ArrayDeque<Stream> smallDeque = new ArrayDeque<>();
+        private final ArrayDeque<Stream> largeDeque = new ArrayDeque<>();
+
+        void add(Stream stream) {
+            (stream.size <= MAX_FRAME_PAYLOAD ? smallDeque : largeDeque).addLast(stream);
+        }
+        int size() {
+            return smallDeque.size() + largeDeque.size();
+        }
+    }
+    private static class Stream {
+        private final int id;
+        private final int channel;
+        private final byte[] payload;
+        private final DataPacketEncoder encoder;
+        private final long size;
+        private final Object attachment;
+        private long offset;
+
+        Stream(int id, int channel, byte[] payload, DataPacketEncoder encoder, long size, Object attachment) {
+            this.id = id;
+            this.channel = channel;
+            this.payload = payload;
+            this.encoder = encoder;
+            this.size = size;
+            this.attachment = attachment;
+        }
+    }
+}
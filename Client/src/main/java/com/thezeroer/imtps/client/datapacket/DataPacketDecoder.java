@@ -0,0 +1,187 @@
+package com.thezeroer.imtps.client.datapacket;
+
+import com.thezeroer.imtps.client.datapacket.databody.AbstractDataBody;
+import com.thezeroer.imtps.client.view.AbstractTransmitView;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Supplier;
+
+/**
+ * 数据包解码器
+ * <p>增量解码 {@link DataPacketEncoder} 编码的明文，明文可分多次送入，正文边到达边解码，大正文无需整体载入内存。
+ * 正文类型未注册时只解码头部。同一时刻只能由一个线程调用</p>
+ *
+ * @author NiZhanBo
+ * @since 2026/10/19
+ * @version 1.0.0
+ */
+public class DataPacketDecoder {
+    private enum STAGE {
+        Header,
+        Reliable,
+        Metadata,
+        Body,
+        Tail,
+        Finished,
+    }
+
+    private final Map<Long, Supplier<? extends AbstractDataBody<?>>> bodyMap;
+    private final Map<String, AbstractTransmitView> receiveViewMap;
+    private final ExecutorService threadPool;
+    private DataPacket dataPacket;
+    private AbstractDataBody<?> dataBody;
+    private AbstractTransmitView receiveView;
+    /** 基本头、元数据、数据尾先累积完整再解析 */
+    private ByteBuffer pendingBuffer;
+    private STAGE stage;
+    private long residue;
+    private boolean released;
+
+    DataPacketDecoder(Map<Long, Supplier<? extends AbstractDataBody<?>>> bodyMap, Map<String, AbstractTransmitView> receiveViewMap, ExecutorService threadPool) {
+        this.bodyMap = bodyMap;
+        this.receiveViewMap = receiveViewMap;
+        this.threadPool = threadPool;
+        pendingBuffer = ByteBuffer.allocate(DataPacket.BASIC_HEADER_SIZE);
+        stage = STAGE.Header;
+    }
+
+    /**
+     * 解码一段明文
+     *
+     * @param input 明文
+     */
+    public void decode(ByteBuffer input) throws Exception {
+        while (input.hasRemaining()) {
+            switch (stage) {
+                case Header, Reliable, Metadata, Tail -> {
+                    int length = Math.min(pendingBuffer.remaining(), input.remaining());
+                    pendingBuffer.put(input.slice(input.position(), length));
+                    input.position(input.position() + length);
+                    if (!pendingBuffer.hasRemaining()) {
+                        next();
+                    }
+                }
+                case Body -> {
+                    ByteBuffer bodyBuffer = input.slice(input.position(), (int) Math.min(input.remaining(), residue));
+                    while (bodyBuffer.hasRemaining()) {
+                        int position = bodyBuffer.position();
+                        dataBody.decode(bodyBuffer);
+                        if (bodyBuffer.position() == position) {
+                            throw new IllegalStateException("DataBody decoded less than its size");
+                        }
+                    }
+                    input.position(input.position() + bodyBuffer.limit());
+                    residue -= bodyBuffer.limit();
+                    if (receiveView != null) {
+                        receiveView.updateSize(bodyBuffer.limit());
+                    }
+                    if (residue == 0) {
+                        finishBody();
+                    }
+                }
+                // 正文类型未注册或已解码完毕，忽略其余明文
+                case Finished -> input.position(input.limit());
+            }
+        }
+    }
+    /**
+     * 明文全部送入后取得数据包
+     *
+     * @return {@link DataPacket }
+     */
+    public DataPacket finish() throws Exception {
+        if (stage != STAGE.Finished) {
+            throw new ProtocolException("DataPacket truncated");
+        }
+        if (dataBody != null) {
+            try {
+                dataBody.finishDecode();
+                dataPacket.attachDataBody(dataBody);
+            } finally {
+                release();
+            }
+        }
+        return dataPacket;
+    }
+    /**
+     * 释放正文，中途放弃解码时需要调用
+     */
+    public void release() {
+        if (!released) {
+            released = true;
+            if (dataBody != null) {
+                dataBody.release();
+            }
+        }
+    }
+
+    private void next() throws Exception {
+        switch (stage) {
+            case Header -> {
+                dataPacket = DataPacket.setDataPacketBasicHeader(pendingBuffer.flip());
+                if (dataPacket.hasReliableHeader()) {
+                    pendingBuffer = ByteBuffer.allocate(DataPacket.RELIABLE_HEADER_SIZE);
+                    stage = STAGE.Reliable;
+                } else {
+                    prepareMetadata();
+                }
+            }
+            case Reliable -> {
+                dataPacket.setDataPacketReliableHeader(pendingBuffer.flip());
+                prepareMetadata();
+            }
+            case Metadata -> {
+                dataBody.setMetadata(pendingBuffer.array());
+                if (receiveView != null) {
+                    receiveView.setMetadata(dataBody.getMetadata());
+                }
+                prepareBody();
+            }
+            case Tail -> {
+                dataPacket.setDataTail(pendingBuffer.array());
+                stage = STAGE.Finished;
+            }
+        }
+    }
+    private void prepareMetadata() throws Exception {
+        if (bodyMap.get(dataPacket.getDataBodyId()) instanceof Supplier<? extends AbstractDataBody<?>> supplier) {
+            dataBody = supplier.get();
+            receiveView = receiveViewMap.get(dataPacket.getTaskId());
+            if (dataPacket.getMetadataLength() > 0) {
+                pendingBuffer = ByteBuffer.allocate(dataPacket.getMetadataLength());
+                stage = STAGE.Metadata;
+            } else {
+                prepareBody();
+            }
+        } else {
+            stage = STAGE.Finished;
+        }
+    }
+    private void prepareBody() throws Exception {
+        residue = dataPacket.getDataBodySize();
+        dataBody.prepareDecode(residue);
+        if (receiveView != null) {
+            receiveView.setSumSize(residue);
+            receiveView.begin();
+            threadPool.submit(receiveView);
+        }
+        stage = STAGE.Body;
+        if (residue == 0) {
+            finishBody();
+        }
+    }
+    private void finishBody() {
+        if (receiveView != null) {
+            receiveView.finish();
+        }
+        if (dataPacket.getDataTailLength() > 0) {
+            pendingBuffer = ByteBuffer.allocate(dataPacket.getDataTailLength());
+            stage = STAGE.Tail;
+        } else {
+            stage = STAGE.Finished;
+        }
+    }
+}
@@ -8,9 +8,11 @@ import com.thezeroer.imtps.client.process.task.ImtpsTask;
 import com.thezeroer.imtps.client.security.ImtpsSecretKey;
 import com.thezeroer.imtps.client.view.AbstractTransmitView;
 
+import java.net.ProtocolException;
 import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
+import java.util.Arrays;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.function.Supplier;
@@ -75,6 +77,17 @@ public class PacketHandler {
             ImtpsSecretKey.DecryptCipher decryptCipher = imtpsSecretKey.createDecryptCipher(nonce);
             decryptCipher.doFinal(srcBuffer, dstBuffer);
             DataPacket dataPacket = DataPacket.setDataPacketBasicHeader(dstBuffer.flip());
+            if (dataPacket.hasReliableHeader()) {
+                srcBuffer = bufferManager.getSrcBuffer(DataPacket.RELIABLE_HEADER_SIZE);
+                while (srcBuffer.hasRemaining()) {
+                    if (socketChannel.read(srcBuffer) == -1) {
+                        return null;
+                    }
+                }
+                byte[] reliableHeader = new byte[DataPacket.RELIABLE_HEADER_SIZE];
+                srcBuffer.flip().get(reliableHeader);
+                dataPacket.setDataPacketReliableHeader(ByteBuffer.wrap(decryptCipher.update(reliableHeader)));
+            }
 
             if (bodyMap.get(dataPacket.getDataBodyId()) instanceof Supplier<? extends AbstractDataBody<?>> supplier) {
                 dataBody = supplier.get();
@@ -167,6 +180,17 @@ public class PacketHandler {
                 decryptCipher.verifyTag(tag);
                 dataBody.finishDecode();
                 dataPacket.attachDataBody(dataBody);
+            } else if (dataPacket.hasReliableHeader() && dataPacket.getDataBodyId() == 0) {
+                // 无正文时认证标签只覆盖扩展头
+                srcBuffer = bufferManager.getSrcBuffer(ImtpsSecretKey.TAG_LENGTH);
+                while (srcBuffer.hasRemaining()) {
+                    if (socketChannel.read(srcBuffer) == -1) {
+                        return null;
+                    }
+                }
+                byte[] tag = new byte[ImtpsSecretKey.TAG_LENGTH];
+                srcBuffer.flip().get(tag);
+                decryptCipher.verifyTag(tag);
             }
             return dataPacket;
         } finally {
@@ -193,6 +217,13 @@ public class PacketHandler {
             while (dstBuffer.hasRemaining()) {
                 socketChannel.write(dstBuffer);
             }
+            if (dataPacket.hasReliableHeader()) {
+                byte[] reliableHeader = dataPacket.getDataPacketReliableHeader(ByteBuffer.allocate(DataPacket.RELIABLE_HEADER_SIZE)).array();
+                dstBuffer = ByteBuffer.wrap(encryptCipher.update(reliableHeader));
+                while (dstBuffer.hasRemaining()) {
+                    socketChannel.write(dstBuffer);
+                }
+            }
 
             if (dataBody != null) {
                 dataBody.prepareEncode();
@@ -249,6 +280,8 @@ public class PacketHandler {
                         socketChannel.write(dstBuffer);
                     }
                 }
+            }
+            if (dataBody != null || dataPacket.hasReliableHeader()) {
                 dstBuffer = bufferManager.getDestBuffer(ImtpsSecretKey.TAG_LENGTH);
                 dstBuffer.clear().put(encryptCipher.createTag()).flip();
                 while (dstBuffer.hasRemaining()) {
@@ -262,6 +295,154 @@ public class PacketHandler {
         }
     }
 
+    /**
+     * 创建数据包编码器，由调用方分多次编码为明文
+     *
+     * @param dataPacket 数据包
+     * @return {@link DataPacketEncoder }
+     */
+    public DataPacketEncoder createDataPacketEncoder(DataPacket dataPacket) {
+        if (dataPacket.getTaskId().isEmpty()) {
+            dataPacket.setTaskId(ImtpsTask.createTaskId());
+        }
+        imtpsLogger.trace("发送DataPacket[$]", dataPacket);
+        return new DataPacketEncoder(dataPacket, sendViewMap.get(dataPacket.getTaskId()), threadPool);
+    }
+    /**
+     * 创建数据包解码器，由调用方分多次送入明文
+     *
+     * @return {@link DataPacketDecoder }
+     */
+    public DataPacketDecoder createDataPacketDecoder() {
+        return new DataPacketDecoder(bodyMap, receiveViewMap, threadPool);
+    }
+
+    /**
+     * 将数据包编码为明文字节，格式为基本头、可靠传输扩展头（序号与确认非 0 时）、元数据、正文、数据尾，数据包本身不会被修改
+     *
+     * @param dataPacket 数据包
+     * @return {@link byte[] }
+     */
+    public byte[] encodeDataPacket(DataPacket dataPacket) throws Exception {
+        return encodeDataPacket(dataPacket, true);
+    }
+    /**
+     * 将数据包编码为明文字节
+     *
+     * @param dataPacket 数据包
+     * @param copy       是否先复制数据包；为 false 时与写出数据包相同，直接编码并释放原数据包的正文，省去大正文的深拷贝
+     * @return {@link byte[] }
+     */
+    public byte[] encodeDataPacket(DataPacket dataPacket, boolean copy) throws Exception {
+        if (copy) {
+            dataPacket = dataPacket.clone();
+        }
+        if (dataPacket.getTaskId().isEmpty()) {
+            dataPacket.setTaskId(ImtpsTask.createTaskId());
+        }
+        AbstractDataBody<?> dataBody = dataPacket.getDataBody();
+        ByteBuffer output = ByteBuffer.allocate(Math.toIntExact(dataPacket.getHeaderSize() + dataPacket.getMetadataLength()
+                + dataPacket.getDataBodySize() + dataPacket.getDataTailLength()));
+        try {
+            dataPacket.getDataPacketHeader(output);
+            if (dataBody != null) {
+                dataBody.prepareEncode();
+                if (dataPacket.getMetadataLength() > 0) {
+                    output.put(dataBody.getMetadata());
+                }
+                for (long residue = dataPacket.getDataBodySize(); residue > 0; ) {
+                    int position = output.position();
+                    dataBody.encode(output.limit(output.position() + (int) residue));
+                    residue -= output.position() - position;
+                    if (output.position() == position) {
+                        throw new IllegalStateException("DataBody encoded less than its size");
+                    }
+                }
+                output.limit(output.capacity());
+                dataBody.finishEncode();
+                if (dataPacket.getDataTailLength() > 0) {
+                    output.put(dataPacket.getDataTail());
+                }
+            }
+            return output.array();
+        } finally {
+            if (dataBody != null) {
+                dataBody.release();
+            }
+        }
+    }
+    /**
+     * 从明文字节解码数据包，正文类型未注册时只解码基本头
+     *
+     * @param input 明文字节
+     * @return {@link DataPacket }
+     */
+    public DataPacket decodeDataPacket(ByteBuffer input) throws Exception {
+        DataPacket dataPacket = DataPacket.setDataPacketHeader(input);
+        if (bodyMap.get(dataPacket.getDataBodyId()) instanceof Supplier<? extends AbstractDataBody<?>> supplier) {
+            AbstractDataBody<?> dataBody = supplier.get();
+            try {
+                if (dataPacket.getMetadataLength() > 0) {
+                    byte[] metadata = new byte[dataPacket.getMetadataLength()];
+                    input.get(metadata);
+                    dataBody.setMetadata(metadata);
+                }
+                long dataBodySize = dataPacket.getDataBodySize();
+                dataBody.prepareDecode(dataBodySize);
+                ByteBuffer bodyBuffer = input.slice(input.position(), Math.toIntExact(dataBodySize));
+                while (bodyBuffer.hasRemaining()) {
+                    int position = bodyBuffer.position();
+                    dataBody.decode(bodyBuffer);
+                    if (bodyBuffer.position() == position) {
+                        throw new IllegalStateException("DataBody decoded less than its size");
+                    }
+                }
+                input.position(input.position() + (int) dataBodySize);
+                if (dataPacket.getDataTailLength() > 0) {
+                    byte[] tail = new byte[dataPacket.getDataTailLength()];
+                    input.get(tail);
+                    dataPacket.setDataTail(tail);
+                }
+                dataBody.finishDecode();
+                dataPacket.attachDataBody(dataBody);
+            } finally {
+                dataBody.release();
+            }
+        }
+        return dataPacket;
+    }
+
+    /**
+     * 将控制包编码为明文字节，格式为基本头与内容，内容长度由明文长度决定
+     *
+     * @param controlPacket 控制包
+     * @return {@link byte[] }
+     */
+    public byte[] encodeControlPacket(ControlPacket controlPacket) {
+        byte[] content = controlPacket.getContent();
+        ByteBuffer output = ByteBuffer.allocate(ControlPacket.BASIC_HEADER_SIZE + (content == null ? 0 : content.length));
+        output.put(controlPacket.getHander());
+        if (content != null) {
+            output.put(content);
+        }
+        return output.array();
+    }
+    /**
+     * 从明文字节解码控制包
+     *
+     * @param input 明文字节
+     * @return {@link ControlPacket }
+     */
+    public ControlPacket decodeControlPacket(byte[] input) throws ProtocolException {
+        if (input.length < ControlPacket.BASIC_HEADER_SIZE) {
+            throw new ProtocolException("ControlPacket truncated");
+        }
+        if (input.length == ControlPacket.BASIC_HEADER_SIZE) {
+            return new ControlPacket(input[0]);
+        }
+        return new ControlPacket(input[0], Arrays.copyOfRange(input, ControlPacket.BASIC_HEADER_SIZE, input.length));
+    }
+
     public ControlPacket readControlPacket(SelectionKey selectionKey, ImtpsSecretKey imtpsSecretKey) throws Exception {
         SocketChannel socketChannel = (SocketChannel) selectionKey.channel();
         BufferManager bufferManager = BufferManager.get();
@@ -49,6 +49,7 @@ public class ObjectDataBody extends AbstractDataBody<Object> {
              ObjectInputStream ois = new ObjectInputStream(bis)) {
             data = ois.readObject();
         }
+        position = 0;
     }
 
     @Override
@@ -102,6 +102,7 @@ public class TextDataBody extends AbstractDataBody<String> {
     @Override
     public void finishDecode() {
         data = new String(dataBytes, StandardCharsets.UTF_8);
+        position = 0;
     }
 
     @Override
@@ -8,12 +8,12 @@ import com.thezeroer.imtps.client.process.handler.ImtpsHandler;
 import com.thezeroer.imtps.client.process.task.AbstractTask;
 import com.thezeroer.imtps.client.process.task.ImtpsTask;
 import com.thezeroer.imtps.client.process.task.ImtpsTaskSet;
+import com.thezeroer.imtps.client.util.TimingWheel;
 import com.thezeroer.imtps.client.view.AbstractTransmitView;
 import com.thezeroer.imtps.client.worker.SessionManager;
 
-import java.util.Comparator;
+import java.util.ArrayDeque;
 import java.util.List;
-import java.util.PriorityQueue;
 import java.util.concurrent.*;
 
 /**
@@ -25,8 +25,9 @@ import java.util.concurrent.*;
  */
 public class ProcessingHub {
     private final TrieRouter<ImtpsHandler> handlerTrieRouter;
-    private final ConcurrentLinkedQueue<AbstractTask<?>> taskQueue;
+    private final ConcurrentHashMap<String, TaskWindow> taskWindowHashMap;
     private final ConcurrentHashMap<String, AbstractTask<?>> taskHashMap;
+    private volatile int taskWindowSize;
     private final TaskTimer taskTimer;
     private ExecutorService threadPool;
 
@@ -36,8 +37,9 @@ public class ProcessingHub {
 
     public ProcessingHub(PacketHandler packetHandler, ImtpsLogger imtpsLogger) {
         handlerTrieRouter = new TrieRouter<>();
-        taskQueue = new ConcurrentLinkedQueue<>();
+        taskWindowHashMap = new ConcurrentHashMap<>();
         taskHashMap = new ConcurrentHashMap<>();
+        taskWindowSize = 1;
         taskTimer = new TaskTimer();
 
         int poolSize = Runtime.getRuntime().availableProcessors();
@@ -54,6 +56,16 @@ public class ProcessingHub {
                 , TrieRouter.buildMatcher(handler.getTypeMach())
                 , TrieRouter.buildMatcher(handler.getExtraMatch()), handler);
     }
+    /**
+     * 删除处理程序，新的路由快照发布后立即生效，已在执行的请求不受影响
+     *
+     * @param handler 处理器
+     * @return boolean 是否存在
+     */
+    public boolean removeHandler(ImtpsHandler handler) {
+        boolean removed = handlerTrieRouter.unregister(handler);
+        return removed;
+    }
     public void freezeHandlerTrieRouter() {
         handlerTrieRouter.freeze();
     }
@@ -62,9 +74,6 @@ public class ProcessingHub {
         AbstractTask<?> mapTask = taskHashMap.get(dataPacket.getTaskId());
         if (mapTask != null) {
             threadPool.submit(() -> executeTaskResponse(mapTask, dataPacket));
-            if (taskQueue.poll() instanceof AbstractTask<?> queuedTask) {
-                threadPool.submit(() -> executeTaskRequest(queuedTask));
-            }
             return;
         }
         ImtpsHandler handler = handlerTrieRouter.find(dataPacket.getWay(), dataPacket.getType(), dataPacket.getExtra());
@@ -84,34 +93,178 @@ public class ProcessingHub {
         switch (task.getPattern()) {
             case AbstractTask.PATTERN_DEFAULT -> threadPool.submit(() -> executeTaskRequest(task));
             case AbstractTask.PATTERN_QUEUE -> {
-                if (taskHashMap.isEmpty()) {
+                String orderKey = getOrderKey(task);
+                while (true) {
+                    TaskWindow taskWindow = taskWindowHashMap.computeIfAbsent(orderKey, key -> new TaskWindow());
+                    synchronized (taskWindow) {
+                        if (taskWindow.removed) {
+                            continue;
+                        }
+                        if (taskWindow.inFlight < taskWindowSize) {
+                            taskWindow.inFlight++;
+                            task.holdWindow(true);
+                        } else {
+                            taskWindow.waitingQueue.add(task);
+                            break;
+                        }
+                    }
                     threadPool.submit(() -> executeTaskRequest(task));
-                } else {
-                    taskQueue.add(task);
+                    break;
                 }
             }
             case AbstractTask.PATTERN_WAIT -> {
+                // 请求在锁外发出，入队时不占用任务的监视器；等待前在锁内检查任务是否仍在等待应答，应答先于等待到达时也不会丢失唤醒。
+                // 等待时间为 0 时与 Object.wait(0) 相同，一直等到任务完成
                 executeTaskRequest(task);
+                long waitingTime = task.getWaitingTime();
+                long deadline = System.currentTimeMillis() + waitingTime;
                 synchronized (task) {
                     try {
-                        task.wait(task.getWaitingTime());
-                    } catch (InterruptedException ignored) {}
+                        for (long remaining = waitingTime; task.isLive() && taskHashMap.get(task.getTaskId()) == task && (waitingTime <= 0 || remaining > 0);
+                             remaining = deadline - System.currentTimeMillis()) {
+                            task.wait(waitingTime <= 0 ? 0 : remaining);
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
                 }
             }
         }
     }
+    /**
+     * 异步提交任务，响应到达时完成，超时（自请求发出起计算）以 {@link TimeoutException} 完成，取消时删除任务
+     *
+     * @param task    任务
+     * @param timeout 超时
+     * @param unit    单位
+     * @return {@link CompletableFuture }<{@link T }>
+     */
+    public <T> CompletableFuture<T> submitTaskAsync(AbstractTask<T> task, long timeout, TimeUnit unit) {
+        CompletableFuture<T> future = task.createFuture();
+        future.whenComplete((response, throwable) -> {
+            if (throwable instanceof CancellationException) {
+                cancelTask(task);
+            }
+        });
+        task.setWaitingTime(timeout, unit);
+        if (task.getPattern() == AbstractTask.PATTERN_WAIT) {
+            task.setPattern(AbstractTask.PATTERN_DEFAULT);
+        }
+        submitTask(task);
+        return future;
+    }
+    /**
+     * 删除任务，已发出的任务不再等待响应，仍在队列窗口中排队的任务不再发出；释放其窗口、定时器与传输视图，异步结果以取消完成
+     *
+     * @param taskId 任务 ID
+     */
     public void removeTask(String taskId) {
-        if (taskHashMap.remove(taskId) instanceof AbstractTask<?> task && task.getPattern() == AbstractTask.PATTERN_QUEUE) {
-            taskQueue.remove(task);
+        AbstractTask<?> task = taskHashMap.get(taskId);
+        if (task == null) {
+            task = findWaitingTask(taskId);
+        }
+        if (task == null) {
+            return;
         }
+        cancelTask(task);
+        if (task.getFuture() instanceof CompletableFuture<?> future) {
+            future.cancel(false);
+        }
+        if (task.getPattern() == AbstractTask.PATTERN_WAIT) {
+            synchronized (task) {
+                task.notifyAll();
+            }
+        }
+    }
+    /**
+     * 设置队列模式下每个排序键允许同时等待响应的任务数，默认为 1
+     *
+     * @param taskWindowSize 窗口大小
+     */
+    public void setTaskWindowSize(int taskWindowSize) {
+        this.taskWindowSize = Math.max(taskWindowSize, 1);
     }
     public void submitTaskToTimer(AbstractTask<?> task) {
         if (task != null) {
             taskTimer.submit(task);
         }
     }
+    /**
+     * 获取等待超时的任务定时器数量
+     *
+     * @return long
+     */
+    public long getPendingTimerCount() {
+        return taskTimer.getPendingCount();
+    }
+
+    private void cancelTask(AbstractTask<?> task) {
+        task.setLive(false);
+        task.cancelTimeout();
+        taskHashMap.remove(task.getTaskId(), task);
+        if (task.getPattern() == AbstractTask.PATTERN_QUEUE) {
+            if (taskWindowHashMap.get(getOrderKey(task)) instanceof TaskWindow taskWindow) {
+                synchronized (taskWindow) {
+                    taskWindow.waitingQueue.remove(task);
+                }
+            }
+            releaseTaskWindow(task);
+        }
+        if (task.getSendView() != null) {
+            packetHandler.removeSendView(task.getTaskId());
+        }
+        if (task.getReceiveView() != null) {
+            packetHandler.removeReceiveView(task.getTaskId());
+        }
+    }
+
+    private AbstractTask<?> findWaitingTask(String taskId) {
+        for (TaskWindow taskWindow : taskWindowHashMap.values()) {
+            synchronized (taskWindow) {
+                for (AbstractTask<?> task : taskWindow.waitingQueue) {
+                    if (task.getTaskId().equals(taskId)) {
+                        return task;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+    private String getOrderKey(AbstractTask<?> task) {
+        if (task.getOrderKey() instanceof String orderKey) {
+            return orderKey;
+        }
+        return "";
+    }
+    private void releaseTaskWindow(AbstractTask<?> task) {
+        if (task.getPattern() != AbstractTask.PATTERN_QUEUE || !task.holdWindow(false)) {
+            return;
+        }
+        String orderKey = getOrderKey(task);
+        if (taskWindowHashMap.get(orderKey) instanceof TaskWindow taskWindow) {
+            AbstractTask<?> nextTask;
+            synchronized (taskWindow) {
+                nextTask = taskWindow.waitingQueue.poll();
+                if (nextTask == null) {
+                    if (--taskWindow.inFlight <= 0) {
+                        taskWindow.removed = true;
+                        taskWindowHashMap.remove(orderKey, taskWindow);
+                    }
+                } else {
+                    nextTask.holdWindow(true);
+                }
+            }
+            if (nextTask != null) {
+                threadPool.submit(() -> executeTaskRequest(nextTask));
+            }
+        }
+    }
 
     private void executeTaskRequest(AbstractTask<?> task) {
+        if (!task.isLive()) {
+            releaseTaskWindow(task);
+            return;
+        }
         try {
             if (task instanceof ImtpsTask) {
                 if (task.request() instanceof DataPacket dataPacket) {
@@ -125,6 +278,8 @@ public class ProcessingHub {
                     sessionManager.putDataPacket(dataPacket.setTask(task));
                 } else {
                     task.finish(false);
+                    task.completeFuture(new IllegalStateException("Task request is empty"));
+                    releaseTaskWindow(task);
                 }
             } else if (task instanceof ImtpsTaskSet imtpsTaskSet) {
                 if (task.request() instanceof List<?> dataPacketList && !dataPacketList.isEmpty()) {
@@ -143,10 +298,14 @@ public class ProcessingHub {
                     }
                 } else {
                     task.finish(false);
+                    task.completeFuture(new IllegalStateException("Task request is empty"));
+                    releaseTaskWindow(task);
                 }
             }
         } catch (Exception e) {
             task.finish(false);
+            task.completeFuture(e);
+            releaseTaskWindow(task);
             imtpsLogger.log(ImtpsLogger.LEVEL_ERROR, "TaskRequest[$]出现未捕获的异常", task.getTaskId(), e);
             if (task.getSendView() != null) {
                 packetHandler.removeSendView(task.getTaskId());
@@ -166,6 +325,7 @@ public class ProcessingHub {
                     finished = task.putResponseData(dataPacket);
                 }
                 if (finished) {
+                    task.cancelTimeout();
                     taskHashMap.remove(task.getTaskId());
                     if (task.getSendView() != null) {
                         packetHandler.removeSendView(task.getTaskId());
@@ -174,8 +334,10 @@ public class ProcessingHub {
                         packetHandler.removeReceiveView(task.getTaskId());
                     }
                     task.setLive(false);
+                    releaseTaskWindow(task);
                     task.response();
                     task.finish(true);
+                    task.completeFuture(dataPacket == null ? new TimeoutException("Task " + task.getTaskId() + " timed out") : null);
                     if (task.getPattern() == ImtpsTask.PATTERN_WAIT) {
                         synchronized (task) {
                             task.notifyAll();
@@ -185,6 +347,8 @@ public class ProcessingHub {
             }
         } catch (Exception e) {
             task.finish(false);
+            task.completeFuture(e);
+            releaseTaskWindow(task);
             imtpsLogger.log(ImtpsLogger.LEVEL_ERROR, "TaskResponse[$]出现未捕获的异常", task.getTaskId(), e);
         }
     }
@@ -197,49 +361,33 @@ public class ProcessingHub {
         packetHandler.setThreadPool(threadPool);
     }
 
-    class TaskTimer extends Thread{
-        private final PriorityQueue<AbstractTask<?>> WaitingQueue;
-        private final Object taskTimerLock = new Object();
+    static class TaskWindow {
+        private final ArrayDeque<AbstractTask<?>> waitingQueue = new ArrayDeque<>();
+        private int inFlight;
+        private boolean removed;
+    }
 
-        public TaskTimer () {
-            WaitingQueue = new PriorityQueue<>(Comparator.comparingLong(AbstractTask::getExpirationTime));
-            setDaemon(true);
-            start();
+    class TaskTimer {
+        private final TimingWheel timingWheel;
+
+        public TaskTimer() {
+            timingWheel = new TimingWheel("TaskTimer", 100, TimeUnit.MILLISECONDS, 512);
         }
 
-        public synchronized void submit(AbstractTask<?> task) {
+        public void submit(AbstractTask<?> task) {
+            task.cancelTimeout();
+            if (!task.isLive()) {
+                return;
+            }
             task.updateExpirationTime();
-            WaitingQueue.add(task);
-            AbstractTask<?> oldImtpsTask = WaitingQueue.peek();
-            if (task.equals(oldImtpsTask) || oldImtpsTask != null && task.getExpirationTime() < oldImtpsTask.getExpirationTime()) {
-                synchronized (taskTimerLock) {
-                    taskTimerLock.notify();
+            task.setTimeout(timingWheel.newTimeout(timeout -> {
+                if (task.isLive()) {
+                    threadPool.submit(() -> executeTaskResponse(task, null));
                 }
-            }
+            }, task.getWaitingTime(), TimeUnit.MILLISECONDS));
         }
-
-        @Override
-        public void run() {
-            while(true){
-                while (!WaitingQueue.isEmpty()){
-                    synchronized(taskTimerLock){
-                        try {
-                            if (WaitingQueue.poll() instanceof AbstractTask<?> task) {
-                                long waitTime = task.getExpirationTime() - System.currentTimeMillis();
-                                if (waitTime > 0) {
-                                    taskTimerLock.wait(waitTime);
-                                }
-                                threadPool.submit(() -> executeTaskResponse(task, null));
-                            }
-                        } catch (InterruptedException ignored) {}
-                    }
-                }
-                synchronized (taskTimerLock){
-                    try {
-                        taskTimerLock.wait();
-                    } catch (InterruptedException ignored) {}
-                }
-            }
+        public long getPendingCount() {
+            return timingWheel.pendingTimeouts();
         }
     }
 }
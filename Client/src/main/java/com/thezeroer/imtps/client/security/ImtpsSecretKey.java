@@ -17,6 +17,10 @@ public class ImtpsSecretKey {
     public final static int FINISHEDMESSAGE_LENGTH = 32;
     public final static int NONCE_LENGTH = 16;
     public final static int TAG_LENGTH = 32;
+    /** 会话恢复请求的首字节，完整握手的首字节为公钥编码的 0x30，二者不会冲突 */
+    public final static byte RESUME_FLAG = 0;
+    /** 会话恢复票据长度，票据由服务端加密，客户端只保存和回传 */
+    public final static int TICKET_LENGTH = NONCE_LENGTH + 64 + Long.BYTES + TAG_LENGTH;
 
     private final SecretKey aesKey, macKey;
 
@@ -93,6 +97,17 @@ public class ImtpsSecretKey {
         return cipher.doFinal(encrypted);
     }
 
+    /**
+     * 以会话密钥计算消息认证码，用于会话恢复时证明持有密钥
+     *
+     * @param srcBytes 源字节
+     * @return {@link byte[] }
+     */
+    public byte[] createMac(byte[] srcBytes) throws NoSuchAlgorithmException, InvalidKeyException {
+        Mac mac = Mac.getInstance(MAC_ALGORITHM);
+        mac.init(macKey);
+        return mac.doFinal(srcBytes);
+    }
     public byte[] getFinishedMessage() throws NoSuchAlgorithmException, InvalidKeyException {
         Mac mac = Mac.getInstance(MAC_ALGORITHM);
         mac.init(macKey);
@@ -5,6 +5,7 @@ import com.thezeroer.imtps.client.security.ImtpsSecretKey;
 import com.thezeroer.imtps.client.session.channel.ControlChannel;
 import com.thezeroer.imtps.client.session.channel.DataChannel;
 import com.thezeroer.imtps.client.session.channel.ImtpsChannel;
+import com.thezeroer.imtps.client.session.channel.MediaChannel;
 
 import java.io.IOException;
 import java.nio.channels.SelectionKey;
@@ -24,7 +25,8 @@ public class ImtpsSession {
     private final ImtpsSecretKey imtpsSecretKey;
     private final EnumMap<ImtpsChannel.TYPE, ImtpsChannel> channelEnumMap;
     private final long creationTime;
-    private long lastActivityTime;
+    private volatile long lastActivityTime;
+    private volatile byte[] ticket;
 
     public ImtpsSession(SelectionKey selectionKey, ImtpsSecretKey imtpsSecretKey, String sessionId) throws IOException {
         this.sessionId = sessionId;
@@ -34,6 +36,7 @@ public class ImtpsSession {
         channelEnumMap.put(ImtpsChannel.TYPE.Control, new ControlChannel(selectionKey));
         channelEnumMap.put(ImtpsChannel.TYPE.DataBasic, new DataChannel(ImtpsChannel.TYPE.DataBasic));
         channelEnumMap.put(ImtpsChannel.TYPE.DataFile,  new DataChannel(ImtpsChannel.TYPE.DataFile));
+        channelEnumMap.put(ImtpsChannel.TYPE.DataMedia, new MediaChannel());
     }
 
     public long getCreationTime() {
@@ -50,9 +53,27 @@ public class ImtpsSession {
         if (type == ImtpsChannel.TYPE.Control) {
             channelEnumMap.get(ImtpsChannel.TYPE.DataBasic).channelClosed();
             channelEnumMap.get(ImtpsChannel.TYPE.DataFile).channelClosed();
+            channelEnumMap.get(ImtpsChannel.TYPE.DataMedia).channelClosed();
         }
     }
 
+    /**
+     * 挂起会话，关闭全部连接但保留发送队列，会话恢复后继续发送
+     */
+    public void suspend() throws IOException {
+        channelEnumMap.get(ImtpsChannel.TYPE.Control).channelClosed();
+        ((DataChannel) channelEnumMap.get(ImtpsChannel.TYPE.DataBasic)).channelSuspended();
+        ((DataChannel) channelEnumMap.get(ImtpsChannel.TYPE.DataFile)).channelSuspended();
+    }
+    /**
+     * 会话恢复，控制通道换用新连接
+     *
+     * @param selectionKey 选择键
+     */
+    public void reattach(SelectionKey selectionKey) throws IOException {
+        getControlChannel().setSelectionKey(selectionKey);
+    }
+
     public ImtpsChannel getChannel(ImtpsChannel.TYPE type) {
         return channelEnumMap.get(type);
     }
@@ -62,12 +83,26 @@ public class ImtpsSession {
     public DataChannel getDataChannel(DataChannel.TYPE type) {
         return (DataChannel) channelEnumMap.get(type);
     }
+    public MediaChannel getMediaChannel() {
+        return (MediaChannel) channelEnumMap.get(ImtpsChannel.TYPE.DataMedia);
+    }
     public ImtpsSecretKey getImtpsSecretKey() {
         return imtpsSecretKey;
     }
     public String getSessionId() {
         return sessionId;
     }
+    /**
+     * 获取会话恢复票据
+     *
+     * @return {@link byte[] }，未签发或已失效时为 null
+     */
+    public byte[] getTicket() {
+        return ticket;
+    }
+    public void setTicket(byte[] ticket) {
+        this.ticket = ticket;
+    }
 
     public void putSendQueue(DataPacket dataPacket) {
         ((DataChannel) channelEnumMap.get(ImtpsChannel.chooseType(dataPacket.getDataBodyType()))).getSendQueue().add(dataPacket);
@@ -1,5 +1,7 @@
 package com.thezeroer.imtps.client.session.channel;
 
+import com.thezeroer.imtps.client.datapacket.DataFrameReader;
+import com.thezeroer.imtps.client.datapacket.DataFrameWriter;
 import com.thezeroer.imtps.client.datapacket.DataPacket;
 
 import java.io.IOException;
@@ -16,15 +18,29 @@ import java.util.concurrent.ConcurrentLinkedQueue;
  */
 public class DataChannel extends ImtpsChannel {
     private final ConcurrentLinkedQueue<DataPacket> sendQueue;
+    private final ReliableWindow reliableWindow;
+    private volatile DataFrameWriter dataFrameWriter;
+    private volatile DataFrameReader dataFrameReader;
 
     public DataChannel(TYPE type) {
         super(type);
         sendQueue = new ConcurrentLinkedQueue<>();
+        reliableWindow = new ReliableWindow();
         this.status = STATUS.Unconnected;
     }
 
     @Override
     public void channelClosed() throws IOException {
+        channelSuspended();
+        // 启用可靠传输时保留发送队列，重连后继续发送
+        if (reliableWindow.getCapacity() == 0) {
+            sendQueue.clear();
+        }
+    }
+    /**
+     * 会话挂起，关闭连接但保留发送队列，会话恢复后继续发送
+     */
+    public void channelSuspended() throws IOException {
         super.channelClosed();
         if (selectionKey != null) {
             selectionKey.cancel();
@@ -32,16 +48,53 @@ public class DataChannel extends ImtpsChannel {
         if (socketChannel != null) {
             socketChannel.close();
         }
-        sendQueue.clear();
     }
     @Override
     public ConcurrentLinkedQueue<DataPacket> getSendQueue() {
         return sendQueue;
     }
+    public ReliableWindow getReliableWindow() {
+        return reliableWindow;
+    }
+    /**
+     * 是否有可写出的数据包，包括需要重发的副本，窗口满时不再写出新数据包
+     *
+     * @return boolean
+     */
+    public boolean hasSendDataPacket() {
+        return hasPendingFrame() || reliableWindow.hasReplay() || (!sendQueue.isEmpty() && !reliableWindow.isFull());
+    }
+
+    /**
+     * 启用分帧模式，每条连接独立的帧写出器与读取器，连接更换后需重新设置
+     *
+     * @param dataFrameWriter 帧写出器
+     * @param dataFrameReader 帧读取器
+     */
+    public void setFrameCodec(DataFrameWriter dataFrameWriter, DataFrameReader dataFrameReader) {
+        this.dataFrameWriter = dataFrameWriter;
+        this.dataFrameReader = dataFrameReader;
+    }
+    public DataFrameWriter getDataFrameWriter() {
+        return dataFrameWriter;
+    }
+    public DataFrameReader getDataFrameReader() {
+        return dataFrameReader;
+    }
+    private boolean hasPendingFrame() {
+        return dataFrameWriter instanceof DataFrameWriter writer && writer.hasPending();
+    }
 
     public DataChannel setSelectionKey(SelectionKey selectionKey) {
         this.selectionKey = selectionKey;
         this.socketChannel = (SocketChannel) selectionKey.channel();
+        // 旧连接的读写线程可能尚未退出，新连接从空闲状态开始
+        reading.set(false);
+        writing.set(false);
+        reliableWindow.rewind();
+        // 旧连接上未写完的帧随连接作废，启用可靠传输时由重发补齐
+        dataFrameWriter = null;
+        dataFrameReader = null;
         this.status = STATUS.Connected;
         return this;
     }
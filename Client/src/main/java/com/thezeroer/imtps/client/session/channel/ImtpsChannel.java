@@ -30,6 +30,7 @@ public class ImtpsChannel {
         Filtered, // 通过过滤
         Handshaking, // 正在握手
         Handshaked, // 握手完成
+        Resumed, // 会话恢复
 
         Unconnected, // 未连接
         Connecting, // 连接中
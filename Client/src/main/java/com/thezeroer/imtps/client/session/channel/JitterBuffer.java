@@ -0,0 +1,165 @@
+package com.thezeroer.imtps.client.session.channel;
+
+import com.thezeroer.imtps.client.datapacket.DataPacket;
+import com.thezeroer.imtps.client.util.TimingWheel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 抖动缓冲区
+ * <p>媒体通道接收方向使用，按序号交付数据包：连续到达的数据包立即交付，序号出现缺口时暂存其后到达的数据包，
+ * 等待缺口补齐的时间不超过保持时间，超时后跳过缺口并计为丢失。落后于已交付序号的数据包迟到或重复，直接丢弃。
+ * 同时按 RFC 3550 的方法以数据包的创建时间估算到达间隔抖动</p>
+ *
+ * @author NiZhanBo
+ * @since 2026/10/19
+ * @version 1.0.0
+ */
+public class JitterBuffer {
+    /** 默认保持时间（毫秒） */
+    public static final long DEFAULT_DELAY = 50;
+    /** 暂存的数据包数上限，超出后不再等待最早的缺口 */
+    public static final int MAX_BUFFER_SIZE = 256;
+
+    private final TreeMap<Long, Entry> bufferMap;
+    private volatile long delay;
+    private long expectedSequence, highestSequence;
+    private long receivedCount, lostCount, lateCount;
+    private long lastTransit;
+    private double jitter;
+    private TimingWheel.Timeout flushTimeout;
+
+    public JitterBuffer() {
+        bufferMap = new TreeMap<>();
+        delay = DEFAULT_DELAY;
+    }
+
+    /**
+     * 接收数据包
+     *
+     * @param dataPacket 数据包，序号由发送方的媒体通道分配
+     * @param now        到达时间
+     * @return {@link List }<{@link DataPacket }> 可以按序交付的数据包
+     */
+    public synchronized List<DataPacket> offer(DataPacket dataPacket, long now) {
+        long sequence = dataPacket.getSequence();
+        long transit = now - dataPacket.getTime();
+        if (receivedCount > 0) {
+            jitter += (Math.abs(transit - lastTransit) - jitter) / 16;
+        }
+        lastTransit = transit;
+        if (expectedSequence == 0) {
+            expectedSequence = sequence;
+        }
+        if (sequence < expectedSequence || bufferMap.containsKey(sequence)) {
+            lateCount++;
+            return List.of();
+        }
+        receivedCount++;
+        highestSequence = Math.max(highestSequence, sequence);
+        bufferMap.put(sequence, new Entry(dataPacket, now));
+        return drain(now);
+    }
+    /**
+     * 交付等待超过保持时间的数据包，跳过的缺口计为丢失
+     *
+     * @param now 当前时间
+     * @return {@link List }<{@link DataPacket }>
+     */
+    public synchronized List<DataPacket> expire(long now) {
+        return drain(now);
+    }
+    /**
+     * 距下一次需要交付的时间
+     *
+     * @param now 当前时间
+     * @return long 毫秒，没有暂存的数据包时为 -1
+     */
+    public synchronized long nextDeadline(long now) {
+        if (bufferMap.isEmpty()) {
+            return -1;
+        }
+        return Math.max(bufferMap.firstEntry().getValue().arrivalTime + delay - now, 0);
+    }
+
+    public synchronized TimingWheel.Timeout getFlushTimeout() {
+        return flushTimeout;
+    }
+    public synchronized void setFlushTimeout(TimingWheel.Timeout flushTimeout) {
+        this.flushTimeout = flushTimeout;
+    }
+    public long getDelay() {
+        return delay;
+    }
+    public void setDelay(long delay) {
+        this.delay = Math.max(delay, 0);
+    }
+    /**
+     * 获取已接收的最大序号
+     *
+     * @return long
+     */
+    public synchronized long getHighestSequence() {
+        return highestSequence;
+    }
+    public synchronized long getReceivedCount() {
+        return receivedCount;
+    }
+    public synchronized long getLostCount() {
+        return lostCount;
+    }
+    /**
+     * 获取迟到或重复而丢弃的数据包数
+     *
+     * @return long
+     */
+    public synchronized long getLateCount() {
+        return lateCount;
+    }
+    /**
+     * 获取丢失率，丢失数占应收数的比例
+     *
+     * @return double
+     */
+    public synchronized double getLossRate() {
+        return receivedCount + lostCount == 0 ? 0 : (double) lostCount / (receivedCount + lostCount);
+    }
+    /**
+     * 获取到达间隔抖动的估计值
+     *
+     * @return double 毫秒
+     */
+    public synchronized double getJitter() {
+        return jitter;
+    }
+
+    private List<DataPacket> drain(long now) {
+        List<DataPacket> dataPackets = new ArrayList<>();
+        while (!bufferMap.isEmpty()) {
+            Map.Entry<Long, Entry> first = bufferMap.firstEntry();
+            if (first.getKey() != expectedSequence) {
+                if (now - first.getValue().arrivalTime < delay && bufferMap.size() <= MAX_BUFFER_SIZE) {
+                    break;
+                }
+                lostCount += first.getKey() - expectedSequence;
+                expectedSequence = first.getKey();
+            }
+            dataPackets.add(bufferMap.pollFirstEntry().getValue().dataPacket);
+            expectedSequence++;
+        }
+        return dataPackets;
+    }
+
+    private static class Entry {
+        private final DataPacket dataPacket;
+        private final long arrivalTime;
+
+        Entry(DataPacket dataPacket, long arrivalTime) {
+            this.dataPacket = dataPacket;
+            this.arrivalTime = arrivalTime;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.thezeroer.imtps.client.session.channel;
+
+import com.thezeroer.imtps.client.datapacket.DataPacket;
+import com.thezeroer.imtps.client.datapacket.databody.AbstractDataBody;
+import com.thezeroer.imtps.client.security.ImtpsSecretKey;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 媒体通道
+ * <p>基于数据报的低延迟通道，音频、视频类型的数据包不经过可靠传输，不会因 TCP 重传而停顿。
+ * 每个数据报为媒体通道 ID、随机数、加密的数据包明文与认证标签，使用会话密钥加密，认证范围包括媒体通道 ID。
+ * 服务端从通过认证的数据报得知客户端的地址，在此之前发往该会话的媒体数据包被丢弃</p>
+ *
+ * @author NiZhanBo
+ * @since 2026/10/19
+ * @version 1.0.0
+ */
+public class MediaChannel extends ImtpsChannel {
+    /** 数据报负载的上限 */
+    public static final int MAX_DATAGRAM_SIZE = 65507;
+    public static final int DATAGRAM_HEADER_SIZE = Long.BYTES + ImtpsSecretKey.NONCE_LENGTH;
+    public static final int DATAGRAM_OVERHEAD = DATAGRAM_HEADER_SIZE + ImtpsSecretKey.TAG_LENGTH;
+    /** 问候数据报的明文为 8 字节的递增计数，用于告知对端本端的地址，数据包明文不会短于数据包头 */
+    public static final int HELLO_SIZE = Long.BYTES;
+
+    private final AtomicLong sendSequence;
+    private final JitterBuffer jitterBuffer;
+    private final LongAdder sentCount, droppedCount;
+    private volatile long mediaId;
+    private volatile DatagramChannel datagramChannel;
+    private volatile InetSocketAddress peerAddress;
+    private long helloCount;
+
+    public MediaChannel() {
+        super(TYPE.DataMedia);
+        sendSequence = new AtomicLong();
+        jitterBuffer = new JitterBuffer();
+        sentCount = new LongAdder();
+        droppedCount = new LongAdder();
+        this.status = STATUS.Unconnected;
+    }
+
+    /**
+     * 数据包是否走媒体通道：音频、视频类型，基本类型的正文，且不属于任务的请求
+     *
+     * @param dataPacket 数据包
+     * @return boolean
+     */
+    public static boolean isMediaPacket(DataPacket dataPacket) {
+        return (dataPacket.getType() == DataPacket.TYPE.AUDIO || dataPacket.getType() == DataPacket.TYPE.VIDEO)
+                && dataPacket.getDataBodyType() == AbstractDataBody.TYPE.Basic && dataPacket.getTask() == null;
+    }
+    /**
+     * 加密明文为数据报
+     *
+     * @param imtpsSecretKey 会话密钥
+     * @param mediaId        媒体通道 ID
+     * @param plain          明文
+     * @return {@link ByteBuffer } 可直接写出的数据报
+     */
+    public static ByteBuffer seal(ImtpsSecretKey imtpsSecretKey, long mediaId, byte[] plain) throws Exception {
+        byte[] nonce = ImtpsSecretKey.createNonce();
+        ByteBuffer datagram = ByteBuffer.allocate(DATAGRAM_OVERHEAD + plain.length).putLong(mediaId).put(nonce);
+        return imtpsSecretKey.createEncryptCipher(nonce).attach(toBytes(mediaId)).doFinal(ByteBuffer.wrap(plain), datagram).flip();
+    }
+    /**
+     * 验证并解密数据报，未通过认证时抛出 {@link SecurityException}
+     *
+     * @param imtpsSecretKey 会话密钥
+     * @param mediaId        媒体通道 ID
+     * @param datagram       已读出媒体通道 ID 的数据报
+     * @return {@link ByteBuffer } 明文
+     */
+    public static ByteBuffer open(ImtpsSecretKey imtpsSecretKey, long mediaId, ByteBuffer datagram) throws Exception {
+        byte[] nonce = new byte[ImtpsSecretKey.NONCE_LENGTH];
+        datagram.get(nonce);
+        return imtpsSecretKey.createDecryptCipher(nonce).attach(toBytes(mediaId))
+                .doFinal(datagram, ByteBuffer.allocate(datagram.remaining() - ImtpsSecretKey.TAG_LENGTH)).flip();
+    }
+    private static byte[] toBytes(long mediaId) {
+        return ByteBuffer.allocate(Long.BYTES).putLong(mediaId).array();
+    }
+
+    /**
+     * 更新对端地址，收到通过认证的新数据报时调用
+     *
+     * @param datagramChannel 收到数据报的通道，发往对端的数据报由该通道写出
+     * @param peerAddress     对端地址
+     */
+    public void connect(DatagramChannel datagramChannel, InetSocketAddress peerAddress) {
+        this.datagramChannel = datagramChannel;
+        this.peerAddress = peerAddress;
+        status = STATUS.Connected;
+    }
+    /**
+     * 取下一个问候计数
+     *
+     * @return long
+     */
+    public synchronized long nextHello() {
+        return ++helloCount;
+    }
+    /**
+     * 核对问候计数，只接受递增的计数，重放的问候数据报不能改变对端地址
+     *
+     * @param count 计数
+     * @return boolean
+     */
+    public synchronized boolean acceptHello(long count) {
+        if (count <= helloCount) {
+            return false;
+        }
+        helloCount = count;
+        return true;
+    }
+    @Override
+    public void channelClosed() throws IOException {
+        super.channelClosed();
+        peerAddress = null;
+        if (jitterBuffer.getFlushTimeout() != null) {
+            jitterBuffer.getFlushTimeout().cancel();
+        }
+        // 客户端的数据报通道为会话独占
+        if (datagramChannel != null) {
+            datagramChannel.close();
+        }
+    }
+
+    public long nextSequence() {
+        return sendSequence.incrementAndGet();
+    }
+    public long getMediaId() {
+        return mediaId;
+    }
+    public void setMediaId(long mediaId) {
+        this.mediaId = mediaId;
+    }
+    public DatagramChannel getDatagramChannel() {
+        return datagramChannel;
+    }
+    @Override
+    public InetSocketAddress getSocketAddress() {
+        return peerAddress;
+    }
+    @Override
+    public InetAddress getInetAddress() {
+        InetSocketAddress peerAddress = this.peerAddress;
+        return peerAddress == null ? null : peerAddress.getAddress();
+    }
+    public JitterBuffer getJitterBuffer() {
+        return jitterBuffer;
+    }
+    public void incrementSentCount() {
+        sentCount.increment();
+    }
+    public void incrementDroppedCount() {
+        droppedCount.increment();
+    }
+    public long getSentCount() {
+        return sentCount.sum();
+    }
+    /**
+     * 获取发送时丢弃的数据包数，包括对端地址未知、超出数据报上限与发送缓冲区已满
+     *
+     * @return long
+     */
+    public long getDroppedCount() {
+        return droppedCount.sum();
+    }
+}
@@ -0,0 +1,248 @@
+package com.thezeroer.imtps.client.worker;
+
+import com.thezeroer.imtps.client.datapacket.DataPacket;
+import com.thezeroer.imtps.client.datapacket.PacketHandler;
+import com.thezeroer.imtps.client.log.ImtpsLogger;
+import com.thezeroer.imtps.client.process.ProcessingHub;
+import com.thezeroer.imtps.client.process.task.ImtpsTask;
+import com.thezeroer.imtps.client.session.ImtpsSession;
+import com.thezeroer.imtps.client.session.channel.ImtpsChannel;
+import com.thezeroer.imtps.client.session.channel.JitterBuffer;
+import com.thezeroer.imtps.client.session.channel.MediaChannel;
+import com.thezeroer.imtps.client.util.TimingWheel;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 媒体管理器
+ * <p>收发媒体通道的数据报。数据报以会话密钥验证并解密，经抖动缓冲区按序交付给处理中心；
+ * 发送时直接写出，发送缓冲区已满时丢弃而不排队。打开媒体通道及每次心跳时发送问候数据报，服务端据此得知客户端的地址</p>
+ *
+ * @author NiZhanBo
+ * @since 2026/10/19
+ * @version 1.0.0
+ */
+public class MediaManager extends Thread {
+    private final Selector selector;
+    private final ConcurrentLinkedQueue<Runnable> eventQueue;
+    private final ByteBuffer receiveBuffer;
+    private final TimingWheel timingWheel;
+    private volatile long jitterDelay;
+    private boolean live, running;
+    private final Object lock = new Object();
+
+    private final PacketHandler packetHandler;
+    private final ProcessingHub processingHub;
+    private final ImtpsLogger imtpsLogger;
+
+    public MediaManager(PacketHandler packetHandler, ProcessingHub processingHub, ImtpsLogger imtpsLogger) throws IOException {
+        super("MediaManager");
+        selector = Selector.open();
+        eventQueue = new ConcurrentLinkedQueue<>();
+        receiveBuffer = ByteBuffer.allocate(MediaChannel.MAX_DATAGRAM_SIZE);
+        timingWheel = new TimingWheel("JitterBuffer", 10, TimeUnit.MILLISECONDS, 512);
+        jitterDelay = JitterBuffer.DEFAULT_DELAY;
+
+        this.packetHandler = packetHandler;
+        this.processingHub = processingHub;
+        this.imtpsLogger = imtpsLogger;
+        live = true;
+    }
+
+    /**
+     * 打开会话的媒体通道
+     *
+     * @param imtpsSession  会话
+     * @param serverAddress 服务端媒体端口的地址
+     * @param mediaId       服务端分配的媒体通道 ID
+     */
+    public void open(ImtpsSession imtpsSession, InetSocketAddress serverAddress, long mediaId) throws IOException {
+        MediaChannel mediaChannel = imtpsSession.getMediaChannel();
+        if (mediaChannel.getStatus() == ImtpsChannel.STATUS.Connected) {
+            return;
+        }
+        DatagramChannel datagramChannel = DatagramChannel.open();
+        datagramChannel.bind(null).configureBlocking(false);
+        mediaChannel.setMediaId(mediaId);
+        mediaChannel.getJitterBuffer().setDelay(jitterDelay);
+        mediaChannel.connect(datagramChannel, serverAddress);
+        eventQueue.add(() -> {
+            try {
+                datagramChannel.register(selector, SelectionKey.OP_READ).attach(imtpsSession);
+            } catch (IOException e) {
+                imtpsLogger.log(ImtpsLogger.LEVEL_ERROR, "MediaManager注册[DataMedia]通道出错", e);
+            }
+        });
+        selector.wakeup();
+        keepAlive(imtpsSession);
+        imtpsLogger.log(ImtpsLogger.LEVEL_DEBUG, "媒体通道已打开[$]", serverAddress);
+    }
+    /**
+     * 发送问候数据报，服务端据此得知客户端的地址，同时维持 NAT 映射
+     *
+     * @param imtpsSession 会话
+     */
+    public void keepAlive(ImtpsSession imtpsSession) {
+        MediaChannel mediaChannel = imtpsSession.getMediaChannel();
+        if (mediaChannel.getStatus() != ImtpsChannel.STATUS.Connected) {
+            return;
+        }
+        try {
+            write(mediaChannel, MediaChannel.seal(imtpsSession.getImtpsSecretKey(), mediaChannel.getMediaId(),
+                    ByteBuffer.allocate(MediaChannel.HELLO_SIZE).putLong(mediaChannel.nextHello()).array()));
+        } catch (Exception e) {
+            imtpsLogger.log(ImtpsLogger.LEVEL_DEBUG, "发送媒体问候出错", e);
+        }
+    }
+    /**
+     * 发送媒体数据包，超出数据报上限或发送缓冲区已满时丢弃
+     *
+     * @param imtpsSession 会话
+     * @param dataPacket   数据包
+     * @return boolean 是否写出
+     */
+    public boolean send(ImtpsSession imtpsSession, DataPacket dataPacket) {
+        MediaChannel mediaChannel = imtpsSession.getMediaChannel();
+        try {
+            if (dataPacket.getTaskId().isEmpty()) {
+                dataPacket.setTaskId(ImtpsTask.createTaskId());
+            }
+            imtpsLogger.trace("发送DataPacket[$]", dataPacket);
+            byte[] plain = packetHandler.encodeDataPacket(dataPacket.setSequence(mediaChannel.nextSequence()), false);
+            if (plain.length + MediaChannel.DATAGRAM_OVERHEAD > MediaChannel.MAX_DATAGRAM_SIZE) {
+                mediaChannel.incrementDroppedCount();
+                imtpsLogger.log(ImtpsLogger.LEVEL_WARN, "媒体数据包[$]超出数据报上限，已丢弃", DataPacket.formatBytes(plain.length));
+                return false;
+            }
+            if (!write(mediaChannel, MediaChannel.seal(imtpsSession.getImtpsSecretKey(), mediaChannel.getMediaId(), plain))) {
+                mediaChannel.incrementDroppedCount();
+                return false;
+            }
+            mediaChannel.incrementSentCount();
+            return true;
+        } catch (Exception e) {
+            mediaChannel.incrementDroppedCount();
+            imtpsLogger.log(ImtpsLogger.LEVEL_DEBUG, "发送媒体数据包出错", e);
+            return false;
+        }
+    }
+    public void setJitterDelay(long jitterDelay) {
+        this.jitterDelay = Math.max(jitterDelay, 0);
+    }
+
+    public void startRunning() {
+        running = true;
+        if (isAlive()) {
+            synchronized (lock) {
+                lock.notify();
+            }
+        } else {
+            start();
+        }
+    }
+    public void stopRunning() {
+        running = false;
+        selector.wakeup();
+    }
+    public void shutdown() {
+        live = false;
+        running = false;
+        timingWheel.stop();
+        selector.wakeup();
+        for (SelectionKey key : selector.keys()) {
+            key.cancel();
+            try {
+                key.channel().close();
+            } catch (IOException ignored) {}
+        }
+    }
+
+    @Override
+    public void run() {
+        while (live) {
+            imtpsLogger.log(ImtpsLogger.LEVEL_DEBUG, "MediaManager StartRunning");
+            while (running) {
+                while (!eventQueue.isEmpty()) {
+                    Runnable task = eventQueue.poll();
+                    task.run();
+                }
+                try {
+                    while (selector.select() > 0) {
+                        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                        while (keys.hasNext() && running) {
+                            SelectionKey key = keys.next(); keys.remove();
+                            if (key.isValid() && key.isReadable()) {
+                                readEvent((DatagramChannel) key.channel(), (ImtpsSession) key.attachment());
+                            }
+                        }
+                    }
+                } catch (IOException e) {
+                    imtpsLogger.log(ImtpsLogger.LEVEL_ERROR, "MediaManager AriseError", e);
+                }
+            }
+            if (live) {
+                synchronized (lock) {
+                    imtpsLogger.log(ImtpsLogger.LEVEL_DEBUG, "MediaManager StopRunning");
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException ignored) {}
+                }
+            }
+        }
+        imtpsLogger.log(ImtpsLogger.LEVEL_DEBUG, "MediaManager Shutdown");
+    }
+    private void readEvent(DatagramChannel datagramChannel, ImtpsSession imtpsSession) throws IOException {
+        while (datagramChannel.receive(receiveBuffer.clear()) instanceof InetSocketAddress socketAddress) {
+            try {
+                receive(imtpsSession, receiveBuffer.flip());
+            } catch (SecurityException ignored) {
+            } catch (Exception e) {
+                imtpsLogger.log(ImtpsLogger.LEVEL_DEBUG, "MediaManager丢弃无法解析的数据报[$]", socketAddress, e);
+            }
+        }
+    }
+    private void receive(ImtpsSession imtpsSession, ByteBuffer datagram) throws Exception {
+        MediaChannel mediaChannel = imtpsSession.getMediaChannel();
+        if (datagram.remaining() < MediaChannel.DATAGRAM_OVERHEAD || datagram.getLong() != mediaChannel.getMediaId()) {
+            return;
+        }
+        ByteBuffer plain = MediaChannel.open(imtpsSession.getImtpsSecretKey(), mediaChannel.getMediaId(), datagram);
+        if (plain.remaining() == MediaChannel.HELLO_SIZE) {
+            return;
+        }
+        DataPacket dataPacket = packetHandler.decodeDataPacket(plain);
+        imtpsLogger.trace("接收DataPacket[$]", dataPacket);
+        deliver(imtpsSession, mediaChannel.getJitterBuffer().offer(dataPacket, System.currentTimeMillis()));
+    }
+    private void deliver(ImtpsSession imtpsSession, List<DataPacket> dataPackets) {
+        for (DataPacket dataPacket : dataPackets) {
+            processingHub.handleDataPacket(dataPacket);
+        }
+        JitterBuffer jitterBuffer = imtpsSession.getMediaChannel().getJitterBuffer();
+        synchronized (jitterBuffer) {
+            long delay = jitterBuffer.nextDeadline(System.currentTimeMillis());
+            if (delay >= 0 && jitterBuffer.getFlushTimeout() == null) {
+                // 缺口等待超时后交付其后暂存的数据包
+                jitterBuffer.setFlushTimeout(timingWheel.newTimeout(timeout -> {
+                    jitterBuffer.setFlushTimeout(null);
+                    deliver(imtpsSession, jitterBuffer.expire(System.currentTimeMillis()));
+                }, delay, TimeUnit.MILLISECONDS));
+            }
+        }
+    }
+    private boolean write(MediaChannel mediaChannel, ByteBuffer datagram) throws IOException {
+        DatagramChannel datagramChannel = mediaChannel.getDatagramChannel();
+        synchronized (datagramChannel) {
+            return datagramChannel.send(datagram, mediaChannel.getSocketAddress()) > 0;
+        }
+    }
+}
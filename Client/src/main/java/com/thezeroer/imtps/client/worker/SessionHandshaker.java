@@ -15,6 +15,7 @@ import java.nio.channels.SocketChannel;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.KeyPair;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.spec.InvalidKeySpecException;
 import java.util.Arrays;
@@ -38,6 +39,16 @@ public class SessionHandshaker {
     public boolean transmit(AcceptChannel acceptChannel) throws IOException, NoSuchAlgorithmException, InvalidKeyException, InvalidKeySpecException, InvalidAlgorithmParameterException, NoSuchPaddingException, IllegalBlockSizeException, BadPaddingException {
         SocketChannel socketChannel = acceptChannel.getSocketChannel();
         if (acceptChannel.getType() == ImtpsChannel.TYPE.Control) {
+            ImtpsSession imtpsSession = sessionManager.getImtpsSession();
+            if (imtpsSession != null && imtpsSession.getTicket() != null && imtpsSession.getControlChannel().getStatus() == ImtpsChannel.STATUS.Unconnected) {
+                if (resume(acceptChannel, imtpsSession)) {
+                    return true;
+                }
+                imtpsSession.setTicket(null);
+                imtpsLogger.log(ImtpsLogger.LEVEL_INFO, "会话恢复被拒绝，改为完整握手");
+                socketChannel = SocketChannel.open(acceptChannel.getSocketAddress());
+                acceptChannel = new AcceptChannel(socketChannel, ImtpsChannel.TYPE.Control);
+            }
             KeyPair keyPair = ImtpsSecretKey.createKeyPair();
             ByteBuffer byteBuffer = ByteBuffer.wrap(keyPair.getPublic().getEncoded());
             socketChannel.write(byteBuffer);
@@ -49,9 +60,13 @@ public class SessionHandshaker {
             socketChannel.write(byteBuffer);
             socketChannel.read(byteBuffer.clear());
             if (Arrays.equals(finishedMessage, byteBuffer.array())) {
-                byteBuffer = ByteBuffer.allocate(ImtpsSecretKey.NONCE_LENGTH + ImtpsSession.SESSIONID_LENGTH + ImtpsSecretKey.TAG_LENGTH);
-                socketChannel.read(byteBuffer);
-                sessionManager.transmit(acceptChannel.setImtpsSecretKey(imtpsSecretKey).setString(new String(imtpsSecretKey.decrypt(byteBuffer.array()))), true);
+                byteBuffer = ByteBuffer.allocate(ImtpsSecretKey.NONCE_LENGTH + ImtpsSession.SESSIONID_LENGTH + ImtpsSecretKey.TICKET_LENGTH + ImtpsSecretKey.TAG_LENGTH);
+                readFully(socketChannel, byteBuffer);
+                byte[] content = imtpsSecretKey.decrypt(byteBuffer.array());
+                sessionManager.transmit(acceptChannel.setImtpsSecretKey(imtpsSecretKey).setString(new String(content, 0, ImtpsSession.SESSIONID_LENGTH)), true);
+                byte[] ticket = Arrays.copyOfRange(content, ImtpsSession.SESSIONID_LENGTH, content.length);
+                // 全零票据表示服务器未启用会话恢复
+                sessionManager.getImtpsSession().setTicket(Arrays.equals(ticket, new byte[ImtpsSecretKey.TICKET_LENGTH]) ? null : ticket);
                 return true;
             } else {
                 imtpsLogger.log(ImtpsLogger.LEVEL_WARN, "与服务器握手失败[finishedMessage错误]");
@@ -68,4 +83,44 @@ public class SessionHandshaker {
             }
         }
     }
+
+    /**
+     * 会话恢复，发送标志字节、票据与以会话密钥计算的票据认证码，服务端回复认证码的认证码与加密的新票据
+     *
+     * @param acceptChannel 接受通道
+     * @param imtpsSession  待恢复的会话
+     * @return boolean 服务端拒绝时返回 false，连接已关闭
+     */
+    private boolean resume(AcceptChannel acceptChannel, ImtpsSession imtpsSession) throws NoSuchAlgorithmException, InvalidKeyException, InvalidAlgorithmParameterException, NoSuchPaddingException, IllegalBlockSizeException, BadPaddingException {
+        SocketChannel socketChannel = acceptChannel.getSocketChannel();
+        ImtpsSecretKey imtpsSecretKey = imtpsSession.getImtpsSecretKey();
+        byte[] proof = imtpsSecretKey.createMac(imtpsSession.getTicket());
+        ByteBuffer byteBuffer = ByteBuffer.allocate(ImtpsSecretKey.FINISHEDMESSAGE_LENGTH + ImtpsSecretKey.NONCE_LENGTH + ImtpsSecretKey.TICKET_LENGTH + ImtpsSecretKey.TAG_LENGTH);
+        try {
+            ByteBuffer request = ByteBuffer.allocate(1 + ImtpsSecretKey.TICKET_LENGTH + ImtpsSecretKey.FINISHEDMESSAGE_LENGTH)
+                    .put(ImtpsSecretKey.RESUME_FLAG).put(imtpsSession.getTicket()).put(proof).flip();
+            while (request.hasRemaining()) {
+                socketChannel.write(request);
+            }
+            if (readFully(socketChannel, byteBuffer) && MessageDigest.isEqual(imtpsSecretKey.createMac(proof),
+                    Arrays.copyOf(byteBuffer.array(), ImtpsSecretKey.FINISHEDMESSAGE_LENGTH))) {
+                imtpsSession.setTicket(imtpsSecretKey.decrypt(Arrays.copyOfRange(byteBuffer.array(), ImtpsSecretKey.FINISHEDMESSAGE_LENGTH, byteBuffer.capacity())));
+                sessionManager.transmit(acceptChannel.setString(imtpsSession.getSessionId()).setStatus(AcceptChannel.STATUS.Resumed), true);
+                imtpsLogger.log(ImtpsLogger.LEVEL_INFO, "已恢复会话");
+                return true;
+            }
+        } catch (IOException | SecurityException ignored) {}
+        try {
+            socketChannel.close();
+        } catch (IOException ignored) {}
+        return false;
+    }
+    private boolean readFully(SocketChannel socketChannel, ByteBuffer byteBuffer) throws IOException {
+        while (byteBuffer.hasRemaining()) {
+            if (socketChannel.read(byteBuffer) == -1) {
+                return false;
+            }
+        }
+        return true;
+    }
 }
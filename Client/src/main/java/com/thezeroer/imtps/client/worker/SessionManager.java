@@ -2,25 +2,37 @@ package com.thezeroer.imtps.client.worker;
 
 import com.thezeroer.imtps.client.address.AddressManager;
 import com.thezeroer.imtps.client.datapacket.ControlPacket;
+import com.thezeroer.imtps.client.datapacket.DataFrameReader;
+import com.thezeroer.imtps.client.datapacket.DataFrameWriter;
 import com.thezeroer.imtps.client.datapacket.DataPacket;
 import com.thezeroer.imtps.client.datapacket.PacketHandler;
 import com.thezeroer.imtps.client.event.ImtpsEventCatch;
 import com.thezeroer.imtps.client.log.ImtpsLogger;
 import com.thezeroer.imtps.client.process.ProcessingHub;
+import com.thezeroer.imtps.client.process.task.AbstractTask;
 import com.thezeroer.imtps.client.session.ImtpsSession;
 import com.thezeroer.imtps.client.session.channel.AcceptChannel;
+import com.thezeroer.imtps.client.session.channel.ControlChannel;
 import com.thezeroer.imtps.client.session.channel.DataChannel;
 import com.thezeroer.imtps.client.session.channel.ImtpsChannel;
+import com.thezeroer.imtps.client.session.channel.MediaChannel;
+import com.thezeroer.imtps.client.session.channel.ReliableWindow;
+import com.thezeroer.imtps.client.util.TimingWheel;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.SocketException;
+import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.*;
 
 /**
@@ -31,33 +43,45 @@ import java.util.concurrent.*;
  * @since 2025/07/05
  */
 public class SessionManager extends Thread {
+    private static final ImtpsChannel.TYPE[] MULTIPLEX_TYPES = {ImtpsChannel.TYPE.DataBasic, ImtpsChannel.TYPE.DataFile};
     private volatile ImtpsSession imtpsSession;
     private final Selector selector;
     private final ConcurrentLinkedQueue<Runnable> eventQueue;
     private final ConcurrentHashMap<ImtpsChannel.TYPE, InetSocketAddress> addressMap;
     private ExecutorService threadPool;
     private boolean live, running;
+    private volatile boolean frameMode, mediaMode, multiplexMode;
     private final HeartBeat heartBeat;
+    private final DelayedAck delayedAck;
+    private final EnumMap<ImtpsChannel.TYPE, Integer> reliableWindowMapping;
+    private final EnumMap<ImtpsChannel.TYPE, Long> reliableWindowBytesMapping;
+    private final Set<ImtpsChannel.TYPE> openingSet;
     private final Object lock = new Object();
 
     private SessionHandshaker sessionHandshaker;
     private final PacketHandler packetHandler;
     private final ProcessingHub processingHub;
+    private final MediaManager mediaManager;
     private final AddressManager addressManager;
     private final ImtpsLogger imtpsLogger;
     private ImtpsEventCatch imtpsEventCatch;
 
-    public SessionManager(PacketHandler packetHandler, ProcessingHub processingHub, AddressManager addressManager, ImtpsLogger imtpsLogger) throws IOException {
+    public SessionManager(PacketHandler packetHandler, ProcessingHub processingHub, MediaManager mediaManager, AddressManager addressManager, ImtpsLogger imtpsLogger) throws IOException {
         selector = Selector.open();
         eventQueue = new ConcurrentLinkedQueue<>();
         addressMap = new ConcurrentHashMap<>();
         threadPool = new ThreadPoolExecutor(2, 4, 60, TimeUnit.SECONDS
                 , new ArrayBlockingQueue<>(12), new ThreadPoolExecutor.CallerRunsPolicy());
         heartBeat = new HeartBeat();
+        delayedAck = new DelayedAck();
+        reliableWindowMapping = new EnumMap<>(ImtpsChannel.TYPE.class);
+        reliableWindowBytesMapping = new EnumMap<>(ImtpsChannel.TYPE.class);
+        openingSet = ConcurrentHashMap.newKeySet();
         imtpsEventCatch = new ImtpsEventCatch() {};
 
         this.packetHandler = packetHandler;
         this.processingHub = processingHub;
+        this.mediaManager = mediaManager;
         this.addressManager = addressManager;
         this.imtpsLogger = imtpsLogger;
         live = true;
@@ -70,16 +94,52 @@ public class SessionManager extends Thread {
             try {
                 SelectionKey selectionKey = acceptChannel.getSocketChannel().configureBlocking(false)
                         .register(selector, SelectionKey.OP_READ);
-                if (acceptChannel.getType() == ImtpsChannel.TYPE.Control) {
+                if (acceptChannel.getStatus() == ImtpsChannel.STATUS.Resumed) {
+                    imtpsSession.reattach(selectionKey);
+                } else if (acceptChannel.getType() == ImtpsChannel.TYPE.Control) {
+                    if (imtpsSession != null) {
+                        imtpsSession.getMediaChannel().channelClosed();
+                    }
                     imtpsSession = new ImtpsSession(selectionKey, acceptChannel.getImtpsSecretKey(), acceptChannel.getString());
+                    openingSet.clear();
+                    reliableWindowMapping.forEach((type, capacity) -> imtpsSession.getDataChannel(type).getReliableWindow().setCapacity(capacity));
+                    reliableWindowBytesMapping.forEach((type, maxBytes) -> imtpsSession.getDataChannel(type).getReliableWindow().setMaxBytes(maxBytes));
+                    if (mediaMode) {
+                        putControlPacket(new ControlPacket(ControlPacket.WAY.PORT_DATA_MEDIA));
+                    }
+                    if (multiplexMode) {
+                        multiplex();
+                    }
                 } else {
-                    imtpsSession.getDataChannel(acceptChannel.getType()).setSelectionKey(selectionKey);
-                    putControlPacket(new ControlPacket(ControlPacket.WAY.TOKEN, acceptChannel.getString().getBytes(StandardCharsets.UTF_8)));
+                    DataChannel dataChannel = imtpsSession.getDataChannel(acceptChannel.getType());
+                    dataChannel.setSelectionKey(selectionKey);
+                    openingSet.remove(acceptChannel.getType());
+                    byte[] token = acceptChannel.getString().getBytes(StandardCharsets.UTF_8);
+                    if (frameMode && acceptChannel.getType() == ImtpsChannel.TYPE.DataBasic) {
+                        // 令牌之后附加一个字节请求分帧模式，服务端按同样的方式读写该连接
+                        dataChannel.setFrameCodec(new DataFrameWriter(selectionKey, imtpsSession.getImtpsSecretKey()),
+                                new DataFrameReader(imtpsSession.getImtpsSecretKey()));
+                        token = ByteBuffer.allocate(token.length + 1).put(token).put((byte) 1).array();
+                    }
+                    putControlPacket(new ControlPacket(ControlPacket.WAY.TOKEN, token));
                 }
                 selectionKey.attach(acceptChannel.getType());
                 addressMap.put(acceptChannel.getType(), acceptChannel.getSocketAddress());
+                if (acceptChannel.getStatus() == ImtpsChannel.STATUS.Resumed && imtpsSession.getControlChannel().isMultiplexed()) {
+                    // 新连接上重新协商多路复用，挂起期间保留的数据包随控制连接写出
+                    multiplex();
+                } else if (acceptChannel.getStatus() == ImtpsChannel.STATUS.Resumed) {
+                    // 挂起期间保留的数据包需要重新建立数据通道
+                    for (ImtpsChannel.TYPE type : new ImtpsChannel.TYPE[]{ImtpsChannel.TYPE.DataBasic, ImtpsChannel.TYPE.DataFile}) {
+                        DataChannel dataChannel = imtpsSession.getDataChannel(type);
+                        if (dataChannel.hasSendDataPacket() || dataChannel.getReliableWindow().getUnackedCount() > 0) {
+                            requestDataChannel(type);
+                        }
+                    }
+                }
                 imtpsLogger.log(ImtpsLogger.LEVEL_DEBUG, "通道[$]注册完成", acceptChannel.getType());
             } catch (Exception e) {
+                openingSet.remove(acceptChannel.getType());
                 imtpsLogger.log(ImtpsLogger.LEVEL_ERROR, "通道[$]注册出错", acceptChannel.getType(), e);
             } finally {
                 latch.countDown();
@@ -116,6 +176,8 @@ public class SessionManager extends Thread {
     public void shutdown() {
         live = false;
         running = false;
+        heartBeat.shutdown();
+        delayedAck.shutdown();
         selector.wakeup();
         if (imtpsSession != null) {
             try {
@@ -137,6 +199,10 @@ public class SessionManager extends Thread {
                         Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
                         while (keys.hasNext() && running) {
                             SelectionKey selectionKey = keys.next(); keys.remove();
+                            // 会话挂起或恢复时其他线程可能已取消选择键
+                            if (!selectionKey.isValid()) {
+                                continue;
+                            }
                             if (selectionKey.isReadable()) {
                                 selectionKey.interestOps(selectionKey.interestOps() & ~SelectionKey.OP_READ);
                                 readEvent(selectionKey);
@@ -173,18 +239,47 @@ public class SessionManager extends Thread {
             if (imtpsSession.getChannel(type).getStatus() != ImtpsChannel.STATUS.Connected) {
                 return;
             }
+            ControlChannel controlChannel = imtpsSession.getControlChannel();
             try {
                 if (type == ImtpsChannel.TYPE.Control) {
-                    packet = packetHandler.readControlPacket(selectionKey, imtpsSession.getImtpsSecretKey());
+                    if (controlChannel.getSelectionKey() == selectionKey && controlChannel.getDataFrameReader() instanceof DataFrameReader dataFrameReader) {
+                        // 多路复用模式下每次只读取当前可读的帧，可能得到零个或多个控制包与数据包
+                        packet = dataFrameReader.read((SocketChannel) selectionKey.channel());
+                    } else {
+                        packet = packetHandler.readControlPacket(selectionKey, imtpsSession.getImtpsSecretKey());
+                        // 其后的字节已是帧，须在重新关注可读事件之前换用帧读取器
+                        if (packet instanceof ControlPacket controlPacket && controlPacket.getWay() == ControlPacket.WAY.MULTIPLEX
+                                && controlChannel.getSelectionKey() == selectionKey) {
+                            controlChannel.setDataFrameReader(new DataFrameReader(imtpsSession.getImtpsSecretKey(), packetHandler));
+                        }
+                    }
                     if (packet == null) {
                         closeChannel(selectionKey);
                         imtpsEventCatch.serverClose(true);
                         return;
                     }
                 } else {
-                    packet = packetHandler.readDataPacket(selectionKey, imtpsSession.getImtpsSecretKey());
+                    DataChannel dataChannel = imtpsSession.getDataChannel(type);
+                    if (dataChannel.getSelectionKey() == selectionKey && dataChannel.getDataFrameReader() instanceof DataFrameReader dataFrameReader) {
+                        // 分帧模式下每次只读取当前可读的帧，可能得到零个或多个完整的数据包
+                        List<DataFrameReader.Payload> payloads = dataFrameReader.read((SocketChannel) selectionKey.channel());
+                        if (payloads != null) {
+                            List<DataPacket> dataPackets = new ArrayList<>(payloads.size());
+                            for (DataFrameReader.Payload payload : payloads) {
+                                dataPackets.add(packetHandler.decodeDataPacket(ByteBuffer.wrap(payload.getBytes())));
+                            }
+                            packet = dataPackets;
+                        } else {
+                            packet = null;
+                        }
+                    } else {
+                        packet = packetHandler.readDataPacket(selectionKey, imtpsSession.getImtpsSecretKey());
+                    }
                     if (packet == null) {
-                        closeChannel(selectionKey);
+                        // 服务端关闭了数据通道，仍有未确认的数据包时重新请求连接
+                        if (closeChannel(selectionKey) && (dataChannel.getReliableWindow().getUnackedCount() > 0 || dataChannel.hasSendDataPacket())) {
+                            requestDataChannel(type);
+                        }
                         return;
                     }
                 }
@@ -201,6 +296,10 @@ public class SessionManager extends Thread {
                 return;
             } finally {
                 imtpsSession.getChannel(type).setReading(false);
+                if (type == ImtpsChannel.TYPE.Control && controlChannel.getStatus() != ImtpsChannel.STATUS.Connected
+                        && controlChannel.getDataFrameReader() instanceof DataFrameReader dataFrameReader) {
+                    dataFrameReader.release();
+                }
                 if (imtpsSession.getChannel(type).getStatus() == ImtpsChannel.STATUS.Connected) {
                     eventQueue.add(() -> {
                         if (selectionKey.isValid()) {
@@ -210,19 +309,62 @@ public class SessionManager extends Thread {
                     selector.wakeup();
                 }
             }
-            if (type == ImtpsChannel.TYPE.Control) {
-                imtpsLogger.trace("接收ControlPacket[$]", packet);
+            if (packet instanceof ControlPacket controlPacket) {
+                imtpsLogger.trace("接收ControlPacket[$]", controlPacket);
                 try {
-                    handleControlPacket((ControlPacket) packet);
+                    handleControlPacket(controlPacket);
                 } catch (Exception e) {
                     imtpsLogger.log(ImtpsLogger.LEVEL_ERROR, "SessionManager-HandleControlPacket AriseError", e);
                 }
+            } else if (packet instanceof List<?> elements) {
+                for (Object element : elements) {
+                    if (element instanceof DataFrameReader.Payload payload) {
+                        receiveMultiplexed(payload);
+                    } else {
+                        receiveDataPacket(type, (DataPacket) element);
+                    }
+                }
             } else {
-                imtpsLogger.trace("接收DataPacket[$]", packet);
-                processingHub.handleDataPacket((DataPacket) packet);
+                receiveDataPacket(type, (DataPacket) packet);
             }
         });
     }
+    /**
+     * 分发多路复用连接上读到的负载，控制通道的负载为控制包明文，其余通道为已解码的数据包
+     */
+    private void receiveMultiplexed(DataFrameReader.Payload payload) {
+        ImtpsChannel.TYPE type = ImtpsChannel.TYPE.values()[payload.getChannel()];
+        if (type == ImtpsChannel.TYPE.Control) {
+            try {
+                ControlPacket controlPacket = packetHandler.decodeControlPacket(payload.getBytes());
+                imtpsLogger.trace("接收ControlPacket[$]", controlPacket);
+                handleControlPacket(controlPacket);
+            } catch (Exception e) {
+                imtpsLogger.log(ImtpsLogger.LEVEL_ERROR, "SessionManager-HandleControlPacket AriseError", e);
+            }
+        } else if (type == ImtpsChannel.TYPE.DataBasic || type == ImtpsChannel.TYPE.DataFile) {
+            receiveDataPacket(type, payload.getDataPacket());
+        } else {
+            imtpsLogger.log(ImtpsLogger.LEVEL_DEBUG, "丢弃不支持多路复用的通道[$]的数据包", type);
+        }
+    }
+    private void receiveDataPacket(ImtpsChannel.TYPE type, DataPacket dataPacket) {
+        imtpsLogger.trace("接收DataPacket[$]", dataPacket);
+        DataChannel dataChannel = imtpsSession.getDataChannel(type);
+        ReliableWindow reliableWindow = dataChannel.getReliableWindow();
+        if (reliableWindow.acknowledge(dataPacket.getAcknowledge()) && dataChannel.hasSendDataPacket()) {
+            addWriteEvent(dataChannel);
+        }
+        boolean fresh = reliableWindow.receive(dataPacket.getSequence());
+        if (dataPacket.getSequence() != 0) {
+            delayedAck.schedule(type);
+        }
+        if (fresh) {
+            processingHub.handleDataPacket(dataPacket);
+        } else {
+            imtpsLogger.log(ImtpsLogger.LEVEL_DEBUG, "丢弃重复的DataPacket[$][$]", type, dataPacket.getSequence());
+        }
+    }
     private void writeEvent(SelectionKey selectionKey) {
         ImtpsChannel.TYPE type = (ImtpsChannel.TYPE) selectionKey.attachment();
         if (imtpsSession.getChannel(type).isWriting()) {
@@ -231,18 +373,37 @@ public class SessionManager extends Thread {
             imtpsSession.getChannel(type).setWriting(true);
         }
         threadPool.submit(() -> {
+            ControlChannel controlChannel = imtpsSession.getControlChannel();
             try {
                 if (type == ImtpsChannel.TYPE.Control) {
-                    ConcurrentLinkedQueue<ControlPacket> controlPacketQueue = imtpsSession.getControlChannel().getSendQueue();
-                    while (!controlPacketQueue.isEmpty()) {
+                    ConcurrentLinkedQueue<ControlPacket> controlPacketQueue = controlChannel.getSendQueue();
+                    while (controlChannel.getDataFrameWriter() == null && !controlPacketQueue.isEmpty()) {
                         imtpsSession.updateLastActivityTime();
-                        packetHandler.writeControlPacket(selectionKey, imtpsSession.getImtpsSecretKey(), Objects.requireNonNull(controlPacketQueue.poll()));
+                        ControlPacket controlPacket = Objects.requireNonNull(controlPacketQueue.poll());
+                        packetHandler.writeControlPacket(selectionKey, imtpsSession.getImtpsSecretKey(), controlPacket);
+                        // 请求多路复用之后本方向改为帧
+                        if (controlPacket.getWay() == ControlPacket.WAY.MULTIPLEX && controlChannel.getSelectionKey() == selectionKey) {
+                            controlChannel.setDataFrameWriter(new DataFrameWriter(selectionKey, imtpsSession.getImtpsSecretKey()));
+                        }
+                    }
+                    // 旧连接的可写事件不得写入新连接的帧写出器
+                    if (controlChannel.getDataFrameWriter() instanceof DataFrameWriter dataFrameWriter && dataFrameWriter.getSelectionKey() == selectionKey) {
+                        writeMultiplexed(dataFrameWriter);
+                    }
+                } else if (imtpsSession.getDataChannel(type).getDataFrameWriter() instanceof DataFrameWriter dataFrameWriter) {
+                    // 旧连接的可写事件不得写入新连接的帧写出器
+                    if (dataFrameWriter.getSelectionKey() == selectionKey) {
+                        writeFrames(type, dataFrameWriter);
                     }
                 } else {
                     ConcurrentLinkedQueue<DataPacket> dataPacketQueue = imtpsSession.getDataChannel(type).getSendQueue();
-                    while (!dataPacketQueue.isEmpty()) {
+                    ReliableWindow reliableWindow = imtpsSession.getDataChannel(type).getReliableWindow();
+                    for (DataPacket replay; (replay = reliableWindow.pollReplay()) != null; ) {
+                        packetHandler.writeDataPacket(selectionKey, imtpsSession.getImtpsSecretKey(), replay);
+                    }
+                    while (!dataPacketQueue.isEmpty() && !reliableWindow.isFull()) {
                         if (dataPacketQueue.poll() instanceof DataPacket dataPacket) {
-                            packetHandler.writeDataPacket(selectionKey, imtpsSession.getImtpsSecretKey(), dataPacket);
+                            packetHandler.writeDataPacket(selectionKey, imtpsSession.getImtpsSecretKey(), reliableWindow.offer(dataPacket));
                             processingHub.submitTaskToTimer(dataPacket.getTask());
                         }
                     }
@@ -256,8 +417,13 @@ public class SessionManager extends Thread {
                 }
             } finally {
                 imtpsSession.getChannel(type).setWriting(false);
+                if (type == ImtpsChannel.TYPE.Control && controlChannel.getStatus() != ImtpsChannel.STATUS.Connected
+                        && controlChannel.getDataFrameWriter() instanceof DataFrameWriter dataFrameWriter) {
+                    dataFrameWriter.release();
+                }
                 if (imtpsSession.getChannel(type).getStatus() == ImtpsChannel.STATUS.Connected) {
-                    if (!imtpsSession.getChannel(type).getSendQueue().isEmpty()) {
+                    if (type == ImtpsChannel.TYPE.Control ? !imtpsSession.getChannel(type).getSendQueue().isEmpty() || hasMultiplexedData()
+                            : imtpsSession.getDataChannel(type).hasSendDataPacket()) {
                         eventQueue.add(() -> {
                             if (selectionKey.isValid()) {
                                 selectionKey.interestOps(selectionKey.interestOps() | SelectionKey.OP_WRITE);
@@ -269,34 +435,173 @@ public class SessionManager extends Thread {
             }
         });
     }
+    /**
+     * 分帧模式的写出，数据包编码后交给帧写出器交错写出，发送缓冲区已满时让出线程，等待下一次可写事件
+     */
+    private void writeFrames(ImtpsChannel.TYPE type, DataFrameWriter dataFrameWriter) throws Exception {
+        DataChannel dataChannel = imtpsSession.getDataChannel(type);
+        ReliableWindow reliableWindow = dataChannel.getReliableWindow();
+        do {
+            while (dataFrameWriter.isAcceptable()) {
+                DataPacket next = reliableWindow.pollReplay();
+                AbstractTask<?> task = null;
+                if (next == null) {
+                    if (reliableWindow.isFull() || !(dataChannel.getSendQueue().poll() instanceof DataPacket dataPacket)) {
+                        break;
+                    }
+                    next = reliableWindow.offer(dataPacket);
+                    task = dataPacket.getTask();
+                }
+                if (next.getTaskId().isEmpty()) {
+                    next.setTaskId(AbstractTask.createTaskId());
+                }
+                imtpsLogger.trace("发送DataPacket[$]", next);
+                dataFrameWriter.offer(packetHandler.encodeDataPacket(next, false), task);
+            }
+            // 每写出一帧检查一次发送队列，新到的小数据包可插到大数据包剩余的帧之前
+            dataFrameWriter.write(DataFrameWriter.MAX_FRAME_PAYLOAD);
+            while (dataFrameWriter.hasFinished()) {
+                processingHub.submitTaskToTimer((AbstractTask<?>) dataFrameWriter.pollFinished());
+            }
+        } while (!dataFrameWriter.isBlocked() && dataChannel.hasSendDataPacket());
+    }
+
+    /**
+     * 多路复用模式的写出，控制包优先，DataBasic 与 DataFile 的数据包按帧轮流，发送缓冲区已满时让出线程，等待下一次可写事件
+     */
+    private void writeMultiplexed(DataFrameWriter dataFrameWriter) throws Exception {
+        ConcurrentLinkedQueue<ControlPacket> controlPacketQueue = imtpsSession.getControlChannel().getSendQueue();
+        long written;
+        do {
+            while (dataFrameWriter.isAcceptable(ImtpsChannel.TYPE.Control.ordinal()) && controlPacketQueue.poll() instanceof ControlPacket controlPacket) {
+                imtpsLogger.trace("发送ControlPacket[$]", controlPacket);
+                dataFrameWriter.offer(ImtpsChannel.TYPE.Control.ordinal(), packetHandler.encodeControlPacket(controlPacket), null);
+            }
+            for (ImtpsChannel.TYPE type : MULTIPLEX_TYPES) {
+                DataChannel dataChannel = imtpsSession.getDataChannel(type);
+                ReliableWindow reliableWindow = dataChannel.getReliableWindow();
+                while (dataFrameWriter.isAcceptable(type.ordinal())) {
+                    DataPacket next = reliableWindow.pollReplay();
+                    AbstractTask<?> task = null;
+                    if (next == null) {
+                        if (reliableWindow.isFull() || !(dataChannel.getSendQueue().poll() instanceof DataPacket dataPacket)) {
+                            break;
+                        }
+                        next = reliableWindow.offer(dataPacket);
+                        task = dataPacket.getTask();
+                    }
+                    dataFrameWriter.offer(type.ordinal(), packetHandler.createDataPacketEncoder(next), task);
+                }
+            }
+            written = dataFrameWriter.write(DataFrameWriter.MAX_FRAME_PAYLOAD);
+            if (written > 0) {
+                imtpsSession.updateLastActivityTime();
+            }
+            while (dataFrameWriter.hasFinished()) {
+                processingHub.submitTaskToTimer((AbstractTask<?>) dataFrameWriter.pollFinished());
+            }
+        } while (written > 0 && !dataFrameWriter.isBlocked() && hasMultiplexedData());
+    }
+    private boolean hasMultiplexedData() {
+        if (!(imtpsSession.getControlChannel().getDataFrameWriter() instanceof DataFrameWriter dataFrameWriter)) {
+            return false;
+        }
+        if (dataFrameWriter.hasPending() || !imtpsSession.getControlChannel().getSendQueue().isEmpty()) {
+            return true;
+        }
+        for (ImtpsChannel.TYPE type : MULTIPLEX_TYPES) {
+            if (imtpsSession.getDataChannel(type).hasSendDataPacket()) {
+                return true;
+            }
+        }
+        return false;
+    }
 
     public void putDataPacket(DataPacket dataPacket) {
+        // 媒体通道可用时音频、视频数据包直接以数据报写出，不进入发送队列
+        if (MediaChannel.isMediaPacket(dataPacket) && imtpsSession.getMediaChannel().getStatus() == ImtpsChannel.STATUS.Connected) {
+            mediaManager.send(imtpsSession, dataPacket);
+            return;
+        }
         imtpsSession.putSendQueue(dataPacket);
-        DataChannel dataChannel = imtpsSession.getDataChannel(ImtpsChannel.chooseType(dataPacket.getDataBodyType()));
+        ImtpsChannel.TYPE type = ImtpsChannel.chooseType(dataPacket.getDataBodyType());
+        DataChannel dataChannel = imtpsSession.getDataChannel(type);
         if (dataChannel.getStatus() == DataChannel.STATUS.Unconnected) {
-            synchronized (lock) {
-                if (dataChannel.getStatus() == DataChannel.STATUS.Unconnected) {
-                    switch (dataPacket.getDataBodyType()) {
-                        case Basic -> putControlPacket(new ControlPacket(ControlPacket.WAY.PORT_DATA_BASIC));
-                        case File -> putControlPacket(new ControlPacket(ControlPacket.WAY.PORT_DATA_FILE));
-                    }
-                    dataChannel.setStatus(DataChannel.STATUS.Connecting);
-                }
+            // 多路复用模式下会话挂起期间数据留在发送队列中，恢复后随控制连接写出
+            if (!imtpsSession.getControlChannel().isMultiplexed()) {
+                requestDataChannel(type);
             }
         } else {
-            if (!dataChannel.isWriting() && dataChannel.getStatus() == DataChannel.STATUS.Connected) {
-                SelectionKey selectionKey = dataChannel.getSelectionKey();
-                if (selectionKey != null && selectionKey.isValid() && ((selectionKey.interestOps() & SelectionKey.OP_WRITE) == 0)) {
-                    eventQueue.add(() -> {
-                        if (selectionKey.isValid()) {
-                            selectionKey.interestOps(selectionKey.interestOps() | SelectionKey.OP_WRITE);
-                        }
-                    });
-                    selector.wakeup();
+            addWriteEvent(dataChannel);
+        }
+    }
+    /**
+     * 按服务端给出的端口建立数据通道
+     * <p>客户端请求的应答与服务端主动推送的端口可能先后到达（如会话恢复后），同一通道同时只建立一个连接，
+     * 否则两条连接共用通道的读写标志，其中一条将不再被读取</p>
+     */
+    private void openDataChannel(ImtpsChannel.TYPE type, ControlPacket controlPacket) throws Exception {
+        if (imtpsSession.getDataChannel(type).getStatus() == ImtpsChannel.STATUS.Connected || !openingSet.add(type)) {
+            return;
+        }
+        try {
+            if (!sessionHandshaker.transmit(new AcceptChannel(SocketChannel.open(new InetSocketAddress(addressManager.getServerHostName(),
+                    Integer.parseInt(new String(controlPacket.getContent(), StandardCharsets.UTF_8)))), type))) {
+                openingSet.remove(type);
+            }
+        } catch (Exception e) {
+            openingSet.remove(type);
+            throw e;
+        }
+    }
+    /**
+     * 按服务端给出的端口与媒体通道 ID 打开媒体通道，服务端未绑定媒体端口时音频、视频数据包仍经数据通道发送
+     */
+    private void openMediaChannel(ControlPacket controlPacket) throws IOException {
+        if (controlPacket.getContent() == null) {
+            imtpsLogger.log(ImtpsLogger.LEVEL_INFO, "服务端未开放媒体端口，媒体数据包经数据通道发送");
+            return;
+        }
+        ByteBuffer content = ByteBuffer.wrap(controlPacket.getContent());
+        mediaManager.open(imtpsSession, new InetSocketAddress(addressManager.getServerHostName(), content.getInt()), content.getLong());
+    }
+    /**
+     * 请求多路复用，数据通道改用控制连接，不再建立数据连接；请求写出后本方向改为帧，服务端读到请求后同样改为帧并应答
+     */
+    private void multiplex() {
+        ControlChannel controlChannel = imtpsSession.getControlChannel();
+        controlChannel.setMultiplexed(true);
+        for (ImtpsChannel.TYPE type : MULTIPLEX_TYPES) {
+            imtpsSession.getDataChannel(type).setSelectionKey(controlChannel.getSelectionKey());
+        }
+        putControlPacket(new ControlPacket(ControlPacket.WAY.MULTIPLEX));
+    }
+    private void requestDataChannel(ImtpsChannel.TYPE type) {
+        DataChannel dataChannel = imtpsSession.getDataChannel(type);
+        synchronized (lock) {
+            if (dataChannel.getStatus() == DataChannel.STATUS.Unconnected) {
+                // 先置为连接中，服务端应答与注册可能先于本线程返回
+                dataChannel.setStatus(DataChannel.STATUS.Connecting);
+                switch (type) {
+                    case DataBasic -> putControlPacket(new ControlPacket(ControlPacket.WAY.PORT_DATA_BASIC));
+                    case DataFile -> putControlPacket(new ControlPacket(ControlPacket.WAY.PORT_DATA_FILE));
                 }
             }
         }
     }
+    private void addWriteEvent(DataChannel dataChannel) {
+        if (!dataChannel.isWriting() && dataChannel.getStatus() == DataChannel.STATUS.Connected) {
+            SelectionKey selectionKey = dataChannel.getSelectionKey();
+            if (selectionKey != null && selectionKey.isValid() && ((selectionKey.interestOps() & SelectionKey.OP_WRITE) == 0)) {
+                eventQueue.add(() -> {
+                    if (selectionKey.isValid()) {
+                        selectionKey.interestOps(selectionKey.interestOps() | SelectionKey.OP_WRITE);
+                    }
+                });
+                selector.wakeup();
+            }
+        }
+    }
     private void putControlPacket(ControlPacket controlPacket) {
         imtpsSession.getControlChannel().getSendQueue().add(controlPacket);
         SelectionKey selectionKey = imtpsSession.getControlChannel().getSelectionKey();
@@ -319,14 +624,12 @@ public class SessionManager extends Thread {
 
     private void handleControlPacket(ControlPacket controlPacket) throws Exception {
         switch (controlPacket.getWay()) {
-            case ControlPacket.WAY.PORT_DATA_BASIC -> {
-                sessionHandshaker.transmit(new AcceptChannel(SocketChannel.open(new InetSocketAddress(addressManager.getServerHostName(),
-                        Integer.parseInt(new String(controlPacket.getContent(), StandardCharsets.UTF_8)))), ImtpsChannel.TYPE.DataBasic));
-            }
-            case ControlPacket.WAY.PORT_DATA_FILE -> {
-                sessionHandshaker.transmit(new AcceptChannel(SocketChannel.open(new InetSocketAddress(addressManager.getServerHostName(),
-                        Integer.parseInt(new String(controlPacket.getContent(), StandardCharsets.UTF_8)))), ImtpsChannel.TYPE.DataFile));
-            }
+            case ControlPacket.WAY.MULTIPLEX -> imtpsLogger.log(ImtpsLogger.LEVEL_DEBUG, "服务端已启用多路复用");
+            case ControlPacket.WAY.ACK_DATA_BASIC -> handleAck(ImtpsChannel.TYPE.DataBasic, controlPacket);
+            case ControlPacket.WAY.ACK_DATA_FILE -> handleAck(ImtpsChannel.TYPE.DataFile, controlPacket);
+            case ControlPacket.WAY.PORT_DATA_BASIC -> openDataChannel(ImtpsChannel.TYPE.DataBasic, controlPacket);
+            case ControlPacket.WAY.PORT_DATA_FILE -> openDataChannel(ImtpsChannel.TYPE.DataFile, controlPacket);
+            case ControlPacket.WAY.PORT_DATA_MEDIA -> openMediaChannel(controlPacket);
             case ControlPacket.WAY.READY_DATA_BASIC -> {
                 SelectionKey selectionKey = imtpsSession.getDataChannel(ImtpsChannel.TYPE.DataBasic).getSelectionKey();
                 eventQueue.add(() -> {
@@ -347,10 +650,29 @@ public class SessionManager extends Thread {
             }
         }
     }
-    private void closeChannel(SelectionKey selectionKey) {
+    private void handleAck(ImtpsChannel.TYPE type, ControlPacket controlPacket) {
+        DataChannel dataChannel = imtpsSession.getDataChannel(type);
+        if (dataChannel.getReliableWindow().acknowledge(ByteBuffer.wrap(controlPacket.getContent()).getLong()) && dataChannel.hasSendDataPacket()) {
+            addWriteEvent(dataChannel);
+        }
+    }
+    private boolean closeChannel(SelectionKey selectionKey) {
         try {
-            imtpsSession.channelClosed((ImtpsChannel.TYPE) selectionKey.attachment());
+            ImtpsChannel.TYPE type = (ImtpsChannel.TYPE) selectionKey.attachment();
+            // 重连后旧连接的读写线程不得关闭新连接
+            if (imtpsSession.getChannel(type).getSelectionKey() != selectionKey) {
+                selectionKey.cancel();
+                selectionKey.channel().close();
+                return false;
+            }
+            // 控制通道断开时保留发送队列，会话恢复后继续发送
+            if (type == ImtpsChannel.TYPE.Control) {
+                imtpsSession.suspend();
+            } else {
+                imtpsSession.channelClosed(type);
+            }
         } catch (Exception ignored) {}
+        return true;
     }
     private void reconnection(ImtpsChannel.TYPE type) {
         imtpsLogger.log(ImtpsLogger.LEVEL_INFO, "与服务端的连接中断[$]，正在尝试重新连接", type);
@@ -388,43 +710,127 @@ public class SessionManager extends Thread {
     public void setHeartBeatInterval(int heartBeatInterval) {
         heartBeat.setHeartBeatInterval(heartBeatInterval);
     }
+    /**
+     * 设置 DataBasic 通道是否使用分帧模式，对之后建立的连接生效
+     *
+     * @param frameMode 是否分帧
+     */
+    public void setFrameMode(boolean frameMode) {
+        this.frameMode = frameMode;
+    }
+    /**
+     * 设置是否启用多路复用，对之后建立的会话生效
+     *
+     * @param multiplexMode 是否启用
+     */
+    public void setMultiplexMode(boolean multiplexMode) {
+        this.multiplexMode = multiplexMode;
+    }
+    /**
+     * 设置是否启用媒体通道，对之后建立的会话生效
+     *
+     * @param mediaMode 是否启用
+     */
+    public void setMediaMode(boolean mediaMode) {
+        this.mediaMode = mediaMode;
+    }
+    /**
+     * 设置数据通道的可靠传输窗口容量与字节上限，容量为 0 时不启用，字节上限为 0 时不限制
+     *
+     * @param type     通道类型
+     * @param capacity 容量
+     * @param maxBytes 字节上限
+     */
+    public void setReliableWindow(ImtpsChannel.TYPE type, int capacity, long maxBytes) {
+        reliableWindowMapping.put(type, Math.max(capacity, 0));
+        reliableWindowBytesMapping.put(type, Math.max(maxBytes, 0));
+        if (imtpsSession != null) {
+            imtpsSession.getDataChannel(type).getReliableWindow().setCapacity(capacity);
+            imtpsSession.getDataChannel(type).getReliableWindow().setMaxBytes(maxBytes);
+        }
+    }
+
+    class DelayedAck {
+        private static final int ACK_INTERVAL = 16;
+        private static final long ACK_DELAY = 200;
+        private final TimingWheel timingWheel;
 
-    class HeartBeat extends Thread {
-        private long HEARTBEAT_INTERVAL = 20000L;
+        public DelayedAck() {
+            timingWheel = new TimingWheel("DelayedAck", 10, TimeUnit.MILLISECONDS, 512);
+        }
+
+        /**
+         * 累计未确认的数据包达到间隔时立即确认，否则延迟确认，期间反向数据包会捎带确认
+         *
+         * @param type 通道类型
+         */
+        public void schedule(ImtpsChannel.TYPE type) {
+            ReliableWindow reliableWindow = imtpsSession.getDataChannel(type).getReliableWindow();
+            if (reliableWindow.getUnreportedCount() >= ACK_INTERVAL) {
+                send(reliableWindow, type);
+            } else {
+                synchronized (reliableWindow) {
+                    if (reliableWindow.getAckTimeout() == null) {
+                        reliableWindow.setAckTimeout(timingWheel.newTimeout(timeout -> {
+                            reliableWindow.setAckTimeout(null);
+                            send(reliableWindow, type);
+                        }, ACK_DELAY, TimeUnit.MILLISECONDS));
+                    }
+                }
+            }
+        }
+        public void shutdown() {
+            timingWheel.stop();
+        }
+
+        private void send(ReliableWindow reliableWindow, ImtpsChannel.TYPE type) {
+            long sequence = reliableWindow.takeAck();
+            if (sequence < 0 || imtpsSession.getControlChannel().getStatus() != ImtpsChannel.STATUS.Connected) {
+                return;
+            }
+            putControlPacket(new ControlPacket(type == ImtpsChannel.TYPE.DataBasic ? ControlPacket.WAY.ACK_DATA_BASIC
+                    : ControlPacket.WAY.ACK_DATA_FILE, ByteBuffer.allocate(Long.BYTES).putLong(sequence).array()));
+        }
+    }
+
+    class HeartBeat {
+        private final TimingWheel timingWheel;
+        private volatile long HEARTBEAT_INTERVAL = 20000L;
 
         public HeartBeat() {
-            setName("HeartBeat");
-            setDaemon(true);
+            timingWheel = new TimingWheel("HeartBeat", 1, TimeUnit.SECONDS, 64);
         }
 
         public void setHeartBeatInterval(int interval) {
             HEARTBEAT_INTERVAL = interval * 1000L;
         }
+        public void start() {
+            imtpsLogger.log(ImtpsLogger.LEVEL_DEBUG, "HeartBeat StartRunning，间隔[$]秒", HEARTBEAT_INTERVAL / 1000);
+            schedule(HEARTBEAT_INTERVAL);
+        }
+        public void shutdown() {
+            timingWheel.stop();
+            imtpsLogger.log(ImtpsLogger.LEVEL_DEBUG, "HeartBeat Shutdown");
+        }
 
-        @Override
-        public void run() {
-            while (live) {
-                imtpsLogger.log(ImtpsLogger.LEVEL_DEBUG, "HeartBeat StartRunning，间隔[$]秒", HEARTBEAT_INTERVAL / 1000);
-                try {
-                    while (running) {
-                        if (imtpsSession != null) {
-                            if (System.currentTimeMillis() - imtpsSession.getLastActivityTime() > HEARTBEAT_INTERVAL) {
-                                putControlPacket(new ControlPacket(ControlPacket.WAY.HEART_BEAT));
-                            }
-                        }
-                        synchronized (lock) {
-                            lock.wait(HEARTBEAT_INTERVAL);
-                        }
-                    }
-                    if (live) {
-                        synchronized (lock) {
-                            imtpsLogger.log(ImtpsLogger.LEVEL_DEBUG, "HeartBeat Stopping");
-                            lock.wait();
-                        }
-                    }
-                } catch (InterruptedException ignored) {}
+        private void schedule(long delay) {
+            timingWheel.newTimeout(timeout -> beat(), delay, TimeUnit.MILLISECONDS);
+        }
+        private void beat() {
+            if (!live) {
+                return;
             }
-            imtpsLogger.log(ImtpsLogger.LEVEL_DEBUG, "HeartBeat Shutdown");
+            long delay = HEARTBEAT_INTERVAL;
+            if (running && imtpsSession != null) {
+                long idleTime = System.currentTimeMillis() - imtpsSession.getLastActivityTime();
+                if (idleTime >= HEARTBEAT_INTERVAL) {
+                    putControlPacket(new ControlPacket(ControlPacket.WAY.HEART_BEAT));
+                } else {
+                    delay = HEARTBEAT_INTERVAL - idleTime;
+                }
+                mediaManager.keepAlive(imtpsSession);
+            }
+            schedule(delay);
         }
     }
 }
@@ -9,13 +9,23 @@ import com.thezeroer.imtps.server.datapacket.databody.ObjectDataBody;
 import com.thezeroer.imtps.server.datapacket.databody.TextDataBody;
 import com.thezeroer.imtps.server.log.ImtpsLogger;
 import com.thezeroer.imtps.server.log.LogHandler;
+import com.thezeroer.imtps.server.process.handler.Bulkhead;
 import com.thezeroer.imtps.server.process.handler.ImtpsHandler;
 import com.thezeroer.imtps.server.process.task.AbstractTask;
 import com.thezeroer.imtps.server.process.task.ImtpsTask;
 import com.thezeroer.imtps.server.process.ProcessingHub;
+import com.thezeroer.imtps.server.process.ResponseCache;
+import com.thezeroer.imtps.server.process.SingleFlight;
+import com.thezeroer.imtps.server.session.GroupRegistry;
 import com.thezeroer.imtps.server.session.ImtpsSession;
+import com.thezeroer.imtps.server.session.OfflineStore;
+import com.thezeroer.imtps.server.session.PresenceManager;
+import com.thezeroer.imtps.server.session.SessionListener;
+import com.thezeroer.imtps.server.session.SessionRegistry;
 import com.thezeroer.imtps.server.session.channel.ImtpsChannel;
+import com.thezeroer.imtps.server.session.channel.SendQueue;
 import com.thezeroer.imtps.server.worker.Inspecter.Inspecter;
+import com.thezeroer.imtps.server.worker.MediaManager;
 import com.thezeroer.imtps.server.worker.SessionAcceptor;
 import com.thezeroer.imtps.server.worker.SessionFilter;
 import com.thezeroer.imtps.server.worker.SessionHandshaker;
@@ -25,10 +35,17 @@ import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.StandardSocketOptions;
+import java.nio.channels.DatagramChannel;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.function.Supplier;
 
 /**
@@ -43,8 +60,12 @@ public class IMTPS_Server {
     private final SessionFilter sessionFilter;
     private final SessionHandshaker sessionHandshaker;
     private final SessionManager sessionManager;
+    private final MediaManager mediaManager;
     private final PacketHandler packetHandler;
     private final ProcessingHub processingHub;
+    private final GroupRegistry groupRegistry;
+    private final PresenceManager presenceManager;
+    private volatile OfflineStore offlineStore;
     private final AddressManager addressManager;
     private final ImtpsLogger imtpsLogger;
 
@@ -53,11 +74,16 @@ public class IMTPS_Server {
         addressManager = new AddressManager();
         packetHandler = new PacketHandler(imtpsLogger);
         processingHub = new ProcessingHub(packetHandler, imtpsLogger);
-        sessionManager = new SessionManager(packetHandler, processingHub, addressManager, imtpsLogger);
+        mediaManager = new MediaManager(packetHandler, processingHub, imtpsLogger);
+        sessionManager = new SessionManager(packetHandler, processingHub, mediaManager, addressManager, imtpsLogger);
         sessionHandshaker = new SessionHandshaker(sessionManager, imtpsLogger);
         sessionFilter = new SessionFilter(sessionHandshaker, sessionManager, imtpsLogger);
         sessionAcceptor = new SessionAcceptor(sessionFilter, imtpsLogger);
         processingHub.transmitObject(sessionManager);
+        groupRegistry = new GroupRegistry(sessionManager);
+        sessionManager.addSessionListener(groupRegistry);
+        presenceManager = new PresenceManager(sessionManager);
+        sessionManager.addSessionListener(presenceManager);
 
         packetHandler.registerDataBody(TextDataBody::new);
         packetHandler.registerDataBody(FileDataBody::new);
@@ -72,6 +98,7 @@ public class IMTPS_Server {
         sessionFilter.startRunning();
         sessionHandshaker.startRunning();
         sessionManager.startRunning();
+        mediaManager.startRunning();
     }
     /**
      * 停止运行
@@ -81,6 +108,7 @@ public class IMTPS_Server {
         sessionFilter.stopRunning();
         sessionHandshaker.stopRunning();
         sessionManager.stopRunning();
+        mediaManager.stopRunning();
     }
     /**
      * 关闭
@@ -90,6 +118,13 @@ public class IMTPS_Server {
         sessionFilter.shutdown();
         sessionHandshaker.shutdown();
         sessionManager.shutdown();
+        mediaManager.shutdown();
+        presenceManager.shutdown();
+        processingHub.shutdown();
+        groupRegistry.shutdown();
+        if (offlineStore != null) {
+            offlineStore.shutdown();
+        }
     }
 
     /**
@@ -99,6 +134,9 @@ public class IMTPS_Server {
      * @param channelType 通道类型
      */
     public IMTPS_Server bindPort(int port, ImtpsChannel.TYPE channelType) throws IOException {
+        if (channelType == ImtpsChannel.TYPE.DataMedia) {
+            return bindMediaPort(new InetSocketAddress(port));
+        }
         ServerSocketChannel serverSocketChannel = ServerSocketChannel.open();
         try {
             serverSocketChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
@@ -122,6 +160,9 @@ public class IMTPS_Server {
      * @param channelType 通道类型
      */
     public IMTPS_Server bindPort(String hostName, int port, ImtpsChannel.TYPE channelType) throws IOException {
+        if (channelType == ImtpsChannel.TYPE.DataMedia) {
+            return bindMediaPort(new InetSocketAddress(hostName, port));
+        }
         ServerSocketChannel serverSocketChannel = ServerSocketChannel.open();
         try {
             serverSocketChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
@@ -138,6 +179,29 @@ public class IMTPS_Server {
         return this;
     }
 
+    /**
+     * 绑定媒体端口，媒体通道使用数据报，客户端启用媒体通道后音频、视频数据包经此端口收发
+     *
+     * @param socketAddress 地址
+     * @return {@link IMTPS_Server }
+     */
+    private IMTPS_Server bindMediaPort(InetSocketAddress socketAddress) throws IOException {
+        DatagramChannel datagramChannel = DatagramChannel.open();
+        try {
+            datagramChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            datagramChannel.bind(socketAddress).configureBlocking(false);
+            mediaManager.registerDatagramChannel(datagramChannel);
+            int binPort = ((InetSocketAddress) datagramChannel.getLocalAddress()).getPort();
+            addressManager.setLocalPort(ImtpsChannel.TYPE.DataMedia, binPort);
+            imtpsLogger.log(ImtpsLogger.LEVEL_INFO, "[$]端口[$]绑定成功", ImtpsChannel.TYPE.DataMedia.name(), binPort);
+        } catch (IOException e) {
+            imtpsLogger.log(ImtpsLogger.LEVEL_ERROR, "[$]端口[$]绑定失败", ImtpsChannel.TYPE.DataMedia.name(), socketAddress, e);
+            datagramChannel.close();
+            throw e;
+        }
+        return this;
+    }
+
     /**
      * 绑定所有端口
      *
@@ -178,7 +242,26 @@ public class IMTPS_Server {
         return false;
     }
     /**
-     * 删除任务
+     * 异步提交任务，响应到达时完成，超时以 TimeoutException 完成，取消时删除任务
+     *
+     * @param task        任务
+     * @param sessionName 会话名称
+     * @param timeout     超时
+     * @param unit        单位
+     * @return {@link CompletableFuture }<{@link T }>
+     */
+    public <T> CompletableFuture<T> submitTask(AbstractTask<T> task, String sessionName, long timeout, TimeUnit unit) {
+        if (task == null) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("Task is null"));
+        }
+        if (sessionManager.getNameToSessionHashMap().get(sessionName) instanceof ImtpsSession imtpsSession) {
+            task.setImtpsSession(imtpsSession);
+            return processingHub.submitTaskAsync(task, timeout, unit);
+        }
+        return CompletableFuture.failedFuture(new IllegalStateException("Session " + sessionName + " is offline"));
+    }
+    /**
+     * 删除任务，任务不再发出或等待响应，也不会再回调，异步结果以取消完成
      *
      * @param taskId 任务 ID
      */
@@ -192,19 +275,203 @@ public class IMTPS_Server {
      *
      * @param dataPacket 数据包
      * @param sessionName 会话名称
-     * @return boolean
+     * @return boolean 会话在线且数据包已入队（或已排在未投递完的离线消息之后）时为 true；
+     * 会话不在线，或被发送队列拒绝（超出上限）时为 false。不在线且开启了离线存储时数据包写入离线日志，会话设置名称时投递
      */
     public boolean sendDataPacket(DataPacket dataPacket, String sessionName) {
         if (sessionManager.getNameToSessionHashMap().get(sessionName) instanceof ImtpsSession imtpsSession) {
-            sessionManager.putDataPacket(imtpsSession, dataPacket);
-            return true;
+            // 离线消息尚未投递完时写入离线日志排在其后，由投递线程按顺序投递，避免越过离线消息
+            if (offlineStore instanceof OfflineStore store && store.hasPending(sessionName) && store.store(sessionName, dataPacket)) {
+                return true;
+            }
+            return sessionManager.putDataPacket(imtpsSession, dataPacket);
         } else {
+            if (offlineStore != null) {
+                offlineStore.store(sessionName, dataPacket);
+            }
             return false;
         }
     }
+    /**
+     * 开启离线存储，发送给不在线会话名称的数据包写入目录下的分段日志，重启后继续投递
+     *
+     * @param directory 日志目录
+     * @return {@link IMTPS_Server }
+     */
+    public synchronized IMTPS_Server enableOfflineStore(Path directory) throws IOException {
+        if (offlineStore == null) {
+            offlineStore = new OfflineStore(directory, sessionManager, packetHandler, imtpsLogger);
+            sessionManager.addSessionListener(offlineStore);
+        }
+        return this;
+    }
+    /**
+     * 设置离线消息保留时间与容量上限，超出时丢弃最旧的消息
+     *
+     * @param retention 保留时间
+     * @param unit      单位
+     * @param maxSize   容量上限（字节）
+     * @return {@link IMTPS_Server }
+     */
+    public IMTPS_Server setOfflineRetention(long retention, TimeUnit unit, long maxSize) {
+        if (offlineStore != null) {
+            offlineStore.setRetention(retention, unit);
+            offlineStore.setMaxSize(maxSize);
+            offlineStore.compact();
+        }
+        return this;
+    }
+    public OfflineStore getOfflineStore() {
+        return offlineStore;
+    }
+    /**
+     * 广播数据包，正文只编码一次，各会话只加密自己的副本，传入的数据包不会被修改，可继续使用
+     *
+     * @param dataPacket   数据包
+     * @param sessionNames 会话名称，不在线的会话名称被忽略
+     * @return int 入队成功的会话数，发送队列拒绝的不计入
+     */
+    public int broadcast(DataPacket dataPacket, Collection<String> sessionNames) throws Exception {
+        List<ImtpsSession> imtpsSessions = new ArrayList<>(sessionNames.size());
+        for (String sessionName : sessionNames) {
+            if (sessionManager.getNameToSessionHashMap().get(sessionName) instanceof ImtpsSession imtpsSession) {
+                imtpsSessions.add(imtpsSession);
+            }
+        }
+        return sessionManager.broadcast(dataPacket, imtpsSessions);
+    }
+    /**
+     * 向所有已设置会话名称的会话广播数据包
+     *
+     * @param dataPacket 数据包
+     * @return int 入队成功的会话数，发送队列拒绝的不计入
+     */
+    public int broadcastAll(DataPacket dataPacket) throws Exception {
+        return sessionManager.broadcast(dataPacket, sessionManager.getNameToSessionHashMap().values());
+    }
+
+    /**
+     * 会话加入群组
+     *
+     * @param groupName   群组名称
+     * @param sessionName 会话名称
+     * @return boolean 是否新加入，会话不在线时返回 false
+     */
+    public boolean joinGroup(String groupName, String sessionName) {
+        return sessionManager.getNameToSessionHashMap().get(sessionName) instanceof ImtpsSession imtpsSession
+                && groupRegistry.join(groupName, imtpsSession);
+    }
+    /**
+     * 会话退出群组
+     *
+     * @param groupName   群组名称
+     * @param sessionName 会话名称
+     * @return boolean 是否在群组中
+     */
+    public boolean leaveGroup(String groupName, String sessionName) {
+        return sessionManager.getNameToSessionHashMap().get(sessionName) instanceof ImtpsSession imtpsSession
+                && groupRegistry.leave(groupName, imtpsSession);
+    }
+    public boolean removeGroup(String groupName) {
+        return groupRegistry.removeGroup(groupName);
+    }
+    /**
+     * 群发数据包，正文只编码一次，大群组按分片并行投递，提交后立即返回
+     *
+     * @param dataPacket 数据包
+     * @param groupName  群组名称
+     * @return {@link CompletableFuture }<{@link Integer }> 入队成功的会话数，发送队列拒绝的不计入
+     */
+    public CompletableFuture<Integer> sendToGroup(DataPacket dataPacket, String groupName) throws Exception {
+        return groupRegistry.sendToGroup(dataPacket, groupName);
+    }
+    /**
+     * 设置群组加载器，会话设置名称时以会话名称查询其所属群组并自动加入，会话关闭时自动退出所有群组
+     *
+     * @param groupLoader 群组加载器
+     * @return {@link IMTPS_Server }
+     */
+    public IMTPS_Server setGroupLoader(Function<String, Collection<String>> groupLoader) {
+        groupRegistry.setGroupLoader(groupLoader);
+        return this;
+    }
+    public GroupRegistry getGroupRegistry() {
+        return groupRegistry;
+    }
+
+    /**
+     * 订阅联系人的在线状态，状态变化在合并窗口内合并后以 DATA_UPDATE/CONTACTS_USER/SYSTEM 推送给订阅者，订阅随订阅者会话关闭而删除
+     *
+     * @param sessionName  订阅者会话名称
+     * @param contactNames 联系人会话名称
+     * @return boolean 订阅者是否在线
+     */
+    public boolean subscribePresence(String sessionName, Collection<String> contactNames) {
+        if (sessionManager.getNameToSessionHashMap().get(sessionName) instanceof ImtpsSession imtpsSession) {
+            presenceManager.subscribe(imtpsSession, contactNames);
+            return true;
+        }
+        return false;
+    }
+    public boolean unsubscribePresence(String sessionName, Collection<String> contactNames) {
+        if (sessionManager.getNameToSessionHashMap().get(sessionName) instanceof ImtpsSession imtpsSession) {
+            presenceManager.unsubscribe(imtpsSession, contactNames);
+            return true;
+        }
+        return false;
+    }
+    /**
+     * 设置在线状态合并窗口（毫秒），默认 200
+     *
+     * @param coalesceWindow 合并窗口
+     * @return {@link IMTPS_Server }
+     */
+    public IMTPS_Server setPresenceCoalesceWindow(long coalesceWindow) {
+        presenceManager.setCoalesceWindow(coalesceWindow);
+        return this;
+    }
+    public boolean isOnline(String sessionName) {
+        return presenceManager.isOnline(sessionName);
+    }
+    public PresenceManager getPresenceManager() {
+        return presenceManager;
+    }
+    /**
+     * 添加会话监听器，会话设置名称与关闭时回调
+     *
+     * @param sessionListener 会话监听器
+     * @return {@link IMTPS_Server }
+     */
+    public IMTPS_Server addSessionListener(SessionListener sessionListener) {
+        sessionManager.addSessionListener(sessionListener);
+        return this;
+    }
+    public IMTPS_Server removeSessionListener(SessionListener sessionListener) {
+        sessionManager.removeSessionListener(sessionListener);
+        return this;
+    }
+
+    /**
+     * 设置队列模式下每个排序键允许同时等待响应的任务数，默认为 1
+     *
+     * @param taskWindowSize 窗口大小
+     * @return {@link IMTPS_Server }
+     */
+    public IMTPS_Server setTaskWindowSize(int taskWindowSize) {
+        processingHub.setTaskWindowSize(taskWindowSize);
+        return this;
+    }
+    /**
+     * 获取等待超时的任务定时器数量
+     *
+     * @return long
+     */
+    public long getPendingTaskTimerCount() {
+        return processingHub.getPendingTimerCount();
+    }
 
     /**
-     * 添加处理程序
+     * 添加处理程序，同名舱壁已被其他处理程序以不同的并发上限或执行器使用时抛出 {@link IllegalArgumentException}
      *
      * @param handler 处理器
      */
@@ -213,7 +480,78 @@ public class IMTPS_Server {
         return this;
     }
     /**
-     * 处理中心冻结，完成注册后 freeze 提升查找性能
+     * 设置处理程序优先通道，已存在时更新权重与容量，内置 high(8)、normal(4)、low(1) 三个通道
+     *
+     * @param name     通道名
+     * @param weight   权重
+     * @param capacity 队列容量
+     * @return {@link IMTPS_Server }
+     */
+    public IMTPS_Server setProcessingLane(String name, int weight, int capacity) {
+        processingHub.setLane(name, weight, capacity);
+        return this;
+    }
+    /**
+     * 设置响应缓存最大条目数，默认 4096，超出时淘汰最久未使用的条目
+     *
+     * @param maxSize 最大条目数
+     * @return {@link IMTPS_Server }
+     */
+    public IMTPS_Server setResponseCacheSize(int maxSize) {
+        processingHub.getResponseCache().setMaxSize(maxSize);
+        return this;
+    }
+    /**
+     * 使路由下的响应缓存失效
+     *
+     * @param way   方式
+     * @param type  类型
+     * @param extra 额外
+     * @return {@link IMTPS_Server }
+     */
+    public IMTPS_Server invalidateResponseCache(int way, int type, int extra) {
+        processingHub.getResponseCache().invalidate(way, type, extra);
+        return this;
+    }
+    public IMTPS_Server invalidateAllResponseCache() {
+        processingHub.getResponseCache().invalidateAll();
+        return this;
+    }
+    public ResponseCache getResponseCache() {
+        return processingHub.getResponseCache();
+    }
+    public SingleFlight getSingleFlight() {
+        return processingHub.getSingleFlight();
+    }
+    /**
+     * 获取处理程序舱壁，默认名称为处理程序全类名
+     *
+     * @param name 舱壁名称
+     * @return {@link Bulkhead }
+     */
+    public Bulkhead getBulkhead(String name) {
+        return processingHub.getBulkhead(name);
+    }
+    /**
+     * 获取所有处理程序舱壁
+     *
+     * @return {@link Collection }<{@link Bulkhead }>
+     */
+    public Collection<Bulkhead> getAllBulkhead() {
+        return processingHub.getAllBulkhead();
+    }
+    /**
+     * 删除处理程序，运行期间可直接调用，无需重启
+     *
+     * @param handler 处理器
+     * @return {@link IMTPS_Server }
+     */
+    public IMTPS_Server removeHandler(ImtpsHandler handler) {
+        processingHub.removeHandler(handler);
+        return this;
+    }
+    /**
+     * 处理中心冻结，立即编译路由表，此后注册、注销处理器时即时重建，查找路径上不再编译
      *
      * @return {@link IMTPS_Server }
      */
@@ -325,6 +663,42 @@ public class IMTPS_Server {
         }
         return this;
     }
+    /**
+     * 设置会话握手器的积压上限，即已收到事件、等待线程池处理的握手数，默认为核数的 512 倍
+     * <p>达到上限时新的完整握手直接断开并计入 {@link #getShedHandshakeCount()}，客户端稍后重试，
+     * 避免重连高峰时排队过长导致所有握手都超时</p>
+     *
+     * @param backlog 积压上限
+     * @return {@link IMTPS_Server }
+     */
+    public IMTPS_Server setHandshakeBacklog(int backlog) {
+        sessionHandshaker.setBacklog(backlog);
+        return this;
+    }
+    /**
+     * 设置握手每个阶段的超时时间，单位秒，默认为 10
+     * <p>连接建立后须在超时时间内发来完整的公钥或会话恢复请求，之后须在超时时间内发来完成消息，
+     * 否则断开并计入 {@link #getHandshakeTimeoutCount()}</p>
+     *
+     * @param timeout 超时时间
+     * @return {@link IMTPS_Server }
+     */
+    public IMTPS_Server setHandshakeTimeout(int timeout) {
+        if (timeout > 0) {
+            sessionHandshaker.setHandshakeTimeout(timeout * 1000L);
+        }
+        return this;
+    }
+    /**
+     * 设置预先生成的临时密钥对的数量，默认为 256
+     *
+     * @param capacity 数量
+     * @return {@link IMTPS_Server }
+     */
+    public IMTPS_Server setKeyPairPoolCapacity(int capacity) {
+        sessionHandshaker.setKeyPairPoolCapacity(capacity);
+        return this;
+    }
     /**
      * 设置会话管理器线程池
      *
@@ -337,7 +711,7 @@ public class IMTPS_Server {
         return this;
     }
     /**
-     * 设置处理中心线程池
+     * 设置处理中心线程池，任务响应与未指定专用线程池的处理程序均在其上运行，关闭服务器时不会关闭该线程池
      *
      * @param threadPool 线程池
      * @return {@link IMTPS_Server }
@@ -359,6 +733,152 @@ public class IMTPS_Server {
         }
         return this;
     }
+    /**
+     * 设置数据通道的可靠传输窗口容量，即已发送未确认数据包的最大数量，0 为不启用（默认），未确认副本的字节数不限制
+     *
+     * @param type     通道类型
+     * @param capacity 容量
+     * @see #setReliableWindow(ImtpsChannel.TYPE, int, long)
+     */
+    public IMTPS_Server setReliableWindow(ImtpsChannel.TYPE type, int capacity) {
+        return setReliableWindow(type, capacity, 0);
+    }
+    /**
+     * 设置数据通道的可靠传输窗口容量与字节上限，容量为 0 时不启用（默认），字节上限为 0 时不限制
+     * <p>启用后数据包带有序号，通道断开时不再清空发送队列，重连后重发未确认的数据包，接收方按序号去重；
+     * 未确认的数量或字节数达到上限时暂停发送，窗口为空时总能发送一个数据包。
+     * 未确认的副本只在数据通道重连时保留：控制连接断开后，服务端未开启会话恢复（{@link #setSessionResumptionGrace(int)}）或宽限期内未能恢复时会话关闭，未确认的数据包随之丢失</p>
+     *
+     * @param type     通道类型
+     * @param capacity 容量
+     * @param maxBytes 未确认副本的字节上限，按数据包头部与正文大小计算
+     */
+    public IMTPS_Server setReliableWindow(ImtpsChannel.TYPE type, int capacity, long maxBytes) {
+        if (type == ImtpsChannel.TYPE.DataBasic || type == ImtpsChannel.TYPE.DataFile) {
+            sessionManager.setReliableWindow(type, capacity, maxBytes);
+        }
+        return this;
+    }
+    /**
+     * 设置数据通道每个会话每轮最多写出的字节数，默认为 256KB
+     * <p>就绪的会话按差额轮询依次写出，大文件在分块之间让出，不会让其他会话的小数据包长时间等待；
+     * 配额越小公平性越好，切换开销越大</p>
+     *
+     * @param type         通道类型
+     * @param writeQuantum 配额（字节）
+     * @return {@link IMTPS_Server }
+     */
+    public IMTPS_Server setWriteQuantum(ImtpsChannel.TYPE type, long writeQuantum) {
+        if ((type == ImtpsChannel.TYPE.DataBasic || type == ImtpsChannel.TYPE.DataFile) && writeQuantum > 0) {
+            sessionManager.setWriteQuantum(type, writeQuantum);
+        }
+        return this;
+    }
+    /**
+     * 设置发送队列的字节上限与超出上限时的策略，0 为不限制（默认），对之后建立的会话生效
+     * <p>排队字节数按数据包头部与正文大小计算，接收缓慢的客户端只占用有限的内存。
+     * 控制数据包不可丢弃，控制通道超出上限时总是断开会话</p>
+     *
+     * @param type   通道类型
+     * @param limit  上限（字节）
+     * @param policy 策略
+     * @return {@link IMTPS_Server }
+     */
+    public IMTPS_Server setSendQueueLimit(ImtpsChannel.TYPE type, long limit, SendQueue.POLICY policy) {
+        if (type != ImtpsChannel.TYPE.DataMedia && policy != null) {
+            sessionManager.setSendQueueLimit(type, limit, policy);
+        }
+        return this;
+    }
+    /**
+     * 获取全部会话指定通道发送队列中排队的字节数，数据通道包含可靠传输窗口中未确认副本的字节数
+     *
+     * @param type 通道类型
+     * @return long
+     */
+    public long getQueuedBytes(ImtpsChannel.TYPE type) {
+        return type == ImtpsChannel.TYPE.DataMedia ? 0 : sessionManager.getQueuedBytes(type);
+    }
+    /**
+     * 获取因发送队列超出上限而未入队的新数据包数，{@link SendQueue.POLICY#DropOldest} 丢弃的旧数据包计入各发送队列的
+     * {@link SendQueue#getDroppedCount()}
+     *
+     * @return long
+     */
+    public long getDroppedPacketCount() {
+        return sessionManager.getDroppedPacketCount();
+    }
+    /**
+     * 获取因发送队列超出上限而断开的会话数
+     *
+     * @return long
+     */
+    public long getSlowConsumerCount() {
+        return sessionManager.getSlowConsumerCount();
+    }
+    /**
+     * 设置媒体通道抖动缓冲区的保持时间，单位毫秒，默认为 50，对之后启用媒体通道的会话生效
+     * <p>序号出现缺口时其后的数据包最多等待保持时间，超时后跳过缺口并计为丢失；保持时间越长越能容忍乱序，延迟也越大，
+     * 0 为不等待。各会话的接收统计见 {@link ImtpsSession#getMediaChannel()} 的抖动缓冲区</p>
+     *
+     * @param delay 保持时间
+     * @return {@link IMTPS_Server }
+     */
+    public IMTPS_Server setMediaJitterDelay(int delay) {
+        mediaManager.setJitterDelay(delay);
+        return this;
+    }
+    /**
+     * 获取媒体端口收到的无法识别或未通过认证的数据报数
+     *
+     * @return long
+     */
+    public long getRejectedDatagramCount() {
+        return mediaManager.getRejectedCount();
+    }
+    /**
+     * 获取完成的握手数，包括会话恢复
+     *
+     * @return long
+     */
+    public long getHandshakeCount() {
+        return sessionHandshaker.getHandshakeCount();
+    }
+    /**
+     * 获取因握手积压已满而断开的连接数
+     *
+     * @return long
+     */
+    public long getShedHandshakeCount() {
+        return sessionHandshaker.getShedCount();
+    }
+    /**
+     * 获取因握手超时而断开的连接数
+     *
+     * @return long
+     */
+    public long getHandshakeTimeoutCount() {
+        return sessionHandshaker.getTimeoutCount();
+    }
+    /**
+     * 获取临时密钥对池为空、在握手线程现场生成的次数，持续增长时可调大 {@link #setKeyPairPoolCapacity(int)}
+     *
+     * @return long
+     */
+    public long getKeyPairMissCount() {
+        return sessionHandshaker.getKeyPairMissCount();
+    }
+    /**
+     * 设置会话恢复的宽限期，单位秒，0 为不启用（默认）
+     * <p>启用后控制通道断开时会话只挂起，名称、附件与发送队列保留至宽限期满，期间客户端凭握手时签发的票据重连，
+     * 只需一次往返即可恢复原会话，无需重新交换密钥与登录</p>
+     *
+     * @param grace 宽限期
+     */
+    public IMTPS_Server setSessionResumptionGrace(int grace) {
+        sessionManager.setResumptionGrace(Math.max(grace, 0) * 1000L);
+        return this;
+    }
 
     /**
      * 获取所有会话名称
@@ -368,6 +888,22 @@ public class IMTPS_Server {
     public Set<String> getAllSessionName() {
         return sessionManager.getNameToSessionHashMap().keySet();
     }
+    /**
+     * 获取会话数，包括未命名与挂起等待恢复的会话
+     *
+     * @return int
+     */
+    public int getSessionCount() {
+        return sessionManager.getSessionRegistry().size();
+    }
+    /**
+     * 获取会话注册表，可按会话 ID、名称、远程地址与创建时间查询会话
+     *
+     * @return {@link SessionRegistry }
+     */
+    public SessionRegistry getSessionRegistry() {
+        return sessionManager.getSessionRegistry();
+    }
 
     public AddressManager getAddressManager() {
         return addressManager;
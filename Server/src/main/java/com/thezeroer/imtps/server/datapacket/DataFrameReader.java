@@ -0,0 +1,205 @@
+package com.thezeroer.imtps.server.datapacket;
+
+import com.thezeroer.imtps.server.security.ImtpsSecretKey;
+
+import java.io.ByteArrayOutputStream;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * 数据帧读取器
+ * <p>增量读取 {@link DataFrameWriter} 写出的帧，按流 ID 重组，流的最后一帧到达时得到完整的数据包明文。
+ * 每次只读取套接字当前可读的数据，不足一帧的部分保留到下次读取，不会阻塞读线程。同一时刻只能由一个线程调用</p>
+ * <p>多路复用模式下控制通道的流重组为明文，其余通道的流由 {@link DataPacketDecoder} 逐帧解码，大数据包无需整体重组。
+ * 重组的明文按单个流与全部流合计限额，超出时抛出 {@link ProtocolException}</p>
+ *
+ * @author NiZhanBo
+ * @since 2026/10/19
+ * @version 1.0.0
+ */
+public class DataFrameReader {
+    /** 单次读取的字节数上限，超出后让出读线程 */
+    private static final int MAX_READ_SIZE = 1024 * 1024;
+    private static final int MAX_STREAM_COUNT = DataFrameWriter.MAX_STREAM_COUNT * 4;
+    /** 单个待重组流的明文上限：正文小于 64MB 的基本数据包加上头部、元数据与数据尾 */
+    private static final int MAX_STREAM_SIZE = 64 * 1024 * 1024 + DataPacket.BASIC_HEADER_SIZE + DataPacket.RELIABLE_HEADER_SIZE + Short.MAX_VALUE * 2;
+    /** 所有待重组流合计的明文上限 */
+    private static final long MAX_BUFFERED_SIZE = MAX_STREAM_SIZE * 2L;
+
+    private final ImtpsSecretKey imtpsSecretKey;
+    private final PacketHandler packetHandler;
+    private final HashMap<Integer, Stream> streamMap;
+    private final ByteBuffer headerBuffer, payloadBuffer, plainBuffer;
+    private ImtpsSecretKey.DecryptCipher decryptCipher;
+    private int streamId, channel;
+    private long bufferedSize;
+    private boolean last;
+
+    public DataFrameReader(ImtpsSecretKey imtpsSecretKey) {
+        this(imtpsSecretKey, null);
+    }
+    /**
+     * 多路复用模式的读取器
+     *
+     * @param imtpsSecretKey 密钥
+     * @param packetHandler  包处理程序，用于创建控制通道以外的流的数据包解码器
+     */
+    public DataFrameReader(ImtpsSecretKey imtpsSecretKey, PacketHandler packetHandler) {
+        this.imtpsSecretKey = imtpsSecretKey;
+        this.packetHandler = packetHandler;
+        streamMap = new HashMap<>();
+        headerBuffer = ByteBuffer.allocate(DataFrameWriter.AES_FRAME_HEADER_SIZE);
+        payloadBuffer = ByteBuffer.allocate(DataFrameWriter.MAX_FRAME_PAYLOAD + ImtpsSecretKey.TAG_LENGTH).limit(0);
+        plainBuffer = ByteBuffer.allocate(DataFrameWriter.MAX_FRAME_PAYLOAD);
+    }
+
+    /**
+     * 读取当前可读的帧
+     *
+     * @param socketChannel 套接字通道
+     * @return {@link List }<{@link Payload }> 本次完成的负载，按完成顺序排列；连接已关闭时为 null
+     */
+    public List<Payload> read(SocketChannel socketChannel) throws Exception {
+        List<Payload> payloads = new ArrayList<>();
+        for (int readSize = 0; readSize < MAX_READ_SIZE; ) {
+            // 负载缓冲区为空时读取帧头，否则继续读取负载
+            boolean header = payloadBuffer.limit() == 0;
+            ByteBuffer buffer = header ? headerBuffer : payloadBuffer;
+            int readNumber = socketChannel.read(buffer);
+            if (readNumber == -1) {
+                return null;
+            }
+            if (buffer.hasRemaining()) {
+                break;
+            }
+            readSize += readNumber;
+            if (header) {
+                readHeader();
+            } else {
+                readPayload(payloads);
+            }
+        }
+        return payloads;
+    }
+    /**
+     * 释放未完成的数据包解码器，连接关闭时调用
+     */
+    public void release() {
+        for (Stream stream : streamMap.values()) {
+            if (stream.decoder != null) {
+                stream.decoder.release();
+            }
+        }
+        streamMap.clear();
+        bufferedSize = 0;
+    }
+
+    private void readHeader() throws Exception {
+        byte[] nonce = new byte[ImtpsSecretKey.NONCE_LENGTH];
+        headerBuffer.flip().get(nonce);
+        decryptCipher = imtpsSecretKey.createDecryptCipher(nonce);
+        ByteBuffer frameHeader = decryptCipher.doFinal(headerBuffer, ByteBuffer.allocate(DataFrameWriter.FRAME_HEADER_SIZE)).flip();
+        headerBuffer.clear();
+        streamId = frameHeader.getInt();
+        byte flags = frameHeader.get();
+        last = (flags & DataFrameWriter.FLAG_LAST) != 0;
+        channel = (flags & 0xFF) >>> DataFrameWriter.CHANNEL_SHIFT;
+        int length = frameHeader.getInt();
+        if (channel >= DataFrameWriter.MAX_CHANNEL_COUNT) {
+            throw new ProtocolException("Frame channel out of range: " + channel);
+        }
+        if (length < 0 || length > DataFrameWriter.MAX_FRAME_PAYLOAD) {
+            throw new ProtocolException("Frame length out of range: " + length);
+        }
+        if (!streamMap.containsKey(streamId) && streamMap.size() >= MAX_STREAM_COUNT) {
+            throw new ProtocolException("Too many concurrent streams");
+        }
+        payloadBuffer.clear().limit(length + ImtpsSecretKey.TAG_LENGTH);
+    }
+    private void readPayload(List<Payload> payloads) throws Exception {
+        byte[] tag = new byte[ImtpsSecretKey.TAG_LENGTH];
+        int length = payloadBuffer.flip().limit() - ImtpsSecretKey.TAG_LENGTH;
+        payloadBuffer.get(length, tag).limit(length);
+        decryptCipher.update(payloadBuffer, plainBuffer.clear());
+        decryptCipher.verifyTag(tag);
+        payloadBuffer.clear().limit(0);
+        boolean decode = packetHandler != null && channel != 0;
+        Stream stream = streamMap.get(streamId);
+        if (stream == null) {
+            if (last && !decode) {
+                // 单帧的明文无需重组
+                payloads.add(new Payload(channel, Arrays.copyOf(plainBuffer.array(), plainBuffer.position()), null));
+                return;
+            }
+            stream = new Stream(channel, decode ? packetHandler.createDataPacketDecoder() : null);
+            streamMap.put(streamId, stream);
+        } else if (stream.channel != channel) {
+            throw new ProtocolException("Frame channel changed within stream: " + streamId);
+        }
+        if (stream.decoder != null) {
+            stream.decoder.decode(plainBuffer.flip());
+        } else {
+            int size = plainBuffer.position();
+            if (stream.bytes.size() + size > MAX_STREAM_SIZE) {
+                throw new ProtocolException("Stream size out of range: " + streamId);
+            }
+            if (bufferedSize + size > MAX_BUFFERED_SIZE) {
+                throw new ProtocolException("Too many buffered stream bytes");
+            }
+            stream.bytes.write(plainBuffer.array(), 0, size);
+            bufferedSize += size;
+        }
+        if (last) {
+            streamMap.remove(streamId);
+            if (stream.bytes != null) {
+                bufferedSize -= stream.bytes.size();
+            }
+            if (stream.decoder != null) {
+                payloads.add(new Payload(channel, null, stream.decoder.finish()));
+            } else {
+                payloads.add(new Payload(channel, stream.bytes.toByteArray(), null));
+            }
+        }
+    }
+
+    /**
+     * 负载，控制通道与分帧模式为明文，多路复用模式下其余通道为解码后的数据包
+     */
+    public static class Payload {
+        private final int channel;
+        private final byte[] bytes;
+        private final DataPacket dataPacket;
+
+        Payload(int channel, byte[] bytes, DataPacket dataPacket) {
+            this.channel = channel;
+            this.bytes = bytes;
+            this.dataPacket = dataPacket;
+        }
+
+        public int getChannel() {
+            return channel;
+        }
+        public byte[] getBytes() {
+            return bytes;
+        }
+        public DataPacket getDataPacket() {
+            return dataPacket;
+        }
+    }
+    private static class Stream {
+        private final int channel;
+        private final DataPacketDecoder decoder;
+        private final ByteArrayOutputStream bytes;
+
+        Stream(int channel, DataPacketDecoder decoder) {
+            this.channel = channel;
+            this.decoder = decoder;
+            this.bytes = decoder == null ? new ByteArrayOutputStream() : null;
+        }
+    }
+}
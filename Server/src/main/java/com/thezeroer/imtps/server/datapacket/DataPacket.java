@@ -1,6 +1,7 @@
 package com.thezeroer.imtps.server.datapacket;
 
 import com.thezeroer.imtps.server.datapacket.databody.AbstractDataBody;
+import com.thezeroer.imtps.server.datapacket.databody.SharedDataBody;
 import com.thezeroer.imtps.server.process.task.AbstractTask;
 
 import java.nio.ByteBuffer;
@@ -16,7 +17,11 @@ import java.text.SimpleDateFormat;
  */
 public final class DataPacket implements Cloneable{
     private static final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+    /** 基本头：way(4) + type(4) + extra(4) + time(8) + dataBodyId(8) + dataBodySize(8) + 元数据长度(2) + 数据尾长度(2) + taskId(32) */
     public static final int BASIC_HEADER_SIZE = 72;
+    /** 可靠传输扩展头：序号(8) + 确认(8)，仅在二者之一非 0 时紧随基本头之后，由数据尾长度的最高位标记 */
+    public static final int RELIABLE_HEADER_SIZE = 16;
+    private static final int RELIABLE_FLAG = 0x8000;
     public static class WAY {
         /** 默认 */
         public static final int DEFAULT = 0;
@@ -165,8 +170,9 @@ public final class DataPacket implements Cloneable{
     }
 
     private int way, type, extra;
-    private long time, dataBodyId, dataBodySize;
+    private long time, dataBodyId, dataBodySize, sequence, acknowledge;
     private short metadataLength;
+    private boolean reliableHeader;
     private byte[] taskId, dataTail;
     private AbstractDataBody<?> dataBody;
 
@@ -193,7 +199,7 @@ public final class DataPacket implements Cloneable{
 
     public DataPacket attachDataBody(AbstractDataBody<?> dataBody) {
         this.dataBody = dataBody;
-        this.dataBodyId = dataBody.getId();
+        this.dataBodyId = dataBody instanceof SharedDataBody sharedDataBody ? sharedDataBody.getSourceId() : dataBody.getId();
         this.dataBodySize = dataBody.getSize();
         if (dataBody.getMetadata() instanceof byte[] metadata) {
             if (metadata.length > Short.MAX_VALUE) {
@@ -207,8 +213,19 @@ public final class DataPacket implements Cloneable{
     }
 
     ByteBuffer getDataPacketBasicHeader(ByteBuffer output) {
+        short tailLength = hasReliableHeader() ? (short) (getDataTailLength() | RELIABLE_FLAG) : getDataTailLength();
         return output.putInt(way).putInt(type).putInt(extra).putLong(time).putLong(dataBodyId).putLong(dataBodySize)
-                .putShort(metadataLength).putShort(getDataTailLength()).put(taskId);
+                .putShort(metadataLength).putShort(tailLength).put(taskId);
+    }
+    ByteBuffer getDataPacketReliableHeader(ByteBuffer output) {
+        return output.putLong(sequence).putLong(acknowledge);
+    }
+    /**
+     * 写出完整的明文头，即基本头与可能存在的可靠传输扩展头
+     */
+    ByteBuffer getDataPacketHeader(ByteBuffer output) {
+        getDataPacketBasicHeader(output);
+        return hasReliableHeader() ? getDataPacketReliableHeader(output) : output;
     }
     static DataPacket setDataPacketBasicHeader(ByteBuffer input) {
         DataPacket dataPacket = new DataPacket();
@@ -219,10 +236,24 @@ public final class DataPacket implements Cloneable{
         dataPacket.dataBodyId = input.getLong();
         dataPacket.dataBodySize = input.getLong();
         dataPacket.metadataLength = input.getShort();
-        dataPacket.dataTail = new byte[input.getShort()];
+        short tailLength = input.getShort();
+        dataPacket.reliableHeader = (tailLength & RELIABLE_FLAG) != 0;
+        dataPacket.dataTail = new byte[tailLength & ~RELIABLE_FLAG & 0xFFFF];
         input.get(dataPacket.taskId);
         return dataPacket;
     }
+    DataPacket setDataPacketReliableHeader(ByteBuffer input) {
+        sequence = input.getLong();
+        acknowledge = input.getLong();
+        return this;
+    }
+    /**
+     * 读取完整的明文头，基本头标记了可靠传输扩展头时一并读取
+     */
+    static DataPacket setDataPacketHeader(ByteBuffer input) {
+        DataPacket dataPacket = setDataPacketBasicHeader(input);
+        return dataPacket.reliableHeader ? dataPacket.setDataPacketReliableHeader(input) : dataPacket;
+    }
 
     public int getWay() {
         return way;
@@ -242,6 +273,33 @@ public final class DataPacket implements Cloneable{
     public long getDataBodySize() {
         return dataBodySize;
     }
+    /**
+     * 获取可靠传输序号，0 表示不参与可靠传输
+     *
+     * @return long
+     */
+    public long getSequence() {
+        return sequence;
+    }
+    /**
+     * 获取捎带的累计确认，即发送方在同一通道上已接收的最大序号
+     *
+     * @return long
+     */
+    public long getAcknowledge() {
+        return acknowledge;
+    }
+    /**
+     * 是否携带可靠传输扩展头，序号与确认均为 0 时不携带，头部保持 {@link #BASIC_HEADER_SIZE}
+     *
+     * @return boolean
+     */
+    public boolean hasReliableHeader() {
+        return reliableHeader || sequence != 0 || acknowledge != 0;
+    }
+    public int getHeaderSize() {
+        return hasReliableHeader() ? BASIC_HEADER_SIZE + RELIABLE_HEADER_SIZE : BASIC_HEADER_SIZE;
+    }
     public short getMetadataLength() {
         return metadataLength;
     }
@@ -295,6 +353,14 @@ public final class DataPacket implements Cloneable{
         this.time = time;
         return this;
     }
+    public DataPacket setSequence(long sequence) {
+        this.sequence = sequence;
+        return this;
+    }
+    public DataPacket setAcknowledge(long acknowledge) {
+        this.acknowledge = acknowledge;
+        return this;
+    }
 
     public DataPacket setTask(AbstractTask<?> task) {
         this.task = task;
@@ -0,0 +1,153 @@
+package com.thezeroer.imtps.server.datapacket;
+
+import com.thezeroer.imtps.server.datapacket.databody.AbstractDataBody;
+import com.thezeroer.imtps.server.view.AbstractTransmitView;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * 数据包编码器
+ * <p>按基本头、元数据、正文、数据尾的顺序将数据包逐段编码为明文，每次只填满调用方给出的缓冲区，
+ * 未编码的部分保留到下次调用，大正文无需整体载入内存。格式与 {@link PacketHandler#encodeDataPacket(DataPacket)} 相同。
+ * 同一时刻只能由一个线程调用</p>
+ *
+ * @author NiZhanBo
+ * @since 2026/10/19
+ * @version 1.0.0
+ */
+public class DataPacketEncoder {
+    private enum STAGE {
+        Header,
+        Metadata,
+        Body,
+        Tail,
+        Finished,
+    }
+
+    private final DataPacket dataPacket;
+    private final AbstractDataBody<?> dataBody;
+    private final AbstractTransmitView sendView;
+    private final ExecutorService threadPool;
+    private final long size;
+    private ByteBuffer pendingBuffer;
+    private STAGE stage;
+    private long residue;
+    private boolean released;
+
+    DataPacketEncoder(DataPacket dataPacket, AbstractTransmitView sendView, ExecutorService threadPool) {
+        this.dataPacket = dataPacket;
+        this.dataBody = dataPacket.getDataBody();
+        this.sendView = sendView;
+        this.threadPool = threadPool;
+        size = dataBody == null ? dataPacket.getHeaderSize() : dataPacket.getHeaderSize() + dataPacket.getMetadataLength()
+                + dataPacket.getDataBodySize() + dataPacket.getDataTailLength();
+        pendingBuffer = ByteBuffer.allocate(0);
+        stage = STAGE.Header;
+    }
+
+    /**
+     * 编码到输出缓冲区，缓冲区写满或数据包编码完毕时返回
+     *
+     * @param output 输出缓冲区
+     */
+    public void encode(ByteBuffer output) throws Exception {
+        while (output.hasRemaining() && !isFinished()) {
+            if (pendingBuffer.hasRemaining()) {
+                int length = Math.min(pendingBuffer.remaining(), output.remaining());
+                output.put(pendingBuffer.slice(pendingBuffer.position(), length));
+                pendingBuffer.position(pendingBuffer.position() + length);
+            } else if (stage == STAGE.Body && residue > 0) {
+                // 正文直接编码到输出缓冲区
+                int limit = output.limit();
+                int position = output.position();
+                dataBody.encode(output.limit(position + (int) Math.min(output.remaining(), residue)));
+                output.limit(limit);
+                int handleNumber = output.position() - position;
+                if (handleNumber == 0) {
+                    throw new IllegalStateException("DataBody encoded less than its size");
+                }
+                residue -= handleNumber;
+                if (sendView != null) {
+                    sendView.updateSize(handleNumber);
+                }
+            } else {
+                next();
+            }
+        }
+        if (isFinished()) {
+            release();
+        }
+    }
+    /**
+     * 数据包是否已全部编码
+     *
+     * @return boolean
+     */
+    public boolean isFinished() {
+        return stage == STAGE.Finished && !pendingBuffer.hasRemaining();
+    }
+    /**
+     * 释放正文，数据包编码完毕时自动释放，中途放弃编码时需要调用
+     */
+    public void release() {
+        if (!released) {
+            released = true;
+            if (dataBody != null) {
+                dataBody.release();
+            }
+        }
+    }
+    /**
+     * 获取编码后的总字节数
+     *
+     * @return long
+     */
+    public long getSize() {
+        return size;
+    }
+    public DataPacket getDataPacket() {
+        return dataPacket;
+    }
+
+    /**
+     * 准备下一段待编码的明文
+     */
+    private void next() throws Exception {
+        switch (stage) {
+            case Header -> {
+                pendingBuffer = dataPacket.getDataPacketHeader(ByteBuffer.allocate(dataPacket.getHeaderSize())).flip();
+                stage = dataBody == null ? STAGE.Finished : STAGE.Metadata;
+            }
+            case Metadata -> {
+                dataBody.prepareEncode();
+                residue = dataPacket.getDataBodySize();
+                if (dataPacket.getMetadataLength() > 0) {
+                    pendingBuffer = ByteBuffer.wrap(dataBody.getMetadata());
+                }
+                if (sendView != null) {
+                    sendView.setSumSize(residue);
+                    if (dataPacket.getMetadataLength() > 0) {
+                        sendView.setMetadata(dataBody.getMetadata());
+                    }
+                    sendView.begin();
+                    threadPool.submit(sendView);
+                }
+                stage = STAGE.Body;
+            }
+            case Body -> {
+                dataBody.finishEncode();
+                if (sendView != null) {
+                    sendView.finish();
+                }
+                stage = STAGE.Tail;
+            }
+            case Tail -> {
+                if (dataPacket.getDataTailLength() > 0) {
+                    pendingBuffer = ByteBuffer.wrap(dataPacket.getDataTail());
+                }
+                stage = STAGE.Finished;
+            }
+        }
+    }
+}
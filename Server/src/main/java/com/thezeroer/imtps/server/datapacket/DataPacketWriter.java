@@ -0,0 +1,189 @@
+package com.thezeroer.imtps.server.datapacket;
+
+import com.thezeroer.imtps.server.datapacket.databody.AbstractDataBody;
+import com.thezeroer.imtps.server.security.ImtpsSecretKey;
+import com.thezeroer.imtps.server.view.AbstractTransmitView;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * 数据包写出器
+ * <p>按基本头、元数据、正文分块、数据尾、认证标签的顺序逐段加密写出，每次调用最多写出指定字节数后让出，
+ * 套接字发送缓冲区已满时立即返回而不是自旋等待，未写完的部分保留在写出器中，下次调用从断点继续。
+ * 写出器持有自己的缓冲区，可在不同线程间接续；同一时刻只能由一个线程调用</p>
+ *
+ * @author NiZhanBo
+ * @since 2026/10/19
+ * @version 1.0.0
+ */
+public class DataPacketWriter {
+    private enum STAGE {
+        Header,
+        Reliable,
+        Metadata,
+        Body,
+        Tail,
+        Tag,
+        Finished,
+    }
+
+    private final SelectionKey selectionKey;
+    private final SocketChannel socketChannel;
+    private final ImtpsSecretKey imtpsSecretKey;
+    private final DataPacket dataPacket;
+    private final AbstractDataBody<?> dataBody;
+    private final AbstractTransmitView sendView;
+    private final ExecutorService threadPool;
+    private ImtpsSecretKey.EncryptCipher encryptCipher;
+    private ByteBuffer srcBuffer, pendingBuffer;
+    private STAGE stage;
+    private long residue;
+    private boolean blocked, released;
+
+    DataPacketWriter(SelectionKey selectionKey, ImtpsSecretKey imtpsSecretKey, DataPacket dataPacket, AbstractTransmitView sendView, ExecutorService threadPool) {
+        this.selectionKey = selectionKey;
+        this.socketChannel = (SocketChannel) selectionKey.channel();
+        this.imtpsSecretKey = imtpsSecretKey;
+        this.dataPacket = dataPacket;
+        this.dataBody = dataPacket.getDataBody();
+        this.sendView = sendView;
+        this.threadPool = threadPool;
+        pendingBuffer = ByteBuffer.allocate(0);
+        stage = STAGE.Header;
+    }
+
+    /**
+     * 写出数据包，写满配额、发送缓冲区已满或数据包写完时返回
+     *
+     * @param quantum 配额（字节），只在两次套接字写之间检查，实际写出量可能略超配额
+     * @return long 本次写出的字节数
+     */
+    public long write(long quantum) throws Exception {
+        long written = 0;
+        blocked = false;
+        while (written < quantum) {
+            if (!pendingBuffer.hasRemaining()) {
+                if (stage == STAGE.Finished) {
+                    break;
+                }
+                next();
+                continue;
+            }
+            int writeNumber = socketChannel.write(pendingBuffer);
+            if (writeNumber == 0) {
+                blocked = true;
+                break;
+            }
+            written += writeNumber;
+        }
+        if (isFinished()) {
+            release();
+        }
+        return written;
+    }
+    /**
+     * 数据包是否已全部写出
+     *
+     * @return boolean
+     */
+    public boolean isFinished() {
+        return stage == STAGE.Finished && !pendingBuffer.hasRemaining();
+    }
+    /**
+     * 上次写出是否因发送缓冲区已满而停止，此时应等待通道可写
+     *
+     * @return boolean
+     */
+    public boolean isBlocked() {
+        return blocked;
+    }
+    /**
+     * 释放正文，数据包写完时自动释放，中途放弃写出时需要调用
+     */
+    public void release() {
+        if (!released) {
+            released = true;
+            if (dataBody != null) {
+                dataBody.release();
+            }
+        }
+    }
+    public SelectionKey getSelectionKey() {
+        return selectionKey;
+    }
+    public DataPacket getDataPacket() {
+        return dataPacket;
+    }
+
+    /**
+     * 生成下一段待写出的密文
+     */
+    private void next() throws Exception {
+        switch (stage) {
+            case Header -> {
+                byte[] nonce = ImtpsSecretKey.createNonce();
+                encryptCipher = imtpsSecretKey.createEncryptCipher(nonce);
+                ByteBuffer headerBuffer = ByteBuffer.allocate(DataPacket.BASIC_HEADER_SIZE);
+                pendingBuffer = ByteBuffer.allocate(PacketHandler.AES_HEADER_SIZE);
+                encryptCipher.doFinal(dataPacket.getDataPacketBasicHeader(headerBuffer).flip(), pendingBuffer.put(nonce)).flip();
+                stage = dataPacket.hasReliableHeader() ? STAGE.Reliable : dataBody == null ? STAGE.Finished : STAGE.Metadata;
+            }
+            case Reliable -> {
+                ByteBuffer reliableBuffer = dataPacket.getDataPacketReliableHeader(ByteBuffer.allocate(DataPacket.RELIABLE_HEADER_SIZE));
+                pendingBuffer = ByteBuffer.wrap(encryptCipher.update(reliableBuffer.array()));
+                stage = dataBody == null ? STAGE.Tag : STAGE.Metadata;
+            }
+            case Metadata -> {
+                dataBody.prepareEncode();
+                residue = dataPacket.getDataBodySize();
+                if (dataPacket.getMetadataLength() > 0) {
+                    pendingBuffer = ByteBuffer.wrap(encryptCipher.update(dataBody.getMetadata()));
+                }
+                if (sendView != null) {
+                    sendView.setSumSize(residue);
+                    if (dataPacket.getMetadataLength() > 0) {
+                        sendView.setMetadata(dataBody.getMetadata());
+                    }
+                    sendView.begin();
+                    threadPool.submit(sendView);
+                }
+                stage = STAGE.Body;
+            }
+            case Body -> {
+                if (residue > 0) {
+                    if (srcBuffer == null) {
+                        int bufferSize = (int) Math.min(residue, PacketHandler.MAX_BUFFER_SIZE);
+                        srcBuffer = ByteBuffer.allocate(bufferSize);
+                        pendingBuffer = ByteBuffer.allocate(bufferSize);
+                    }
+                    dataBody.encode(srcBuffer.clear());
+                    int handleNumber = encryptCipher.update(srcBuffer.flip(), pendingBuffer.clear());
+                    pendingBuffer.flip();
+                    residue -= handleNumber;
+                    if (sendView != null) {
+                        sendView.updateSize(handleNumber);
+                    }
+                } else {
+                    dataBody.finishEncode();
+                    if (sendView != null) {
+                        sendView.finish();
+                    }
+                    stage = STAGE.Tail;
+                }
+            }
+            case Tail -> {
+                if (dataPacket.getDataTailLength() > 0) {
+                    pendingBuffer = ByteBuffer.wrap(encryptCipher.update(dataPacket.getDataTail()));
+                }
+                stage = STAGE.Tag;
+            }
+            case Tag -> {
+                pendingBuffer = ByteBuffer.wrap(encryptCipher.createTag());
+                stage = STAGE.Finished;
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.thezeroer.imtps.server.datapacket.databody;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 共享数据正文
+ * <p>保存其他数据正文编码后的明文，多个会话的副本共享同一个只读字节数组，各自维护编码位置，
+ * 接收方按原数据正文的类型解码，用于广播时只编码一次；对其自身解码时委托给原数据正文类型的新实例（经无参构造），解码结果与原类型一致</p>
+ *
+ * @author NiZhanBo
+ * @since 2026/10/19
+ * @version 1.0.0
+ */
+public class SharedDataBody extends AbstractDataBody<Object> {
+    private final byte[] encoded;
+    private final Class<?> sourceClass;
+    private final long sourceId;
+    private final TYPE sourceType;
+    private AbstractDataBody<?> decoder;
+    private int position;
+
+    private SharedDataBody(byte[] encoded, Class<?> sourceClass, long sourceId, TYPE sourceType, Object data, byte[] metadata) {
+        this.encoded = encoded;
+        this.sourceClass = sourceClass;
+        this.sourceId = sourceId;
+        this.sourceType = sourceType;
+        this.data = data;
+        this.metaData = metadata;
+    }
+
+    /**
+     * 将数据正文编码为共享数据正文，编码完成后释放原数据正文
+     *
+     * @param dataBody 数据正文
+     * @return {@link SharedDataBody }
+     */
+    public static SharedDataBody of(AbstractDataBody<?> dataBody) throws Exception {
+        if (dataBody instanceof SharedDataBody sharedDataBody) {
+            return sharedDataBody;
+        }
+        try {
+            dataBody.prepareEncode();
+            ByteBuffer output = ByteBuffer.allocate(Math.toIntExact(dataBody.getSize()));
+            while (output.hasRemaining()) {
+                int before = output.position();
+                dataBody.encode(output);
+                if (output.position() == before) {
+                    throw new IllegalStateException("DataBody encoded less than its size");
+                }
+            }
+            dataBody.finishEncode();
+            return new SharedDataBody(output.array(), dataBody.getClass(), dataBody.getId(), dataBody.getType(), dataBody.getData(), dataBody.getMetadata());
+        } finally {
+            dataBody.release();
+        }
+    }
+
+    @Override
+    public void encode(ByteBuffer output) {
+        int handleNumber = Math.min(encoded.length - position, output.remaining());
+        output.put(encoded, position, handleNumber);
+        position += handleNumber;
+    }
+    @Override
+    public void prepareDecode(long size) throws Exception {
+        decoder = (AbstractDataBody<?>) sourceClass.getDeclaredConstructor().newInstance();
+        decoder.setMetadata(metaData);
+        decoder.prepareDecode(size);
+    }
+    @Override
+    public void decode(ByteBuffer input) throws Exception {
+        decoder.decode(input);
+    }
+    @Override
+    public void finishDecode() throws Exception {
+        decoder.finishDecode();
+        data = decoder.getData();
+        metaData = decoder.getMetadata();
+    }
+
+    @Override
+    public void release() {
+        position = 0;
+        if (decoder != null) {
+            decoder.release();
+            decoder = null;
+        }
+    }
+
+    /**
+     * 获取原数据正文的 ID，数据包以此 ID 发送
+     *
+     * @return long
+     */
+    public long getSourceId() {
+        return sourceId;
+    }
+    @Override
+    public TYPE getType() {
+        return sourceType;
+    }
+    @Override
+    public long getSize() {
+        return encoded.length;
+    }
+
+    /**
+     * 浅拷贝，副本共享编码后的字节数组，编码位置从头开始
+     *
+     * @return {@link SharedDataBody }
+     */
+    @Override
+    public SharedDataBody clone() {
+        return new SharedDataBody(encoded, sourceClass, sourceId, sourceType, data, metaData);
+    }
+    @Override
+    public String toString() {
+        return data != null ? data.toString() : super.toString();
+    }
+}
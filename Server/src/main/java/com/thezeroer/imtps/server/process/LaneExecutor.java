@@ -0,0 +1,211 @@
+package com.thezeroer.imtps.server.process;
+
+import com.thezeroer.imtps.server.log.ImtpsLogger;
+
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 优先通道执行器
+ * <p>每个通道拥有独立的有界队列，通道已满时拒绝提交；排空任务运行在加工中心线程池上，
+ * 同时运行的排空任务不超过 workerCount 个，每次按通道权重以平滑加权轮询出队</p>
+ *
+ * @author NiZhanBo
+ * @since 2026/10/19
+ * @version 1.0.0
+ */
+public class LaneExecutor {
+    /** 交互通道，登录、聊天等延迟敏感的请求 */
+    public static final String LANE_HIGH = "high";
+    /** 默认通道 */
+    public static final String LANE_NORMAL = "normal";
+    /** 批量通道，文件、大数据请求等可容忍延迟的请求 */
+    public static final String LANE_LOW = "low";
+
+    private final LinkedHashMap<String, Lane> laneHashMap;
+    private final ReentrantLock lock;
+    private final int workerCount;
+    private final ImtpsLogger imtpsLogger;
+    private volatile Executor executor;
+    private int pendingCount, drainingCount;
+    private boolean shutdown;
+
+    public LaneExecutor(Executor executor, int workerCount, ImtpsLogger imtpsLogger) {
+        this.executor = executor;
+        this.workerCount = workerCount;
+        this.imtpsLogger = imtpsLogger;
+        laneHashMap = new LinkedHashMap<>();
+        lock = new ReentrantLock();
+        laneHashMap.put(LANE_HIGH, new Lane(8, 1024));
+        laneHashMap.put(LANE_NORMAL, new Lane(4, 1024));
+        laneHashMap.put(LANE_LOW, new Lane(1, 1024));
+    }
+
+    /**
+     * 设置通道，已存在时更新权重与容量
+     *
+     * @param name     通道名
+     * @param weight   权重
+     * @param capacity 队列容量
+     */
+    public void setLane(String name, int weight, int capacity) {
+        lock.lock();
+        try {
+            if (laneHashMap.get(name) instanceof Lane lane) {
+                lane.weight = Math.max(weight, 1);
+                lane.capacity = Math.max(capacity, 1);
+            } else {
+                laneHashMap.put(name, new Lane(Math.max(weight, 1), Math.max(capacity, 1)));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+    /**
+     * 设置运行排空任务的线程池，已在运行的排空任务不受影响
+     *
+     * @param executor 线程池
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+    /**
+     * 提交任务，未知通道归入默认通道
+     *
+     * @param name     通道名
+     * @param runnable 任务
+     * @return boolean 通道已满、已关闭或线程池拒绝时返回 false
+     */
+    public boolean execute(String name, Runnable runnable) {
+        Lane lane;
+        boolean drain;
+        lock.lock();
+        try {
+            if (shutdown) {
+                return false;
+            }
+            lane = laneHashMap.get(name);
+            if (lane == null) {
+                lane = laneHashMap.get(LANE_NORMAL);
+            }
+            if (lane.queue.size() >= lane.capacity) {
+                lane.rejectedCount++;
+                return false;
+            }
+            lane.queue.add(runnable);
+            pendingCount++;
+            if (drain = drainingCount < workerCount) {
+                drainingCount++;
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (drain) {
+            try {
+                executor.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                lock.lock();
+                try {
+                    drainingCount--;
+                    // 仍在队列中说明没有其他排空任务取走，撤回并拒绝
+                    if (lane.queue.removeLastOccurrence(runnable)) {
+                        pendingCount--;
+                        lane.rejectedCount++;
+                        return false;
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+        return true;
+    }
+    /**
+     * 关闭执行器，丢弃尚未开始的任务，之后的提交均被拒绝
+     */
+    public void shutdown() {
+        lock.lock();
+        try {
+            shutdown = true;
+            for (Lane lane : laneHashMap.values()) {
+                lane.queue.clear();
+            }
+            pendingCount = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getQueueSize(String name) {
+        lock.lock();
+        try {
+            return laneHashMap.get(name) instanceof Lane lane ? lane.queue.size() : 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+    public long getRejectedCount(String name) {
+        lock.lock();
+        try {
+            return laneHashMap.get(name) instanceof Lane lane ? lane.rejectedCount : 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            Runnable runnable;
+            lock.lock();
+            try {
+                if (pendingCount == 0) {
+                    drainingCount--;
+                    return;
+                }
+                runnable = poll();
+                pendingCount--;
+            } finally {
+                lock.unlock();
+            }
+            try {
+                runnable.run();
+            } catch (Throwable e) {
+                imtpsLogger.log(ImtpsLogger.LEVEL_ERROR, "LaneExecutor出现未捕获的异常", e);
+            }
+        }
+    }
+    /**
+     * 平滑加权轮询：非空通道累加权重，取当前值最大者并减去本轮总权重
+     */
+    private Runnable poll() {
+        Lane selected = null;
+        int totalWeight = 0;
+        for (Lane lane : laneHashMap.values()) {
+            if (lane.queue.isEmpty()) {
+                continue;
+            }
+            lane.currentWeight += lane.weight;
+            totalWeight += lane.weight;
+            if (selected == null || lane.currentWeight > selected.currentWeight) {
+                selected = lane;
+            }
+        }
+        selected.currentWeight -= totalWeight;
+        return selected.queue.poll();
+    }
+
+    static class Lane {
+        private final ArrayDeque<Runnable> queue;
+        private int weight, capacity, currentWeight;
+        private long rejectedCount;
+
+        Lane(int weight, int capacity) {
+            this.weight = weight;
+            this.capacity = capacity;
+            queue = new ArrayDeque<>();
+        }
+    }
+}
@@ -3,18 +3,22 @@ package com.thezeroer.imtps.server.process;
 import com.thezeroer.imtps.server.datapacket.DataPacket;
 import com.thezeroer.imtps.server.datapacket.PacketHandler;
 import com.thezeroer.imtps.server.log.ImtpsLogger;
+import com.thezeroer.imtps.server.process.handler.Bulkhead;
+import com.thezeroer.imtps.server.process.handler.ImtpsBatchHandler;
 import com.thezeroer.imtps.server.process.handler.ImtpsContext;
 import com.thezeroer.imtps.server.process.handler.ImtpsHandler;
 import com.thezeroer.imtps.server.process.task.AbstractTask;
 import com.thezeroer.imtps.server.process.task.ImtpsTask;
 import com.thezeroer.imtps.server.process.task.ImtpsTaskSet;
 import com.thezeroer.imtps.server.session.ImtpsSession;
+import com.thezeroer.imtps.server.util.TimingWheel;
 import com.thezeroer.imtps.server.view.AbstractTransmitView;
 import com.thezeroer.imtps.server.worker.SessionManager;
 
-import java.util.Comparator;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
-import java.util.PriorityQueue;
 import java.util.concurrent.*;
 
 /**
@@ -25,11 +29,19 @@ import java.util.concurrent.*;
  * @since 2025/07/31
  */
 public class ProcessingHub {
-    private final TrieRouter<ImtpsHandler> handlerTrieRouter;
-    private final ConcurrentLinkedQueue<AbstractTask<?>> taskQueue;
+    private final TrieRouter<HandlerEntry> handlerTrieRouter;
+    private final ConcurrentHashMap<String, Bulkhead> bulkheadHashMap;
+    private final ConcurrentHashMap<ImtpsHandler, HandlerEntry> handlerEntryHashMap;
+    private volatile ScheduledExecutorService batchScheduler;
+    private final LaneExecutor laneExecutor;
+    private final ResponseCache responseCache;
+    private final SingleFlight singleFlight;
+    private final ConcurrentHashMap<String, TaskWindow> taskWindowHashMap;
     private final ConcurrentHashMap<String, AbstractTask<?>> taskHashMap;
+    private volatile int taskWindowSize;
     private final TaskTimer taskTimer;
     private ExecutorService threadPool;
+    private final ExecutorService defaultThreadPool;
 
     private SessionManager sessionManager;
     private final PacketHandler packetHandler;
@@ -37,23 +49,93 @@ public class ProcessingHub {
 
     public ProcessingHub(PacketHandler packetHandler, ImtpsLogger imtpsLogger) {
         handlerTrieRouter = new TrieRouter<>();
-        taskQueue = new ConcurrentLinkedQueue<>();
+        bulkheadHashMap = new ConcurrentHashMap<>();
+        handlerEntryHashMap = new ConcurrentHashMap<>();
+        taskWindowHashMap = new ConcurrentHashMap<>();
         taskHashMap = new ConcurrentHashMap<>();
+        taskWindowSize = 1;
         taskTimer = new TaskTimer();
 
         int poolSize = Runtime.getRuntime().availableProcessors();
         threadPool = new ThreadPoolExecutor(poolSize, poolSize * 2, 180
                 , TimeUnit.SECONDS, new ArrayBlockingQueue<>(1024), new ThreadPoolExecutor.CallerRunsPolicy());
+        laneExecutor = new LaneExecutor(threadPool, poolSize * 2, imtpsLogger);
+        responseCache = new ResponseCache(4096);
+        singleFlight = new SingleFlight();
 
         this.packetHandler = packetHandler;
         this.imtpsLogger = imtpsLogger;
         packetHandler.setThreadPool(threadPool);
+        defaultThreadPool = threadPool;
     }
 
+    /**
+     * 添加处理程序，同名舱壁的并发上限与执行器不同时，仅由本处理程序使用则重建舱壁，否则拒绝注册
+     *
+     * @param handler 处理器
+     * @throws IllegalArgumentException 舱壁已被其他处理程序以不同配置使用
+     */
     public void registerHandler(ImtpsHandler handler) {
-        handlerTrieRouter.register(TrieRouter.buildMatcher(handler.getWayMatch())
-                , TrieRouter.buildMatcher(handler.getTypeMach())
-                , TrieRouter.buildMatcher(handler.getExtraMatch()), handler);
+        String bulkheadName = handler.getBulkheadName() instanceof String name ? name : handler.getClass().getName();
+        HandlerEntry previous;
+        synchronized (handlerEntryHashMap) {
+            previous = handlerEntryHashMap.get(handler);
+            Bulkhead bulkhead = bulkheadHashMap.get(bulkheadName);
+            if (bulkhead == null || bulkhead.getMaxConcurrency() != handler.getMaxConcurrency()
+                    || bulkhead.getExecutorService() != handler.getExecutorService()) {
+                if (bulkhead != null && isBulkheadShared(bulkhead, previous)) {
+                    throw new IllegalArgumentException("Bulkhead [" + bulkheadName + "] is already used with different limits");
+                }
+                bulkhead = new Bulkhead(bulkheadName, handler.getMaxConcurrency(), handler.getExecutorService());
+                bulkheadHashMap.put(bulkheadName, bulkhead);
+            }
+            HandlerEntry handlerEntry = new HandlerEntry(handler, bulkhead,
+                    handler instanceof ImtpsBatchHandler batchHandler ? new BatchCollector(batchHandler, bulkhead) : null);
+            handlerEntryHashMap.put(handler, handlerEntry);
+            if (previous != null) {
+                handlerTrieRouter.unregister(previous);
+                releaseBulkhead(previous.bulkhead);
+            }
+            handlerTrieRouter.register(TrieRouter.buildMatcher(handler.getWayMatch())
+                    , TrieRouter.buildMatcher(handler.getTypeMach())
+                    , TrieRouter.buildMatcher(handler.getExtraMatch()), handlerEntry);
+        }
+        if (previous != null && previous.batchCollector != null) {
+            previous.batchCollector.flush();
+        }
+    }
+    /**
+     * 删除处理程序，新的路由快照发布后立即生效，已在执行的请求不受影响，最后一个使用者删除后舱壁随之移除
+     *
+     * @param handler 处理器
+     * @return boolean 是否存在
+     */
+    public boolean removeHandler(ImtpsHandler handler) {
+        HandlerEntry handlerEntry;
+        synchronized (handlerEntryHashMap) {
+            if ((handlerEntry = handlerEntryHashMap.remove(handler)) == null) {
+                return false;
+            }
+            handlerTrieRouter.unregister(handlerEntry);
+            releaseBulkhead(handlerEntry.bulkhead);
+        }
+        if (handlerEntry.batchCollector != null) {
+            handlerEntry.batchCollector.flush();
+        }
+        return true;
+    }
+    private boolean isBulkheadShared(Bulkhead bulkhead, HandlerEntry except) {
+        for (HandlerEntry handlerEntry : handlerEntryHashMap.values()) {
+            if (handlerEntry != except && handlerEntry.bulkhead == bulkhead) {
+                return true;
+            }
+        }
+        return false;
+    }
+    private void releaseBulkhead(Bulkhead bulkhead) {
+        if (!isBulkheadShared(bulkhead, null)) {
+            bulkheadHashMap.remove(bulkhead.getName(), bulkhead);
+        }
     }
     public void freezeHandlerTrieRouter() {
         handlerTrieRouter.freeze();
@@ -64,63 +146,354 @@ public class ProcessingHub {
         AbstractTask<?> mapTask = taskHashMap.get(dataPacket.getTaskId());
         if (mapTask != null) {
             threadPool.submit(() -> executeTaskResponse(mapTask, dataPacket));
-            if (taskQueue.poll() instanceof AbstractTask<?> queuedTask) {
-                threadPool.submit(() -> executeTaskRequest(queuedTask));
-            }
             return;
         }
-        ImtpsHandler handler = handlerTrieRouter.find(dataPacket.getWay(), dataPacket.getType(), dataPacket.getExtra());
-        if (handler == null) {
+        HandlerEntry handlerEntry = handlerTrieRouter.find(dataPacket.getWay(), dataPacket.getType(), dataPacket.getExtra());
+        if (handlerEntry == null) {
             imtpsLogger.log(ImtpsLogger.LEVEL_WARN, "ImtpHandler[$]缺失", dataPacket.getHeadCode());
             sessionManager.putDataPacket(imtpsSession, DataPacket.build(DataPacket.WAY.SERVER_NULL));
             return;
         }
+        ImtpsHandler handler = handlerEntry.handler;
         if (imtpsSession.getSessionName() == null && handler.isNeedVerify()) {
             imtpsLogger.log(ImtpsLogger.LEVEL_WARN, "未验证的会话[$]访问ImtpHandler[$]", imtpsSession.getRemoteAddress(), dataPacket.getHeadCode());
             sessionManager.putDataPacket(imtpsSession, DataPacket.build(DataPacket.WAY.SERVER_REFUSE, DataPacket.TYPE.DEFAULT, DataPacket.EXTRA.NEEDVERIFY));
             return;
         }
-        threadPool.submit(() -> {
+        ImtpsContext imtpsContext = new ImtpsContext(sessionManager, imtpsSession, dataPacket, responseCache);
+        if (handlerEntry.batchCollector != null) {
+            handlerEntry.batchCollector.add(imtpsContext);
+            return;
+        }
+        long cacheTtl = handler.getCacheTtl();
+        boolean coalesce = handler.isSingleFlight();
+        String requestKey = null;
+        if (cacheTtl > 0 || coalesce) {
+            requestKey = handler.isCachePerSession() ? ResponseCache.buildKey(dataPacket, imtpsSession.getSessionName() instanceof String sessionName
+                    ? sessionName : "#" + imtpsSession.getSessionId()) : ResponseCache.buildKey(dataPacket);
+        }
+        if (requestKey != null) {
+            if (cacheTtl > 0 && responseCache.get(requestKey) instanceof List<DataPacket> responses) {
+                for (DataPacket response : responses) {
+                    imtpsContext.putResponseDataPacket(response.clone());
+                }
+                return;
+            }
+            if (coalesce && !singleFlight.join(requestKey, imtpsContext)) {
+                return;
+            }
+            imtpsContext.startRecording();
+        }
+        dispatchHandler(handlerEntry, imtpsContext, requestKey, cacheTtl, coalesce && requestKey != null);
+    }
+    private void dispatchHandler(HandlerEntry handlerEntry, ImtpsContext imtpsContext, String requestKey, long cacheTtl, boolean leader) {
+        DataPacket dataPacket = imtpsContext.getRequestDataPacket();
+        ImtpsHandler handler = handlerEntry.handler;
+        Bulkhead bulkhead = handlerEntry.bulkhead;
+        boolean accepted = executeInBulkhead(bulkhead, handler.getLane(), () -> {
+            int failureWay = DataPacket.WAY.DEFAULT;
             try {
-                handler.execute(new ImtpsContext(sessionManager, imtpsSession, dataPacket));
-            }catch (Exception e) {
+                handler.execute(imtpsContext);
+                if (cacheTtl > 0 && requestKey != null && imtpsContext.getRecordedResponses() instanceof List<DataPacket> responses && !responses.isEmpty()) {
+                    responseCache.put(requestKey, responses, cacheTtl);
+                }
+            } catch (Exception e) {
+                failureWay = DataPacket.WAY.SERVER_ERROR;
                 imtpsLogger.log(ImtpsLogger.LEVEL_ERROR, "ImtpHandler[$]出现未捕获的异常", dataPacket.getHeadCode(), e);
-                sessionManager.putDataPacket(imtpsSession, DataPacket.build(DataPacket.WAY.SERVER_ERROR));
+                imtpsContext.putDataPacket(DataPacket.build(DataPacket.WAY.SERVER_ERROR));
+            } finally {
+                if (leader) {
+                    completeFlight(handlerEntry, requestKey, imtpsContext.getRecordedResponses(), failureWay);
+                }
             }
         });
+        if (!accepted) {
+            imtpsLogger.log(ImtpsLogger.LEVEL_WARN, "ImtpHandler[$]舱壁[$]已满", dataPacket.getHeadCode(), bulkhead.getName());
+            imtpsContext.putDataPacket(DataPacket.build(DataPacket.WAY.SERVER_BUSY).setTaskId(dataPacket.getTaskId()));
+            if (leader) {
+                completeFlight(handlerEntry, requestKey, null, DataPacket.WAY.SERVER_BUSY);
+            }
+        }
+    }
+    /**
+     * 结束合并执行，向等待的请求分发领导者响应的副本；领导者失败时分发相同的失败响应，
+     * 领导者的响应无法复制（无响应或正文不是文本）时等待的请求各自执行处理程序
+     */
+    private void completeFlight(HandlerEntry handlerEntry, String requestKey, List<DataPacket> responses, int failureWay) {
+        for (ImtpsContext waiter : singleFlight.complete(requestKey)) {
+            if (failureWay != DataPacket.WAY.DEFAULT) {
+                waiter.putResponseDataPacket(DataPacket.build(failureWay));
+            } else if (responses != null && !responses.isEmpty()) {
+                for (DataPacket response : responses) {
+                    waiter.putResponseDataPacket(response.clone());
+                }
+            } else {
+                dispatchHandler(handlerEntry, waiter, null, 0, false);
+            }
+        }
+    }
+    private boolean executeInBulkhead(Bulkhead bulkhead, String lane, Runnable runnable) {
+        if (!bulkhead.tryAcquire()) {
+            return false;
+        }
+        Runnable measured = () -> {
+            long startTime = System.nanoTime();
+            try {
+                runnable.run();
+            } finally {
+                bulkhead.release(System.nanoTime() - startTime);
+            }
+        };
+        if (bulkhead.getExecutorService() instanceof ExecutorService handlerExecutor) {
+            try {
+                handlerExecutor.execute(measured);
+                return true;
+            } catch (RejectedExecutionException e) {
+                bulkhead.reject();
+                return false;
+            }
+        }
+        if (!laneExecutor.execute(lane, measured)) {
+            bulkhead.reject();
+            return false;
+        }
+        return true;
+    }
+    /**
+     * 设置优先通道，已存在时更新权重与容量
+     *
+     * @param name     通道名
+     * @param weight   权重
+     * @param capacity 队列容量
+     */
+    public void setLane(String name, int weight, int capacity) {
+        laneExecutor.setLane(name, weight, capacity);
+    }
+    public LaneExecutor getLaneExecutor() {
+        return laneExecutor;
+    }
+    public ResponseCache getResponseCache() {
+        return responseCache;
+    }
+    public SingleFlight getSingleFlight() {
+        return singleFlight;
+    }
+    /**
+     * 获取舱壁
+     *
+     * @param name 舱壁名称
+     * @return {@link Bulkhead }
+     */
+    public Bulkhead getBulkhead(String name) {
+        return bulkheadHashMap.get(name);
+    }
+    public Collection<Bulkhead> getAllBulkhead() {
+        return bulkheadHashMap.values();
     }
     public void submitTask(AbstractTask<?> task) {
         switch (task.getPattern()) {
             case AbstractTask.PATTERN_DEFAULT -> threadPool.submit(() -> executeTaskRequest(task));
             case AbstractTask.PATTERN_QUEUE -> {
-                if (taskHashMap.isEmpty()) {
+                String orderKey = getOrderKey(task);
+                while (true) {
+                    TaskWindow taskWindow = taskWindowHashMap.computeIfAbsent(orderKey, key -> new TaskWindow());
+                    synchronized (taskWindow) {
+                        if (taskWindow.removed) {
+                            continue;
+                        }
+                        if (taskWindow.inFlight < taskWindowSize) {
+                            taskWindow.inFlight++;
+                            task.holdWindow(true);
+                        } else {
+                            taskWindow.waitingQueue.add(task);
+                            break;
+                        }
+                    }
                     threadPool.submit(() -> executeTaskRequest(task));
-                } else {
-                    taskQueue.add(task);
+                    break;
                 }
             }
             case AbstractTask.PATTERN_WAIT -> {
+                // 请求在锁外发出，入队时不占用任务的监视器；等待前在锁内检查任务是否仍在等待应答，应答先于等待到达时也不会丢失唤醒。
+                // 等待时间为 0 时与 Object.wait(0) 相同，一直等到任务完成
                 executeTaskRequest(task);
+                long waitingTime = task.getWaitingTime();
+                long deadline = System.currentTimeMillis() + waitingTime;
                 synchronized (task) {
                     try {
-                        task.wait(task.getWaitingTime());
-                    } catch (InterruptedException ignored) {}
+                        for (long remaining = waitingTime; task.isLive() && taskHashMap.get(task.getTaskId()) == task && (waitingTime <= 0 || remaining > 0);
+                             remaining = deadline - System.currentTimeMillis()) {
+                            task.wait(waitingTime <= 0 ? 0 : remaining);
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
                 }
             }
         }
     }
+    /**
+     * 异步提交任务，响应到达时完成，超时（自请求发出起计算）以 {@link TimeoutException} 完成，取消时删除任务
+     *
+     * @param task    任务
+     * @param timeout 超时
+     * @param unit    单位
+     * @return {@link CompletableFuture }<{@link T }>
+     */
+    public <T> CompletableFuture<T> submitTaskAsync(AbstractTask<T> task, long timeout, TimeUnit unit) {
+        CompletableFuture<T> future = task.createFuture();
+        future.whenComplete((response, throwable) -> {
+            if (throwable instanceof CancellationException) {
+                cancelTask(task);
+            }
+        });
+        task.setWaitingTime(timeout, unit);
+        if (task.getPattern() == AbstractTask.PATTERN_WAIT) {
+            task.setPattern(AbstractTask.PATTERN_DEFAULT);
+        }
+        submitTask(task);
+        return future;
+    }
+    /**
+     * 删除任务，已发出的任务不再等待响应，仍在队列窗口中排队的任务不再发出；释放其窗口、定时器与传输视图，异步结果以取消完成
+     *
+     * @param taskId 任务 ID
+     */
     public void removeTask(String taskId) {
-        if (taskHashMap.remove(taskId) instanceof AbstractTask<?> task && task.getPattern() == AbstractTask.PATTERN_QUEUE) {
-            taskQueue.remove(task);
+        AbstractTask<?> task = taskHashMap.get(taskId);
+        if (task == null) {
+            task = findWaitingTask(taskId);
+        }
+        if (task == null) {
+            return;
+        }
+        cancelTask(task);
+        if (task.getFuture() instanceof CompletableFuture<?> future) {
+            future.cancel(false);
+        }
+        if (task.getPattern() == AbstractTask.PATTERN_WAIT) {
+            synchronized (task) {
+                task.notifyAll();
+            }
         }
     }
+    /**
+     * 设置队列模式下每个排序键允许同时等待响应的任务数，默认为 1
+     *
+     * @param taskWindowSize 窗口大小
+     */
+    public void setTaskWindowSize(int taskWindowSize) {
+        this.taskWindowSize = Math.max(taskWindowSize, 1);
+    }
     public void submitTaskToTimer(AbstractTask<?> task) {
         if (task != null) {
             taskTimer.submit(task);
         }
     }
+    /**
+     * 获取等待超时的任务定时器数量
+     *
+     * @return long
+     */
+    public long getPendingTimerCount() {
+        return taskTimer.getPendingCount();
+    }
+
+    private void cancelTask(AbstractTask<?> task) {
+        task.setLive(false);
+        task.cancelTimeout();
+        taskHashMap.remove(task.getTaskId(), task);
+        if (task.getPattern() == AbstractTask.PATTERN_QUEUE) {
+            if (taskWindowHashMap.get(getOrderKey(task)) instanceof TaskWindow taskWindow) {
+                synchronized (taskWindow) {
+                    taskWindow.waitingQueue.remove(task);
+                }
+            }
+            releaseTaskWindow(task);
+        }
+        if (task.getSendView() != null) {
+            packetHandler.removeSendView(task.getTaskId());
+        }
+        if (task.getReceiveView() != null) {
+            packetHandler.removeReceiveView(task.getTaskId());
+        }
+    }
+
+    /**
+     * 以异常立即完成任务，用于请求数据包未能入队或在发出前被发送队列丢弃，任务已完成或已被移除时忽略
+     *
+     * @param task      任务
+     * @param throwable 异常
+     */
+    public void failTask(AbstractTask<?> task, Throwable throwable) {
+        if (!taskHashMap.remove(task.getTaskId(), task)) {
+            return;
+        }
+        task.setLive(false);
+        task.cancelTimeout();
+        if (task.getSendView() != null) {
+            packetHandler.removeSendView(task.getTaskId());
+        }
+        if (task.getReceiveView() != null) {
+            packetHandler.removeReceiveView(task.getTaskId());
+        }
+        releaseTaskWindow(task);
+        task.finish(false);
+        task.completeFuture(throwable);
+        if (task.getPattern() == AbstractTask.PATTERN_WAIT) {
+            synchronized (task) {
+                task.notifyAll();
+            }
+        }
+    }
+
+    private AbstractTask<?> findWaitingTask(String taskId) {
+        for (TaskWindow taskWindow : taskWindowHashMap.values()) {
+            synchronized (taskWindow) {
+                for (AbstractTask<?> task : taskWindow.waitingQueue) {
+                    if (task.getTaskId().equals(taskId)) {
+                        return task;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+    private String getOrderKey(AbstractTask<?> task) {
+        if (task.getOrderKey() instanceof String orderKey) {
+            return orderKey;
+        }
+        return task.getImtpsSession() == null ? "" : task.getImtpsSession().getSessionId();
+    }
+    private void releaseTaskWindow(AbstractTask<?> task) {
+        if (task.getPattern() != AbstractTask.PATTERN_QUEUE || !task.holdWindow(false)) {
+            return;
+        }
+        String orderKey = getOrderKey(task);
+        if (taskWindowHashMap.get(orderKey) instanceof TaskWindow taskWindow) {
+            AbstractTask<?> nextTask;
+            synchronized (taskWindow) {
+                nextTask = taskWindow.waitingQueue.poll();
+                if (nextTask == null) {
+                    if (--taskWindow.inFlight <= 0) {
+                        taskWindow.removed = true;
+                        taskWindowHashMap.remove(orderKey, taskWindow);
+                    }
+                } else {
+                    nextTask.holdWindow(true);
+                }
+            }
+            if (nextTask != null) {
+                threadPool.submit(() -> executeTaskRequest(nextTask));
+            }
+        }
+    }
 
     private void executeTaskRequest(AbstractTask<?> task) {
+        if (!task.isLive()) {
+            releaseTaskWindow(task);
+            return;
+        }
         try {
             if (task instanceof ImtpsTask) {
                 if (task.request() instanceof DataPacket dataPacket) {
@@ -131,9 +504,13 @@ public class ProcessingHub {
                     if (task.getReceiveView() instanceof AbstractTransmitView receiveView) {
                         packetHandler.addReceiveView(task.getTaskId(), receiveView);
                     }
-                    sessionManager.putDataPacket(task.getImtpsSession(), dataPacket.setTask(task));
+                    if (!sessionManager.putDataPacket(task.getImtpsSession(), dataPacket.setTask(task))) {
+                        failTask(task, new RejectedExecutionException("Task " + task.getTaskId() + " request was dropped"));
+                    }
                 } else {
                     task.finish(false);
+                    task.completeFuture(new IllegalStateException("Task request is empty"));
+                    releaseTaskWindow(task);
                 }
             } else if (task instanceof ImtpsTaskSet imtpsTaskSet) {
                 if (task.request() instanceof List<?> dataPacketList && !dataPacketList.isEmpty()) {
@@ -146,16 +523,21 @@ public class ProcessingHub {
                         packetHandler.addReceiveView(task.getTaskId(), receiveView);
                     }
                     for (Object object : dataPacketList) {
-                        if (object instanceof DataPacket dataPacket) {
-                            sessionManager.putDataPacket(task.getImtpsSession(), dataPacket.setTask(task));
+                        if (object instanceof DataPacket dataPacket && !sessionManager.putDataPacket(task.getImtpsSession(), dataPacket.setTask(task))) {
+                            failTask(task, new RejectedExecutionException("Task " + task.getTaskId() + " request was dropped"));
+                            break;
                         }
                     }
                 } else {
                     task.finish(false);
+                    task.completeFuture(new IllegalStateException("Task request is empty"));
+                    releaseTaskWindow(task);
                 }
             }
         } catch (Exception e) {
             task.finish(false);
+            task.completeFuture(e);
+            releaseTaskWindow(task);
             imtpsLogger.log(ImtpsLogger.LEVEL_ERROR, "TaskRequest[$]出现未捕获的异常", task.getTaskId(), e);
             if (task.getSendView() != null) {
                 packetHandler.removeSendView(task.getTaskId());
@@ -175,6 +557,7 @@ public class ProcessingHub {
                     finished = task.putResponseData(dataPacket);
                 }
                 if (finished) {
+                    task.cancelTimeout();
                     taskHashMap.remove(task.getTaskId());
                     if (task.getSendView() != null) {
                         packetHandler.removeSendView(task.getTaskId());
@@ -183,8 +566,10 @@ public class ProcessingHub {
                         packetHandler.removeReceiveView(task.getTaskId());
                     }
                     task.setLive(false);
+                    releaseTaskWindow(task);
                     task.response();
                     task.finish(true);
+                    task.completeFuture(dataPacket == null ? new TimeoutException("Task " + task.getTaskId() + " timed out") : null);
                     if (task.getPattern() == ImtpsTask.PATTERN_WAIT) {
                         synchronized (task) {
                             task.notifyAll();
@@ -194,6 +579,8 @@ public class ProcessingHub {
             }
         } catch (Exception e) {
             task.finish(false);
+            task.completeFuture(e);
+            releaseTaskWindow(task);
             imtpsLogger.log(ImtpsLogger.LEVEL_ERROR, "TaskResponse[$]出现未捕获的异常", task.getTaskId(), e);
         }
     }
@@ -201,54 +588,151 @@ public class ProcessingHub {
     public void transmitObject(SessionManager sessionManager) {
         this.sessionManager = sessionManager;
     }
+    /**
+     * 设置线程池，任务响应与未指定专用线程池的处理程序（经优先通道）均在其上运行
+     *
+     * @param threadPool 线程池
+     */
     public void setThreadPool(ExecutorService threadPool) {
         this.threadPool = threadPool;
         packetHandler.setThreadPool(threadPool);
+        laneExecutor.setExecutor(threadPool);
+    }
+    /**
+     * 关闭加工中心：停止优先通道、任务定时器与批处理调度器，并关闭内置线程池，外部设置的线程池由调用方负责关闭
+     */
+    public void shutdown() {
+        laneExecutor.shutdown();
+        taskTimer.shutdown();
+        if (batchScheduler != null) {
+            batchScheduler.shutdownNow();
+        }
+        defaultThreadPool.shutdown();
     }
 
-    class TaskTimer extends Thread{
-        private final PriorityQueue<AbstractTask<?>> WaitingQueue;
-        private final Object taskTimerLock = new Object();
+    private ScheduledExecutorService getBatchScheduler() {
+        if (batchScheduler == null) {
+            synchronized (handlerEntryHashMap) {
+                if (batchScheduler == null) {
+                    batchScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                        Thread thread = new Thread(runnable, "BatchCollector");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                }
+            }
+        }
+        return batchScheduler;
+    }
+
+    class BatchCollector {
+        private final ImtpsBatchHandler handler;
+        private final Bulkhead bulkhead;
+        private ArrayList<ImtpsContext> batch;
+        private ScheduledFuture<?> flushFuture;
 
-        public TaskTimer () {
-            WaitingQueue = new PriorityQueue<>(Comparator.comparingLong(AbstractTask::getExpirationTime));
-            setDaemon(true);
-            start();
+        public BatchCollector(ImtpsBatchHandler handler, Bulkhead bulkhead) {
+            this.handler = handler;
+            this.bulkhead = bulkhead;
+            batch = new ArrayList<>();
         }
 
-        public synchronized void submit(AbstractTask<?> task) {
-            task.updateExpirationTime();
-            WaitingQueue.add(task);
-            AbstractTask<?> oldImtpsTask = WaitingQueue.peek();
-            if (task.equals(oldImtpsTask) || oldImtpsTask != null && task.getExpirationTime() < oldImtpsTask.getExpirationTime()) {
-                synchronized (taskTimerLock) {
-                    taskTimerLock.notify();
-                }
-            }
-        }
-
-        @Override
-        public void run() {
-            while(true){
-                while (!WaitingQueue.isEmpty()){
-                    synchronized(taskTimerLock){
-                        try {
-                            if (WaitingQueue.poll() instanceof AbstractTask<?> task) {
-                                long waitTime = task.getExpirationTime() - System.currentTimeMillis();
-                                if (waitTime > 0) {
-                                    taskTimerLock.wait(waitTime);
-                                }
-                                threadPool.submit(() -> executeTaskResponse(task, null));
-                            }
-                        } catch (InterruptedException ignored) {}
+        public void add(ImtpsContext imtpsContext) {
+            List<ImtpsContext> fullBatch = null;
+            synchronized (this) {
+                batch.add(imtpsContext);
+                if (batch.size() >= handler.getBatchSize()) {
+                    fullBatch = take();
+                } else if (batch.size() == 1) {
+                    flushFuture = getBatchScheduler().schedule(this::flush, handler.getBatchDelay(), TimeUnit.MICROSECONDS);
+                }
+            }
+            if (fullBatch != null) {
+                dispatch(fullBatch);
+            }
+        }
+        private void flush() {
+            List<ImtpsContext> readyBatch;
+            synchronized (this) {
+                if (batch.isEmpty()) {
+                    return;
+                }
+                readyBatch = take();
+            }
+            dispatch(readyBatch);
+        }
+        private List<ImtpsContext> take() {
+            List<ImtpsContext> readyBatch = batch;
+            batch = new ArrayList<>(Math.min(handler.getBatchSize(), 1024));
+            if (flushFuture != null) {
+                flushFuture.cancel(false);
+                flushFuture = null;
+            }
+            return readyBatch;
+        }
+        private void dispatch(List<ImtpsContext> readyBatch) {
+            boolean accepted = executeInBulkhead(bulkhead, handler.getLane(), () -> {
+                try {
+                    handler.executeBatch(readyBatch);
+                } catch (Exception e) {
+                    imtpsLogger.log(ImtpsLogger.LEVEL_ERROR, "ImtpBatchHandler[$]出现未捕获的异常", bulkhead.getName(), e);
+                    for (ImtpsContext imtpsContext : readyBatch) {
+                        imtpsContext.putDataPacket(DataPacket.build(DataPacket.WAY.SERVER_ERROR));
                     }
                 }
-                synchronized (taskTimerLock){
-                    try {
-                        taskTimerLock.wait();
-                    } catch (InterruptedException ignored) {}
+            });
+            if (!accepted) {
+                imtpsLogger.log(ImtpsLogger.LEVEL_WARN, "ImtpBatchHandler[$]舱壁已满，拒绝[$]个数据包", bulkhead.getName(), readyBatch.size());
+                for (ImtpsContext imtpsContext : readyBatch) {
+                    imtpsContext.putResponseDataPacket(DataPacket.build(DataPacket.WAY.SERVER_BUSY));
                 }
             }
         }
     }
+
+    /** 路由条目：处理器与其舱壁、批处理收集器一同注册、注销，分发线程取到条目后不再查表，处理器被删除时也能完成在途请求 */
+    static class HandlerEntry {
+        private final ImtpsHandler handler;
+        private final Bulkhead bulkhead;
+        private final BatchCollector batchCollector;
+
+        HandlerEntry(ImtpsHandler handler, Bulkhead bulkhead, BatchCollector batchCollector) {
+            this.handler = handler;
+            this.bulkhead = bulkhead;
+            this.batchCollector = batchCollector;
+        }
+    }
+
+    static class TaskWindow {
+        private final ArrayDeque<AbstractTask<?>> waitingQueue = new ArrayDeque<>();
+        private int inFlight;
+        private boolean removed;
+    }
+
+    class TaskTimer {
+        private final TimingWheel timingWheel;
+
+        public TaskTimer() {
+            timingWheel = new TimingWheel("TaskTimer", 100, TimeUnit.MILLISECONDS, 512);
+        }
+
+        public void submit(AbstractTask<?> task) {
+            task.cancelTimeout();
+            if (!task.isLive()) {
+                return;
+            }
+            task.updateExpirationTime();
+            task.setTimeout(timingWheel.newTimeout(timeout -> {
+                if (task.isLive()) {
+                    threadPool.submit(() -> executeTaskResponse(task, null));
+                }
+            }, task.getWaitingTime(), TimeUnit.MILLISECONDS));
+        }
+        public long getPendingCount() {
+            return timingWheel.pendingTimeouts();
+        }
+        public void shutdown() {
+            timingWheel.stop();
+        }
+    }
 }
@@ -0,0 +1,219 @@
+package com.thezeroer.imtps.server.process;
+
+import com.thezeroer.imtps.server.datapacket.DataPacket;
+import com.thezeroer.imtps.server.datapacket.databody.TextDataBody;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 响应缓存
+ * <p>以路由与请求正文摘要为键缓存处理程序的响应，按 LRU 与 TTL 淘汰，命中时发送缓存响应的副本；
+ * 按键的哈希分为若干段，每段独立加锁并按段容量做 LRU 淘汰，容量在各段间平均分配</p>
+ *
+ * @author NiZhanBo
+ * @since 2026/10/19
+ * @version 1.0.0
+ */
+public class ResponseCache {
+    private static final int SEGMENT_COUNT = 16;
+
+    private final Segment[] segments;
+    private final LongAdder hitCount, missCount;
+    private volatile int maxSize;
+
+    public ResponseCache(int maxSize) {
+        segments = new Segment[SEGMENT_COUNT];
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new Segment(i);
+        }
+        this.maxSize = Math.max(maxSize, 1);
+        hitCount = new LongAdder();
+        missCount = new LongAdder();
+    }
+
+    /**
+     * 构建缓存键，请求正文不是 {@link TextDataBody} 时不可缓存
+     *
+     * @param dataPacket 请求数据包
+     * @return {@link String } 不可缓存时返回 null
+     */
+    public static String buildKey(DataPacket dataPacket) {
+        String route = buildRoute(dataPacket.getWay(), dataPacket.getType(), dataPacket.getExtra());
+        if (dataPacket.getDataBody() == null) {
+            return route;
+        }
+        if (!(dataPacket.getDataBody() instanceof TextDataBody textDataBody)) {
+            return null;
+        }
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+            if (textDataBody.getData() instanceof String data) {
+                messageDigest.update(data.getBytes(StandardCharsets.UTF_8));
+            }
+            if (textDataBody.getMetadata() instanceof byte[] metadata) {
+                messageDigest.update((byte) 0);
+                messageDigest.update(metadata);
+            }
+            StringBuilder key = new StringBuilder(route.length() + 65).append(route).append(':');
+            for (byte b : messageDigest.digest()) {
+                key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            return null;
+        }
+    }
+    /**
+     * 构建限定在某个范围（如会话）内的缓存键，不同范围的相同请求互不命中
+     *
+     * @param dataPacket 请求数据包
+     * @param scope      范围
+     * @return {@link String } 不可缓存时返回 null
+     */
+    public static String buildKey(DataPacket dataPacket, String scope) {
+        String key = buildKey(dataPacket);
+        return key == null || scope == null ? key : key + '@' + scope;
+    }
+    public static String buildRoute(int way, int type, int extra) {
+        return way + "-" + type + "-" + extra;
+    }
+
+    /**
+     * 获取缓存的响应，过期时删除并视为未命中
+     *
+     * @param key 缓存键
+     * @return {@link List }<{@link DataPacket }> 未命中时返回 null
+     */
+    public List<DataPacket> get(String key) {
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            if (segment.entries.get(key) instanceof CacheEntry cacheEntry) {
+                if (cacheEntry.expirationTime > System.currentTimeMillis()) {
+                    hitCount.increment();
+                    return cacheEntry.responses;
+                }
+                segment.entries.remove(key);
+            }
+        }
+        missCount.increment();
+        return null;
+    }
+    public void put(String key, List<DataPacket> responses, long ttl) {
+        CacheEntry cacheEntry = new CacheEntry(List.copyOf(responses), System.currentTimeMillis() + ttl);
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            segment.entries.put(key, cacheEntry);
+        }
+    }
+
+    /**
+     * 使路由下的全部缓存失效
+     *
+     * @param way   方式
+     * @param type  类型
+     * @param extra 额外
+     */
+    public void invalidate(int way, int type, int extra) {
+        String prefix = buildRoute(way, type, extra);
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                Iterator<String> iterator = segment.entries.keySet().iterator();
+                while (iterator.hasNext()) {
+                    String key = iterator.next();
+                    if (key.startsWith(prefix) && (key.length() == prefix.length() || key.charAt(prefix.length()) == ':' || key.charAt(prefix.length()) == '@')) {
+                        iterator.remove();
+                    }
+                }
+            }
+        }
+    }
+    /**
+     * 使某个请求的缓存失效
+     *
+     * @param dataPacket 请求数据包
+     */
+    public void invalidate(DataPacket dataPacket) {
+        if (buildKey(dataPacket) instanceof String key) {
+            Segment segment = segmentFor(key);
+            synchronized (segment) {
+                segment.entries.remove(key);
+            }
+        }
+    }
+    public void invalidateAll() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.entries.clear();
+            }
+        }
+    }
+
+    /**
+     * 设置最大条目数，按段平均分配，每段至少 1 条，因此小于段数时实际上限为段数
+     *
+     * @param maxSize 最大条目数
+     */
+    public void setMaxSize(int maxSize) {
+        this.maxSize = Math.max(maxSize, 1);
+    }
+    public int getSize() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.entries.size();
+            }
+        }
+        return size;
+    }
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    private Segment segmentFor(String key) {
+        int hash = key.hashCode();
+        return segments[(hash ^ (hash >>> 16)) & (SEGMENT_COUNT - 1)];
+    }
+
+    class Segment {
+        private final int index;
+        private final LinkedHashMap<String, CacheEntry> entries;
+
+        Segment(int index) {
+            this.index = index;
+            entries = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+                    return size() > capacity();
+                }
+            };
+        }
+
+        /**
+         * 段容量，余数分给前面的段，各段之和等于最大条目数
+         */
+        private int capacity() {
+            int size = maxSize;
+            return Math.max(size / SEGMENT_COUNT + (index < size % SEGMENT_COUNT ? 1 : 0), 1);
+        }
+    }
+
+    static class CacheEntry {
+        private final List<DataPacket> responses;
+        private final long expirationTime;
+
+        CacheEntry(List<DataPacket> responses, long expirationTime) {
+            this.responses = responses;
+            this.expirationTime = expirationTime;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.thezeroer.imtps.server.process;
+
+import com.thezeroer.imtps.server.process.handler.ImtpsContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 请求合并
+ * <p>相同键的并发请求只由第一个到达的请求（领导者）执行处理程序，其余请求挂在领导者上等待其响应</p>
+ *
+ * @author NiZhanBo
+ * @since 2026/10/19
+ * @version 1.0.0
+ */
+public class SingleFlight {
+    private final ConcurrentHashMap<String, Flight> flightHashMap;
+    private final LongAdder coalescedCount;
+
+    public SingleFlight() {
+        flightHashMap = new ConcurrentHashMap<>();
+        coalescedCount = new LongAdder();
+    }
+
+    /**
+     * 加入执行，键上没有执行中的请求时成为领导者
+     *
+     * @param key          请求键
+     * @param imtpsContext IMTPS 上下文
+     * @return boolean true->成为领导者，需要执行处理程序并在结束后调用 {@link #complete(String)}，false->已挂在领导者上
+     */
+    public boolean join(String key, ImtpsContext imtpsContext) {
+        while (true) {
+            Flight flight = flightHashMap.get(key);
+            if (flight == null) {
+                if (flightHashMap.putIfAbsent(key, new Flight()) == null) {
+                    return true;
+                }
+                continue;
+            }
+            synchronized (flight) {
+                if (!flight.done) {
+                    flight.waiterList.add(imtpsContext);
+                    coalescedCount.increment();
+                    return false;
+                }
+            }
+        }
+    }
+    /**
+     * 结束执行，之后到达的相同请求将成为新的领导者
+     *
+     * @param key 请求键
+     * @return {@link List }<{@link ImtpsContext }> 等待中的上下文
+     */
+    public List<ImtpsContext> complete(String key) {
+        Flight flight = flightHashMap.remove(key);
+        if (flight == null) {
+            return List.of();
+        }
+        synchronized (flight) {
+            flight.done = true;
+            return flight.waiterList;
+        }
+    }
+
+    public int getInFlightCount() {
+        return flightHashMap.size();
+    }
+    /**
+     * 获取被合并（未执行处理程序）的请求数量
+     *
+     * @return long
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.sum();
+    }
+
+    static class Flight {
+        private final List<ImtpsContext> waiterList;
+        private boolean done;
+
+        Flight() {
+            waiterList = new ArrayList<>();
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package com.thezeroer.imtps.server.process;
 
+import java.lang.invoke.VarHandle;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
@@ -86,14 +88,6 @@ public final class TrieRouter<H> {
             return way.matches(w) && type.matches(t) && extra.matches(e);
         }
 
-        // 检查从指定 index (0=way,1=type,2=extra) 开始的剩余字段能否匹配
-        boolean matchesRemainingFrom(int[] values, int startIndex){
-            if (startIndex <= 0 && !way.matches(values[0])) return false;
-            if (startIndex <= 1 && !type.matches(values[1])) return false;
-            if (startIndex <= 2 && !extra.matches(values[2])) return false;
-            return true;
-        }
-
         // 返回该层的 matcher（0=way,1=type,2=extra）
         IntMatcher matcherAt(int idx){
             return switch (idx) {
@@ -116,18 +110,85 @@ public final class TrieRouter<H> {
                     exactCount, setCount, order, way, type, extra);
         }
     }
-    // Node 定义
-    static final class Node<H> {
-        final Map<Integer, Node<H>> exactChildren = new HashMap<>();
-        Node<H> anyChild = null;              // 对应 ANY 分支
-        final List<Rule<H>> setRules = new ArrayList<>(); // 存放未展开的大集合规则（在此层判断）
-        final List<Rule<H>> handlers = new ArrayList<>(); // 到达此节点可终结的规则
-        boolean frozen = false;
+    // 编译后的只读节点：exact 分支为开放寻址的原始类型表，children[i] == null 即空槽
+    // 每个 exact 子节点已并入本层 ANY/大集合规则，exact 未命中时直接走 fallback，查找逐层前进、无需回溯
+    static final class CompiledNode<H> {
+        final int[] keys;
+        final CompiledNode<H>[] children;
+        final int mask;
+        final CompiledNode<H> fallback;
+        final Rule<H>[] rules; // 仅叶子层使用：按优先级排序，首个完整匹配即最优
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        CompiledNode(List<Rule<H>> candidates, int idx, int expandSetThreshold){
+            if (idx == 3){
+                keys = null; children = null; mask = 0; fallback = null;
+                rules = candidates.toArray(new Rule[0]);
+                Arrays.sort(rules, Rule::comparePriorityTo);
+                return;
+            }
+            Map<Integer, List<Rule<H>>> exactRules = new HashMap<>();
+            List<Rule<H>> anyRules = new ArrayList<>();
+            for (Rule<H> rule : candidates){
+                IntMatcher m = rule.matcherAt(idx);
+                if (m instanceof IntMatcher.ExactMatcher em){
+                    exactRules.computeIfAbsent(em.value(), k -> new ArrayList<>()).add(rule);
+                } else if (m instanceof IntMatcher.SetMatcher sm && sm.size() <= expandSetThreshold){
+                    // 小集合展开到每个具体值的 exact 分支（编译期扩展，查找期更快）
+                    for (int v : sm.vals) exactRules.computeIfAbsent(v, k -> new ArrayList<>()).add(rule);
+                } else {
+                    // ANY 与大集合在本层不做区分，大集合留到叶子层用 matchesAll 判断
+                    anyRules.add(rule);
+                }
+            }
+            int size = Integer.highestOneBit(Math.max(exactRules.size() * 2 - 1, 1)) << 1;
+            keys = new int[size];
+            children = new CompiledNode[size];
+            mask = size - 1;
+            for (Map.Entry<Integer, List<Rule<H>>> entry : exactRules.entrySet()){
+                int i = mix(entry.getKey()) & mask;
+                while (children[i] != null) i = (i + 1) & mask;
+                List<Rule<H>> merged = entry.getValue();
+                merged.addAll(anyRules);
+                keys[i] = entry.getKey();
+                children[i] = new CompiledNode<>(merged, idx + 1, expandSetThreshold);
+            }
+            fallback = anyRules.isEmpty() ? null : new CompiledNode<>(anyRules, idx + 1, expandSetThreshold);
+            rules = null;
+        }
+
+        CompiledNode<H> next(int key){
+            for (int i = mix(key) & mask; children[i] != null; i = (i + 1) & mask){
+                if (keys[i] == key) return children[i];
+            }
+            return fallback;
+        }
+    }
+    // 路由快照：发布后只读，注册/注销时整体替换，查找期间无需加锁
+    // 查找缓存为直接映射：每槽以序号做顺序锁，偶数且非零为有效，回填时 CAS 为奇数，读取前后序号一致才算命中；
+    // 键与 handler 存于预分配数组，命中与回填都不分配对象
+    static final class Snapshot<H> {
+        final Rule<H>[] rules;
+        final CompiledNode<H> root;
+        final AtomicIntegerArray sequences;
+        final int[] cacheKeys;
+        final Object[] cacheHandlers;
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Snapshot(List<Rule<H>> ruleList, int expandSetThreshold){
+            rules = ruleList.toArray(new Rule[0]);
+            Arrays.sort(rules, Rule::comparePriorityTo);
+            root = new CompiledNode<>(ruleList, 0, expandSetThreshold);
+            sequences = new AtomicIntegerArray(CACHE_SIZE);
+            cacheKeys = new int[CACHE_SIZE * 3];
+            cacheHandlers = new Object[CACHE_SIZE];
+        }
     }
-    // 帮助类：持有当前最优规则
-    static final class BestHolder<H> { Rule<H> bestRule = null; }
+    private static final int CACHE_SIZE = 256;
 
-    private final Node<H> root = new Node<>();
+    private final List<Rule<H>> rules = new ArrayList<>();
+    private volatile Snapshot<H> snapshot;
+    private boolean frozen;
 
     public TrieRouter(){ this(8); } // 默认阈值 8
     public TrieRouter(int expandSetThreshold){
@@ -144,134 +205,76 @@ public final class TrieRouter<H> {
         };
     }
 
-    // 注册一条规则
-    public void register(IntMatcher way, IntMatcher type, IntMatcher extra, H handler){
-        Rule<H> rule = new Rule<>(way, type, extra, handler, orderGen.getAndIncrement());
-        insertRecursive(root, 0, rule);
+    // 注册一条规则：冻结前只记录规则，首次查找时再编译；冻结后在锁内重建快照并原子替换，查找中的线程继续使用旧快照
+    public synchronized void register(IntMatcher way, IntMatcher type, IntMatcher extra, H handler){
+        rules.add(new Rule<>(way, type, extra, handler, orderGen.getAndIncrement()));
+        snapshot = frozen ? new Snapshot<>(rules, EXPAND_SET_THRESHOLD) : null;
     }
-
-    // 递归插入
-    private void insertRecursive(Node<H> node, int idx, Rule<H> rule){
-        if (idx == 3) {
-            node.handlers.add(rule);
-            return;
-        }
-        IntMatcher m = rule.matcherAt(idx);
-        if (m.kind() == IntMatcher.Kind.EXACT){
-            int v = ((IntMatcher.ExactMatcher)m).value();
-            Node<H> child = node.exactChildren.computeIfAbsent(v, k -> new Node<>());
-            insertRecursive(child, idx+1, rule);
-        } else if (m.kind() == IntMatcher.Kind.ANY){
-            if (node.anyChild == null) node.anyChild = new Node<>();
-            insertRecursive(node.anyChild, idx+1, rule);
-        } else { // SET
-            IntMatcher.SetMatcher sm = (IntMatcher.SetMatcher) m;
-            int size = sm.size();
-            if (size <= EXPAND_SET_THRESHOLD){
-                // 展开：把规则插到每个具体值的 exact 分支（注册期扩展，查找期更快）
-                for (int v : sm.vals){
-                    Node<H> child = node.exactChildren.computeIfAbsent(v, k -> new Node<>());
-                    insertRecursive(child, idx+1, rule);
-                }
-            } else {
-                // 不展开，保存到当前节点的 setRules；查找时在此层判断
-                node.setRules.add(rule);
-            }
+    // 注销 handler 的全部规则
+    public synchronized boolean unregister(H handler){
+        if (rules.removeIf(r -> r.handler.equals(handler))) {
+            snapshot = frozen ? new Snapshot<>(rules, EXPAND_SET_THRESHOLD) : null;
+            return true;
         }
+        return false;
     }
-
-    // freeze: 排序并标记为只读（提高查找性能 / 多线程安全）
-    public void freeze(){
-        freezeRecursive(root);
+    // freeze: 立即编译当前规则，此后每次注册/注销都即时重建快照，查找路径上不再发生编译
+    public synchronized void freeze(){
+        frozen = true;
+        snapshot = new Snapshot<>(rules, EXPAND_SET_THRESHOLD);
     }
-    private void freezeRecursive(Node<H> node){
-        if (node.frozen) return;
-        Comparator<Rule<H>> cmp = Rule::comparePriorityTo;
-        node.handlers.sort(cmp);
-        node.setRules.sort(cmp);
-        node.frozen = true;
-        for (Node<H> c : node.exactChildren.values()) freezeRecursive(c);
-        if (node.anyChild != null) freezeRecursive(node.anyChild);
+    private synchronized Snapshot<H> compile(){
+        if (snapshot == null) snapshot = new Snapshot<>(rules, EXPAND_SET_THRESHOLD);
+        return snapshot;
     }
 
     // 查找最优单个 handler（null 表示未命中）
+    @SuppressWarnings("unchecked")
     public H find(int way, int type, int extra){
-        int[] vals = new int[]{way, type, extra};
-        BestHolder<H> best = new BestHolder<>();
-        searchRecursive(root, 0, vals, best);
-        return best.bestRule == null ? null : best.bestRule.handler;
+        Snapshot<H> current = snapshot;
+        if (current == null) current = compile();
+        int slot = mix(mix(mix(way) + type) + extra) & (CACHE_SIZE - 1);
+        int base = slot * 3;
+        int sequence = current.sequences.getAcquire(slot);
+        if (sequence != 0 && (sequence & 1) == 0){
+            boolean hit = current.cacheKeys[base] == way && current.cacheKeys[base + 1] == type && current.cacheKeys[base + 2] == extra;
+            Object handler = current.cacheHandlers[slot];
+            VarHandle.acquireFence();
+            if (hit && current.sequences.get(slot) == sequence) return (H) handler;
+        }
+        H handler = search(current.root, way, type, extra);
+        if ((sequence & 1) == 0 && current.sequences.compareAndSet(slot, sequence, sequence + 1)){
+            current.cacheKeys[base] = way;
+            current.cacheKeys[base + 1] = type;
+            current.cacheKeys[base + 2] = extra;
+            current.cacheHandlers[slot] = handler;
+            current.sequences.set(slot, sequence + 2);
+        }
+        return handler;
     }
 
     // 查找所有命中（按优先级排序）
     public List<H> findAll(int way, int type, int extra){
-        int[] vals = new int[]{way, type, extra};
-        List<Rule<H>> matched = new ArrayList<>();
-        collectAll(root, 0, vals, matched);
-        matched.sort(Rule::comparePriorityTo);
-        List<H> out = new ArrayList<>(matched.size());
-        for (Rule<H> r : matched) out.add(r.handler);
+        Snapshot<H> current = snapshot;
+        if (current == null) current = compile();
+        List<H> out = new ArrayList<>();
+        for (Rule<H> r : current.rules) if (r.matchesAll(way, type, extra)) out.add(r.handler);
         return out;
     }
 
-    // 递归搜索并更新 best（尝试剪枝：若出现 exactCount == 3 的规则，则可提前终止）
-    private boolean searchRecursive(Node<H> node, int idx, int[] vals, BestHolder<H> best){
-        // idx == 3: 处理 handlers 列表
-        if (idx == 3){
-            for (Rule<H> r : node.handlers){
-                if (r.matchesAll(vals[0], vals[1], vals[2])){
-                    updateBest(best, r);
-                    if (best.bestRule != null && best.bestRule.exactCount == 3) return true; // 完美匹配，无法更好，早停
-                }
-            }
-            return false;
-        }
-        int curVal = vals[idx];
-        // 1) 先走 exact 分支（更具体）
-        Node<H> exactChild = node.exactChildren.get(curVal);
-        if (exactChild != null){
-            boolean stop = searchRecursive(exactChild, idx+1, vals, best);
-            if (stop) return true;
+    // 编译结构上的查找：每层 exact 命中则进入子节点，否则进入 fallback，到叶子层取首个完整匹配
+    private static <H> H search(CompiledNode<H> root, int way, int type, int extra){
+        CompiledNode<H> node = root.next(way);
+        if (node != null) node = node.next(type);
+        if (node != null) node = node.next(extra);
+        if (node == null) return null;
+        for (Rule<H> r : node.rules){
+            if (r.matchesAll(way, type, extra)) return r.handler;
         }
-        // 2) 然后检查当前节点的 setRules（未展开的大集合规则）
-        if (!node.setRules.isEmpty()){
-            for (Rule<H> r : node.setRules){
-                // 先判断当前层是否命中集合（避免进入下一层）
-                if (!r.matcherAt(idx).matches(curVal)) continue;
-                // 若当前层命中，再检查剩余层（直接一次性检查）
-                if (r.matchesRemainingFrom(vals, idx+1)){
-                    updateBest(best, r);
-                    if (best.bestRule != null && best.bestRule.exactCount == 3) return true;
-                }
-            }
-        }
-        // 3) 再走 any 分支（最模糊）
-        if (node.anyChild != null){
-            boolean stop = searchRecursive(node.anyChild, idx+1, vals, best);
-            if (stop) return true;
-        }
-        return false;
+        return null;
     }
-
-    private void updateBest(BestHolder<H> best, Rule<H> r){
-        if (best.bestRule == null) best.bestRule = r;
-        else {
-            int cmp = r.comparePriorityTo(best.bestRule);
-            if (cmp < 0) best.bestRule = r; // comparePriorityTo 用的是 this-vs-other; adapt accordingly
-        }
-    }
-
-    // 收集所有匹配
-    private void collectAll(Node<H> node, int idx, int[] vals, List<Rule<H>> out){
-        if (idx==3){
-            for (Rule<H> r : node.handlers) if (r.matchesAll(vals[0], vals[1], vals[2])) out.add(r);
-            return;
-        }
-        int curVal = vals[idx];
-        Node<H> exactChild = node.exactChildren.get(curVal);
-        if (exactChild != null) collectAll(exactChild, idx+1, vals, out);
-        for (Rule<H> r : node.setRules){
-            if (r.matcherAt(idx).matches(curVal) && r.matchesRemainingFrom(vals, idx+1)) out.add(r);
-        }
-        if (node.anyChild != null) collectAll(node.anyChild, idx+1, vals, out);
+    private static int mix(int key){
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
     }
 }
@@ -0,0 +1,133 @@
+package com.thezeroer.imtps.server.process.handler;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 舱壁
+ * <p>同名处理程序共享的并发限制与执行统计，耗时直方图按微秒以 2 的幂分桶</p>
+ *
+ * @author NiZhanBo
+ * @since 2026/10/19
+ * @version 1.0.0
+ */
+public class Bulkhead {
+    private static final int HISTOGRAM_SIZE = 40;
+
+    private final String name;
+    private final int maxConcurrency;
+    private final ExecutorService executorService;
+    private final AtomicInteger activeCount;
+    private final LongAdder executedCount, rejectedCount;
+    private final AtomicLongArray latencyHistogram;
+
+    public Bulkhead(String name, int maxConcurrency, ExecutorService executorService) {
+        this.name = name;
+        this.maxConcurrency = maxConcurrency;
+        this.executorService = executorService;
+        activeCount = new AtomicInteger(0);
+        executedCount = new LongAdder();
+        rejectedCount = new LongAdder();
+        latencyHistogram = new AtomicLongArray(HISTOGRAM_SIZE);
+    }
+
+    /**
+     * 尝试占用一个并发名额，失败时计入拒绝次数
+     *
+     * @return boolean
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            int active = activeCount.get();
+            if (maxConcurrency > 0 && active >= maxConcurrency) {
+                rejectedCount.increment();
+                return false;
+            }
+            if (activeCount.compareAndSet(active, active + 1)) {
+                return true;
+            }
+        }
+    }
+    /**
+     * 释放并发名额并记录执行耗时
+     *
+     * @param latencyNanos 执行耗时（纳秒）
+     */
+    public void release(long latencyNanos) {
+        activeCount.decrementAndGet();
+        executedCount.increment();
+        long micros = Math.max(latencyNanos / 1000, 1);
+        latencyHistogram.incrementAndGet(Math.min(63 - Long.numberOfLeadingZeros(micros), HISTOGRAM_SIZE - 1));
+    }
+    /**
+     * 释放并发名额并计入拒绝次数，用于提交到线程池被拒绝的情况
+     */
+    public void reject() {
+        activeCount.decrementAndGet();
+        rejectedCount.increment();
+    }
+
+    public String getName() {
+        return name;
+    }
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+    public ExecutorService getExecutorService() {
+        return executorService;
+    }
+    public int getActiveCount() {
+        return activeCount.get();
+    }
+    public long getExecutedCount() {
+        return executedCount.sum();
+    }
+    public long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+    /**
+     * 获取耗时直方图，下标 i 统计耗时在 [2^i, 2^(i+1)) 微秒内的次数
+     *
+     * @return {@link long[] }
+     */
+    public long[] getLatencyHistogram() {
+        long[] histogram = new long[HISTOGRAM_SIZE];
+        for (int i = 0; i < HISTOGRAM_SIZE; i++) {
+            histogram[i] = latencyHistogram.get(i);
+        }
+        return histogram;
+    }
+    /**
+     * 获取耗时百分位（微秒），返回所在分桶的上界
+     *
+     * @param percentile 百分位，0~100
+     * @return long
+     */
+    public long getLatencyPercentile(double percentile) {
+        long[] histogram = getLatencyHistogram();
+        long total = 0;
+        for (long count : histogram) {
+            total += count;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long target = (long) Math.ceil(total * Math.min(Math.max(percentile, 0), 100) / 100);
+        long count = 0;
+        for (int i = 0; i < HISTOGRAM_SIZE; i++) {
+            count += histogram[i];
+            if (count >= target) {
+                return 1L << (i + 1);
+            }
+        }
+        return 1L << HISTOGRAM_SIZE;
+    }
+
+    @Override
+    public String toString() {
+        return "Bulkhead[" + name + "] active=" + getActiveCount() + "/" + maxConcurrency + " executed=" + getExecutedCount()
+                + " rejected=" + getRejectedCount() + " p50=" + getLatencyPercentile(50) + "us p99=" + getLatencyPercentile(99) + "us";
+    }
+}
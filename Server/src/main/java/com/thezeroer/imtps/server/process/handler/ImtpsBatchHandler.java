@@ -0,0 +1,52 @@
+package com.thezeroer.imtps.server.process.handler;
+
+import java.util.List;
+
+/**
+ * IMTPS 批量处理程序
+ * <p>加工中心将同一处理程序命中的数据包攒够 {@link #getBatchSize()} 个或等待 {@link #getBatchDelay()} 微秒后一次交付，
+ * 每个数据包的响应通过各自的 {@link ImtpsContext} 发送</p>
+ *
+ * @author NiZhanBo
+ * @since 2026/10/19
+ * @version 1.0.0
+ */
+public abstract class ImtpsBatchHandler extends ImtpsHandler {
+    /**
+     * IMTPS 批量处理程序
+     *
+     * @param needVerify 是否需要验证，true->会话需要有会话名，false->直接通过
+     */
+    public ImtpsBatchHandler(boolean needVerify) {
+        super(needVerify);
+    }
+
+    /**
+     * 批量执行
+     *
+     * @param imtpsContextList IMTPS 上下文列表，按到达顺序排列
+     */
+    public abstract void executeBatch(List<ImtpsContext> imtpsContextList);
+
+    @Override
+    public final void execute(ImtpsContext imtpsContext) {
+        executeBatch(List.of(imtpsContext));
+    }
+
+    /**
+     * 获取单批最大数量，默认 64
+     *
+     * @return int
+     */
+    public int getBatchSize() {
+        return 64;
+    }
+    /**
+     * 获取单批最长等待时间（微秒），默认 1000
+     *
+     * @return long
+     */
+    public long getBatchDelay() {
+        return 1000;
+    }
+}
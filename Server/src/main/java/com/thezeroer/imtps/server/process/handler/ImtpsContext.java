@@ -1,11 +1,14 @@
 package com.thezeroer.imtps.server.process.handler;
 
 import com.thezeroer.imtps.server.datapacket.DataPacket;
+import com.thezeroer.imtps.server.datapacket.databody.TextDataBody;
+import com.thezeroer.imtps.server.process.ResponseCache;
 import com.thezeroer.imtps.server.session.ImtpsSession;
-import com.thezeroer.imtps.server.session.channel.ImtpsChannel;
 import com.thezeroer.imtps.server.worker.SessionManager;
 
 import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * IMTPS 上下文
@@ -18,11 +21,18 @@ public class ImtpsContext {
     private final SessionManager sessionManager;
     private final ImtpsSession imtpsSession;
     private final DataPacket requestDataPacket;
+    private final ResponseCache responseCache;
+    private List<DataPacket> recordedResponses;
+    private boolean cacheable;
 
     public ImtpsContext(SessionManager sessionManager, ImtpsSession imtpsSession, DataPacket requestDataPacket) {
+        this(sessionManager, imtpsSession, requestDataPacket, null);
+    }
+    public ImtpsContext(SessionManager sessionManager, ImtpsSession imtpsSession, DataPacket requestDataPacket, ResponseCache responseCache) {
         this.sessionManager = sessionManager;
         this.imtpsSession = imtpsSession;
         this.requestDataPacket = requestDataPacket;
+        this.responseCache = responseCache;
     }
 
     /**
@@ -39,12 +49,49 @@ public class ImtpsContext {
      * @param dataPacket 数据包
      */
     public void putResponseDataPacket(DataPacket dataPacket) {
-        sessionManager.putDataPacket(imtpsSession, dataPacket.setTaskId(requestDataPacket.getTaskId()));
+        dataPacket.setTaskId(requestDataPacket.getTaskId());
+        if (recordedResponses != null) {
+            if (dataPacket.getDataBody() == null || dataPacket.getDataBody() instanceof TextDataBody) {
+                recordedResponses.add(dataPacket.clone());
+            } else {
+                cacheable = false;
+            }
+        }
+        sessionManager.putDataPacket(imtpsSession, dataPacket);
     }
     public void putDataPacket(DataPacket dataPacket) {
         sessionManager.putDataPacket(imtpsSession, dataPacket);
     }
 
+    /**
+     * 使路由下的响应缓存失效，用于修改了缓存处理程序所依赖数据的处理程序
+     *
+     * @param way   方式
+     * @param type  类型
+     * @param extra 额外
+     */
+    public void invalidateResponseCache(int way, int type, int extra) {
+        if (responseCache != null) {
+            responseCache.invalidate(way, type, extra);
+        }
+    }
+
+    /**
+     * 开始记录响应，正文不是 {@link TextDataBody} 的响应使本次记录不可缓存
+     */
+    public void startRecording() {
+        recordedResponses = new ArrayList<>(1);
+        cacheable = true;
+    }
+    /**
+     * 获取记录的响应
+     *
+     * @return {@link List }<{@link DataPacket }> 未记录或不可缓存时返回 null
+     */
+    public List<DataPacket> getRecordedResponses() {
+        return cacheable ? recordedResponses : null;
+    }
+
     /**
      * 设置会话名称
      *
@@ -53,17 +100,19 @@ public class ImtpsContext {
      * @return boolean 是否替换了旧会话
      */
     public boolean setSessionName(String sessionName, boolean replace) {
-        imtpsSession.setSessionName(sessionName);
+        ImtpsSession repetitionSession = sessionManager.getSessionRegistry().bindName(imtpsSession, sessionName, replace);
         if (replace) {
-            ImtpsSession repetitionSession = sessionManager.getNameToSessionHashMap().put(sessionName, imtpsSession);
+            sessionManager.sessionNamed(imtpsSession);
             if (repetitionSession != null) {
-                sessionManager.closeChannel(repetitionSession, ImtpsChannel.TYPE.Control, "会话名冲突，关闭旧会话");
+                sessionManager.closeSession(repetitionSession, "会话名冲突，关闭旧会话");
                 return true;
             } else {
                 return false;
             }
         } else {
-            sessionManager.getNameToSessionHashMap().putIfAbsent(sessionName, imtpsSession);
+            if (repetitionSession == null) {
+                sessionManager.sessionNamed(imtpsSession);
+            }
             return false;
         }
     }
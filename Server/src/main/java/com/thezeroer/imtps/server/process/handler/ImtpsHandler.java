@@ -1,5 +1,9 @@
 package com.thezeroer.imtps.server.process.handler;
 
+import com.thezeroer.imtps.server.process.LaneExecutor;
+
+import java.util.concurrent.ExecutorService;
+
 /**
  * IMTPS 处理程序
  *
@@ -43,6 +47,65 @@ public abstract class ImtpsHandler {
      */
     public abstract Object getExtraMatch();
 
+    /**
+     * 获取舱壁名称，同名处理程序共享并发限制与统计，null 为全类名
+     *
+     * @return {@link String }
+     */
+    public String getBulkheadName() {
+        return null;
+    }
+    /**
+     * 获取最大并发数，舱壁已满时响应 SERVER_BUSY，小于等于 0 为不限制
+     *
+     * @return int
+     */
+    public int getMaxConcurrency() {
+        return 0;
+    }
+    /**
+     * 获取专用线程池，null 为加工中心线程池
+     *
+     * @return {@link ExecutorService }
+     */
+    public ExecutorService getExecutorService() {
+        return null;
+    }
+
+    /**
+     * 获取优先通道，通道已满时响应 SERVER_BUSY，默认 {@link LaneExecutor#LANE_NORMAL}，设置专用线程池时不生效
+     *
+     * @return {@link String }
+     */
+    public String getLane() {
+        return LaneExecutor.LANE_NORMAL;
+    }
+    /**
+     * 获取响应缓存时长（毫秒），仅用于幂等的处理程序，相同路由与正文的请求在时长内直接发送缓存的响应，小于等于 0 为不缓存
+     * <p>缓存键默认与会话无关，所有会话共享同一份响应；响应因用户而异时需同时重写 {@link #isCachePerSession()}</p>
+     *
+     * @return long
+     */
+    public long getCacheTtl() {
+        return 0;
+    }
+    /**
+     * 是否按会话缓存，为是时缓存键与合并请求的键带上会话名（未验证的会话为会话ID），不同会话之间不共享响应
+     *
+     * @return boolean
+     */
+    public boolean isCachePerSession() {
+        return false;
+    }
+    /**
+     * 是否合并请求，相同路由与正文的并发请求只执行一次，响应复制给所有等待的请求，仅用于与会话无关的幂等处理程序
+     *
+     * @return boolean
+     */
+    public boolean isSingleFlight() {
+        return false;
+    }
+
     public final boolean isNeedVerify() {
         return needVerify;
     }
@@ -1,12 +1,15 @@
 package com.thezeroer.imtps.server.process.task;
 
 import com.thezeroer.imtps.server.datapacket.DataPacket;
+import com.thezeroer.imtps.server.util.TimingWheel;
 import com.thezeroer.imtps.server.util.Tool;
 import com.thezeroer.imtps.server.view.AbstractTransmitView;
 import com.thezeroer.imtps.server.session.ImtpsSession;
 
 import java.security.NoSuchAlgorithmException;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
@@ -19,7 +22,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
 public abstract class AbstractTask<T> {
     /** 默认模式<br>提交任务后立即返回 */
     public static final byte PATTERN_DEFAULT = 0;
-    /** 队列模式<br>如果此时没有等待响应的任务，提交此任务后立即返回<br>否则加入请求队列后立即返回，等待响应后请求 */
+    /** 队列模式<br>同一排序键下等待响应的任务未超过窗口时，提交此任务后立即返回<br>否则加入该排序键的请求队列后立即返回，窗口空出后按提交顺序请求 */
     public static final byte PATTERN_QUEUE = 1;
     /** 等待模式<br>提交任务后等待数据 */
     public static final byte PATTERN_WAIT = 2;
@@ -27,7 +30,10 @@ public abstract class AbstractTask<T> {
     private final String taskId;
     private long waitingTime, expirationTime;
     private byte pattern = PATTERN_DEFAULT;
-    private final AtomicBoolean live;
+    private final AtomicBoolean live, windowHeld;
+    private String orderKey;
+    private volatile TimingWheel.Timeout timeout;
+    private volatile CompletableFuture<T> future;
     protected T response;
 
     private AbstractTransmitView sendView, receiveView;
@@ -43,6 +49,7 @@ public abstract class AbstractTask<T> {
         this.taskId = taskId;
         waitingTime = 10000L;
         live = new AtomicBoolean(true);
+        windowHeld = new AtomicBoolean(false);
     }
 
 
@@ -65,6 +72,17 @@ public abstract class AbstractTask<T> {
         this.waitingTime = seconds * 1000L;
         return this;
     }
+    /**
+     * 设置等待时间
+     *
+     * @param time 时间
+     * @param unit 单位
+     * @return {@link ImtpsTask }
+     */
+    public AbstractTask<?> setWaitingTime(long time, TimeUnit unit) {
+        this.waitingTime = unit.toMillis(time);
+        return this;
+    }
     /**
      * 设置模式，默认模式提交任务后立即返回
      *
@@ -76,6 +94,20 @@ public abstract class AbstractTask<T> {
         return this;
     }
 
+    /**
+     * 设置排序键，队列模式下同一排序键的任务按窗口流水请求，默认为所属会话
+     *
+     * @param orderKey 排序键
+     * @return {@link ImtpsTask }
+     */
+    public AbstractTask<?> setOrderKey(String orderKey) {
+        this.orderKey = orderKey;
+        return this;
+    }
+    public String getOrderKey() {
+        return orderKey;
+    }
+
     public void setSendViewOperationObject(Object object) {
         sendView.setOperationObject(object);
     }
@@ -132,7 +164,49 @@ public abstract class AbstractTask<T> {
     public void updateExpirationTime() {
         expirationTime = System.currentTimeMillis() + waitingTime;
     }
+    public TimingWheel.Timeout getTimeout() {
+        return timeout;
+    }
+    public void setTimeout(TimingWheel.Timeout timeout) {
+        this.timeout = timeout;
+    }
+    public void cancelTimeout() {
+        if (timeout instanceof TimingWheel.Timeout oldTimeout) {
+            oldTimeout.cancel();
+        }
+    }
+
+    /**
+     * 创建异步结果，响应到达时完成
+     *
+     * @return {@link CompletableFuture }<{@link T }>
+     */
+    public CompletableFuture<T> createFuture() {
+        future = new CompletableFuture<>();
+        return future;
+    }
+    public CompletableFuture<T> getFuture() {
+        return future;
+    }
+    public void completeFuture(Throwable throwable) {
+        if (future instanceof CompletableFuture<T> taskFuture) {
+            if (throwable == null) {
+                taskFuture.complete(response);
+            } else {
+                taskFuture.completeExceptionally(throwable);
+            }
+        }
+    }
 
+    /**
+     * 占用或释放队列窗口
+     *
+     * @param hold 占用
+     * @return boolean 状态是否由本次调用改变
+     */
+    public boolean holdWindow(boolean hold) {
+        return windowHeld.compareAndSet(!hold, hold);
+    }
     public boolean isLive() {
         return live.get();
     }
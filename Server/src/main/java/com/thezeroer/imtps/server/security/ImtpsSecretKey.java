@@ -17,6 +17,13 @@ public class ImtpsSecretKey {
     public final static int FINISHEDMESSAGE_LENGTH = 32;
     public final static int NONCE_LENGTH = 16;
     public final static int TAG_LENGTH = 32;
+    /** 会话恢复请求的首字节，完整握手的首字节为公钥编码的 0x30，二者不会冲突 */
+    public final static byte RESUME_FLAG = 0;
+    /** 会话恢复票据长度，票据由服务端加密，客户端只保存和回传 */
+    public final static int TICKET_LENGTH = NONCE_LENGTH + 64 + Long.BYTES + TAG_LENGTH;
+
+    /** SecureRandom 线程安全，共用一个实例，避免每个随机数都重新创建与播种 */
+    private final static SecureRandom SECURE_RANDOM = new SecureRandom();
 
     private final SecretKey aesKey, macKey;
 
@@ -28,6 +35,15 @@ public class ImtpsSecretKey {
         aesKey = new SecretKeySpec(derived, 0, 32, "AES");
         macKey = new SecretKeySpec(derived, 32, 32, "HmacSHA256");
     }
+    /**
+     * 以 64 字节的随机密钥直接构造，前 32 字节用于加密，后 32 字节用于认证
+     *
+     * @param secret 密钥
+     */
+    public ImtpsSecretKey(byte[] secret) {
+        aesKey = new SecretKeySpec(secret, 0, 32, "AES");
+        macKey = new SecretKeySpec(secret, 32, 32, "HmacSHA256");
+    }
 
     /**
      * 创建加密密码
@@ -93,6 +109,17 @@ public class ImtpsSecretKey {
         return cipher.doFinal(encrypted);
     }
 
+    /**
+     * 以会话密钥计算消息认证码，用于会话恢复时证明持有密钥
+     *
+     * @param srcBytes 源字节
+     * @return {@link byte[] }
+     */
+    public byte[] createMac(byte[] srcBytes) throws NoSuchAlgorithmException, InvalidKeyException {
+        Mac mac = Mac.getInstance(MAC_ALGORITHM);
+        mac.init(macKey);
+        return mac.doFinal(srcBytes);
+    }
     public byte[] getFinishedMessage() throws NoSuchAlgorithmException, InvalidKeyException {
         Mac mac = Mac.getInstance(MAC_ALGORITHM);
         mac.init(macKey);
@@ -101,7 +128,7 @@ public class ImtpsSecretKey {
 
     public static byte[] createNonce() {
         byte[] nonce = new byte[NONCE_LENGTH];
-        new SecureRandom().nextBytes(nonce);
+        SECURE_RANDOM.nextBytes(nonce);
         return nonce;
     }
     public static KeyPair createKeyPair() throws NoSuchAlgorithmException {
@@ -0,0 +1,93 @@
+package com.thezeroer.imtps.server.security;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 临时密钥对池
+ * <p>后台线程预先生成 {@link ImtpsSecretKey#DH_ALGORITHM} 密钥对并保持池满，握手时直接取用，把生成密钥对的开销移出握手路径。
+ * 每个密钥对只取出一次，不会在两次握手之间复用；池空时在调用线程现场生成并计入未命中数</p>
+ *
+ * @author NiZhanBo
+ * @since 2026/10/19
+ * @version 1.0.0
+ */
+public class KeyPairPool {
+    private volatile ArrayBlockingQueue<KeyPair> keyPairQueue;
+    private final LongAdder missCount;
+    private volatile Thread thread;
+
+    public KeyPairPool(int capacity) {
+        keyPairQueue = new ArrayBlockingQueue<>(Math.max(capacity, 1));
+        missCount = new LongAdder();
+    }
+
+    /**
+     * 取出一个密钥对，首次调用时启动后台生成线程
+     *
+     * @return {@link KeyPair }
+     */
+    public KeyPair take() throws NoSuchAlgorithmException {
+        if (thread == null) {
+            start();
+        }
+        KeyPair keyPair = keyPairQueue.poll();
+        if (keyPair == null) {
+            missCount.increment();
+            keyPair = ImtpsSecretKey.createKeyPair();
+        }
+        return keyPair;
+    }
+    /**
+     * 设置池容量，池中已生成的密钥对丢弃
+     *
+     * @param capacity 容量
+     */
+    public synchronized void setCapacity(int capacity) {
+        keyPairQueue = new ArrayBlockingQueue<>(Math.max(capacity, 1));
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+    public synchronized void shutdown() {
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+        keyPairQueue.clear();
+    }
+
+    public int size() {
+        return keyPairQueue.size();
+    }
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    private synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        thread = new Thread(this::work, "KeyPairPool");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    private void work() {
+        KeyPairGenerator keyPairGenerator;
+        try {
+            keyPairGenerator = KeyPairGenerator.getInstance(ImtpsSecretKey.DH_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            return;
+        }
+        while (thread == Thread.currentThread()) {
+            try {
+                keyPairQueue.put(keyPairGenerator.generateKeyPair());
+            } catch (InterruptedException ignored) {
+                // 容量变更时换用新队列继续生成，停止时退出
+            }
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.thezeroer.imtps.server.security;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+
+/**
+ * 会话恢复票据
+ * <p>票据内容为会话 ID 与票据版本，以服务端启动时随机生成的票据密钥加密并认证，客户端无法读取或伪造。
+ * 票据只证明会话 ID，恢复时客户端还需以会话密钥计算票据的消息认证码，证明其持有原会话的密钥；
+ * 每次恢复后版本递增，旧票据随之失效</p>
+ *
+ * @author NiZhanBo
+ * @since 2026/10/19
+ * @version 1.0.0
+ */
+public class SessionTicket {
+    private static final int SESSIONID_LENGTH = 64;
+    private final ImtpsSecretKey ticketKey;
+
+    public SessionTicket() {
+        byte[] secret = new byte[64];
+        new SecureRandom().nextBytes(secret);
+        ticketKey = new ImtpsSecretKey(secret);
+    }
+
+    /**
+     * 签发票据
+     *
+     * @param sessionId  会话 ID
+     * @param generation 票据版本
+     * @return {@link byte[] }，长度为 {@link ImtpsSecretKey#TICKET_LENGTH}
+     */
+    public byte[] issue(String sessionId, long generation) throws Exception {
+        return ticketKey.encrypt(ByteBuffer.allocate(SESSIONID_LENGTH + Long.BYTES)
+                .put(sessionId.getBytes(StandardCharsets.UTF_8)).putLong(generation).array());
+    }
+    /**
+     * 打开票据
+     *
+     * @param ticket 票据
+     * @return {@link Content }
+     * @throws SecurityException 票据不是由本服务端签发或已被篡改
+     */
+    public Content open(byte[] ticket) throws Exception {
+        if (ticket.length != ImtpsSecretKey.TICKET_LENGTH) {
+            throw new SecurityException("Ticket length mismatch");
+        }
+        ByteBuffer byteBuffer = ByteBuffer.wrap(ticketKey.decrypt(ticket));
+        byte[] sessionId = new byte[SESSIONID_LENGTH];
+        byteBuffer.get(sessionId);
+        return new Content(new String(sessionId, StandardCharsets.UTF_8), byteBuffer.getLong());
+    }
+
+    public static class Content {
+        private final String sessionId;
+        private final long generation;
+
+        Content(String sessionId, long generation) {
+            this.sessionId = sessionId;
+            this.generation = generation;
+        }
+
+        public String getSessionId() {
+            return sessionId;
+        }
+        public long getGeneration() {
+            return generation;
+        }
+    }
+}
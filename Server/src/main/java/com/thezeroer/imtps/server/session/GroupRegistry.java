@@ -0,0 +1,273 @@
+package com.thezeroer.imtps.server.session;
+
+import com.thezeroer.imtps.server.datapacket.DataPacket;
+import com.thezeroer.imtps.server.session.channel.ImtpsChannel;
+import com.thezeroer.imtps.server.worker.SessionManager;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * 群组注册表
+ * <p>群组成员按会话名称散列到多个分片，群发时各分片并行投递到会话发送队列，正文只编码一次；
+ * 会话设置名称时通过群组加载器自动加入群组，会话关闭时自动退出所有群组，群组最后一个成员退出时群组随之删除</p>
+ *
+ * @author NiZhanBo
+ * @since 2026/10/19
+ * @version 1.0.0
+ */
+public class GroupRegistry implements SessionListener {
+    private final ConcurrentHashMap<String, Group> groupHashMap;
+    private final ConcurrentHashMap<ImtpsSession, Set<String>> sessionGroupHashMap;
+    private final int shardCount;
+    private final ExecutorService fanOutPool;
+    private volatile Function<String, Collection<String>> groupLoader;
+    private volatile int parallelThreshold;
+
+    private final SessionManager sessionManager;
+
+    public GroupRegistry(SessionManager sessionManager) {
+        groupHashMap = new ConcurrentHashMap<>();
+        sessionGroupHashMap = new ConcurrentHashMap<>();
+        int poolSize = Runtime.getRuntime().availableProcessors();
+        shardCount = Integer.highestOneBit(poolSize - 1 | 1) << 1;
+        AtomicInteger threadIndex = new AtomicInteger(0);
+        fanOutPool = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "GroupRegistry[FanOut" + threadIndex.getAndIncrement() + "]");
+            thread.setDaemon(true);
+            return thread;
+        });
+        parallelThreshold = 256;
+        this.sessionManager = sessionManager;
+    }
+
+    /**
+     * 会话加入群组
+     *
+     * @param groupName    群组名称
+     * @param imtpsSession 会话，需已设置会话名称
+     * @return boolean 是否新加入
+     */
+    public boolean join(String groupName, ImtpsSession imtpsSession) {
+        if (!(imtpsSession.getSessionName() instanceof String sessionName)) {
+            return false;
+        }
+        boolean[] joined = new boolean[1];
+        groupHashMap.compute(groupName, (name, group) -> {
+            if (group == null) {
+                group = new Group(shardCount);
+            }
+            joined[0] = group.add(sessionName, imtpsSession);
+            return group;
+        });
+        sessionGroupHashMap.computeIfAbsent(imtpsSession, key -> ConcurrentHashMap.newKeySet()).add(groupName);
+        if (imtpsSession.getControlChannel().getStatus() == ImtpsChannel.STATUS.Unconnected) {
+            sessionClosed(imtpsSession);
+            return false;
+        }
+        return joined[0];
+    }
+    /**
+     * 会话退出群组
+     *
+     * @param groupName    群组名称
+     * @param imtpsSession 会话
+     * @return boolean 是否在群组中
+     */
+    public boolean leave(String groupName, ImtpsSession imtpsSession) {
+        if (sessionGroupHashMap.get(imtpsSession) instanceof Set<String> groupNames) {
+            groupNames.remove(groupName);
+        }
+        return removeMember(groupName, imtpsSession);
+    }
+    /**
+     * 删除群组，成员不会收到通知
+     *
+     * @param groupName 群组名称
+     * @return boolean 是否存在
+     */
+    public boolean removeGroup(String groupName) {
+        if (groupHashMap.remove(groupName) instanceof Group group) {
+            for (ImtpsSession imtpsSession : group.members()) {
+                if (sessionGroupHashMap.get(imtpsSession) instanceof Set<String> groupNames) {
+                    groupNames.remove(groupName);
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 关闭群发线程池，尚未开始的分片投递不再执行
+     */
+    public void shutdown() {
+        fanOutPool.shutdownNow();
+    }
+    /**
+     * 群发数据包，成员数未达到并行阈值时在调用线程投递，返回已完成的结果；
+     * 否则各分片提交到群发线程池后立即返回，全部分片投递完成时结果完成
+     *
+     * @param dataPacket 数据包，不会被修改
+     * @param groupName  群组名称
+     * @return {@link CompletableFuture }<{@link Integer }> 入队成功的会话数，发送队列拒绝的不计入
+     */
+    public CompletableFuture<Integer> sendToGroup(DataPacket dataPacket, String groupName) throws Exception {
+        if (!(groupHashMap.get(groupName) instanceof Group group) || group.size() == 0) {
+            return CompletableFuture.completedFuture(0);
+        }
+        DataPacket template = sessionManager.createBroadcastTemplate(dataPacket);
+        if (group.size() < parallelThreshold) {
+            int count = 0;
+            for (Set<ImtpsSession> shard : group.shards) {
+                count += deliver(template, shard);
+            }
+            return CompletableFuture.completedFuture(count);
+        }
+        List<CompletableFuture<Integer>> futureList = new ArrayList<>(shardCount);
+        for (Set<ImtpsSession> shard : group.shards) {
+            if (!shard.isEmpty()) {
+                futureList.add(CompletableFuture.supplyAsync(() -> deliver(template, shard), fanOutPool));
+            }
+        }
+        return CompletableFuture.allOf(futureList.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+            int count = 0;
+            for (CompletableFuture<Integer> future : futureList) {
+                count += future.join();
+            }
+            return count;
+        });
+    }
+    private int deliver(DataPacket template, Set<ImtpsSession> shard) {
+        int count = 0;
+        for (ImtpsSession imtpsSession : shard) {
+            // 不在 Block 策略上等待，否则一个慢消费者会让同一分片的其他成员逐个等待
+            if (sessionManager.putDataPacket(imtpsSession, template.clone(), false)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 移出群组成员，与加入在同一个映射节点上完成，群组变空时删除
+     */
+    private boolean removeMember(String groupName, ImtpsSession imtpsSession) {
+        boolean[] removed = new boolean[1];
+        groupHashMap.computeIfPresent(groupName, (name, group) -> {
+            removed[0] = group.remove(imtpsSession);
+            return group.size() == 0 ? null : group;
+        });
+        return removed[0];
+    }
+
+    @Override
+    public void sessionNamed(ImtpsSession imtpsSession) {
+        if (groupLoader != null && groupLoader.apply(imtpsSession.getSessionName()) instanceof Collection<String> groupNames) {
+            for (String groupName : groupNames) {
+                join(groupName, imtpsSession);
+            }
+        }
+    }
+    @Override
+    public void sessionClosed(ImtpsSession imtpsSession) {
+        if (sessionGroupHashMap.remove(imtpsSession) instanceof Set<String> groupNames) {
+            for (String groupName : groupNames) {
+                removeMember(groupName, imtpsSession);
+            }
+        }
+    }
+
+    /**
+     * 设置群组加载器，会话设置名称时以会话名称查询其所属群组并自动加入
+     *
+     * @param groupLoader 群组加载器
+     */
+    public void setGroupLoader(Function<String, Collection<String>> groupLoader) {
+        this.groupLoader = groupLoader;
+    }
+    /**
+     * 设置并行阈值，成员数达到阈值时群发按分片并行，默认 256
+     *
+     * @param parallelThreshold 并行阈值
+     */
+    public void setParallelThreshold(int parallelThreshold) {
+        this.parallelThreshold = parallelThreshold;
+    }
+    /**
+     * 获取群组成员的会话名称
+     *
+     * @param groupName 群组名称
+     * @return {@link List }<{@link String }>
+     */
+    public List<String> getMemberNames(String groupName) {
+        List<String> memberNames = new ArrayList<>();
+        if (groupHashMap.get(groupName) instanceof Group group) {
+            for (ImtpsSession imtpsSession : group.members()) {
+                memberNames.add(imtpsSession.getSessionName());
+            }
+        }
+        return memberNames;
+    }
+    public int getGroupSize(String groupName) {
+        return groupHashMap.get(groupName) instanceof Group group ? group.size() : 0;
+    }
+    public Set<String> getGroupNames(ImtpsSession imtpsSession) {
+        return sessionGroupHashMap.get(imtpsSession) instanceof Set<String> groupNames ? Set.copyOf(groupNames) : Set.of();
+    }
+    public Set<String> getAllGroupName() {
+        return groupHashMap.keySet();
+    }
+
+    static class Group {
+        private final Set<ImtpsSession>[] shards;
+        private final AtomicInteger size;
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Group(int shardCount) {
+            shards = new Set[shardCount];
+            for (int i = 0; i < shardCount; i++) {
+                shards[i] = ConcurrentHashMap.newKeySet();
+            }
+            size = new AtomicInteger(0);
+        }
+
+        private boolean add(String sessionName, ImtpsSession imtpsSession) {
+            if (shards[shardIndex(sessionName)].add(imtpsSession)) {
+                size.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+        private boolean remove(ImtpsSession imtpsSession) {
+            if (shards[shardIndex(imtpsSession.getSessionName())].remove(imtpsSession)) {
+                size.decrementAndGet();
+                return true;
+            }
+            // 加入群组后修改过会话名称
+            for (Set<ImtpsSession> shard : shards) {
+                if (shard.remove(imtpsSession)) {
+                    size.decrementAndGet();
+                    return true;
+                }
+            }
+            return false;
+        }
+        private int shardIndex(String sessionName) {
+            int hash = sessionName.hashCode();
+            return (hash ^ hash >>> 16) & (shards.length - 1);
+        }
+        private List<ImtpsSession> members() {
+            List<ImtpsSession> members = new ArrayList<>(size.get());
+            for (Set<ImtpsSession> shard : shards) {
+                members.addAll(shard);
+            }
+            return members;
+        }
+        private int size() {
+            return size.get();
+        }
+    }
+}
@@ -5,6 +5,8 @@ import com.thezeroer.imtps.server.security.ImtpsSecretKey;
 import com.thezeroer.imtps.server.session.channel.ControlChannel;
 import com.thezeroer.imtps.server.session.channel.DataChannel;
 import com.thezeroer.imtps.server.session.channel.ImtpsChannel;
+import com.thezeroer.imtps.server.session.channel.MediaChannel;
+import com.thezeroer.imtps.server.util.TimingWheel;
 
 import java.io.IOException;
 import java.net.InetAddress;
@@ -12,6 +14,7 @@ import java.net.InetSocketAddress;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
 import java.util.EnumMap;
+import java.util.HexFormat;
 
 /**
  * IMTPS 会话
@@ -22,24 +25,32 @@ import java.util.EnumMap;
  */
 public class ImtpsSession {
     public static final int SESSIONID_LENGTH = 64;
+    private static final HexFormat HEX_FORMAT = HexFormat.of();
 
-    private final String sessionId;
+    /** 会话 ID 的 256 位，按十六进制字符串的顺序高位在前，不保留字符串 */
+    private final long sessionId0, sessionId1, sessionId2, sessionId3;
     private final ImtpsSecretKey imtpsSecretKey;
     private final EnumMap<ImtpsChannel.TYPE, ImtpsChannel> channelEnumMap;
-    private final InetAddress remoteAddress, localAddress;
+    private volatile InetAddress remoteAddress, localAddress;
     private final long creationTime;
     private volatile String sessionName;
+    private long ticketGeneration;
+    private TimingWheel.Timeout suspendTimeout;
 
     private Object attachment;
 
     public ImtpsSession(SelectionKey selectionKey, ImtpsSecretKey imtpsSecretKey, String sessionId) throws IOException {
-        this.sessionId = sessionId;
+        sessionId0 = parseSessionId(sessionId, 0);
+        sessionId1 = parseSessionId(sessionId, 1);
+        sessionId2 = parseSessionId(sessionId, 2);
+        sessionId3 = parseSessionId(sessionId, 3);
         this.imtpsSecretKey = imtpsSecretKey;
         channelEnumMap = new EnumMap<>(ImtpsChannel.TYPE.class);
         creationTime = System.currentTimeMillis();
         channelEnumMap.put(ImtpsChannel.TYPE.Control, new ControlChannel(selectionKey));
         channelEnumMap.put(ImtpsChannel.TYPE.DataBasic, new DataChannel(ImtpsChannel.TYPE.DataBasic));
         channelEnumMap.put(ImtpsChannel.TYPE.DataFile,  new DataChannel(ImtpsChannel.TYPE.DataFile));
+        channelEnumMap.put(ImtpsChannel.TYPE.DataMedia, new MediaChannel());
         remoteAddress = ((InetSocketAddress) ((SocketChannel) selectionKey.channel()).getRemoteAddress()).getAddress();
         localAddress = ((InetSocketAddress) ((SocketChannel) selectionKey.channel()).getLocalAddress()).getAddress();
     }
@@ -58,9 +69,54 @@ public class ImtpsSession {
         if (type == ImtpsChannel.TYPE.Control) {
             channelEnumMap.get(ImtpsChannel.TYPE.DataBasic).channelClosed();
             channelEnumMap.get(ImtpsChannel.TYPE.DataFile).channelClosed();
+            channelEnumMap.get(ImtpsChannel.TYPE.DataMedia).channelClosed();
         }
     }
 
+    /**
+     * 挂起会话，关闭全部连接但保留名称、附件与发送队列，等待客户端恢复
+     */
+    public void suspend() throws IOException {
+        channelEnumMap.get(ImtpsChannel.TYPE.Control).channelClosed();
+        ((DataChannel) channelEnumMap.get(ImtpsChannel.TYPE.DataBasic)).channelSuspended();
+        ((DataChannel) channelEnumMap.get(ImtpsChannel.TYPE.DataFile)).channelSuspended();
+    }
+    /**
+     * 会话恢复，控制通道换用新连接
+     *
+     * @param selectionKey 选择键
+     */
+    public void reattach(SelectionKey selectionKey) throws IOException {
+        getControlChannel().setSelectionKey(selectionKey);
+        remoteAddress = ((InetSocketAddress) ((SocketChannel) selectionKey.channel()).getRemoteAddress()).getAddress();
+        localAddress = ((InetSocketAddress) ((SocketChannel) selectionKey.channel()).getLocalAddress()).getAddress();
+    }
+    /**
+     * 核对并更新票据版本，票据只能使用一次
+     *
+     * @param generation 票据中的版本
+     * @return boolean 版本一致时返回 true，并使该票据失效
+     */
+    public synchronized boolean renewTicket(long generation) {
+        if (generation != ticketGeneration) {
+            return false;
+        }
+        ticketGeneration++;
+        return true;
+    }
+    public synchronized long getTicketGeneration() {
+        return ticketGeneration;
+    }
+    public synchronized TimingWheel.Timeout getSuspendTimeout() {
+        return suspendTimeout;
+    }
+    public synchronized void setSuspendTimeout(TimingWheel.Timeout suspendTimeout) {
+        if (this.suspendTimeout != null) {
+            this.suspendTimeout.cancel();
+        }
+        this.suspendTimeout = suspendTimeout;
+    }
+
     public ImtpsChannel getChannel(ImtpsChannel.TYPE type) {
         return channelEnumMap.get(type);
     }
@@ -70,11 +126,43 @@ public class ImtpsSession {
     public DataChannel getDataChannel(DataChannel.TYPE type) {
         return (DataChannel) channelEnumMap.get(type);
     }
+    public MediaChannel getMediaChannel() {
+        return (MediaChannel) channelEnumMap.get(ImtpsChannel.TYPE.DataMedia);
+    }
     public ImtpsSecretKey getImtpsSecretKey() {
         return imtpsSecretKey;
     }
+    /**
+     * 获取会话 ID，每次调用由 256 位重新格式化为十六进制字符串
+     *
+     * @return {@link String }
+     */
     public String getSessionId() {
-        return sessionId;
+        return HEX_FORMAT.toHexDigits(sessionId0) + HEX_FORMAT.toHexDigits(sessionId1)
+                + HEX_FORMAT.toHexDigits(sessionId2) + HEX_FORMAT.toHexDigits(sessionId3);
+    }
+    public long getSessionIdHigh() {
+        return sessionId0;
+    }
+    public long getSessionIdLow() {
+        return sessionId1;
+    }
+    /**
+     * 会话 ID 的全部 256 位是否相同
+     */
+    public boolean matchSessionId(long sessionId0, long sessionId1, long sessionId2, long sessionId3) {
+        return this.sessionId0 == sessionId0 && this.sessionId1 == sessionId1 && this.sessionId2 == sessionId2 && this.sessionId3 == sessionId3;
+    }
+    /**
+     * 解析会话 ID 的第 index 个 64 位（16 个十六进制字符）
+     *
+     * @param sessionId 会话 ID
+     * @param index     0 至 3
+     * @return long
+     * @throws NumberFormatException 不是十六进制
+     */
+    public static long parseSessionId(String sessionId, int index) throws NumberFormatException {
+        return Long.parseUnsignedLong(sessionId, index * 16, index * 16 + 16, 16);
     }
     public InetAddress getRemoteAddress() {
         return remoteAddress;
@@ -96,8 +184,17 @@ public class ImtpsSession {
         return attachment;
     }
 
-    public void putSendQueue(DataPacket dataPacket) {
-        ((DataChannel) channelEnumMap.get(ImtpsChannel.chooseType(dataPacket.getDataBodyType()))).getSendQueue().add(dataPacket);
+    /**
+     * 数据包加入对应数据通道的发送队列
+     *
+     * @param dataPacket 数据包
+     * @return boolean 是否入队，发送队列超出上限时按其策略可能不入队
+     */
+    public boolean putSendQueue(DataPacket dataPacket) {
+        return putSendQueue(dataPacket, true);
+    }
+    public boolean putSendQueue(DataPacket dataPacket, boolean block) {
+        return ((DataChannel) channelEnumMap.get(ImtpsChannel.chooseType(dataPacket.getDataBodyType()))).getSendQueue().offer(dataPacket, block);
     }
     public DataPacket getSendDataPacket(DataChannel.TYPE type) {
         return ((DataChannel) channelEnumMap.get(type)).getSendQueue().poll();
@@ -0,0 +1,472 @@
+package com.thezeroer.imtps.server.session;
+
+import com.thezeroer.imtps.server.datapacket.DataPacket;
+import com.thezeroer.imtps.server.datapacket.PacketHandler;
+import com.thezeroer.imtps.server.datapacket.databody.AbstractDataBody;
+import com.thezeroer.imtps.server.log.ImtpsLogger;
+import com.thezeroer.imtps.server.worker.SessionManager;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * 离线消息存储
+ * <p>只追加的内存映射分段日志，无法投递的数据包以明文编码按接收者会话名称写入，接收者设置会话名称时按写入顺序投递，
+ * 投递进度以确认记录追加到日志，重启后重放日志重建索引；最旧的分段中没有待投递记录时删除，
+ * 超过保留时间的记录与超出容量上限的最旧分段被丢弃，空闲时也按压缩间隔定期压缩；写入后按刷盘间隔批量 force，间隔内的多次写入共用一次刷盘；
+ * 重放时遇到不完整或损坏的记录即停止，从该位置继续写入</p>
+ *
+ * @author NiZhanBo
+ * @since 2026/10/19
+ * @version 1.0.0
+ */
+public final class OfflineStore implements SessionListener {
+    private static final byte RECORD_END = 0;
+    private static final byte RECORD_DATA = 1;
+    private static final byte RECORD_ACK = 2;
+    /** 类型(1) + 记录长度(4) + 时间(8) + 名称长度(2) */
+    private static final int RECORD_HEADER_SIZE = 15;
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final long COMPACT_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+
+    private final Path directory;
+    private final TreeMap<Long, Segment> segmentTreeMap;
+    private final HashMap<String, ArrayDeque<Entry>> queueHashMap;
+    private final HashSet<String> deliveringSet;
+    private int segmentSize;
+    private long retention, maxSize, totalSize, forceInterval;
+    private Segment activeSegment;
+    private ScheduledExecutorService scheduler;
+    private boolean forceScheduled, shutdown;
+
+    private final SessionManager sessionManager;
+    private final PacketHandler packetHandler;
+    private final ImtpsLogger imtpsLogger;
+
+    public OfflineStore(Path directory, SessionManager sessionManager, PacketHandler packetHandler, ImtpsLogger imtpsLogger) throws IOException {
+        this.directory = directory;
+        segmentTreeMap = new TreeMap<>();
+        queueHashMap = new HashMap<>();
+        deliveringSet = new HashSet<>();
+        segmentSize = 64 * 1024 * 1024;
+        retention = TimeUnit.DAYS.toMillis(7);
+        maxSize = Long.MAX_VALUE;
+        forceInterval = 1000;
+        this.sessionManager = sessionManager;
+        this.packetHandler = packetHandler;
+        this.imtpsLogger = imtpsLogger;
+        Files.createDirectories(directory);
+        load();
+        getScheduler().scheduleWithFixedDelay(this::compact, COMPACT_INTERVAL, COMPACT_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 存储数据包，仅存储基本类型的正文，写入后接收者已在线时立即投递
+     *
+     * @param sessionName 接收者会话名称
+     * @param dataPacket  数据包，不会被修改
+     * @return boolean 是否已存储
+     */
+    public boolean store(String sessionName, DataPacket dataPacket) {
+        if (dataPacket.getDataBodyType() != AbstractDataBody.TYPE.Basic) {
+            return false;
+        }
+        try {
+            byte[] packet = packetHandler.encodeDataPacket(dataPacket);
+            synchronized (this) {
+                Entry entry = append(RECORD_DATA, sessionName, packet.length, buffer -> buffer.put(packet));
+                entry.segment.liveCount++;
+                queueHashMap.computeIfAbsent(sessionName, name -> new ArrayDeque<>()).add(entry);
+                if (entry.position == 0) {
+                    compactLocked();
+                }
+            }
+        } catch (Exception e) {
+            imtpsLogger.log(ImtpsLogger.LEVEL_ERROR, "离线消息[$]写入出错", sessionName, e);
+            return false;
+        }
+        // 写入期间接收者上线
+        if (sessionManager.getNameToSessionHashMap().get(sessionName) instanceof ImtpsSession imtpsSession) {
+            sessionNamed(imtpsSession);
+        }
+        return true;
+    }
+
+    /**
+     * 接收者是否还有未投递完的离线消息，此时发给它的在线消息也应写入日志，由投递线程按顺序投递
+     *
+     * @param sessionName 接收者会话名称
+     * @return boolean
+     */
+    public synchronized boolean hasPending(String sessionName) {
+        return queueHashMap.containsKey(sessionName) || deliveringSet.contains(sessionName);
+    }
+
+    /**
+     * 投递接收者的离线消息，在锁外逐条放入发送队列，只确认已成功入队的记录
+     * <p>同一接收者同时只有一个线程投递，投递期间新存储的消息由该线程继续投递；入队失败或解码出错时停止本次投递，
+     * 剩余记录保留到下次投递（接收者再次设置会话名称或有新消息写入时）</p>
+     */
+    @Override
+    public void sessionNamed(ImtpsSession imtpsSession) {
+        String sessionName = imtpsSession.getSessionName();
+        synchronized (this) {
+            if (!queueHashMap.containsKey(sessionName) || !deliveringSet.add(sessionName)) {
+                return;
+            }
+        }
+        int deliveredCount = 0;
+        while (true) {
+            List<Entry> entryList;
+            List<ByteBuffer> payloadList;
+            synchronized (this) {
+                if (!(queueHashMap.get(sessionName) instanceof ArrayDeque<Entry> queue) || queue.isEmpty()) {
+                    queueHashMap.remove(sessionName);
+                    deliveringSet.remove(sessionName);
+                    break;
+                }
+                entryList = new ArrayList<>(queue);
+                payloadList = new ArrayList<>(entryList.size());
+                for (Entry entry : entryList) {
+                    payloadList.add(readPayload(entry));
+                }
+            }
+            int queuedCount = 0;
+            for (ByteBuffer payload : payloadList) {
+                try {
+                    if (!sessionManager.putDataPacket(imtpsSession, packetHandler.decodeDataPacket(payload))) {
+                        break;
+                    }
+                } catch (Exception e) {
+                    imtpsLogger.log(ImtpsLogger.LEVEL_ERROR, "离线消息[$]读取出错", sessionName, e);
+                    break;
+                }
+                queuedCount++;
+            }
+            synchronized (this) {
+                if (queuedCount > 0) {
+                    acknowledge(sessionName, entryList.subList(0, queuedCount));
+                    deliveredCount += queuedCount;
+                }
+                if (queuedCount < entryList.size()) {
+                    deliveringSet.remove(sessionName);
+                    break;
+                }
+            }
+        }
+        if (deliveredCount > 0) {
+            imtpsLogger.log(ImtpsLogger.LEVEL_DEBUG, "投递离线消息[$]条至[$]", deliveredCount, sessionName);
+            synchronized (this) {
+                compactLocked();
+            }
+        }
+    }
+
+    /**
+     * 压缩：丢弃超过保留时间的记录，删除最旧的无待投递记录的分段，超出容量上限时丢弃最旧的分段
+     */
+    public synchronized void compact() {
+        compactLocked();
+    }
+    private void compactLocked() {
+        long expirationTime = System.currentTimeMillis() - retention;
+        Iterator<ArrayDeque<Entry>> iterator = queueHashMap.values().iterator();
+        while (iterator.hasNext()) {
+            ArrayDeque<Entry> queue = iterator.next();
+            while (!queue.isEmpty() && queue.peek().time < expirationTime) {
+                queue.poll().segment.liveCount--;
+            }
+            if (queue.isEmpty()) {
+                iterator.remove();
+            }
+        }
+        // 只删除最旧的分段，保证确认记录不早于其确认的数据记录被删除
+        while (segmentTreeMap.size() > 1) {
+            Segment oldest = segmentTreeMap.firstEntry().getValue();
+            if (oldest.liveCount > 0 && totalSize <= maxSize) {
+                break;
+            }
+            if (oldest.liveCount > 0) {
+                imtpsLogger.log(ImtpsLogger.LEVEL_WARN, "离线消息超出容量上限，丢弃分段[$]中的[$]条消息", oldest.id, oldest.liveCount);
+                dropSegmentEntries(oldest);
+            }
+            deleteSegment(oldest);
+        }
+    }
+    public synchronized void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+        shutdown = true;
+        for (Segment segment : segmentTreeMap.values()) {
+            segment.buffer.force();
+            segment.dirty = false;
+        }
+    }
+
+    /**
+     * 设置保留时间，默认 7 天
+     *
+     * @param retention 保留时间
+     * @param unit      单位
+     */
+    public synchronized void setRetention(long retention, TimeUnit unit) {
+        this.retention = unit.toMillis(retention);
+    }
+    /**
+     * 设置容量上限（字节），默认不限制
+     *
+     * @param maxSize 容量上限
+     */
+    public synchronized void setMaxSize(long maxSize) {
+        this.maxSize = maxSize;
+    }
+    /**
+     * 设置分段大小（字节），默认 64MB，对之后新建的分段生效
+     *
+     * @param segmentSize 分段大小
+     */
+    public synchronized void setSegmentSize(int segmentSize) {
+        this.segmentSize = segmentSize;
+    }
+    /**
+     * 设置刷盘间隔，默认 1 秒，小于等于 0 时每次写入后立即刷盘
+     *
+     * @param forceInterval 刷盘间隔
+     * @param unit          单位
+     */
+    public synchronized void setForceInterval(long forceInterval, TimeUnit unit) {
+        this.forceInterval = unit.toMillis(forceInterval);
+    }
+    public synchronized int getPendingCount(String sessionName) {
+        return queueHashMap.get(sessionName) instanceof ArrayDeque<Entry> queue ? queue.size() : 0;
+    }
+    public synchronized long getTotalSize() {
+        return totalSize;
+    }
+    public synchronized int getSegmentCount() {
+        return segmentTreeMap.size();
+    }
+
+    private Entry append(byte recordType, String sessionName, int payloadLength, RecordWriter recordWriter) throws IOException {
+        byte[] name = sessionName.getBytes(StandardCharsets.UTF_8);
+        int recordLength = RECORD_HEADER_SIZE + name.length + 4 + payloadLength;
+        // 分段末尾至少保留一个字节的结束标记
+        if (activeSegment == null || activeSegment.buffer.capacity() - activeSegment.writePosition < recordLength + 1) {
+            if (activeSegment != null) {
+                activeSegment.buffer.force();
+                activeSegment.dirty = false;
+            }
+            activeSegment = createSegment(activeSegment == null ? 0 : activeSegment.id + 1, Math.max(segmentSize, recordLength + 1));
+        }
+        long time = System.currentTimeMillis();
+        ByteBuffer buffer = activeSegment.buffer.duplicate().position(activeSegment.writePosition);
+        buffer.put(recordType).putInt(recordLength).putLong(time).putShort((short) name.length).put(name).putInt(payloadLength);
+        recordWriter.write(buffer);
+        // 紧随其后写入结束标记，截断后覆盖写入时旧内容不会被当作记录重放
+        buffer.put(RECORD_END);
+        Entry entry = new Entry(activeSegment, activeSegment.writePosition, time);
+        activeSegment.writePosition += recordLength;
+        activeSegment.dirty = true;
+        scheduleForce();
+        return entry;
+    }
+    /**
+     * 确认已投递的记录：从接收者队列头部移除（已被压缩丢弃的跳过），并以最后一条的位置追加确认记录
+     */
+    private void acknowledge(String sessionName, List<Entry> entryList) {
+        ArrayDeque<Entry> queue = queueHashMap.get(sessionName);
+        for (Entry entry : entryList) {
+            if (queue != null && queue.peek() == entry) {
+                queue.poll();
+                entry.segment.liveCount--;
+            }
+        }
+        if (queue != null && queue.isEmpty()) {
+            queueHashMap.remove(sessionName);
+        }
+        Entry last = entryList.getLast();
+        try {
+            long segmentId = last.segment.id;
+            int position = last.position;
+            append(RECORD_ACK, sessionName, 12, buffer -> buffer.putLong(segmentId).putInt(position));
+        } catch (IOException e) {
+            imtpsLogger.log(ImtpsLogger.LEVEL_ERROR, "离线消息[$]确认出错", sessionName, e);
+        }
+    }
+    private void scheduleForce() {
+        if (forceInterval <= 0) {
+            activeSegment.buffer.force();
+            activeSegment.dirty = false;
+            return;
+        }
+        if (forceScheduled || getScheduler() == null) {
+            return;
+        }
+        forceScheduled = true;
+        scheduler.schedule(this::force, forceInterval, TimeUnit.MILLISECONDS);
+    }
+    /**
+     * 获取刷盘与定期压缩共用的调度线程，关闭后返回 null
+     */
+    private ScheduledExecutorService getScheduler() {
+        if (scheduler == null && !shutdown) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "OfflineStore");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return scheduler;
+    }
+    /**
+     * 刷盘：在锁内取出有未刷盘写入的分段，在锁外 force，期间的写入由下一次刷盘覆盖
+     */
+    private void force() {
+        List<Segment> dirtyList = new ArrayList<>();
+        synchronized (this) {
+            forceScheduled = false;
+            for (Segment segment : segmentTreeMap.values()) {
+                if (segment.dirty) {
+                    segment.dirty = false;
+                    dirtyList.add(segment);
+                }
+            }
+        }
+        for (Segment segment : dirtyList) {
+            segment.buffer.force();
+        }
+    }
+    private ByteBuffer readPayload(Entry entry) {
+        ByteBuffer buffer = entry.segment.buffer.duplicate().position(entry.position + RECORD_HEADER_SIZE - 2);
+        buffer.position(buffer.position() + 2 + (buffer.getShort(buffer.position()) & 0xFFFF));
+        int payloadLength = buffer.getInt();
+        return buffer.limit(buffer.position() + payloadLength);
+    }
+    private Segment createSegment(long id, int size) throws IOException {
+        Path path = directory.resolve(String.format("%020d%s", id, SEGMENT_SUFFIX));
+        try (FileChannel fileChannel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            Segment segment = new Segment(id, path, fileChannel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, fileChannel.size())));
+            segmentTreeMap.put(id, segment);
+            totalSize += segment.buffer.capacity();
+            return segment;
+        }
+    }
+    private void deleteSegment(Segment segment) {
+        segmentTreeMap.remove(segment.id);
+        totalSize -= segment.buffer.capacity();
+        try {
+            Files.deleteIfExists(segment.path);
+        } catch (IOException e) {
+            imtpsLogger.log(ImtpsLogger.LEVEL_WARN, "离线消息分段[$]删除失败", segment.path, e);
+        }
+    }
+    private void dropSegmentEntries(Segment segment) {
+        Iterator<ArrayDeque<Entry>> iterator = queueHashMap.values().iterator();
+        while (iterator.hasNext()) {
+            ArrayDeque<Entry> queue = iterator.next();
+            while (!queue.isEmpty() && queue.peek().segment == segment) {
+                queue.poll();
+            }
+            if (queue.isEmpty()) {
+                iterator.remove();
+            }
+        }
+        segment.liveCount = 0;
+    }
+    /**
+     * 重放日志重建索引
+     */
+    private synchronized void load() throws IOException {
+        List<Path> pathList;
+        try (Stream<Path> stream = Files.list(directory)) {
+            pathList = stream.filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX)).sorted().toList();
+        }
+        for (Path path : pathList) {
+            String fileName = path.getFileName().toString();
+            Segment segment = createSegment(Long.parseLong(fileName.substring(0, fileName.length() - SEGMENT_SUFFIX.length())), 0);
+            ByteBuffer buffer = segment.buffer.duplicate();
+            while (buffer.remaining() > RECORD_HEADER_SIZE && buffer.get(buffer.position()) != RECORD_END) {
+                int position = buffer.position();
+                byte recordType = buffer.get();
+                int recordLength = buffer.getInt();
+                long time = buffer.getLong();
+                int nameLength = buffer.getShort() & 0xFFFF;
+                int payloadOffset = RECORD_HEADER_SIZE + nameLength + 4;
+                if (recordType != RECORD_DATA && recordType != RECORD_ACK || recordLength < RECORD_HEADER_SIZE + 4
+                        || recordLength > buffer.capacity() - position || payloadOffset > recordLength
+                        || buffer.getInt(position + payloadOffset - 4) != recordLength - payloadOffset
+                        || recordType == RECORD_ACK && recordLength - payloadOffset != 12) {
+                    // 写入中断留下的残缺记录，截断到此处
+                    imtpsLogger.log(ImtpsLogger.LEVEL_WARN, "离线消息分段[$]在[$]处的记录损坏，之后的内容被丢弃", segment.id, position);
+                    buffer.position(position).put(position, RECORD_END);
+                    break;
+                }
+                byte[] name = new byte[nameLength];
+                buffer.get(name);
+                String sessionName = new String(name, StandardCharsets.UTF_8);
+                buffer.getInt();
+                if (recordType == RECORD_DATA) {
+                    segment.liveCount++;
+                    queueHashMap.computeIfAbsent(sessionName, key -> new ArrayDeque<>()).add(new Entry(segment, position, time));
+                } else if (queueHashMap.get(sessionName) instanceof ArrayDeque<Entry> queue) {
+                    long segmentId = buffer.getLong();
+                    int ackPosition = buffer.getInt();
+                    while (!queue.isEmpty() && (queue.peek().segment.id < segmentId
+                            || queue.peek().segment.id == segmentId && queue.peek().position <= ackPosition)) {
+                        queue.poll().segment.liveCount--;
+                    }
+                    if (queue.isEmpty()) {
+                        queueHashMap.remove(sessionName);
+                    }
+                }
+                buffer.position(position + recordLength);
+            }
+            segment.writePosition = buffer.position();
+            activeSegment = segment;
+        }
+        compactLocked();
+    }
+
+    interface RecordWriter {
+        void write(ByteBuffer buffer);
+    }
+
+    static class Segment {
+        private final long id;
+        private final Path path;
+        private final MappedByteBuffer buffer;
+        private int writePosition, liveCount;
+        private boolean dirty;
+
+        Segment(long id, Path path, MappedByteBuffer buffer) {
+            this.id = id;
+            this.path = path;
+            this.buffer = buffer;
+        }
+    }
+
+    static class Entry {
+        private final Segment segment;
+        private final int position;
+        private final long time;
+
+        Entry(Segment segment, int position, long time) {
+            this.segment = segment;
+            this.position = position;
+            this.time = time;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.thezeroer.imtps.server.session;
+
+import com.thezeroer.imtps.server.datapacket.DataPacket;
+import com.thezeroer.imtps.server.datapacket.databody.TextDataBody;
+import com.thezeroer.imtps.server.session.channel.ImtpsChannel;
+import com.thezeroer.imtps.server.util.TimingWheel;
+import com.thezeroer.imtps.server.worker.SessionManager;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 在线状态管理器
+ * <p>由会话命名与关闭驱动，订阅者只接收其订阅的联系人的状态变化；同一订阅者在合并窗口内的变化合并为一个数据包，
+ * 以 DATA_UPDATE/CONTACTS_USER/SYSTEM 发送，正文为 {@link TextDataBody#fromMap(Map)}，键为会话名称，值为 ONLINE 或 OFFLINE</p>
+ *
+ * @author NiZhanBo
+ * @since 2026/10/19
+ * @version 1.0.0
+ */
+public class PresenceManager implements SessionListener {
+    private static final String ONLINE = String.valueOf(DataPacket.EXTRA.ONLINE);
+    private static final String OFFLINE = String.valueOf(DataPacket.EXTRA.OFFLINE);
+
+    private final ConcurrentHashMap<String, Set<ImtpsSession>> watcherHashMap;
+    private final ConcurrentHashMap<ImtpsSession, Subscriber> subscriberHashMap;
+    private final TimingWheel timingWheel;
+    private volatile long coalesceWindow;
+
+    private final SessionManager sessionManager;
+
+    public PresenceManager(SessionManager sessionManager) {
+        watcherHashMap = new ConcurrentHashMap<>();
+        subscriberHashMap = new ConcurrentHashMap<>();
+        timingWheel = new TimingWheel("PresenceManager", 10, TimeUnit.MILLISECONDS, 512);
+        coalesceWindow = 200;
+        this.sessionManager = sessionManager;
+    }
+
+    /**
+     * 订阅联系人的在线状态，当前在线的联系人随下一次合并发送
+     *
+     * @param imtpsSession 订阅者会话
+     * @param contactNames 联系人会话名称
+     */
+    public void subscribe(ImtpsSession imtpsSession, Collection<String> contactNames) {
+        Subscriber subscriber = subscriberHashMap.computeIfAbsent(imtpsSession, Subscriber::new);
+        for (String contactName : contactNames) {
+            if (subscriber.contactNames.add(contactName)) {
+                watcherHashMap.compute(contactName, (name, watchers) -> {
+                    if (watchers == null) {
+                        watchers = ConcurrentHashMap.newKeySet();
+                    }
+                    watchers.add(imtpsSession);
+                    return watchers;
+                });
+                if (isOnline(contactName)) {
+                    notify(subscriber, contactName, ONLINE);
+                }
+            }
+        }
+        if (imtpsSession.getControlChannel().getStatus() == ImtpsChannel.STATUS.Unconnected) {
+            removeSubscriber(imtpsSession);
+        }
+    }
+    /**
+     * 取消订阅
+     *
+     * @param imtpsSession 订阅者会话
+     * @param contactNames 联系人会话名称
+     */
+    public void unsubscribe(ImtpsSession imtpsSession, Collection<String> contactNames) {
+        if (subscriberHashMap.get(imtpsSession) instanceof Subscriber subscriber) {
+            for (String contactName : contactNames) {
+                if (subscriber.contactNames.remove(contactName)) {
+                    removeWatcher(contactName, imtpsSession);
+                }
+            }
+        }
+    }
+    public boolean isOnline(String sessionName) {
+        return sessionManager.getNameToSessionHashMap().containsKey(sessionName);
+    }
+    /**
+     * 批量查询在线状态
+     *
+     * @param sessionNames 会话名称
+     * @return {@link Map }<{@link String }, {@link Boolean }>
+     */
+    public Map<String, Boolean> getOnlineStatus(Collection<String> sessionNames) {
+        Map<String, Boolean> onlineStatus = new HashMap<>(sessionNames.size() * 2);
+        for (String sessionName : sessionNames) {
+            onlineStatus.put(sessionName, isOnline(sessionName));
+        }
+        return onlineStatus;
+    }
+
+    @Override
+    public void sessionNamed(ImtpsSession imtpsSession) {
+        publish(imtpsSession.getSessionName(), ONLINE);
+    }
+    @Override
+    public void sessionClosed(ImtpsSession imtpsSession) {
+        removeSubscriber(imtpsSession);
+        // 名称冲突时旧会话关闭，名称仍由新会话持有
+        if (!isOnline(imtpsSession.getSessionName())) {
+            publish(imtpsSession.getSessionName(), OFFLINE);
+        }
+    }
+
+    private void publish(String sessionName, String status) {
+        if (watcherHashMap.get(sessionName) instanceof Set<ImtpsSession> watchers) {
+            for (ImtpsSession watcher : watchers) {
+                if (subscriberHashMap.get(watcher) instanceof Subscriber subscriber) {
+                    notify(subscriber, sessionName, status);
+                }
+            }
+        }
+    }
+    private void notify(Subscriber subscriber, String contactName, String status) {
+        synchronized (subscriber) {
+            if (subscriber.closed) {
+                return;
+            }
+            subscriber.pendingHashMap.put(contactName, status);
+            if (subscriber.flushTimeout == null) {
+                subscriber.flushTimeout = timingWheel.newTimeout(timeout -> flush(subscriber), coalesceWindow, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+    private void flush(Subscriber subscriber) {
+        Map<String, String> pendingHashMap;
+        synchronized (subscriber) {
+            subscriber.flushTimeout = null;
+            if (subscriber.closed || subscriber.pendingHashMap.isEmpty()) {
+                return;
+            }
+            pendingHashMap = subscriber.pendingHashMap;
+            subscriber.pendingHashMap = new LinkedHashMap<>();
+        }
+        sessionManager.putDataPacket(subscriber.imtpsSession, DataPacket.build(DataPacket.WAY.DATA_UPDATE, DataPacket.TYPE.CONTACTS_USER
+                , DataPacket.EXTRA.SYSTEM).attachDataBody(TextDataBody.fromMap(pendingHashMap)));
+    }
+    private void removeSubscriber(ImtpsSession imtpsSession) {
+        if (subscriberHashMap.remove(imtpsSession) instanceof Subscriber subscriber) {
+            synchronized (subscriber) {
+                subscriber.closed = true;
+                if (subscriber.flushTimeout != null) {
+                    subscriber.flushTimeout.cancel();
+                }
+            }
+            for (String contactName : subscriber.contactNames) {
+                removeWatcher(contactName, imtpsSession);
+            }
+        }
+    }
+    private void removeWatcher(String contactName, ImtpsSession imtpsSession) {
+        watcherHashMap.computeIfPresent(contactName, (name, watchers) -> {
+            watchers.remove(imtpsSession);
+            return watchers.isEmpty() ? null : watchers;
+        });
+    }
+
+    /**
+     * 设置合并窗口（毫秒），默认 200
+     *
+     * @param coalesceWindow 合并窗口
+     */
+    public void setCoalesceWindow(long coalesceWindow) {
+        this.coalesceWindow = Math.max(coalesceWindow, 0);
+    }
+    public int getSubscriberCount() {
+        return subscriberHashMap.size();
+    }
+    public void shutdown() {
+        timingWheel.stop();
+    }
+
+    static class Subscriber {
+        private final ImtpsSession imtpsSession;
+        private final Set<String> contactNames;
+        private Map<String, String> pendingHashMap;
+        private TimingWheel.Timeout flushTimeout;
+        private boolean closed;
+
+        Subscriber(ImtpsSession imtpsSession) {
+            this.imtpsSession = imtpsSession;
+            contactNames = ConcurrentHashMap.newKeySet();
+            pendingHashMap = new LinkedHashMap<>();
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.thezeroer.imtps.server.session;
+
+/**
+ * 会话监听器
+ * <p>在设置会话名称与关闭会话的线程上同步回调，耗时操作请转交线程池</p>
+ *
+ * @author NiZhanBo
+ * @since 2026/10/19
+ * @version 1.0.0
+ */
+public interface SessionListener {
+    /**
+     * 会话名称已生效，名称冲突替换旧会话时先于旧会话的 {@link #sessionClosed(ImtpsSession)} 回调
+     *
+     * @param imtpsSession 会话
+     */
+    default void sessionNamed(ImtpsSession imtpsSession) {}
+    /**
+     * 已命名的会话已关闭
+     *
+     * @param imtpsSession 会话
+     */
+    default void sessionClosed(ImtpsSession imtpsSession) {}
+}
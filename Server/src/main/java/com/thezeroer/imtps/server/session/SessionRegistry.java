@@ -0,0 +1,352 @@
+package com.thezeroer.imtps.server.session;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.channels.SelectionKey;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * 会话注册表
+ * <p>主表以会话 ID 的前 128 位（两个 long）为键，开放寻址存放于数组中，探测时先比较内联的前 128 位，
+ * 命中后再比较会话上保存的全部 256 位；查找为乐观读，不加锁也不产生装箱与节点对象。
+ * 名称、远程地址与创建时间三个二级索引与主表在同一把写锁内更新，始终保持一致，创建时间索引每个会话只有一个
+ * (创建时间, ID) 复合键的跳表节点。名称索引的读取不经过锁，供发送与在线查询等热路径使用</p>
+ *
+ * @author NiZhanBo
+ * @since 2026/10/19
+ * @version 1.0.0
+ */
+public class SessionRegistry {
+    private static final Object TOMBSTONE = new Object();
+    private static final int MIN_CAPACITY = 64;
+
+    private final StampedLock stampedLock;
+    private volatile Table table;
+    private volatile int size;
+    private int tombstones;
+
+    private final ConcurrentHashMap<String, ImtpsSession> nameIndex;
+    private final ConcurrentHashMap<InetAddress, Set<ImtpsSession>> addressIndex;
+    private final ConcurrentSkipListMap<CreationKey, ImtpsSession> creationIndex;
+
+    public SessionRegistry() {
+        stampedLock = new StampedLock();
+        table = new Table(MIN_CAPACITY);
+        nameIndex = new ConcurrentHashMap<>();
+        addressIndex = new ConcurrentHashMap<>();
+        creationIndex = new ConcurrentSkipListMap<>();
+    }
+
+    /**
+     * 注册会话
+     *
+     * @param imtpsSession 会话
+     */
+    public void register(ImtpsSession imtpsSession) {
+        long high = imtpsSession.getSessionIdHigh(), low = imtpsSession.getSessionIdLow();
+        long stamp = stampedLock.writeLock();
+        try {
+            if ((size + tombstones + 1) * 4L > table.values.length * 3L) {
+                resize();
+            }
+            Table table = this.table;
+            int mask = table.values.length - 1;
+            for (int index = hash(high, low) & mask; ; index = (index + 1) & mask) {
+                Object value = table.values[index];
+                if (value == null || value == TOMBSTONE) {
+                    if (value == TOMBSTONE) {
+                        tombstones--;
+                    }
+                    table.highs[index] = high;
+                    table.lows[index] = low;
+                    table.values[index] = imtpsSession;
+                    size++;
+                    break;
+                }
+                if (value == imtpsSession) {
+                    return;
+                }
+            }
+            addressIndex.computeIfAbsent(imtpsSession.getRemoteAddress(), key -> ConcurrentHashMap.newKeySet()).add(imtpsSession);
+            creationIndex.put(new CreationKey(imtpsSession.getCreationTime(), high, low), imtpsSession);
+        } finally {
+            stampedLock.unlockWrite(stamp);
+        }
+    }
+    /**
+     * 注销会话，同时解除名称绑定
+     *
+     * @param imtpsSession 会话
+     * @return boolean 会话是否已注册
+     */
+    public boolean unregister(ImtpsSession imtpsSession) {
+        long high = imtpsSession.getSessionIdHigh(), low = imtpsSession.getSessionIdLow();
+        long stamp = stampedLock.writeLock();
+        try {
+            int index = indexOf(table, high, low, imtpsSession);
+            if (index < 0) {
+                return false;
+            }
+            table.values[index] = TOMBSTONE;
+            size--;
+            tombstones++;
+            if (imtpsSession.getSessionName() instanceof String sessionName) {
+                nameIndex.remove(sessionName, imtpsSession);
+            }
+            removeIndex(addressIndex, imtpsSession.getRemoteAddress(), imtpsSession);
+            creationIndex.remove(new CreationKey(imtpsSession.getCreationTime(), high, low), imtpsSession);
+            return true;
+        } finally {
+            stampedLock.unlockWrite(stamp);
+        }
+    }
+    /**
+     * 按会话 ID 查找会话
+     *
+     * @param sessionId 会话 ID
+     * @return {@link ImtpsSession }，不存在或 ID 格式错误时为 null
+     */
+    public ImtpsSession get(String sessionId) {
+        if (sessionId == null || sessionId.length() != ImtpsSession.SESSIONID_LENGTH) {
+            return null;
+        }
+        long sessionId0, sessionId1, sessionId2, sessionId3;
+        try {
+            sessionId0 = ImtpsSession.parseSessionId(sessionId, 0);
+            sessionId1 = ImtpsSession.parseSessionId(sessionId, 1);
+            sessionId2 = ImtpsSession.parseSessionId(sessionId, 2);
+            sessionId3 = ImtpsSession.parseSessionId(sessionId, 3);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        long stamp = stampedLock.tryOptimisticRead();
+        ImtpsSession imtpsSession = find(sessionId0, sessionId1, sessionId2, sessionId3);
+        if (!stampedLock.validate(stamp)) {
+            stamp = stampedLock.readLock();
+            try {
+                imtpsSession = find(sessionId0, sessionId1, sessionId2, sessionId3);
+            } finally {
+                stampedLock.unlockRead(stamp);
+            }
+        }
+        return imtpsSession;
+    }
+    /**
+     * 会话是否仍在注册表中，按会话自身保存的 ID 查找，不格式化字符串
+     *
+     * @param imtpsSession 会话
+     * @return boolean
+     */
+    public boolean contains(ImtpsSession imtpsSession) {
+        long high = imtpsSession.getSessionIdHigh(), low = imtpsSession.getSessionIdLow();
+        long stamp = stampedLock.tryOptimisticRead();
+        boolean contains = indexOf(table, high, low, imtpsSession) >= 0;
+        if (!stampedLock.validate(stamp)) {
+            stamp = stampedLock.readLock();
+            try {
+                contains = indexOf(table, high, low, imtpsSession) >= 0;
+            } finally {
+                stampedLock.unlockRead(stamp);
+            }
+        }
+        return contains;
+    }
+    /**
+     * 设置会话名称并绑定到名称索引，会话原有名称的绑定一并解除
+     *
+     * @param imtpsSession 会话
+     * @param sessionName  会话名称
+     * @param replace      名称已被其他会话持有时是否替换
+     * @return {@link ImtpsSession } 替换时为被替换的旧会话，不替换时为仍持有该名称的会话，否则为 null
+     */
+    public ImtpsSession bindName(ImtpsSession imtpsSession, String sessionName, boolean replace) {
+        long stamp = stampedLock.writeLock();
+        try {
+            if (imtpsSession.getSessionName() instanceof String oldName && !oldName.equals(sessionName)) {
+                nameIndex.remove(oldName, imtpsSession);
+            }
+            imtpsSession.setSessionName(sessionName);
+            ImtpsSession holder = replace ? nameIndex.put(sessionName, imtpsSession) : nameIndex.putIfAbsent(sessionName, imtpsSession);
+            return holder == imtpsSession ? null : holder;
+        } finally {
+            stampedLock.unlockWrite(stamp);
+        }
+    }
+    /**
+     * 会话恢复，控制通道换用新连接，同时更新远程地址索引
+     *
+     * @param imtpsSession 会话
+     * @param selectionKey 选择键
+     */
+    public void reattach(ImtpsSession imtpsSession, SelectionKey selectionKey) throws IOException {
+        long stamp = stampedLock.writeLock();
+        try {
+            removeIndex(addressIndex, imtpsSession.getRemoteAddress(), imtpsSession);
+            imtpsSession.reattach(selectionKey);
+            addressIndex.computeIfAbsent(imtpsSession.getRemoteAddress(), key -> ConcurrentHashMap.newKeySet()).add(imtpsSession);
+        } finally {
+            stampedLock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * 获取名称索引，只读，名称的绑定与解除请使用 {@link #bindName(ImtpsSession, String, boolean)} 与 {@link #unregister(ImtpsSession)}
+     *
+     * @return {@link Map }<{@link String }, {@link ImtpsSession }>
+     */
+    public ConcurrentHashMap<String, ImtpsSession> getNameIndex() {
+        return nameIndex;
+    }
+    public ImtpsSession getByName(String sessionName) {
+        return nameIndex.get(sessionName);
+    }
+    /**
+     * 获取来自指定地址的会话
+     *
+     * @param remoteAddress 远程地址
+     * @return {@link Set }<{@link ImtpsSession }>
+     */
+    public Set<ImtpsSession> getByAddress(InetAddress remoteAddress) {
+        Set<ImtpsSession> imtpsSessions = addressIndex.get(remoteAddress);
+        return imtpsSessions == null ? Collections.emptySet() : Collections.unmodifiableSet(imtpsSessions);
+    }
+    /**
+     * 获取来自指定地址的会话数，用于按地址限流
+     *
+     * @param remoteAddress 远程地址
+     * @return int
+     */
+    public int countByAddress(InetAddress remoteAddress) {
+        Set<ImtpsSession> imtpsSessions = addressIndex.get(remoteAddress);
+        return imtpsSessions == null ? 0 : imtpsSessions.size();
+    }
+    /**
+     * 获取创建时间在 [from, to) 内的会话，按创建时间升序
+     *
+     * @param from 起始时间（毫秒）
+     * @param to   结束时间（毫秒）
+     * @return {@link List }<{@link ImtpsSession }>
+     */
+    public List<ImtpsSession> getByCreationTime(long from, long to) {
+        return new ArrayList<>(creationIndex.subMap(new CreationKey(from, Long.MIN_VALUE, Long.MIN_VALUE),
+                new CreationKey(to, Long.MIN_VALUE, Long.MIN_VALUE)).values());
+    }
+    /**
+     * 获取全部会话的快照，快照为独立的列表，遍历期间不持有锁
+     *
+     * @return {@link List }<{@link ImtpsSession }>
+     */
+    public List<ImtpsSession> snapshot() {
+        long stamp = stampedLock.readLock();
+        try {
+            Object[] values = table.values;
+            List<ImtpsSession> imtpsSessions = new ArrayList<>(size);
+            for (Object value : values) {
+                if (value instanceof ImtpsSession imtpsSession) {
+                    imtpsSessions.add(imtpsSession);
+                }
+            }
+            return imtpsSessions;
+        } finally {
+            stampedLock.unlockRead(stamp);
+        }
+    }
+    public int size() {
+        return size;
+    }
+
+    private ImtpsSession find(long sessionId0, long sessionId1, long sessionId2, long sessionId3) {
+        Table table = this.table;
+        int mask = table.values.length - 1;
+        for (int index = hash(sessionId0, sessionId1) & mask, probe = 0; probe <= mask; index = (index + 1) & mask, probe++) {
+            Object value = table.values[index];
+            if (value == null) {
+                return null;
+            }
+            if (table.highs[index] == sessionId0 && table.lows[index] == sessionId1 && value instanceof ImtpsSession imtpsSession
+                    && imtpsSession.matchSessionId(sessionId0, sessionId1, sessionId2, sessionId3)) {
+                return imtpsSession;
+            }
+        }
+        return null;
+    }
+    private static int indexOf(Table table, long high, long low, ImtpsSession imtpsSession) {
+        int mask = table.values.length - 1;
+        for (int index = hash(high, low) & mask, probe = 0; probe <= mask; index = (index + 1) & mask, probe++) {
+            Object value = table.values[index];
+            if (value == null) {
+                return -1;
+            }
+            if (value == imtpsSession) {
+                return index;
+            }
+        }
+        return -1;
+    }
+    private void resize() {
+        Table oldTable = table;
+        int capacity = oldTable.values.length;
+        // 墓碑较多时原容量重建即可
+        while (size * 2L >= capacity) {
+            capacity <<= 1;
+        }
+        Table newTable = new Table(Math.max(capacity, MIN_CAPACITY));
+        int mask = newTable.values.length - 1;
+        for (int i = 0; i < oldTable.values.length; i++) {
+            if (oldTable.values[i] instanceof ImtpsSession) {
+                int index = hash(oldTable.highs[i], oldTable.lows[i]) & mask;
+                while (newTable.values[index] != null) {
+                    index = (index + 1) & mask;
+                }
+                newTable.highs[index] = oldTable.highs[i];
+                newTable.lows[index] = oldTable.lows[i];
+                newTable.values[index] = oldTable.values[i];
+            }
+        }
+        tombstones = 0;
+        table = newTable;
+    }
+    private static <K> void removeIndex(Map<K, Set<ImtpsSession>> index, K key, ImtpsSession imtpsSession) {
+        index.computeIfPresent(key, (k, sessions) -> {
+            sessions.remove(imtpsSession);
+            return sessions.isEmpty() ? null : sessions;
+        });
+    }
+    private static int hash(long high, long low) {
+        long hash = (high ^ low) * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    static class CreationKey implements Comparable<CreationKey> {
+        private final long creationTime, high, low;
+
+        CreationKey(long creationTime, long high, long low) {
+            this.creationTime = creationTime;
+            this.high = high;
+            this.low = low;
+        }
+
+        @Override
+        public int compareTo(CreationKey other) {
+            int result = Long.compare(creationTime, other.creationTime);
+            if (result == 0 && (result = Long.compare(high, other.high)) == 0) {
+                result = Long.compare(low, other.low);
+            }
+            return result;
+        }
+    }
+
+    static class Table {
+        private final long[] highs, lows;
+        private final Object[] values;
+
+        Table(int capacity) {
+            highs = new long[capacity];
+            lows = new long[capacity];
+            values = new Object[capacity];
+        }
+    }
+}
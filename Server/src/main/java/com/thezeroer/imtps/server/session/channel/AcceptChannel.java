@@ -1,8 +1,10 @@
 package com.thezeroer.imtps.server.session.channel;
 
 import com.thezeroer.imtps.server.security.ImtpsSecretKey;
+import com.thezeroer.imtps.server.util.TimingWheel;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
 
 /**
@@ -15,6 +17,9 @@ import java.nio.channels.SocketChannel;
 public class AcceptChannel extends ImtpsChannel {
     private ImtpsSecretKey imtpsSecretKey;
     private String string;
+    private boolean frameMode;
+    private ByteBuffer handshakeBuffer, handshakeOutput;
+    private TimingWheel.Timeout handshakeTimeout;
 
     public AcceptChannel(SocketChannel socketChannel, TYPE type) throws IOException {
         super(type, socketChannel);
@@ -24,6 +29,7 @@ public class AcceptChannel extends ImtpsChannel {
     @Override
     public void channelClosed() throws IOException {
         super.channelClosed();
+        setHandshakeTimeout(null);
         socketChannel.close();
     }
     @Override
@@ -40,10 +46,60 @@ public class AcceptChannel extends ImtpsChannel {
         this.string = string;
         return this;
     }
+    /**
+     * 设置数据通道是否使用分帧模式，由客户端随令牌提出
+     *
+     * @param frameMode 是否分帧
+     * @return {@link AcceptChannel }
+     */
+    public AcceptChannel setFrameMode(boolean frameMode) {
+        this.frameMode = frameMode;
+        return this;
+    }
+    /**
+     * 设置握手当前阶段的接收缓冲区，未读满时保留已收到的字节，下次可读时继续
+     *
+     * @param handshakeBuffer 接收缓冲区
+     * @return {@link AcceptChannel }
+     */
+    public AcceptChannel setHandshakeBuffer(ByteBuffer handshakeBuffer) {
+        this.handshakeBuffer = handshakeBuffer;
+        return this;
+    }
+    /**
+     * 设置握手当前阶段尚未写出的字节，发送缓冲区已满时保留，下次可写时继续
+     *
+     * @param handshakeOutput 待写出的字节
+     * @return {@link AcceptChannel }
+     */
+    public AcceptChannel setHandshakeOutput(ByteBuffer handshakeOutput) {
+        this.handshakeOutput = handshakeOutput;
+        return this;
+    }
+    /**
+     * 设置握手当前阶段的截止定时器，取消上一阶段的定时器
+     *
+     * @param handshakeTimeout 定时器
+     */
+    public synchronized void setHandshakeTimeout(TimingWheel.Timeout handshakeTimeout) {
+        if (this.handshakeTimeout != null) {
+            this.handshakeTimeout.cancel();
+        }
+        this.handshakeTimeout = handshakeTimeout;
+    }
     public ImtpsSecretKey getImtpsSecretKey() {
         return imtpsSecretKey;
     }
     public String getString() {
         return string;
     }
+    public boolean isFrameMode() {
+        return frameMode;
+    }
+    public ByteBuffer getHandshakeBuffer() {
+        return handshakeBuffer;
+    }
+    public ByteBuffer getHandshakeOutput() {
+        return handshakeOutput;
+    }
 }
@@ -1,10 +1,13 @@
 package com.thezeroer.imtps.server.session.channel;
 
 import com.thezeroer.imtps.server.datapacket.ControlPacket;
+import com.thezeroer.imtps.server.datapacket.DataFrameReader;
+import com.thezeroer.imtps.server.datapacket.DataFrameWriter;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.nio.channels.SelectionKey;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.nio.channels.SocketChannel;
 
 /**
  * 控制通道
@@ -14,11 +17,15 @@ import java.util.concurrent.ConcurrentLinkedQueue;
  * @since 2025/07/22
  */
 public class ControlChannel extends ImtpsChannel {
-    private final ConcurrentLinkedQueue<ControlPacket> sendQueue;
+    private final SendQueue<ControlPacket> sendQueue;
+    private volatile DataFrameWriter dataFrameWriter;
+    private volatile DataFrameReader dataFrameReader;
+    private volatile boolean multiplexed;
 
     public ControlChannel(SelectionKey selectionKey) throws IOException {
         super(TYPE.Control, selectionKey);
-        sendQueue = new ConcurrentLinkedQueue<>();
+        sendQueue = new SendQueue<>(controlPacket -> ControlPacket.BASIC_HEADER_SIZE
+                + (controlPacket.getContent() == null ? 0 : controlPacket.getContent().length));
         status = STATUS.Connected;
     }
 
@@ -28,9 +35,70 @@ public class ControlChannel extends ImtpsChannel {
         selectionKey.cancel();
         socketChannel.close();
         sendQueue.clear();
+        // 正在读写时由读写线程结束后释放
+        if (dataFrameWriter instanceof DataFrameWriter writer && !writing.get()) {
+            writer.release();
+        }
+        if (dataFrameReader instanceof DataFrameReader reader && !reading.get()) {
+            reader.release();
+        }
     }
     @Override
-    public ConcurrentLinkedQueue<ControlPacket> getSendQueue() {
+    public SendQueue<ControlPacket> getSendQueue() {
         return sendQueue;
     }
+
+    /**
+     * 会话是否使用多路复用模式，数据通道随控制连接收发；会话恢复后保持不变，新连接上需重新协商
+     *
+     * @return boolean
+     */
+    public boolean isMultiplexed() {
+        return multiplexed;
+    }
+    public void setMultiplexed(boolean multiplexed) {
+        this.multiplexed = multiplexed;
+    }
+    /**
+     * 写出 {@link ControlPacket.WAY#MULTIPLEX} 后设置帧写出器，本方向此后改为带通道标签的帧
+     *
+     * @param dataFrameWriter 帧写出器
+     */
+    public void setDataFrameWriter(DataFrameWriter dataFrameWriter) {
+        this.dataFrameWriter = dataFrameWriter;
+    }
+    /**
+     * 读到 {@link ControlPacket.WAY#MULTIPLEX} 后设置帧读取器，本方向此后改为带通道标签的帧
+     *
+     * @param dataFrameReader 帧读取器
+     */
+    public void setDataFrameReader(DataFrameReader dataFrameReader) {
+        this.dataFrameReader = dataFrameReader;
+    }
+    public DataFrameWriter getDataFrameWriter() {
+        return dataFrameWriter;
+    }
+    public DataFrameReader getDataFrameReader() {
+        return dataFrameReader;
+    }
+
+    /**
+     * 会话恢复，换用新连接
+     *
+     * @param selectionKey 选择键
+     * @return {@link ControlChannel }
+     */
+    public ControlChannel setSelectionKey(SelectionKey selectionKey) throws IOException {
+        this.status = STATUS.Connected;
+        this.selectionKey = selectionKey;
+        this.socketChannel = (SocketChannel) selectionKey.channel();
+        reading.set(false);
+        writing.set(false);
+        // 新连接从未分帧的控制包开始
+        dataFrameWriter = null;
+        dataFrameReader = null;
+        this.socketAddress = (InetSocketAddress) socketChannel.getRemoteAddress();
+        this.inetAddress = socketAddress.getAddress();
+        return this;
+    }
 }
@@ -1,12 +1,15 @@
 package com.thezeroer.imtps.server.session.channel;
 
+import com.thezeroer.imtps.server.datapacket.DataFrameReader;
+import com.thezeroer.imtps.server.datapacket.DataFrameWriter;
 import com.thezeroer.imtps.server.datapacket.DataPacket;
+import com.thezeroer.imtps.server.datapacket.DataPacketWriter;
+import com.thezeroer.imtps.server.process.task.AbstractTask;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
-import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
  * 数据通道
@@ -16,34 +19,130 @@ import java.util.concurrent.ConcurrentLinkedQueue;
  * @since 2025/07/22
  */
 public class DataChannel extends ImtpsChannel {
-    private final ConcurrentLinkedQueue<DataPacket> sendQueue;
+    private final SendQueue<DataPacket> sendQueue;
+    private final ReliableWindow reliableWindow;
+    private volatile DataFrameWriter dataFrameWriter;
+    private volatile DataFrameReader dataFrameReader;
+    private volatile DataPacketWriter dataPacketWriter;
+    private AbstractTask<?> writingTask;
+    private long deficit;
 
     public DataChannel(TYPE type) {
         super(type);
-        sendQueue = new ConcurrentLinkedQueue<>();
+        sendQueue = new SendQueue<>(dataPacket -> DataPacket.BASIC_HEADER_SIZE + dataPacket.getDataBodySize());
+        reliableWindow = new ReliableWindow();
         this.status = STATUS.Unconnected;
     }
 
     @Override
     public void channelClosed() throws IOException {
+        channelSuspended();
+        // 启用可靠传输时保留发送队列，重连后继续发送
+        if (reliableWindow.getCapacity() == 0) {
+            sendQueue.clear();
+        }
+    }
+    /**
+     * 会话挂起，关闭连接但保留发送队列，会话恢复后继续发送
+     */
+    public void channelSuspended() throws IOException {
         super.channelClosed();
+        // 正在写出时由写出线程在结束后释放
+        if (!writing.get()) {
+            releaseDataPacketWriter();
+        }
         if (selectionKey != null) {
             selectionKey.cancel();
         }
         if (socketChannel != null) {
             socketChannel.close();
         }
-        sendQueue.clear();
     }
     @Override
-    public ConcurrentLinkedQueue<DataPacket> getSendQueue() {
+    public SendQueue<DataPacket> getSendQueue() {
         return sendQueue;
     }
+    public ReliableWindow getReliableWindow() {
+        return reliableWindow;
+    }
+    /**
+     * 是否有可写出的数据包，包括需要重发的副本，窗口满时不再写出新数据包
+     *
+     * @return boolean
+     */
+    public boolean hasSendDataPacket() {
+        return dataPacketWriter != null || hasPendingFrame() || reliableWindow.hasReplay() || (!sendQueue.isEmpty() && !reliableWindow.isFull());
+    }
+
+    /**
+     * 保存未写完的数据包，下一轮写出时继续
+     *
+     * @param dataPacketWriter 写出器，写完时为 null
+     * @param writingTask      数据包写完后开始计时的任务，重发的副本为 null
+     */
+    public void setDataPacketWriter(DataPacketWriter dataPacketWriter, AbstractTask<?> writingTask) {
+        this.dataPacketWriter = dataPacketWriter;
+        this.writingTask = writingTask;
+    }
+    public DataPacketWriter getDataPacketWriter() {
+        return dataPacketWriter;
+    }
+    public AbstractTask<?> getWritingTask() {
+        return writingTask;
+    }
+    /**
+     * 放弃未写完的数据包，连接断开后数据包已不完整，启用可靠传输时由重发补齐
+     */
+    public void releaseDataPacketWriter() {
+        if (dataPacketWriter instanceof DataPacketWriter writer) {
+            dataPacketWriter = null;
+            writingTask = null;
+            writer.release();
+        }
+    }
+    /**
+     * 获取差额轮询的赤字，即上一轮超出配额的字节数（取负值）
+     *
+     * @return long
+     */
+    public long getDeficit() {
+        return deficit;
+    }
+    public void setDeficit(long deficit) {
+        this.deficit = deficit;
+    }
+
+    /**
+     * 启用分帧模式，每条连接独立的帧写出器与读取器，连接更换后需重新设置
+     *
+     * @param dataFrameWriter 帧写出器
+     * @param dataFrameReader 帧读取器
+     */
+    public void setFrameCodec(DataFrameWriter dataFrameWriter, DataFrameReader dataFrameReader) {
+        this.dataFrameWriter = dataFrameWriter;
+        this.dataFrameReader = dataFrameReader;
+    }
+    public DataFrameWriter getDataFrameWriter() {
+        return dataFrameWriter;
+    }
+    public DataFrameReader getDataFrameReader() {
+        return dataFrameReader;
+    }
+    private boolean hasPendingFrame() {
+        return dataFrameWriter instanceof DataFrameWriter writer && writer.hasPending();
+    }
 
     public DataChannel setSelectionKey(SelectionKey selectionKey) throws IOException {
         this.status = STATUS.Connected;
         this.selectionKey = selectionKey;
         this.socketChannel = (SocketChannel) selectionKey.channel();
+        // 旧连接的读写线程可能尚未退出，新连接从空闲状态开始
+        reading.set(false);
+        writing.set(false);
+        reliableWindow.rewind();
+        // 旧连接上未写完的帧随连接作废，启用可靠传输时由重发补齐
+        dataFrameWriter = null;
+        dataFrameReader = null;
         this.socketAddress = (InetSocketAddress) socketChannel.getRemoteAddress();
         this.inetAddress = socketAddress.getAddress();
         return this;
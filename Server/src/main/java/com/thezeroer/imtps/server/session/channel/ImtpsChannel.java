@@ -1,6 +1,7 @@
 package com.thezeroer.imtps.server.session.channel;
 
 import com.thezeroer.imtps.server.datapacket.databody.AbstractDataBody;
+import com.thezeroer.imtps.server.util.TimingWheel;
 
 import java.io.IOException;
 import java.net.InetAddress;
@@ -8,7 +9,6 @@ import java.net.InetSocketAddress;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
 import java.util.EnumMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
@@ -30,6 +30,7 @@ public class ImtpsChannel {
         Filtered, // 通过过滤
         Handshaking, // 正在握手
         Handshaked, // 握手完成
+        Resumed, // 会话恢复
 
         Unconnected, // 未连接
         Connecting, // 连接中
@@ -40,7 +41,8 @@ public class ImtpsChannel {
     protected final TYPE type;
     protected volatile STATUS status;
     protected final AtomicBoolean reading, writing;
-    protected long lastActivityTime;
+    protected volatile long lastActivityTime;
+    protected volatile TimingWheel.Timeout heartBeatTimeout;
 
     protected SelectionKey selectionKey;
     protected SocketChannel socketChannel;
@@ -80,6 +82,16 @@ public class ImtpsChannel {
     }
     public void channelClosed() throws IOException {
         status = STATUS.Unconnected;
+        if (heartBeatTimeout != null) {
+            heartBeatTimeout.cancel();
+        }
+    }
+    public TimingWheel.Timeout getHeartBeatTimeout() {
+        return heartBeatTimeout;
+    }
+    public ImtpsChannel setHeartBeatTimeout(TimingWheel.Timeout heartBeatTimeout) {
+        this.heartBeatTimeout = heartBeatTimeout;
+        return this;
     }
 
     public TYPE getType() {
@@ -118,8 +130,8 @@ public class ImtpsChannel {
     public InetAddress getInetAddress() {
         return inetAddress;
     }
-    public ConcurrentLinkedQueue<?> getSendQueue() {
-        return new ConcurrentLinkedQueue<>();
+    public SendQueue<?> getSendQueue() {
+        return SendQueue.empty();
     }
 
     public static TYPE chooseType(AbstractDataBody.TYPE type) {
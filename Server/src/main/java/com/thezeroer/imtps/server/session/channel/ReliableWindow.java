@@ -0,0 +1,200 @@
+package com.thezeroer.imtps.server.session.channel;
+
+import com.thezeroer.imtps.server.datapacket.DataPacket;
+import com.thezeroer.imtps.server.process.task.AbstractTask;
+import com.thezeroer.imtps.server.util.TimingWheel;
+
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Iterator;
+
+/**
+ * 可靠传输窗口
+ * <p>每个数据通道一个，通道重连后仍保留。发送方向为写出的数据包分配递增序号并保存副本，
+ * 收到累计确认前副本留在窗口中，未确认的数量或字节数达到上限时暂停发送，通道重连后按序重发未确认的副本；
+ * 接收方向记录连续接收的最大序号及其后乱序到达的序号，丢弃重复的数据包，确认随反向数据包捎带或由控制数据包单独发送。
+ * 序号为 0 的数据包不参与可靠传输</p>
+ *
+ * @author NiZhanBo
+ * @since 2026/10/19
+ * @version 1.0.0
+ */
+public class ReliableWindow {
+    private final ArrayDeque<DataPacket> unackedDeque;
+    private int capacity;
+    private long maxBytes, unackedBytes;
+    private long sendSequence, ackedSequence, writtenSequence;
+    private long receivedSequence, reportedSequence;
+    /** 分帧模式下小数据包可能先于序号更小的大数据包到达，暂存超出连续序号的部分 */
+    private final HashSet<Long> outOfOrderSet;
+    private TimingWheel.Timeout ackTimeout;
+
+    public ReliableWindow() {
+        unackedDeque = new ArrayDeque<>();
+        outOfOrderSet = new HashSet<>();
+    }
+
+    /**
+     * 登记即将写出的新数据包，启用时分配序号并保存副本，同时捎带确认
+     *
+     * @param dataPacket 数据包
+     * @return {@link DataPacket }
+     */
+    public synchronized DataPacket offer(DataPacket dataPacket) {
+        if (capacity > 0) {
+            // 重发的副本必须与原数据包的 TaskId 一致
+            if (dataPacket.getTaskId().isEmpty()) {
+                dataPacket.setTaskId(AbstractTask.createTaskId());
+            }
+            dataPacket.setSequence(++sendSequence);
+            unackedDeque.addLast(dataPacket.clone());
+            unackedBytes += sizeOf(dataPacket);
+            writtenSequence = sendSequence;
+        } else {
+            dataPacket.setSequence(0);
+        }
+        return piggyback(dataPacket);
+    }
+    /**
+     * 取出下一个需要重发的副本
+     *
+     * @return {@link DataPacket }，没有需要重发的副本时为 null
+     */
+    public synchronized DataPacket pollReplay() {
+        for (DataPacket dataPacket : unackedDeque) {
+            if (dataPacket.getSequence() > writtenSequence) {
+                writtenSequence = dataPacket.getSequence();
+                return piggyback(dataPacket.clone());
+            }
+        }
+        return null;
+    }
+    /**
+     * 通道重连，未确认的副本全部需要重发
+     */
+    public synchronized void rewind() {
+        writtenSequence = ackedSequence;
+    }
+    /**
+     * 处理对端的累计确认
+     *
+     * @param sequence 对端连续接收的最大序号
+     * @return boolean 是否释放了窗口
+     */
+    public synchronized boolean acknowledge(long sequence) {
+        if (sequence <= ackedSequence) {
+            return false;
+        }
+        ackedSequence = Math.min(sequence, sendSequence);
+        writtenSequence = Math.max(writtenSequence, ackedSequence);
+        boolean released = false;
+        for (Iterator<DataPacket> iterator = unackedDeque.iterator(); iterator.hasNext(); ) {
+            DataPacket dataPacket = iterator.next();
+            if (dataPacket.getSequence() > ackedSequence) {
+                break;
+            }
+            iterator.remove();
+            unackedBytes -= sizeOf(dataPacket);
+            released = true;
+        }
+        return released;
+    }
+    /**
+     * 登记接收到的序号
+     *
+     * @param sequence 序号
+     * @return boolean 是否需要处理，重复的数据包返回 false
+     */
+    public synchronized boolean receive(long sequence) {
+        if (sequence == 0) {
+            return true;
+        }
+        if (sequence <= receivedSequence) {
+            // 对端在重发，之前的确认可能已随断开的连接丢失
+            reportedSequence = Math.min(reportedSequence, sequence - 1);
+            return false;
+        }
+        if (sequence != receivedSequence + 1) {
+            return outOfOrderSet.add(sequence);
+        }
+        receivedSequence = sequence;
+        while (outOfOrderSet.remove(receivedSequence + 1)) {
+            receivedSequence++;
+        }
+        return true;
+    }
+    /**
+     * 取出需要单独发送的确认
+     *
+     * @return long 确认序号，无需确认时为 -1
+     */
+    public synchronized long takeAck() {
+        if (receivedSequence > reportedSequence) {
+            reportedSequence = receivedSequence;
+            return receivedSequence;
+        }
+        return -1;
+    }
+    public synchronized long getUnreportedCount() {
+        return receivedSequence - reportedSequence;
+    }
+
+    /**
+     * 未确认的数量达到容量，或字节数达到上限时窗口已满；窗口为空时总能再发送一个数据包，避免大于上限的数据包永远无法发送
+     *
+     * @return boolean
+     */
+    public synchronized boolean isFull() {
+        return capacity > 0 && (unackedDeque.size() >= capacity || maxBytes > 0 && !unackedDeque.isEmpty() && unackedBytes >= maxBytes);
+    }
+    public synchronized boolean hasReplay() {
+        return !unackedDeque.isEmpty() && unackedDeque.peekLast().getSequence() > writtenSequence;
+    }
+    public synchronized int getUnackedCount() {
+        return unackedDeque.size();
+    }
+    /**
+     * 获取未确认副本的字节数，按数据包头部与正文大小计算
+     *
+     * @return long
+     */
+    public synchronized long getUnackedBytes() {
+        return unackedBytes;
+    }
+    /**
+     * 设置窗口容量，即未确认数据包的最大数量，0 为不启用
+     *
+     * @param capacity 容量
+     */
+    public synchronized void setCapacity(int capacity) {
+        this.capacity = Math.max(capacity, 0);
+    }
+    public synchronized int getCapacity() {
+        return capacity;
+    }
+    /**
+     * 设置未确认副本的字节上限，0 为不限制
+     *
+     * @param maxBytes 上限（字节）
+     */
+    public synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = Math.max(maxBytes, 0);
+    }
+    public synchronized long getMaxBytes() {
+        return maxBytes;
+    }
+    public synchronized TimingWheel.Timeout getAckTimeout() {
+        return ackTimeout;
+    }
+    public synchronized void setAckTimeout(TimingWheel.Timeout ackTimeout) {
+        this.ackTimeout = ackTimeout;
+    }
+
+    private static long sizeOf(DataPacket dataPacket) {
+        return DataPacket.BASIC_HEADER_SIZE + dataPacket.getDataBodySize();
+    }
+    private DataPacket piggyback(DataPacket dataPacket) {
+        reportedSequence = receivedSequence;
+        return dataPacket.setAcknowledge(receivedSequence);
+    }
+}
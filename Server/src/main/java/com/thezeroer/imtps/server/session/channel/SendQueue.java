@@ -0,0 +1,238 @@
+package com.thezeroer.imtps.server.session.channel;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * 发送队列
+ * <p>按字节计量排队中的数据包，超出上限时按策略处理。字节数在入队时以 CAS 预留，多个生产者并发入队也不会超出上限；
+ * 队列为空时单个数据包不受上限约束，避免大于上限的数据包永远无法发送。上限为 0 时不限制</p>
+ *
+ * @author NiZhanBo
+ * @since 2026/10/19
+ * @version 1.0.0
+ */
+public class SendQueue<E> {
+    public enum POLICY {
+        Block, // 阻塞生产者直至队列有空间，超时后丢弃新数据包；广播与群发不阻塞，按 DropNewest 处理，一个慢消费者不会让其他接收者逐个等待
+        DropOldest, // 丢弃最早入队的数据包
+        DropNewest, // 丢弃新数据包
+        Disconnect, // 视为慢消费者，由调用方断开会话
+    }
+    /** 阻塞策略下生产者的最长等待时间（毫秒） */
+    public static final long BLOCK_TIMEOUT = 5000;
+    /** 不承载发送的通道共用的空队列，拒绝入队与配置 */
+    private static final SendQueue<?> EMPTY = new SendQueue<>(element -> 0) {
+        @Override
+        public boolean offer(Object element, boolean block) {
+            return false;
+        }
+        @Override
+        public void setLimit(long limit, POLICY policy) {
+            throw new UnsupportedOperationException("该通道没有发送队列");
+        }
+        @Override
+        public void setDropListener(Consumer<? super Object> dropListener) {
+            throw new UnsupportedOperationException("该通道没有发送队列");
+        }
+    };
+
+    private final ConcurrentLinkedQueue<E> queue;
+    private final ToLongFunction<E> sizer;
+    private final AtomicLong queuedBytes, peakBytes;
+    private final AtomicInteger queuedCount;
+    private final LongAdder droppedCount;
+    private final ReentrantLock lock;
+    private final Condition notFull;
+    private volatile int waiters;
+    private volatile long limit;
+    private volatile POLICY policy;
+    private volatile Consumer<? super E> dropListener;
+
+    public SendQueue(ToLongFunction<E> sizer) {
+        this.sizer = sizer;
+        queue = new ConcurrentLinkedQueue<>();
+        queuedBytes = new AtomicLong();
+        peakBytes = new AtomicLong();
+        queuedCount = new AtomicInteger();
+        droppedCount = new LongAdder();
+        lock = new ReentrantLock();
+        notFull = lock.newCondition();
+        policy = POLICY.DropNewest;
+    }
+
+    /**
+     * 入队
+     *
+     * @param element 元素
+     * @return boolean 是否入队，返回 false 且策略为 {@link POLICY#Disconnect} 时调用方应断开会话
+     */
+    public boolean offer(E element) {
+        return offer(element, true);
+    }
+    /**
+     * 入队
+     *
+     * @param element 元素
+     * @param block   策略为 {@link POLICY#Block} 时是否等待，为 false 时按 {@link POLICY#DropNewest} 处理
+     * @return boolean 是否入队，返回 false 且策略为 {@link POLICY#Disconnect} 时调用方应断开会话
+     */
+    public boolean offer(E element, boolean block) {
+        long size = sizer.applyAsLong(element);
+        long deadline = 0;
+        while (true) {
+            long bytes = queuedBytes.get();
+            if (limit > 0 && bytes > 0 && bytes + size > limit) {
+                switch (policy) {
+                    case DropOldest -> {
+                        if (poll() instanceof E dropped) {
+                            droppedCount.increment();
+                            notifyDropped(dropped);
+                        }
+                        continue;
+                    }
+                    case Block -> {
+                        if (block) {
+                            if (deadline == 0) {
+                                deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(BLOCK_TIMEOUT);
+                            }
+                            if (awaitNotFull(size, deadline)) {
+                                continue;
+                            }
+                        }
+                    }
+                }
+                droppedCount.increment();
+                return false;
+            }
+            if (queuedBytes.compareAndSet(bytes, bytes + size)) {
+                queue.add(element);
+                queuedCount.incrementAndGet();
+                peakBytes.accumulateAndGet(bytes + size, Math::max);
+                return true;
+            }
+        }
+    }
+    public boolean add(E element) {
+        return offer(element);
+    }
+    public E poll() {
+        E element = queue.poll();
+        if (element != null) {
+            queuedCount.decrementAndGet();
+            queuedBytes.addAndGet(-sizer.applyAsLong(element));
+            signalNotFull();
+        }
+        return element;
+    }
+    public E peek() {
+        return queue.peek();
+    }
+    public boolean isEmpty() {
+        return queue.isEmpty();
+    }
+    /**
+     * 清空队列，清出的元素视为丢弃并通知丢弃监听器
+     */
+    public void clear() {
+        for (E element; (element = poll()) != null; ) {
+            notifyDropped(element);
+        }
+    }
+
+    /**
+     * 设置字节上限与超出上限时的策略
+     *
+     * @param limit  上限（字节），0 为不限制
+     * @param policy 策略
+     */
+    public void setLimit(long limit, POLICY policy) {
+        this.policy = policy;
+        this.limit = Math.max(limit, 0);
+        signalNotFull();
+    }
+    public long getLimit() {
+        return limit;
+    }
+    public POLICY getPolicy() {
+        return policy;
+    }
+    /**
+     * 设置丢弃监听器，已入队的元素被 {@link POLICY#DropOldest} 挤出或被清空时调用；
+     * 新元素未能入队时不调用，由 {@link #offer} 的返回值告知调用方
+     *
+     * @param dropListener 丢弃监听器
+     */
+    public void setDropListener(Consumer<? super E> dropListener) {
+        this.dropListener = dropListener;
+    }
+    public int size() {
+        return queuedCount.get();
+    }
+    public long getQueuedBytes() {
+        return queuedBytes.get();
+    }
+    /**
+     * 获取排队字节数的历史峰值
+     *
+     * @return long
+     */
+    public long getPeakBytes() {
+        return peakBytes.get();
+    }
+    public long getDroppedCount() {
+        return droppedCount.sum();
+    }
+
+    /**
+     * 获取不承载发送的通道共用的空队列
+     *
+     * @return {@link SendQueue }<{@link E }>
+     */
+    @SuppressWarnings("unchecked")
+    public static <E> SendQueue<E> empty() {
+        return (SendQueue<E>) EMPTY;
+    }
+
+    private void notifyDropped(E element) {
+        if (dropListener instanceof Consumer<? super E> listener) {
+            listener.accept(element);
+        }
+    }
+    private boolean awaitNotFull(long size, long deadline) {
+        lock.lock();
+        try {
+            waiters++;
+            long nanos = deadline - System.nanoTime();
+            // 持锁后再检查一次，避免错过出队时的唤醒
+            long bytes = queuedBytes.get();
+            if (nanos > 0 && bytes > 0 && bytes + size > limit) {
+                notFull.awaitNanos(nanos);
+            }
+            return deadline - System.nanoTime() > 0;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            waiters--;
+            lock.unlock();
+        }
+    }
+    private void signalNotFull() {
+        if (waiters > 0) {
+            lock.lock();
+            try {
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
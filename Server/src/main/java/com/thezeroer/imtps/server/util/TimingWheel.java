@@ -0,0 +1,269 @@
+package com.thezeroer.imtps.server.util;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 哈希时间轮
+ * <p>插入与取消均为 O(1)，每个 tick 只处理当前槽位中的定时任务，定时任务在时间轮线程上执行，耗时操作请转交线程池</p>
+ *
+ * @author NiZhanBo
+ * @since 2026/10/19
+ * @version 1.0.0
+ */
+public class TimingWheel {
+    private static final int STATE_INIT = 0;
+    private static final int STATE_STARTED = 1;
+    private static final int STATE_SHUTDOWN = 2;
+    private static final int MAX_TRANSFER_PER_TICK = 100000;
+
+    private final long tickDuration;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final ConcurrentLinkedQueue<Timeout> addQueue, cancelQueue;
+    private final AtomicLong pendingCount;
+    private final AtomicInteger state;
+    private final Thread workerThread;
+    private final Object startLock = new Object();
+    private volatile long startTime;
+    private long tick;
+
+    /**
+     * 时间轮
+     *
+     * @param name          线程名
+     * @param tickDuration  每格时长
+     * @param unit          时长单位
+     * @param ticksPerWheel 槽位数，向上取整为 2 的幂
+     */
+    public TimingWheel(String name, long tickDuration, TimeUnit unit, int ticksPerWheel) {
+        if (tickDuration <= 0 || ticksPerWheel <= 0) {
+            throw new IllegalArgumentException("tickDuration and ticksPerWheel must be greater than 0");
+        }
+        this.tickDuration = unit.toNanos(tickDuration);
+        int wheelSize = Integer.highestOneBit(ticksPerWheel - 1 | 1) << 1;
+        wheel = new Bucket[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            wheel[i] = new Bucket();
+        }
+        mask = wheelSize - 1;
+        addQueue = new ConcurrentLinkedQueue<>();
+        cancelQueue = new ConcurrentLinkedQueue<>();
+        pendingCount = new AtomicLong(0);
+        state = new AtomicInteger(STATE_INIT);
+        workerThread = new Thread(this::work, name);
+        workerThread.setDaemon(true);
+    }
+
+    /**
+     * 提交定时任务，首次提交时启动时间轮线程
+     *
+     * @param task  定时任务
+     * @param delay 延迟
+     * @param unit  延迟单位
+     * @return {@link Timeout }
+     */
+    public Timeout newTimeout(TimerTask task, long delay, TimeUnit unit) {
+        start();
+        Timeout timeout = new Timeout(task, System.nanoTime() - startTime + Math.max(unit.toNanos(delay), 0));
+        pendingCount.incrementAndGet();
+        addQueue.add(timeout);
+        return timeout;
+    }
+    /**
+     * 获取等待中的定时任务数量
+     *
+     * @return long
+     */
+    public long pendingTimeouts() {
+        return pendingCount.get();
+    }
+
+    public void start() {
+        if (state.get() == STATE_INIT && state.compareAndSet(STATE_INIT, STATE_STARTED)) {
+            workerThread.start();
+        }
+        synchronized (startLock) {
+            while (startTime == 0 && state.get() == STATE_STARTED) {
+                try {
+                    startLock.wait();
+                } catch (InterruptedException ignored) {}
+            }
+        }
+    }
+    public void stop() {
+        if (state.getAndSet(STATE_SHUTDOWN) == STATE_STARTED) {
+            workerThread.interrupt();
+        }
+    }
+
+    private void work() {
+        synchronized (startLock) {
+            startTime = System.nanoTime();
+            if (startTime == 0) {
+                startTime = 1;
+            }
+            startLock.notifyAll();
+        }
+        while (state.get() == STATE_STARTED) {
+            long deadline = waitForNextTick();
+            if (deadline > 0) {
+                processCancelled();
+                transferTimeouts();
+                wheel[(int) (tick & mask)].expire(deadline);
+                tick++;
+            }
+        }
+    }
+    private long waitForNextTick() {
+        long deadline = tickDuration * (tick + 1);
+        while (true) {
+            long currentTime = System.nanoTime() - startTime;
+            long sleepTime = (deadline - currentTime + 999999) / 1000000;
+            if (sleepTime <= 0) {
+                return currentTime;
+            }
+            try {
+                Thread.sleep(sleepTime);
+            } catch (InterruptedException e) {
+                if (state.get() == STATE_SHUTDOWN) {
+                    return Long.MIN_VALUE;
+                }
+            }
+        }
+    }
+    private void transferTimeouts() {
+        for (int i = 0; i < MAX_TRANSFER_PER_TICK; i++) {
+            Timeout timeout = addQueue.poll();
+            if (timeout == null) {
+                break;
+            }
+            if (timeout.isCancelled()) {
+                pendingCount.decrementAndGet();
+                continue;
+            }
+            long calculated = timeout.deadline / tickDuration;
+            timeout.remainingRounds = (calculated - tick) / wheel.length;
+            wheel[(int) (Math.max(calculated, tick) & mask)].add(timeout);
+        }
+    }
+    private void processCancelled() {
+        Timeout timeout;
+        while ((timeout = cancelQueue.poll()) != null) {
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+
+    /**
+     * 定时任务
+     */
+    public interface TimerTask {
+        void run(Timeout timeout) throws Exception;
+    }
+
+    /**
+     * 定时任务句柄
+     */
+    public final class Timeout {
+        private static final int STATE_INIT = 0;
+        private static final int STATE_CANCELLED = 1;
+        private static final int STATE_EXPIRED = 2;
+
+        private final TimerTask task;
+        private final long deadline;
+        private final AtomicInteger state;
+        private long remainingRounds;
+        private Timeout next, prev;
+        private Bucket bucket;
+
+        private Timeout(TimerTask task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+            state = new AtomicInteger(STATE_INIT);
+        }
+
+        /**
+         * 取消定时任务
+         *
+         * @return boolean 是否由本次调用取消
+         */
+        public boolean cancel() {
+            if (state.compareAndSet(STATE_INIT, STATE_CANCELLED)) {
+                cancelQueue.add(this);
+                return true;
+            }
+            return false;
+        }
+        public boolean isCancelled() {
+            return state.get() == STATE_CANCELLED;
+        }
+        public boolean isExpired() {
+            return state.get() == STATE_EXPIRED;
+        }
+        public TimerTask task() {
+            return task;
+        }
+
+        private void expire() {
+            if (state.compareAndSet(STATE_INIT, STATE_EXPIRED)) {
+                try {
+                    task.run(this);
+                } catch (Exception ignored) {}
+            }
+        }
+    }
+
+    private final class Bucket {
+        private Timeout head, tail;
+
+        private void add(Timeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+        private void expire(long deadline) {
+            Timeout timeout = head;
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.remainingRounds <= 0) {
+                    remove(timeout);
+                    timeout.expire();
+                } else if (timeout.isCancelled()) {
+                    remove(timeout);
+                } else {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+        private void remove(Timeout timeout) {
+            if (timeout.bucket != this) {
+                return;
+            }
+            if (timeout.prev != null) {
+                timeout.prev.next = timeout.next;
+            }
+            if (timeout.next != null) {
+                timeout.next.prev = timeout.prev;
+            }
+            if (timeout == head) {
+                head = timeout.next;
+            }
+            if (timeout == tail) {
+                tail = timeout.prev;
+            }
+            timeout.prev = timeout.next = null;
+            timeout.bucket = null;
+            pendingCount.decrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package com.thezeroer.imtps.server.worker;
+
+import com.thezeroer.imtps.server.datapacket.DataPacket;
+import com.thezeroer.imtps.server.datapacket.PacketHandler;
+import com.thezeroer.imtps.server.log.ImtpsLogger;
+import com.thezeroer.imtps.server.process.ProcessingHub;
+import com.thezeroer.imtps.server.process.task.ImtpsTask;
+import com.thezeroer.imtps.server.session.ImtpsSession;
+import com.thezeroer.imtps.server.session.channel.JitterBuffer;
+import com.thezeroer.imtps.server.session.channel.MediaChannel;
+import com.thezeroer.imtps.server.util.TimingWheel;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.security.SecureRandom;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 媒体管理器
+ * <p>收发媒体通道的数据报。数据报按媒体通道 ID 找到会话，以会话密钥验证并解密，经抖动缓冲区按序交付给处理中心；
+ * 发送时直接写出，发送缓冲区已满时丢弃而不排队</p>
+ *
+ * @author NiZhanBo
+ * @since 2026/10/19
+ * @version 1.0.0
+ */
+public class MediaManager extends Thread {
+    private final Selector selector;
+    private final ConcurrentLinkedQueue<Runnable> eventQueue;
+    private final ConcurrentHashMap<Long, ImtpsSession> mediaIdMap;
+    private final ByteBuffer receiveBuffer;
+    private final TimingWheel timingWheel;
+    private final SecureRandom secureRandom;
+    private final LongAdder rejectedCount;
+    private volatile DatagramChannel datagramChannel;
+    private volatile long jitterDelay;
+    private boolean live, running;
+    private final Object lock = new Object();
+
+    private final PacketHandler packetHandler;
+    private final ProcessingHub processingHub;
+    private final ImtpsLogger imtpsLogger;
+
+    public MediaManager(PacketHandler packetHandler, ProcessingHub processingHub, ImtpsLogger imtpsLogger) throws IOException {
+        super("MediaManager");
+        selector = Selector.open();
+        eventQueue = new ConcurrentLinkedQueue<>();
+        mediaIdMap = new ConcurrentHashMap<>();
+        receiveBuffer = ByteBuffer.allocate(MediaChannel.MAX_DATAGRAM_SIZE);
+        timingWheel = new TimingWheel("JitterBuffer", 10, TimeUnit.MILLISECONDS, 512);
+        secureRandom = new SecureRandom();
+        rejectedCount = new LongAdder();
+        jitterDelay = JitterBuffer.DEFAULT_DELAY;
+
+        this.packetHandler = packetHandler;
+        this.processingHub = processingHub;
+        this.imtpsLogger = imtpsLogger;
+        live = true;
+    }
+
+    public void registerDatagramChannel(DatagramChannel datagramChannel) {
+        eventQueue.add(() -> {
+            try {
+                if (this.datagramChannel != null) {
+                    this.datagramChannel.close();
+                    imtpsLogger.log(ImtpsLogger.LEVEL_DEBUG, "MediaManager注销监听[DataMedia]通道成功");
+                }
+                datagramChannel.register(selector, SelectionKey.OP_READ);
+                this.datagramChannel = datagramChannel;
+                imtpsLogger.log(ImtpsLogger.LEVEL_DEBUG, "MediaManager注册监听[DataMedia]通道成功");
+            } catch (IOException e) {
+                imtpsLogger.log(ImtpsLogger.LEVEL_ERROR, "MediaManager注册监听[DataMedia]通道出错", e);
+            }
+        });
+        if (running) {
+            selector.wakeup();
+        }
+    }
+
+    public void startRunning() {
+        running = true;
+        if (isAlive()) {
+            synchronized (lock) {
+                lock.notify();
+            }
+        } else {
+            start();
+        }
+    }
+    public void stopRunning() {
+        running = false;
+        selector.wakeup();
+    }
+    public void shutdown() {
+        live = false;
+        running = false;
+        timingWheel.stop();
+        selector.wakeup();
+        for (SelectionKey key : selector.keys()) {
+            key.cancel();
+            try {
+                key.channel().close();
+            } catch (IOException ignored) {}
+        }
+    }
+
+    @Override
+    public void run() {
+        while (live) {
+            imtpsLogger.log(ImtpsLogger.LEVEL_DEBUG, "MediaManager StartRunning");
+            while (running) {
+                while (!eventQueue.isEmpty()) {
+                    Runnable task = eventQueue.poll();
+                    task.run();
+                }
+                try {
+                    while (selector.select() > 0) {
+                        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                        while (keys.hasNext() && running) {
+                            SelectionKey key = keys.next(); keys.remove();
+                            if (key.isValid() && key.isReadable()) {
+                                readEvent((DatagramChannel) key.channel());
+                            }
+                        }
+                    }
+                } catch (IOException e) {
+                    imtpsLogger.log(ImtpsLogger.LEVEL_ERROR, "MediaManager AriseError", e);
+                }
+            }
+            if (live) {
+                synchronized (lock) {
+                    imtpsLogger.log(ImtpsLogger.LEVEL_DEBUG, "MediaManager StopRunning");
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException ignored) {}
+                }
+            }
+        }
+        imtpsLogger.log(ImtpsLogger.LEVEL_DEBUG, "MediaManager Shutdown");
+    }
+    private void readEvent(DatagramChannel datagramChannel) throws IOException {
+        while (datagramChannel.receive(receiveBuffer.clear()) instanceof InetSocketAddress socketAddress) {
+            try {
+                receive(datagramChannel, socketAddress, receiveBuffer.flip());
+            } catch (SecurityException e) {
+                rejectedCount.increment();
+            } catch (Exception e) {
+                rejectedCount.increment();
+                imtpsLogger.log(ImtpsLogger.LEVEL_DEBUG, "MediaManager丢弃无法解析的数据报[$]", socketAddress, e);
+            }
+        }
+    }
+    private void receive(DatagramChannel datagramChannel, InetSocketAddress socketAddress, ByteBuffer datagram) throws Exception {
+        if (datagram.remaining() < MediaChannel.DATAGRAM_OVERHEAD) {
+            rejectedCount.increment();
+            return;
+        }
+        long mediaId = datagram.getLong();
+        if (!(mediaIdMap.get(mediaId) instanceof ImtpsSession imtpsSession)) {
+            rejectedCount.increment();
+            return;
+        }
+        ByteBuffer plain = MediaChannel.open(imtpsSession.getImtpsSecretKey(), mediaId, datagram);
+        MediaChannel mediaChannel = imtpsSession.getMediaChannel();
+        if (plain.remaining() == MediaChannel.HELLO_SIZE) {
+            if (mediaChannel.acceptHello(plain.getLong())) {
+                mediaChannel.connect(datagramChannel, socketAddress);
+            }
+            return;
+        }
+        DataPacket dataPacket = packetHandler.decodeDataPacket(plain);
+        JitterBuffer jitterBuffer = mediaChannel.getJitterBuffer();
+        if (dataPacket.getSequence() > jitterBuffer.getHighestSequence()) {
+            mediaChannel.connect(datagramChannel, socketAddress);
+        }
+        imtpsLogger.trace("接收DataPacket[$]", dataPacket);
+        deliver(imtpsSession, jitterBuffer.offer(dataPacket, System.currentTimeMillis()));
+    }
+    private void deliver(ImtpsSession imtpsSession, List<DataPacket> dataPackets) {
+        for (DataPacket dataPacket : dataPackets) {
+            processingHub.handleDataPacket(dataPacket, imtpsSession);
+        }
+        JitterBuffer jitterBuffer = imtpsSession.getMediaChannel().getJitterBuffer();
+        synchronized (jitterBuffer) {
+            long delay = jitterBuffer.nextDeadline(System.currentTimeMillis());
+            if (delay >= 0 && jitterBuffer.getFlushTimeout() == null) {
+                // 缺口等待超时后交付其后暂存的数据包
+                jitterBuffer.setFlushTimeout(timingWheel.newTimeout(timeout -> {
+                    jitterBuffer.setFlushTimeout(null);
+                    deliver(imtpsSession, jitterBuffer.expire(System.currentTimeMillis()));
+                }, delay, TimeUnit.MILLISECONDS));
+            }
+        }
+    }
+
+    /**
+     * 发送媒体数据包，对端地址未知、超出数据报上限或发送缓冲区已满时丢弃
+     *
+     * @param imtpsSession 会话
+     * @param dataPacket   数据包
+     * @return boolean 是否写出
+     */
+    public boolean send(ImtpsSession imtpsSession, DataPacket dataPacket) {
+        MediaChannel mediaChannel = imtpsSession.getMediaChannel();
+        InetSocketAddress peerAddress = mediaChannel.getSocketAddress();
+        DatagramChannel datagramChannel = mediaChannel.getDatagramChannel();
+        if (peerAddress == null || datagramChannel == null) {
+            mediaChannel.incrementDroppedCount();
+            return false;
+        }
+        try {
+            if (dataPacket.getTaskId().isEmpty()) {
+                dataPacket.setTaskId(ImtpsTask.createTaskId());
+            }
+            imtpsLogger.trace("发送DataPacket[$]", dataPacket);
+            byte[] plain = packetHandler.encodeDataPacket(dataPacket.setSequence(mediaChannel.nextSequence()), false);
+            if (plain.length + MediaChannel.DATAGRAM_OVERHEAD > MediaChannel.MAX_DATAGRAM_SIZE) {
+                mediaChannel.incrementDroppedCount();
+                imtpsLogger.log(ImtpsLogger.LEVEL_WARN, "媒体数据包[$]超出数据报上限，已丢弃", DataPacket.formatBytes(plain.length));
+                return false;
+            }
+            ByteBuffer datagram = MediaChannel.seal(imtpsSession.getImtpsSecretKey(), mediaChannel.getMediaId(), plain);
+            int sendNumber;
+            synchronized (datagramChannel) {
+                sendNumber = datagramChannel.send(datagram, peerAddress);
+            }
+            if (sendNumber == 0) {
+                mediaChannel.incrementDroppedCount();
+                return false;
+            }
+            mediaChannel.incrementSentCount();
+            return true;
+        } catch (Exception e) {
+            mediaChannel.incrementDroppedCount();
+            imtpsLogger.log(ImtpsLogger.LEVEL_DEBUG, "发送媒体数据包出错[$]", peerAddress, e);
+            return false;
+        }
+    }
+    /**
+     * 为会话分配媒体通道 ID，已分配时返回原 ID
+     *
+     * @param imtpsSession 会话
+     * @return long
+     */
+    public long register(ImtpsSession imtpsSession) {
+        MediaChannel mediaChannel = imtpsSession.getMediaChannel();
+        synchronized (mediaChannel) {
+            if (mediaChannel.getMediaId() == 0) {
+                long mediaId;
+                do {
+                    mediaId = secureRandom.nextLong();
+                } while (mediaId == 0 || mediaIdMap.putIfAbsent(mediaId, imtpsSession) != null);
+                mediaChannel.getJitterBuffer().setDelay(jitterDelay);
+                mediaChannel.setMediaId(mediaId);
+            }
+            return mediaChannel.getMediaId();
+        }
+    }
+    public void unregister(ImtpsSession imtpsSession) {
+        long mediaId = imtpsSession.getMediaChannel().getMediaId();
+        if (mediaId != 0) {
+            mediaIdMap.remove(mediaId, imtpsSession);
+        }
+    }
+    /**
+     * 是否已绑定媒体端口
+     *
+     * @return boolean
+     */
+    public boolean isBound() {
+        return datagramChannel != null;
+    }
+    public void setJitterDelay(long jitterDelay) {
+        this.jitterDelay = Math.max(jitterDelay, 0);
+    }
+    /**
+     * 获取无法识别或未通过认证而丢弃的数据报数
+     *
+     * @return long
+     */
+    public long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+}
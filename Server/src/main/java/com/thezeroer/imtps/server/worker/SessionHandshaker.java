@@ -3,10 +3,13 @@ package com.thezeroer.imtps.server.worker;
 import com.thezeroer.imtps.server.buffer.BufferManager;
 import com.thezeroer.imtps.server.log.ImtpsLogger;
 import com.thezeroer.imtps.server.security.ImtpsSecretKey;
+import com.thezeroer.imtps.server.security.KeyPairPool;
+import com.thezeroer.imtps.server.security.SessionTicket;
 import com.thezeroer.imtps.server.session.ImtpsSession;
 import com.thezeroer.imtps.server.session.SessionUtil;
 import com.thezeroer.imtps.server.session.channel.AcceptChannel;
 import com.thezeroer.imtps.server.session.channel.ImtpsChannel;
+import com.thezeroer.imtps.server.util.TimingWheel;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
@@ -14,24 +17,38 @@ import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.charset.StandardCharsets;
 import java.security.KeyPair;
+import java.security.MessageDigest;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * 会话握手器
+ * <p>选择器线程只负责收发事件，密钥协商等计算交给与核数相同的线程池，临时密钥对由 {@link KeyPairPool} 预先生成。
+ * 等待处理的握手数达到积压上限时，新到的完整握手直接断开，由客户端稍后重试，已在进行中的握手与会话恢复不受影响</p>
+ * <p>握手按阶段读取，每次只读当前可读的字节，未读满时进度保存在 {@link AcceptChannel} 上并让出线程，
+ * 每个阶段都有截止时间，超时未完成即断开，半开连接与慢速握手只占内存而不占线程</p>
  *
  * @author NiZhanBo
  * @since 2025/07/03
  * @version 1.0.0
  */
 public class SessionHandshaker extends Thread {
+    private static final int RESUME_LENGTH = 1 + ImtpsSecretKey.TICKET_LENGTH + ImtpsSecretKey.FINISHEDMESSAGE_LENGTH;
     private final Selector selector;
     private final LinkedBlockingQueue<AcceptChannel> transmitQueue;
     private final Map<String, AcceptChannel> verifyMap;
+    private final SessionTicket sessionTicket;
+    private final KeyPairPool keyPairPool;
+    private final AtomicInteger pendingCount;
+    private final LongAdder handshakeCount, shedCount, timeoutCount;
+    private final TimingWheel timingWheel;
     private ExecutorService threadPool;
+    private volatile int backlog;
+    private volatile long handshakeTimeout;
     private boolean live, running;
     private final Object lock = new Object();
 
@@ -42,8 +59,19 @@ public class SessionHandshaker extends Thread {
         selector = Selector.open();
         transmitQueue = new LinkedBlockingQueue<>(1024);
         verifyMap = sessionManager.getVerifyMap();
-        threadPool = new ThreadPoolExecutor(2, 4, 60, TimeUnit.SECONDS
-                , new ArrayBlockingQueue<>(12), new ThreadPoolExecutor.CallerRunsPolicy());
+        sessionTicket = new SessionTicket();
+        int processors = Runtime.getRuntime().availableProcessors();
+        ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(processors, processors, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+        threadPoolExecutor.allowCoreThreadTimeOut(true);
+        threadPool = threadPoolExecutor;
+        keyPairPool = new KeyPairPool(256);
+        pendingCount = new AtomicInteger();
+        handshakeCount = new LongAdder();
+        shedCount = new LongAdder();
+        timeoutCount = new LongAdder();
+        timingWheel = new TimingWheel("HandshakeTimer", 100, TimeUnit.MILLISECONDS, 512);
+        backlog = processors * 512;
+        handshakeTimeout = 10000;
 
         this.sessionManager = sessionManager;
         this.imtpsLogger = imtpsLogger;
@@ -74,6 +102,8 @@ public class SessionHandshaker extends Thread {
         live = false;
         running = false;
         selector.wakeup();
+        keyPairPool.shutdown();
+        timingWheel.stop();
         for (AcceptChannel acceptChannel : transmitQueue) {
             try {
                 acceptChannel.channelClosed();
@@ -87,23 +117,28 @@ public class SessionHandshaker extends Thread {
             imtpsLogger.log(ImtpsLogger.LEVEL_DEBUG, "SessionHandshaker StartRunning");
             while (running) {
                 try {
-                    if (!transmitQueue.isEmpty()) {
-                        Iterator<AcceptChannel> iterator = transmitQueue.iterator();
-                        while (iterator.hasNext()) {
-                            AcceptChannel acceptChannel = iterator.next(); iterator.remove();
+                    // 每轮都先登记新连接，重连高峰时选择器持续有事件也不会让新连接一直等待
+                    AcceptChannel acceptChannel;
+                    while ((acceptChannel = transmitQueue.poll()) != null) {
+                        try {
+                            SelectionKey selectionKey = acceptChannel.getSocketChannel().configureBlocking(false).register(selector, acceptChannel.getType() == ImtpsChannel.TYPE.Control
+                                    ? SelectionKey.OP_READ : SelectionKey.OP_WRITE);
+                            selectionKey.attach(acceptChannel);
                             if (acceptChannel.getType() == ImtpsChannel.TYPE.Control) {
-                                acceptChannel.getSocketChannel().configureBlocking(false).register
-                                        (selector, SelectionKey.OP_READ).attach(acceptChannel);
-                            } else {
-                                acceptChannel.getSocketChannel().configureBlocking(false).register
-                                        (selector, SelectionKey.OP_WRITE).attach(acceptChannel);
+                                armDeadline(selectionKey, acceptChannel);
                             }
+                        } catch (IOException e) {
+                            acceptChannel.channelClosed();
                         }
                     }
-                    while (selector.select(1000) > 0) {
+                    if (selector.select(1000) > 0) {
                         Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
                         while (keys.hasNext() && running) {
                             SelectionKey key = keys.next(); keys.remove();
+                            // 可能已被截止定时器关闭
+                            if (!key.isValid()) {
+                                continue;
+                            }
                             key.interestOps(0);
                             if (key.isReadable()) {
                                 readEvent(key);
@@ -128,49 +163,61 @@ public class SessionHandshaker extends Thread {
         imtpsLogger.log(ImtpsLogger.LEVEL_DEBUG, "SessionHandshaker Shutdown");
     }
     private void readEvent(SelectionKey selectionKey) {
-        threadPool.submit(() -> {
+        // 只拒绝尚未收到任何字节的新握手，已开始的握手继续完成
+        if (selectionKey.attachment() instanceof AcceptChannel acceptChannel && acceptChannel.getStatus() == AcceptChannel.STATUS.Filtered
+                && acceptChannel.getHandshakeBuffer() == null && pendingCount.get() >= backlog) {
+            shedCount.increment();
+            imtpsLogger.log(ImtpsLogger.LEVEL_DEBUG, "握手积压已满，断开连接[$]", acceptChannel.getSocketAddress());
+            closeSelectionKey(selectionKey);
+            return;
+        }
+        submit(selectionKey, () -> {
             AcceptChannel acceptChannel = (AcceptChannel) selectionKey.attachment();
             BufferManager bufferManager = BufferManager.get();
             try {
+                ByteBuffer receiveBuffer = acceptChannel.getHandshakeBuffer();
+                if (receiveBuffer == null) {
+                    // 完整握手先收公钥，会话恢复的请求更长，首字节到达后才能确定
+                    receiveBuffer = ByteBuffer.allocate(Math.max(ImtpsSecretKey.DH_LENGTH, RESUME_LENGTH)).limit(ImtpsSecretKey.DH_LENGTH);
+                    acceptChannel.setHandshakeBuffer(receiveBuffer);
+                }
+                if (!receive(selectionKey, acceptChannel, receiveBuffer)) {
+                    return;
+                }
                 switch (acceptChannel.getStatus()) {
                     case Filtered -> {
-                        ByteBuffer byteBuffer = bufferManager.getSrcBuffer(ImtpsSecretKey.DH_LENGTH);
-                        while (byteBuffer.hasRemaining()) {
-                            if (acceptChannel.getSocketChannel().read(byteBuffer) == -1) {
-                                closeSelectionKey(selectionKey);
-                                return;
-                            }
+                        if (receiveBuffer.get(0) == ImtpsSecretKey.RESUME_FLAG) {
+                            resume(selectionKey, acceptChannel, receiveBuffer.flip());
+                            return;
                         }
-                        KeyPair keyPair = ImtpsSecretKey.createKeyPair();
+                        KeyPair keyPair = keyPairPool.take();
                         byte[] publicKey = new byte[ImtpsSecretKey.DH_LENGTH];
-                        byteBuffer.flip().get(publicKey);
+                        receiveBuffer.flip().get(publicKey);
                         ImtpsSecretKey imtpsSecretKey = new ImtpsSecretKey(keyPair.getPrivate(), publicKey);
-                        byteBuffer.clear().put(keyPair.getPublic().getEncoded()).flip();
-                        while (byteBuffer.hasRemaining()) {
-                            acceptChannel.getSocketChannel().write(byteBuffer);
-                        }
-                        acceptChannel.setImtpsSecretKey(imtpsSecretKey).setStatus(AcceptChannel.STATUS.Handshaking);
+                        ByteBuffer byteBuffer = bufferManager.getSrcBuffer(ImtpsSecretKey.DH_LENGTH).put(keyPair.getPublic().getEncoded()).flip();
+                        acceptChannel.setImtpsSecretKey(imtpsSecretKey).setHandshakeBuffer(receiveBuffer.clear().limit(ImtpsSecretKey.FINISHEDMESSAGE_LENGTH))
+                                .setStatus(AcceptChannel.STATUS.Handshaking);
+                        armDeadline(selectionKey, acceptChannel);
+                        send(acceptChannel, byteBuffer);
                     }
                     case Handshaking -> {
-                        ByteBuffer byteBuffer = bufferManager.getSrcBuffer(ImtpsSecretKey.FINISHEDMESSAGE_LENGTH);
-                        while (byteBuffer.hasRemaining()) {
-                            if (acceptChannel.getSocketChannel().read(byteBuffer) == -1) {
-                                closeSelectionKey(selectionKey);
-                                return;
-                            }
-                        }
                         byte[] serverMessage = acceptChannel.getImtpsSecretKey().getFinishedMessage();
                         byte[] clientMessage = new byte[ImtpsSecretKey.FINISHEDMESSAGE_LENGTH];
-                        byteBuffer.flip().get(clientMessage);
+                        receiveBuffer.flip().get(clientMessage);
                         if (Arrays.equals(serverMessage, clientMessage)) {
                             String sessionId = SessionUtil.creationSessionId();
-                            byteBuffer = bufferManager.getSrcBuffer(ImtpsSecretKey.FINISHEDMESSAGE_LENGTH + ImtpsSecretKey.NONCE_LENGTH + ImtpsSession.SESSIONID_LENGTH + ImtpsSecretKey.TAG_LENGTH)
-                                    .put(serverMessage).put(acceptChannel.getImtpsSecretKey().encrypt(sessionId.getBytes(StandardCharsets.UTF_8))).flip();
-                            while (byteBuffer.hasRemaining()) {
-                                acceptChannel.getSocketChannel().write(byteBuffer);
+                            // 未启用会话恢复时以全零占位，客户端据此不保存票据，也就不会发起注定被拒的恢复
+                            byte[] ticket = sessionManager.getResumptionGrace() > 0 ? sessionTicket.issue(sessionId, 0) : new byte[ImtpsSecretKey.TICKET_LENGTH];
+                            byte[] content = ByteBuffer.allocate(ImtpsSession.SESSIONID_LENGTH + ImtpsSecretKey.TICKET_LENGTH)
+                                    .put(sessionId.getBytes(StandardCharsets.UTF_8)).put(ticket).array();
+                            ByteBuffer byteBuffer = bufferManager.getSrcBuffer(ImtpsSecretKey.FINISHEDMESSAGE_LENGTH + ImtpsSecretKey.NONCE_LENGTH + content.length + ImtpsSecretKey.TAG_LENGTH)
+                                    .put(serverMessage).put(acceptChannel.getImtpsSecretKey().encrypt(content)).flip();
+                            acceptChannel.setString(sessionId).setStatus(AcceptChannel.STATUS.Handshaked);
+                            if (send(acceptChannel, byteBuffer)) {
+                                complete(selectionKey, acceptChannel);
+                            } else {
+                                armDeadline(selectionKey, acceptChannel);
                             }
-                            selectionKey.cancel();
-                            sessionManager.transmit(acceptChannel.setString(sessionId).setStatus(AcceptChannel.STATUS.Handshaked));
                         } else {
                             closeSelectionKey(selectionKey);
                         }
@@ -181,39 +228,191 @@ public class SessionHandshaker extends Thread {
                 closeSelectionKey(selectionKey);
                 imtpsLogger.log(ImtpsLogger.LEVEL_ERROR, "SessionHandshaker[ThreadPool] AriseError", e);
             } finally {
-                if (selectionKey.isValid()) {
-                    selectionKey.interestOps(SelectionKey.OP_READ);
-                    selector.wakeup();
-                }
+                updateInterest(selectionKey, acceptChannel);
             }
         });
     }
+    /**
+     * 读取当前可读的字节，读满时返回 true，未读满时保留进度返回 false，对端关闭时关闭连接
+     */
+    private boolean receive(SelectionKey selectionKey, AcceptChannel acceptChannel, ByteBuffer byteBuffer) throws IOException {
+        int length;
+        while (byteBuffer.hasRemaining() && (length = acceptChannel.getSocketChannel().read(byteBuffer)) != 0) {
+            if (length == -1) {
+                closeSelectionKey(selectionKey);
+                return false;
+            }
+            if (acceptChannel.getStatus() == AcceptChannel.STATUS.Filtered && byteBuffer.get(0) == ImtpsSecretKey.RESUME_FLAG) {
+                byteBuffer.limit(RESUME_LENGTH);
+            }
+        }
+        return !byteBuffer.hasRemaining();
+    }
+    /**
+     * 为握手的当前阶段设置截止时间，到期时仍停留在该阶段则断开
+     */
+    private void armDeadline(SelectionKey selectionKey, AcceptChannel acceptChannel) {
+        AcceptChannel.STATUS status = acceptChannel.getStatus();
+        acceptChannel.setHandshakeTimeout(timingWheel.newTimeout(timeout -> {
+            if (acceptChannel.getStatus() == status && selectionKey.isValid()) {
+                timeoutCount.increment();
+                imtpsLogger.log(ImtpsLogger.LEVEL_DEBUG, "握手超时[$][$]", status, acceptChannel.getSocketAddress());
+                closeSelectionKey(selectionKey);
+            }
+        }, handshakeTimeout, TimeUnit.MILLISECONDS));
+    }
+    private void finish(AcceptChannel acceptChannel) {
+        acceptChannel.setHandshakeBuffer(null).setHandshakeTimeout(null);
+        handshakeCount.increment();
+    }
+    /**
+     * 会话恢复，请求为标志字节、票据与以会话密钥计算的票据认证码，验证通过后回复认证码的认证码与加密的新票据，
+     * 控制通道重新挂到原会话上；任何一步失败都直接关闭连接，由客户端改为完整握手
+     */
+    private void resume(SelectionKey selectionKey, AcceptChannel acceptChannel, ByteBuffer byteBuffer) throws Exception {
+        byte[] ticket = new byte[ImtpsSecretKey.TICKET_LENGTH];
+        byte[] proof = new byte[ImtpsSecretKey.FINISHEDMESSAGE_LENGTH];
+        byteBuffer.position(1);
+        byteBuffer.get(ticket).get(proof);
+        SessionTicket.Content content;
+        try {
+            content = sessionTicket.open(ticket);
+        } catch (Exception e) {
+            content = null;
+        }
+        ImtpsSession imtpsSession = content == null ? null : sessionManager.getImtpsSession(content.getSessionId());
+        if (imtpsSession == null || !MessageDigest.isEqual(imtpsSession.getImtpsSecretKey().createMac(ticket), proof)
+                || !imtpsSession.renewTicket(content.getGeneration())) {
+            imtpsLogger.log(ImtpsLogger.LEVEL_DEBUG, "会话恢复被拒绝[$]", acceptChannel.getSocketAddress());
+            closeSelectionKey(selectionKey);
+            return;
+        }
+        ImtpsSecretKey imtpsSecretKey = imtpsSession.getImtpsSecretKey();
+        byteBuffer = BufferManager.get().getSrcBuffer(ImtpsSecretKey.FINISHEDMESSAGE_LENGTH + ImtpsSecretKey.NONCE_LENGTH + ImtpsSecretKey.TICKET_LENGTH + ImtpsSecretKey.TAG_LENGTH)
+                .put(imtpsSecretKey.createMac(proof)).put(imtpsSecretKey.encrypt(sessionTicket.issue(imtpsSession.getSessionId(), imtpsSession.getTicketGeneration()))).flip();
+        acceptChannel.setImtpsSecretKey(imtpsSecretKey).setString(imtpsSession.getSessionId()).setStatus(AcceptChannel.STATUS.Resumed);
+        if (send(acceptChannel, byteBuffer)) {
+            complete(selectionKey, acceptChannel);
+        } else {
+            armDeadline(selectionKey, acceptChannel);
+        }
+    }
+    /**
+     * 可写事件，控制通道继续写出上次未写完的握手消息，数据通道发送令牌
+     */
     private void writeEvent(SelectionKey selectionKey) {
-        threadPool.submit(() -> {
+        submit(selectionKey, () -> {
             AcceptChannel acceptChannel = (AcceptChannel) selectionKey.attachment();
-            BufferManager bufferManager = BufferManager.get();
-            ByteBuffer byteBuffer = bufferManager.getSrcBuffer(ImtpsSession.SESSIONID_LENGTH);
             try {
-                String token = SessionUtil.creationSessionId();
-                byteBuffer.put(token.getBytes(StandardCharsets.UTF_8)).flip();
-                while (byteBuffer.hasRemaining()) {
-                    acceptChannel.getSocketChannel().write(byteBuffer);
+                if (acceptChannel.getHandshakeOutput() instanceof ByteBuffer handshakeOutput) {
+                    acceptChannel.getSocketChannel().write(handshakeOutput);
+                    if (!handshakeOutput.hasRemaining()) {
+                        acceptChannel.setHandshakeOutput(null);
+                        switch (acceptChannel.getStatus()) {
+                            case Handshaked, Resumed -> complete(selectionKey, acceptChannel);
+                            case Handshaking -> {}
+                            default -> selectionKey.cancel();
+                        }
+                    }
+                } else {
+                    String token = SessionUtil.creationSessionId();
+                    // 先登记再发送，客户端收到令牌后经控制通道提交的 TOKEN 可能先于本线程返回
+                    verifyMap.put(token, acceptChannel.setString(token));
+                    ByteBuffer byteBuffer = BufferManager.get().getSrcBuffer(ImtpsSession.SESSIONID_LENGTH).put(token.getBytes(StandardCharsets.UTF_8)).flip();
+                    if (send(acceptChannel, byteBuffer)) {
+                        selectionKey.cancel();
+                    }
                 }
-                verifyMap.put(token, acceptChannel.setString(token));
+            } catch (InterruptedException ignored) {
             } catch (Exception e) {
                 closeSelectionKey(selectionKey);
                 imtpsLogger.log(ImtpsLogger.LEVEL_ERROR, "SessionHandshaker[ThreadPool] AriseError", e);
             } finally {
-                selectionKey.cancel();
+                updateInterest(selectionKey, acceptChannel);
             }
         });
     }
+    /**
+     * 写出握手消息，只写一次，发送缓冲区已满时把剩余字节留在接受通道上，由可写事件继续写出，不在线程池中空转
+     *
+     * @return boolean 是否已全部写出
+     */
+    private boolean send(AcceptChannel acceptChannel, ByteBuffer byteBuffer) throws IOException {
+        acceptChannel.getSocketChannel().write(byteBuffer);
+        if (!byteBuffer.hasRemaining()) {
+            return true;
+        }
+        // 缓冲区由线程本地的 BufferManager 复用，剩余字节须复制出来
+        acceptChannel.setHandshakeOutput(ByteBuffer.allocate(byteBuffer.remaining()).put(byteBuffer).flip());
+        return false;
+    }
+    /**
+     * 握手消息已全部写出，完整握手或会话恢复完成，移交会话管理器
+     */
+    private void complete(SelectionKey selectionKey, AcceptChannel acceptChannel) throws InterruptedException {
+        selectionKey.cancel();
+        finish(acceptChannel);
+        sessionManager.transmit(acceptChannel);
+    }
+    /**
+     * 处理完一个事件后恢复关注，有待写出的字节时关注可写，否则关注可读
+     */
+    private void updateInterest(SelectionKey selectionKey, AcceptChannel acceptChannel) {
+        if (selectionKey.isValid()) {
+            selectionKey.interestOps(acceptChannel.getHandshakeOutput() == null ? SelectionKey.OP_READ : SelectionKey.OP_WRITE);
+            selector.wakeup();
+        }
+    }
 
     public void setThreadPool(ExecutorService threadPool) {
         this.threadPool = threadPool;
     }
+    public void setBacklog(int backlog) {
+        this.backlog = Math.max(backlog, 1);
+    }
+    public void setHandshakeTimeout(long handshakeTimeout) {
+        this.handshakeTimeout = Math.max(handshakeTimeout, 1);
+    }
+    public void setKeyPairPoolCapacity(int capacity) {
+        keyPairPool.setCapacity(capacity);
+    }
+    public long getHandshakeCount() {
+        return handshakeCount.sum();
+    }
+    public long getShedCount() {
+        return shedCount.sum();
+    }
+    public long getTimeoutCount() {
+        return timeoutCount.sum();
+    }
+    public long getKeyPairMissCount() {
+        return keyPairPool.getMissCount();
+    }
+
+    /**
+     * 提交到线程池并计入等待处理的握手数，线程池拒绝时断开连接
+     */
+    private void submit(SelectionKey selectionKey, Runnable runnable) {
+        pendingCount.incrementAndGet();
+        try {
+            threadPool.execute(() -> {
+                try {
+                    runnable.run();
+                } finally {
+                    pendingCount.decrementAndGet();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pendingCount.decrementAndGet();
+            shedCount.increment();
+            closeSelectionKey(selectionKey);
+        }
+    }
 
     private void closeSelectionKey(SelectionKey selectionKey) {
+        if (selectionKey.attachment() instanceof AcceptChannel acceptChannel) {
+            acceptChannel.setHandshakeTimeout(null);
+        }
         try {
             selectionKey.channel().close();
             selectionKey.cancel();
@@ -2,20 +2,37 @@ package com.thezeroer.imtps.server.worker;
 
 import com.thezeroer.imtps.server.address.AddressManager;
 import com.thezeroer.imtps.server.datapacket.ControlPacket;
+import com.thezeroer.imtps.server.datapacket.DataFrameReader;
+import com.thezeroer.imtps.server.datapacket.DataFrameWriter;
 import com.thezeroer.imtps.server.datapacket.DataPacket;
+import com.thezeroer.imtps.server.datapacket.DataPacketWriter;
 import com.thezeroer.imtps.server.datapacket.PacketHandler;
+import com.thezeroer.imtps.server.datapacket.databody.AbstractDataBody;
+import com.thezeroer.imtps.server.datapacket.databody.SharedDataBody;
 import com.thezeroer.imtps.server.log.ImtpsLogger;
 import com.thezeroer.imtps.server.process.ProcessingHub;
+import com.thezeroer.imtps.server.process.task.AbstractTask;
 import com.thezeroer.imtps.server.session.ImtpsSession;
+import com.thezeroer.imtps.server.session.SessionListener;
+import com.thezeroer.imtps.server.session.SessionRegistry;
 import com.thezeroer.imtps.server.session.channel.AcceptChannel;
+import com.thezeroer.imtps.server.session.channel.ControlChannel;
+import com.thezeroer.imtps.server.session.channel.DataChannel;
 import com.thezeroer.imtps.server.session.channel.ImtpsChannel;
+import com.thezeroer.imtps.server.session.channel.MediaChannel;
+import com.thezeroer.imtps.server.session.channel.ReliableWindow;
+import com.thezeroer.imtps.server.session.channel.SendQueue;
+import com.thezeroer.imtps.server.util.TimingWheel;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * 会话管理器
@@ -28,30 +45,38 @@ public class SessionManager extends Thread {
     private final Selector selector;
     private final LinkedBlockingQueue<AcceptChannel> transmitQueue;
     private final ConcurrentLinkedQueue<Runnable> eventQueue;
-    private final ConcurrentHashMap<String, ImtpsSession> idToSessionHashMap;
-    private final ConcurrentHashMap<String, ImtpsSession> nameToSessionHashMap;
+    private final SessionRegistry sessionRegistry;
     private final Map<String, AcceptChannel> verifyHashMap;
+    private final CopyOnWriteArrayList<SessionListener> sessionListenerList;
     private ExecutorService threadPool;
     private boolean live, running;
     private final HeartBeat heartBeat;
+    private final DelayedAck delayedAck;
+    private final EnumMap<ImtpsChannel.TYPE, Integer> reliableWindowMapping;
+    private final EnumMap<ImtpsChannel.TYPE, Long> reliableWindowBytesMapping;
+    private final EnumMap<ImtpsChannel.TYPE, Long> sendQueueLimitMapping;
+    private final EnumMap<ImtpsChannel.TYPE, SendQueue.POLICY> sendQueuePolicyMapping;
+    private final LongAdder droppedPacketCount, slowConsumerCount;
+    private volatile long resumptionGrace;
     private final Object lock = new Object();
 
     private final EnumMap<ImtpsChannel.TYPE, SelectorWorker> selectorWorkerMapping;
     private final PacketHandler packetHandler;
     private final ProcessingHub processingHub;
+    private final MediaManager mediaManager;
     private final AddressManager addressManager;
     private final ImtpsLogger imtpsLogger;
 
-    public SessionManager(PacketHandler packetHandler, ProcessingHub processingHub, AddressManager addressManager, ImtpsLogger imtpsLogger) throws IOException {
+    public SessionManager(PacketHandler packetHandler, ProcessingHub processingHub, MediaManager mediaManager, AddressManager addressManager, ImtpsLogger imtpsLogger) throws IOException {
         selector = Selector.open();
         transmitQueue = new LinkedBlockingQueue<>(1024);
         eventQueue = new ConcurrentLinkedQueue<>();
-        idToSessionHashMap = new ConcurrentHashMap<>();
-        nameToSessionHashMap = new ConcurrentHashMap<>();
+        sessionRegistry = new SessionRegistry();
         selectorWorkerMapping = new EnumMap<>(ImtpsChannel.TYPE.class){{
             put(ImtpsChannel.TYPE.DataBasic, new SelectorWorker(ImtpsChannel.TYPE.DataBasic));
             put(ImtpsChannel.TYPE.DataFile, new SelectorWorker(ImtpsChannel.TYPE.DataFile));
         }};
+        sessionListenerList = new CopyOnWriteArrayList<>();
         verifyHashMap = Collections.synchronizedMap(new LinkedHashMap<>(1024) {
             @Override
             protected boolean removeEldestEntry(Map.Entry<String, AcceptChannel> eldest) {
@@ -62,9 +87,17 @@ public class SessionManager extends Thread {
         threadPool = new ThreadPoolExecutor(poolSize, poolSize * 2, 180
                 , TimeUnit.SECONDS, new ArrayBlockingQueue<>(1024), new ThreadPoolExecutor.CallerRunsPolicy());
         this.heartBeat = new HeartBeat();
+        this.delayedAck = new DelayedAck();
+        reliableWindowMapping = new EnumMap<>(ImtpsChannel.TYPE.class);
+        reliableWindowBytesMapping = new EnumMap<>(ImtpsChannel.TYPE.class);
+        sendQueueLimitMapping = new EnumMap<>(ImtpsChannel.TYPE.class);
+        sendQueuePolicyMapping = new EnumMap<>(ImtpsChannel.TYPE.class);
+        droppedPacketCount = new LongAdder();
+        slowConsumerCount = new LongAdder();
 
         this.packetHandler = packetHandler;
         this.processingHub = processingHub;
+        this.mediaManager = mediaManager;
         this.addressManager = addressManager;
         this.imtpsLogger = imtpsLogger;
         live = true;
@@ -87,7 +120,6 @@ public class SessionManager extends Thread {
             for (Thread thread : selectorWorkerMapping.values()) {
                 thread.start();
             }
-            heartBeat.start();
         }
     }
     public void stopRunning() {
@@ -100,6 +132,8 @@ public class SessionManager extends Thread {
     public void shutdown() {
         live = false;
         running = false;
+        heartBeat.shutdown();
+        delayedAck.shutdown();
         selector.wakeup();
         for (SelectorWorker selectorWorker : selectorWorkerMapping.values()) {
             selectorWorker.selector.wakeup();
@@ -109,7 +143,7 @@ public class SessionManager extends Thread {
                 acceptChannel.channelClosed();
             } catch (IOException ignored) {}
         }
-        for (ImtpsSession imtpsSession : idToSessionHashMap.values()) {
+        for (ImtpsSession imtpsSession : sessionRegistry.snapshot()) {
             try {
                 imtpsSession.channelClosed(ImtpsChannel.TYPE.Control);
             } catch (IOException ignored) {}
@@ -126,10 +160,21 @@ public class SessionManager extends Thread {
                         Iterator<AcceptChannel> iterator = transmitQueue.iterator();
                         while (iterator.hasNext()) {
                             AcceptChannel acceptChannel = iterator.next(); iterator.remove();
+                            if (acceptChannel.getStatus() == ImtpsChannel.STATUS.Resumed) {
+                                resumeSession(acceptChannel);
+                                continue;
+                            }
                             SelectionKey selectionKey = acceptChannel.getSocketChannel().register(selector, SelectionKey.OP_READ);
                             ImtpsSession imtpsSession = new ImtpsSession(selectionKey, acceptChannel.getImtpsSecretKey(), acceptChannel.getString());
+                            reliableWindowMapping.forEach((type, capacity) -> imtpsSession.getDataChannel(type).getReliableWindow().setCapacity(capacity));
+                            reliableWindowBytesMapping.forEach((type, maxBytes) -> imtpsSession.getDataChannel(type).getReliableWindow().setMaxBytes(maxBytes));
+                            sendQueueLimitMapping.forEach((type, limit) -> imtpsSession.getChannel(type).getSendQueue().setLimit(limit, sendQueuePolicyMapping.get(type)));
+                            for (ImtpsChannel.TYPE type : new ImtpsChannel.TYPE[]{ImtpsChannel.TYPE.DataBasic, ImtpsChannel.TYPE.DataFile}) {
+                                imtpsSession.getDataChannel(type).getSendQueue().setDropListener(this::dataPacketDropped);
+                            }
                             selectionKey.attach(imtpsSession);
-                            idToSessionHashMap.put(acceptChannel.getString(), imtpsSession);
+                            sessionRegistry.register(imtpsSession);
+                            heartBeat.watch(imtpsSession, ImtpsChannel.TYPE.Control);
                             imtpsLogger.log(ImtpsLogger.LEVEL_DEBUG, "SessionManager[ProtocolControl]已注册连接[$]", acceptChannel.getSocketAddress());
                         }
                     }
@@ -175,19 +220,37 @@ public class SessionManager extends Thread {
             imtpsSession.getControlChannel().setReading(true);
         }
         threadPool.submit(() -> {
-            ControlPacket controlPacket;
+            ControlPacket controlPacket = null;
+            List<DataFrameReader.Payload> payloads = null;
+            ControlChannel controlChannel = imtpsSession.getControlChannel();
             try {
-                controlPacket = packetHandler.readControlPacket(selectionKey, imtpsSession.getImtpsSecretKey());
-                if (controlPacket == null) {
-                    closeChannel(imtpsSession, ImtpsChannel.TYPE.Control, "接收ControlPacket为空");
-                    return;
+                if (controlChannel.getSelectionKey() == selectionKey && controlChannel.getDataFrameReader() instanceof DataFrameReader dataFrameReader) {
+                    // 多路复用模式下每次只读取当前可读的帧，可能得到零个或多个控制包与数据包
+                    payloads = dataFrameReader.read((SocketChannel) selectionKey.channel());
+                    if (payloads == null) {
+                        closeControlChannel(imtpsSession, selectionKey, "接收ControlPacket为空");
+                        return;
+                    }
+                } else {
+                    controlPacket = packetHandler.readControlPacket(selectionKey, imtpsSession.getImtpsSecretKey());
+                    if (controlPacket == null) {
+                        closeControlChannel(imtpsSession, selectionKey, "接收ControlPacket为空");
+                        return;
+                    }
+                    // 其后的字节已是帧，须在重新关注可读事件之前换用帧读取器
+                    if (controlPacket.getWay() == ControlPacket.WAY.MULTIPLEX && controlChannel.getSelectionKey() == selectionKey) {
+                        controlChannel.setDataFrameReader(new DataFrameReader(imtpsSession.getImtpsSecretKey(), packetHandler));
+                    }
                 }
             } catch (Exception e) {
                 imtpsLogger.log(ImtpsLogger.LEVEL_ERROR, "SessionManager-ReadEvent", e);
-                closeChannel(imtpsSession, ImtpsChannel.TYPE.Control, "接收ControlPacket出错");
+                closeControlChannel(imtpsSession, selectionKey, "接收ControlPacket出错");
                 return;
             } finally {
                 imtpsSession.getControlChannel().setReading(false);
+                if (controlChannel.getStatus() != ImtpsChannel.STATUS.Connected && controlChannel.getDataFrameReader() instanceof DataFrameReader dataFrameReader) {
+                    dataFrameReader.release();
+                }
                 if (imtpsSession.getControlChannel().getStatus() == ImtpsChannel.STATUS.Connected) {
                     eventQueue.add(() -> {
                         if (selectionKey.isValid()) {
@@ -197,14 +260,35 @@ public class SessionManager extends Thread {
                     selector.wakeup();
                 }
             }
-            imtpsLogger.trace("接收ControlPacket[$]", controlPacket);
             try {
-                handleControlPacket(imtpsSession, controlPacket);
-            } catch (InterruptedException e) {
+                if (payloads != null) {
+                    for (DataFrameReader.Payload payload : payloads) {
+                        receiveMultiplexed(imtpsSession, payload);
+                    }
+                } else {
+                    imtpsLogger.trace("接收ControlPacket[$]", controlPacket);
+                    handleControlPacket(imtpsSession, controlPacket);
+                }
+            } catch (Exception e) {
                 imtpsLogger.log(ImtpsLogger.LEVEL_ERROR, "SessionManager-HandleControlPacket AriseError", e);
             }
         });
     }
+    /**
+     * 分发多路复用连接上读到的负载，控制通道的负载为控制包明文，其余通道为已解码的数据包
+     */
+    private void receiveMultiplexed(ImtpsSession imtpsSession, DataFrameReader.Payload payload) throws Exception {
+        ImtpsChannel.TYPE type = ImtpsChannel.TYPE.values()[payload.getChannel()];
+        if (type == ImtpsChannel.TYPE.Control) {
+            ControlPacket controlPacket = packetHandler.decodeControlPacket(payload.getBytes());
+            imtpsLogger.trace("接收ControlPacket[$]", controlPacket);
+            handleControlPacket(imtpsSession, controlPacket);
+        } else if (selectorWorkerMapping.get(type) instanceof SelectorWorker selectorWorker) {
+            selectorWorker.receiveDataPacket(imtpsSession, payload.getDataPacket());
+        } else {
+            imtpsLogger.log(ImtpsLogger.LEVEL_DEBUG, "丢弃不支持多路复用的通道[$]的数据包", type);
+        }
+    }
     private void writeEvent(SelectionKey selectionKey) {
         ImtpsSession imtpsSession = (ImtpsSession) selectionKey.attachment();
         if (imtpsSession.getControlChannel().isWriting()) {
@@ -213,18 +297,31 @@ public class SessionManager extends Thread {
             imtpsSession.getControlChannel().setWriting(true);
         }
         threadPool.submit(() -> {
+            ControlChannel controlChannel = imtpsSession.getControlChannel();
             try {
-                ConcurrentLinkedQueue<ControlPacket> controlPacketQueue = imtpsSession.getControlChannel().getSendQueue();
-                while (!controlPacketQueue.isEmpty()) {
-                    packetHandler.writeControlPacket(selectionKey, imtpsSession.getImtpsSecretKey(), Objects.requireNonNull(controlPacketQueue.poll()));
+                SendQueue<ControlPacket> controlPacketQueue = controlChannel.getSendQueue();
+                while (controlChannel.getDataFrameWriter() == null && !controlPacketQueue.isEmpty()) {
+                    ControlPacket controlPacket = Objects.requireNonNull(controlPacketQueue.poll());
+                    packetHandler.writeControlPacket(selectionKey, imtpsSession.getImtpsSecretKey(), controlPacket);
+                    // 应答多路复用之后本方向改为帧
+                    if (controlPacket.getWay() == ControlPacket.WAY.MULTIPLEX && controlChannel.getSelectionKey() == selectionKey) {
+                        controlChannel.setDataFrameWriter(new DataFrameWriter(selectionKey, imtpsSession.getImtpsSecretKey()));
+                    }
+                }
+                // 旧连接的可写事件不得写入新连接的帧写出器
+                if (controlChannel.getDataFrameWriter() instanceof DataFrameWriter dataFrameWriter && dataFrameWriter.getSelectionKey() == selectionKey) {
+                    writeMultiplexed(imtpsSession, dataFrameWriter);
                 }
             } catch (Exception e) {
                 imtpsLogger.log(ImtpsLogger.LEVEL_ERROR, "SessionManager-WriteEvent", e);
-                closeChannel(imtpsSession, ImtpsChannel.TYPE.Control, "发送ControlPacket出错");
+                closeControlChannel(imtpsSession, selectionKey, "发送ControlPacket出错");
             } finally {
                 imtpsSession.getControlChannel().setWriting(false);
+                if (controlChannel.getStatus() != ImtpsChannel.STATUS.Connected && controlChannel.getDataFrameWriter() instanceof DataFrameWriter dataFrameWriter) {
+                    dataFrameWriter.release();
+                }
                 if (imtpsSession.getControlChannel().getStatus() == ImtpsChannel.STATUS.Connected) {
-                    if (selectionKey.isValid() && !imtpsSession.getControlChannel().getSendQueue().isEmpty()) {
+                    if (selectionKey.isValid() && (!imtpsSession.getControlChannel().getSendQueue().isEmpty() || hasMultiplexedData(imtpsSession))) {
                         eventQueue.add(() -> {
                             if (selectionKey.isValid()) {
                                 selectionKey.interestOps(selectionKey.interestOps() | SelectionKey.OP_WRITE);
@@ -237,12 +334,142 @@ public class SessionManager extends Thread {
         });
     }
 
-    public void putDataPacket(ImtpsSession imtpsSession, DataPacket dataPacket) {
-        imtpsSession.putSendQueue(dataPacket);
-        selectorWorkerMapping.get(ImtpsChannel.chooseType(dataPacket.getDataBodyType())).addWriteEvent(imtpsSession);
+    /**
+     * 多路复用模式的写出，控制包优先，DataBasic 与 DataFile 的数据包按帧轮流，每轮最多写出两个数据通道中较大的配额
+     */
+    private void writeMultiplexed(ImtpsSession imtpsSession, DataFrameWriter dataFrameWriter) throws Exception {
+        SendQueue<ControlPacket> controlPacketQueue = imtpsSession.getControlChannel().getSendQueue();
+        long budget = 0;
+        for (SelectorWorker selectorWorker : selectorWorkerMapping.values()) {
+            budget = Math.max(budget, selectorWorker.writeQuantum);
+        }
+        while (budget > 0) {
+            while (dataFrameWriter.isAcceptable(ImtpsChannel.TYPE.Control.ordinal()) && controlPacketQueue.poll() instanceof ControlPacket controlPacket) {
+                imtpsLogger.trace("发送ControlPacket[$]", controlPacket);
+                dataFrameWriter.offer(ImtpsChannel.TYPE.Control.ordinal(), packetHandler.encodeControlPacket(controlPacket), null);
+            }
+            for (ImtpsChannel.TYPE type : selectorWorkerMapping.keySet()) {
+                DataChannel dataChannel = imtpsSession.getDataChannel(type);
+                ReliableWindow reliableWindow = dataChannel.getReliableWindow();
+                while (dataFrameWriter.isAcceptable(type.ordinal())) {
+                    DataPacket next = reliableWindow.pollReplay();
+                    AbstractTask<?> task = null;
+                    if (next == null) {
+                        if (reliableWindow.isFull() || !(dataChannel.getSendQueue().poll() instanceof DataPacket dataPacket)) {
+                            break;
+                        }
+                        next = reliableWindow.offer(dataPacket);
+                        task = dataPacket.getTask();
+                    }
+                    dataFrameWriter.offer(type.ordinal(), packetHandler.createDataPacketEncoder(next), task);
+                }
+            }
+            long written = dataFrameWriter.write(Math.min(budget, DataFrameWriter.MAX_FRAME_PAYLOAD));
+            budget -= written;
+            while (dataFrameWriter.hasFinished()) {
+                processingHub.submitTaskToTimer((AbstractTask<?>) dataFrameWriter.pollFinished());
+            }
+            if (written == 0 || dataFrameWriter.isBlocked()) {
+                break;
+            }
+        }
+    }
+    private boolean hasMultiplexedData(ImtpsSession imtpsSession) {
+        if (!(imtpsSession.getControlChannel().getDataFrameWriter() instanceof DataFrameWriter dataFrameWriter)) {
+            return false;
+        }
+        if (dataFrameWriter.hasPending()) {
+            return true;
+        }
+        for (ImtpsChannel.TYPE type : selectorWorkerMapping.keySet()) {
+            if (imtpsSession.getDataChannel(type).hasSendDataPacket()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 数据包加入会话的发送队列，发送队列超出上限且策略为断开时关闭会话
+     *
+     * @param imtpsSession 会话
+     * @param dataPacket   数据包
+     * @return boolean 是否入队，经媒体通道发送时为是否写出
+     */
+    public boolean putDataPacket(ImtpsSession imtpsSession, DataPacket dataPacket) {
+        return putDataPacket(imtpsSession, dataPacket, true);
+    }
+    /**
+     * 数据包加入会话的发送队列，发送队列超出上限且策略为断开时关闭会话
+     *
+     * @param imtpsSession 会话
+     * @param dataPacket   数据包
+     * @param block        策略为 {@link SendQueue.POLICY#Block} 时是否等待，广播与群发传 false
+     * @return boolean 是否入队，经媒体通道发送时为是否写出
+     */
+    public boolean putDataPacket(ImtpsSession imtpsSession, DataPacket dataPacket, boolean block) {
+        // 媒体通道可用时音频、视频数据包直接以数据报写出，不进入发送队列
+        if (MediaChannel.isMediaPacket(dataPacket) && imtpsSession.getMediaChannel().getStatus() == ImtpsChannel.STATUS.Connected) {
+            return mediaManager.send(imtpsSession, dataPacket);
+        }
+        ImtpsChannel.TYPE type = ImtpsChannel.chooseType(dataPacket.getDataBodyType());
+        if (imtpsSession.putSendQueue(dataPacket, block)) {
+            selectorWorkerMapping.get(type).addWriteEvent(imtpsSession);
+            return true;
+        }
+        droppedPacketCount.increment();
+        if (imtpsSession.getDataChannel(type).getSendQueue().getPolicy() == SendQueue.POLICY.Disconnect) {
+            closeSlowConsumer(imtpsSession, type);
+        }
+        return false;
+    }
+    /**
+     * 发送队列丢弃数据包，数据包属于任务时任务立即以异常完成，不再等待永远不会到达的响应
+     */
+    private void dataPacketDropped(DataPacket dataPacket) {
+        if (dataPacket.getTask() instanceof AbstractTask<?> task) {
+            processingHub.failTask(task, new RejectedExecutionException("Task " + task.getTaskId() + " request was dropped"));
+        }
+    }
+    /**
+     * 广播数据包，基本类型的正文只编码一次，每个会话发送共享正文的浅副本并各自加密，文件类型的正文逐会话深拷贝
+     *
+     * @param dataPacket   数据包
+     * @param imtpsSessions 会话
+     * @return int 入队成功的会话数，发送队列拒绝的不计入，{@link SendQueue.POLICY#Block} 不阻塞
+     */
+    public int broadcast(DataPacket dataPacket, Iterable<ImtpsSession> imtpsSessions) throws Exception {
+        DataPacket template = createBroadcastTemplate(dataPacket);
+        int count = 0;
+        for (ImtpsSession imtpsSession : imtpsSessions) {
+            if (putDataPacket(imtpsSession, template.clone(), false)) {
+                count++;
+            }
+        }
+        return count;
+    }
+    /**
+     * 创建广播模板，基本类型的正文编码为 {@link SharedDataBody}，发送时对模板调用 clone() 得到各会话的副本
+     *
+     * @param dataPacket 数据包
+     * @return {@link DataPacket }
+     */
+    public DataPacket createBroadcastTemplate(DataPacket dataPacket) throws Exception {
+        DataPacket template = dataPacket.clone();
+        if (template.getDataBody() instanceof AbstractDataBody<?> dataBody && dataBody.getType() == AbstractDataBody.TYPE.Basic) {
+            template.attachDataBody(SharedDataBody.of(dataBody));
+        }
+        return template;
     }
     private void putControlPacket(SelectionKey selectionKey, ControlPacket controlPacket) {
-        ((ImtpsSession) selectionKey.attachment()).getControlChannel().getSendQueue().add(controlPacket);
+        if (!((ImtpsSession) selectionKey.attachment()).getControlChannel().getSendQueue().offer(controlPacket)) {
+            droppedPacketCount.increment();
+            closeSlowConsumer((ImtpsSession) selectionKey.attachment(), ImtpsChannel.TYPE.Control);
+            return;
+        }
+        addControlWriteEvent(selectionKey);
+    }
+    private void addControlWriteEvent(SelectionKey selectionKey) {
         if (!((ImtpsSession) selectionKey.attachment()).getControlChannel().isWriting() && selectionKey.isValid() && ((selectionKey.interestOps() & SelectionKey.OP_WRITE) == 0)) {
             eventQueue.add(() -> {
                 if (selectionKey.isValid()) {
@@ -256,34 +483,216 @@ public class SessionManager extends Thread {
     private void handleControlPacket(ImtpsSession imtpsSession, ControlPacket controlPacket) throws InterruptedException {
         switch (controlPacket.getWay()) {
             case ControlPacket.WAY.HEART_BEAT -> imtpsSession.updateLastActivityTime(ImtpsChannel.TYPE.Control);
+            case ControlPacket.WAY.MULTIPLEX -> multiplex(imtpsSession);
             case ControlPacket.WAY.TOKEN -> {
-                if (verifyHashMap.get(new String(controlPacket.getContent(), StandardCharsets.UTF_8)) instanceof AcceptChannel acceptChannel) {
-                    selectorWorkerMapping.get(acceptChannel.getType()).transmit(acceptChannel.setString(imtpsSession.getSessionId()));
+                // 令牌之后的一个字节为客户端请求的分帧模式，仅对 DataBasic 通道生效
+                byte[] content = controlPacket.getContent();
+                if (verifyHashMap.get(new String(content, 0, Math.min(content.length, ImtpsSession.SESSIONID_LENGTH), StandardCharsets.UTF_8)) instanceof AcceptChannel acceptChannel) {
+                    boolean frameMode = content.length > ImtpsSession.SESSIONID_LENGTH && content[ImtpsSession.SESSIONID_LENGTH] == 1
+                            && acceptChannel.getType() == ImtpsChannel.TYPE.DataBasic;
+                    selectorWorkerMapping.get(acceptChannel.getType()).transmit(acceptChannel.setFrameMode(frameMode).setString(imtpsSession.getSessionId()));
                 }
             }
+            case ControlPacket.WAY.ACK_DATA_BASIC -> handleAck(imtpsSession, ImtpsChannel.TYPE.DataBasic, controlPacket);
+            case ControlPacket.WAY.ACK_DATA_FILE -> handleAck(imtpsSession, ImtpsChannel.TYPE.DataFile, controlPacket);
             case ControlPacket.WAY.PORT_DATA_BASIC -> putControlPacket(imtpsSession.getControlChannel().getSelectionKey(),
                     new ControlPacket(ControlPacket.WAY.PORT_DATA_BASIC, String.valueOf(addressManager.choose
                             (imtpsSession.getRemoteAddress(), ImtpsChannel.TYPE.DataBasic)).getBytes(StandardCharsets.UTF_8)));
             case ControlPacket.WAY.PORT_DATA_FILE -> putControlPacket(imtpsSession.getControlChannel().getSelectionKey(),
                     new ControlPacket(ControlPacket.WAY.PORT_DATA_FILE, String.valueOf(addressManager.choose
                             (imtpsSession.getRemoteAddress(), ImtpsChannel.TYPE.DataFile)).getBytes(StandardCharsets.UTF_8)));
+            case ControlPacket.WAY.PORT_DATA_MEDIA -> putControlPacket(imtpsSession.getControlChannel().getSelectionKey(), mediaManager.isBound()
+                    ? new ControlPacket(ControlPacket.WAY.PORT_DATA_MEDIA, ByteBuffer.allocate(Integer.BYTES + Long.BYTES).putInt(addressManager.choose
+                            (imtpsSession.getRemoteAddress(), ImtpsChannel.TYPE.DataMedia)).putLong(mediaManager.register(imtpsSession)).array())
+                    : new ControlPacket(ControlPacket.WAY.PORT_DATA_MEDIA));
         }
     }
 
+    /**
+     * 启用多路复用，数据通道改用控制连接；应答写出后本方向改为帧，未确认的数据包在控制连接上重发
+     *
+     * @param imtpsSession 会话
+     */
+    private void multiplex(ImtpsSession imtpsSession) {
+        ControlChannel controlChannel = imtpsSession.getControlChannel();
+        SelectionKey selectionKey = controlChannel.getSelectionKey();
+        // 同一连接上重复的请求不再应答
+        if (controlChannel.getStatus() != ImtpsChannel.STATUS.Connected
+                || imtpsSession.getDataChannel(ImtpsChannel.TYPE.DataBasic).getSelectionKey() == selectionKey) {
+            return;
+        }
+        controlChannel.setMultiplexed(true);
+        for (ImtpsChannel.TYPE type : selectorWorkerMapping.keySet()) {
+            DataChannel dataChannel = imtpsSession.getDataChannel(type);
+            try {
+                // 已有的独立数据连接不再使用
+                if (dataChannel.getStatus() == ImtpsChannel.STATUS.Connected) {
+                    dataChannel.channelSuspended();
+                }
+                dataChannel.setSelectionKey(selectionKey);
+            } catch (IOException e) {
+                imtpsLogger.log(ImtpsLogger.LEVEL_ERROR, "SessionManager[$]多路复用出错", type, e);
+            }
+        }
+        putControlPacket(selectionKey, new ControlPacket(ControlPacket.WAY.MULTIPLEX));
+        imtpsLogger.log(ImtpsLogger.LEVEL_DEBUG, "SessionManager[ProtocolControl]会话[$]已启用多路复用", controlChannel.getSocketAddress());
+    }
+
+    private void handleAck(ImtpsSession imtpsSession, ImtpsChannel.TYPE type, ControlPacket controlPacket) {
+        DataChannel dataChannel = imtpsSession.getDataChannel(type);
+        if (dataChannel.getReliableWindow().acknowledge(ByteBuffer.wrap(controlPacket.getContent()).getLong()) && dataChannel.hasSendDataPacket()) {
+            selectorWorkerMapping.get(type).addWriteEvent(imtpsSession);
+        }
+    }
+
+    /**
+     * 会话恢复，控制通道换用新连接，名称、附件与发送队列保持不变；服务端尚未察觉旧连接断开时先关闭旧连接
+     *
+     * @param acceptChannel 接受通道
+     */
+    private void resumeSession(AcceptChannel acceptChannel) throws IOException {
+        if (!(sessionRegistry.get(acceptChannel.getString()) instanceof ImtpsSession imtpsSession)) {
+            acceptChannel.getSocketChannel().close();
+            return;
+        }
+        SelectionKey selectionKey = acceptChannel.getSocketChannel().register(selector, SelectionKey.OP_READ);
+        selectionKey.attach(imtpsSession);
+        synchronized (imtpsSession) {
+            if (!sessionRegistry.contains(imtpsSession)) {
+                selectionKey.cancel();
+                acceptChannel.getSocketChannel().close();
+                return;
+            }
+            if (imtpsSession.getControlChannel().getStatus() == ImtpsChannel.STATUS.Connected) {
+                imtpsSession.suspend();
+            }
+            imtpsSession.setSuspendTimeout(null);
+            sessionRegistry.reattach(imtpsSession, selectionKey);
+        }
+        heartBeat.watch(imtpsSession, ImtpsChannel.TYPE.Control);
+        for (Map.Entry<ImtpsChannel.TYPE, SelectorWorker> entry : selectorWorkerMapping.entrySet()) {
+            DataChannel dataChannel = imtpsSession.getDataChannel(entry.getKey());
+            if (dataChannel.hasSendDataPacket() || dataChannel.getReliableWindow().getUnackedCount() > 0) {
+                entry.getValue().addWriteEvent(imtpsSession);
+            }
+        }
+        imtpsLogger.log(ImtpsLogger.LEVEL_DEBUG, "SessionManager[ProtocolControl]已恢复会话[$]", acceptChannel.getSocketAddress());
+    }
+    /**
+     * 挂起会话，关闭全部连接但保留会话，宽限期内客户端可凭票据恢复，期满后关闭会话
+     *
+     * @param imtpsSession 会话
+     * @param reason       原因
+     */
+    private void suspendSession(ImtpsSession imtpsSession, String reason) {
+        synchronized (imtpsSession) {
+            if (imtpsSession.getControlChannel().getStatus() != ImtpsChannel.STATUS.Connected
+                    || !sessionRegistry.contains(imtpsSession)) {
+                return;
+            }
+            try {
+                imtpsSession.suspend();
+            } catch (IOException ignored) {}
+            imtpsSession.setSuspendTimeout(heartBeat.timingWheel.newTimeout(timeout -> {
+                synchronized (imtpsSession) {
+                    if (imtpsSession.getSuspendTimeout() == timeout && imtpsSession.getControlChannel().getStatus() != ImtpsChannel.STATUS.Connected) {
+                        closeSession(imtpsSession, "会话恢复宽限期已过");
+                    }
+                }
+            }, resumptionGrace, TimeUnit.MILLISECONDS));
+        }
+        imtpsLogger.log(ImtpsLogger.LEVEL_DEBUG, "挂起会话[$][$]，等待恢复", imtpsSession.getControlChannel().getSocketAddress(), reason);
+    }
+    public ImtpsSession getImtpsSession(String sessionId) {
+        return sessionRegistry.get(sessionId);
+    }
     public Map<String, AcceptChannel> getVerifyMap() {
         return verifyHashMap;
     }
     public ConcurrentHashMap<String, ImtpsSession> getNameToSessionHashMap() {
-        return nameToSessionHashMap;
+        return sessionRegistry.getNameIndex();
+    }
+    public SessionRegistry getSessionRegistry() {
+        return sessionRegistry;
+    }
+    /**
+     * 通知会话名称已生效
+     *
+     * @param imtpsSession 会话
+     */
+    public void sessionNamed(ImtpsSession imtpsSession) {
+        for (SessionListener sessionListener : sessionListenerList) {
+            try {
+                sessionListener.sessionNamed(imtpsSession);
+            } catch (Exception e) {
+                imtpsLogger.log(ImtpsLogger.LEVEL_ERROR, "SessionListener[$]出现未捕获的异常", sessionListener.getClass().getName(), e);
+            }
+        }
+    }
+    public void addSessionListener(SessionListener sessionListener) {
+        sessionListenerList.add(sessionListener);
+    }
+    public void removeSessionListener(SessionListener sessionListener) {
+        sessionListenerList.remove(sessionListener);
     }
 
+    /**
+     * 关闭通道，启用会话恢复时控制通道断开只挂起会话
+     *
+     * @param imtpsSession 会话
+     * @param type         通道类型
+     * @param reason       原因
+     */
     public void closeChannel(ImtpsSession imtpsSession, ImtpsChannel.TYPE type, String reason) {
+        if (type == ImtpsChannel.TYPE.Control && resumptionGrace > 0) {
+            suspendSession(imtpsSession, reason);
+            return;
+        }
+        closeConnection(imtpsSession, type, reason);
+    }
+    /**
+     * 关闭会话，不进入会话恢复的宽限期
+     *
+     * @param imtpsSession 会话
+     * @param reason       原因
+     */
+    public void closeSession(ImtpsSession imtpsSession, String reason) {
+        closeConnection(imtpsSession, ImtpsChannel.TYPE.Control, reason);
+    }
+    private void closeSlowConsumer(ImtpsSession imtpsSession, ImtpsChannel.TYPE type) {
+        // 并发入队的多个生产者可能同时失败，只计一次
+        if (sessionRegistry.contains(imtpsSession)) {
+            slowConsumerCount.increment();
+            closeSession(imtpsSession, "[" + type + "]发送队列超出上限，断开慢消费者");
+        }
+    }
+    private void closeControlChannel(ImtpsSession imtpsSession, SelectionKey selectionKey, String reason) {
+        // 会话恢复后旧连接的读写线程不得关闭新连接
+        if (imtpsSession.getControlChannel().getSelectionKey() == selectionKey) {
+            closeChannel(imtpsSession, ImtpsChannel.TYPE.Control, reason);
+        } else {
+            selectionKey.cancel();
+            try {
+                selectionKey.channel().close();
+            } catch (IOException ignored) {}
+        }
+    }
+    private void closeConnection(ImtpsSession imtpsSession, ImtpsChannel.TYPE type, String reason) {
         try {
             imtpsSession.channelClosed(type);
             if (type == ImtpsChannel.TYPE.Control) {
-                idToSessionHashMap.remove(imtpsSession.getSessionId());
-                if (imtpsSession.getSessionName() instanceof String sessionName) {
-                    nameToSessionHashMap.remove(sessionName);
+                imtpsSession.setSuspendTimeout(null);
+            }
+            if (type == ImtpsChannel.TYPE.Control && sessionRegistry.unregister(imtpsSession)) {
+                mediaManager.unregister(imtpsSession);
+                if (imtpsSession.getSessionName() != null) {
+                    for (SessionListener sessionListener : sessionListenerList) {
+                        try {
+                            sessionListener.sessionClosed(imtpsSession);
+                        } catch (Exception e) {
+                            imtpsLogger.log(ImtpsLogger.LEVEL_ERROR, "SessionListener[$]出现未捕获的异常", sessionListener.getClass().getName(), e);
+                        }
+                    }
                 }
             }
             imtpsLogger.log(ImtpsLogger.LEVEL_DEBUG, "关闭通道[$][$][$]", type, imtpsSession.getChannel(type).getSocketAddress(), reason);
@@ -299,7 +708,72 @@ public class SessionManager extends Thread {
         }
     }
     public void setHeartBeatInterval(ImtpsChannel.TYPE type, int interval) {
-        heartBeat.setHeartBeatRunnable(type, interval);
+        heartBeat.setHeartBeatInterval(type, interval);
+    }
+    /**
+     * 设置数据通道的可靠传输窗口容量与字节上限，对之后建立的会话生效，容量为 0 时不启用，字节上限为 0 时不限制
+     *
+     * @param type     通道类型
+     * @param capacity 容量
+     * @param maxBytes 字节上限
+     */
+    public void setReliableWindow(ImtpsChannel.TYPE type, int capacity, long maxBytes) {
+        reliableWindowMapping.put(type, Math.max(capacity, 0));
+        reliableWindowBytesMapping.put(type, Math.max(maxBytes, 0));
+    }
+    /**
+     * 设置数据通道每个会话每轮最多写出的字节数
+     *
+     * @param type         通道类型
+     * @param writeQuantum 配额（字节）
+     */
+    public void setWriteQuantum(ImtpsChannel.TYPE type, long writeQuantum) {
+        selectorWorkerMapping.get(type).setWriteQuantum(writeQuantum);
+    }
+    /**
+     * 设置发送队列的字节上限与超出上限时的策略，对之后建立的会话生效，0 为不限制；
+     * 控制数据包不可丢弃，控制通道只使用 {@link SendQueue.POLICY#Disconnect}
+     *
+     * @param type   通道类型
+     * @param limit  上限（字节）
+     * @param policy 策略
+     */
+    public void setSendQueueLimit(ImtpsChannel.TYPE type, long limit, SendQueue.POLICY policy) {
+        sendQueueLimitMapping.put(type, Math.max(limit, 0));
+        sendQueuePolicyMapping.put(type, type == ImtpsChannel.TYPE.Control ? SendQueue.POLICY.Disconnect : policy);
+    }
+    /**
+     * 获取全部会话指定通道发送队列中排队的字节数，数据通道包含可靠传输窗口中未确认副本的字节数
+     *
+     * @param type 通道类型
+     * @return long
+     */
+    public long getQueuedBytes(ImtpsChannel.TYPE type) {
+        long queuedBytes = 0;
+        for (ImtpsSession imtpsSession : sessionRegistry.snapshot()) {
+            queuedBytes += imtpsSession.getChannel(type).getSendQueue().getQueuedBytes();
+            if (type != ImtpsChannel.TYPE.Control) {
+                queuedBytes += imtpsSession.getDataChannel(type).getReliableWindow().getUnackedBytes();
+            }
+        }
+        return queuedBytes;
+    }
+    public long getDroppedPacketCount() {
+        return droppedPacketCount.sum();
+    }
+    public long getSlowConsumerCount() {
+        return slowConsumerCount.sum();
+    }
+    /**
+     * 设置会话恢复的宽限期（毫秒），0 为不启用
+     *
+     * @param resumptionGrace 宽限期
+     */
+    public void setResumptionGrace(long resumptionGrace) {
+        this.resumptionGrace = Math.max(resumptionGrace, 0);
+    }
+    public long getResumptionGrace() {
+        return resumptionGrace;
     }
 
     public int getSelectionKeyCount() {
@@ -311,17 +785,20 @@ public class SessionManager extends Thread {
     }
 
     class SelectorWorker extends Thread {
+        private static final long DEFAULT_WRITE_QUANTUM = 256 * 1024;
         private final ImtpsChannel.TYPE type;
         private final Selector selector;
         private final LinkedBlockingQueue<AcceptChannel> transmitQueue;
         private final ConcurrentLinkedQueue<Runnable> eventQueue;
         private ExecutorService threadPool;
+        private volatile long writeQuantum;
 
         protected SelectorWorker(ImtpsChannel.TYPE type) throws IOException {
             this.type = type;
             selector = Selector.open();
             transmitQueue = new LinkedBlockingQueue<>(1024);
             eventQueue = new ConcurrentLinkedQueue<>();
+            writeQuantum = DEFAULT_WRITE_QUANTUM;
             int poolSize = Runtime.getRuntime().availableProcessors();
             threadPool = new ThreadPoolExecutor(poolSize, poolSize * 2, 180
                     , TimeUnit.SECONDS, new ArrayBlockingQueue<>(1024), new ThreadPoolExecutor.CallerRunsPolicy());
@@ -342,10 +819,15 @@ public class SessionManager extends Thread {
                             Iterator<AcceptChannel> iterator = transmitQueue.iterator();
                             while (iterator.hasNext()) {
                                 AcceptChannel acceptChannel = iterator.next();iterator.remove();
-                                if (idToSessionHashMap.get(acceptChannel.getString()) instanceof ImtpsSession imtpsSession) {
+                                if (sessionRegistry.get(acceptChannel.getString()) instanceof ImtpsSession imtpsSession) {
                                     SelectionKey selectionKey = acceptChannel.getSocketChannel().register(selector, SelectionKey.OP_READ);
                                     imtpsSession.getDataChannel(type).setSelectionKey(selectionKey);
+                                    if (acceptChannel.isFrameMode()) {
+                                        imtpsSession.getDataChannel(type).setFrameCodec(new DataFrameWriter(selectionKey, imtpsSession.getImtpsSecretKey()),
+                                                new DataFrameReader(imtpsSession.getImtpsSecretKey()));
+                                    }
                                     selectionKey.attach(imtpsSession);
+                                    heartBeat.watch(imtpsSession, type);
                                     imtpsLogger.log(ImtpsLogger.LEVEL_DEBUG, "SessionManager[$]已注册连接[$]", type.name(), acceptChannel.getSocketAddress());
                                     switch (type) {
                                         case DataBasic -> putControlPacket(imtpsSession.getControlChannel().getSelectionKey(),
@@ -353,7 +835,7 @@ public class SessionManager extends Thread {
                                         case DataFile -> putControlPacket(imtpsSession.getControlChannel().getSelectionKey(),
                                                 new ControlPacket(ControlPacket.WAY.READY_DATA_FILE));
                                     }
-                                    if (!imtpsSession.getDataChannel(type).getSendQueue().isEmpty()) {
+                                    if (imtpsSession.getDataChannel(type).hasSendDataPacket()) {
                                         selectionKey.interestOps(selectionKey.interestOps() | SelectionKey.OP_WRITE);
                                     }
                                 } else {
@@ -402,16 +884,30 @@ public class SessionManager extends Thread {
                 imtpsSession.getDataChannel(type).setReading(true);
             }
             threadPool.submit(() -> {
-                DataPacket dataPacket;
+                List<DataPacket> dataPackets = new ArrayList<>(1);
                 try {
-                    dataPacket= packetHandler.readDataPacket(selectionKey, imtpsSession.getImtpsSecretKey());
-                    if (dataPacket == null) {
-                        closeChannel(imtpsSession, type, "接收DataPacket为空");
-                        return;
+                    DataChannel dataChannel = imtpsSession.getDataChannel(type);
+                    if (dataChannel.getSelectionKey() == selectionKey && dataChannel.getDataFrameReader() instanceof DataFrameReader dataFrameReader) {
+                        // 分帧模式下每次只读取当前可读的帧，可能得到零个或多个完整的数据包
+                        List<DataFrameReader.Payload> payloads = dataFrameReader.read((SocketChannel) selectionKey.channel());
+                        if (payloads == null) {
+                            closeDataChannel(imtpsSession, selectionKey, "接收DataPacket为空");
+                            return;
+                        }
+                        for (DataFrameReader.Payload payload : payloads) {
+                            dataPackets.add(packetHandler.decodeDataPacket(ByteBuffer.wrap(payload.getBytes())));
+                        }
+                    } else {
+                        DataPacket dataPacket = packetHandler.readDataPacket(selectionKey, imtpsSession.getImtpsSecretKey());
+                        if (dataPacket == null) {
+                            closeDataChannel(imtpsSession, selectionKey, "接收DataPacket为空");
+                            return;
+                        }
+                        dataPackets.add(dataPacket);
                     }
                 } catch (Exception e) {
                     imtpsLogger.log(ImtpsLogger.LEVEL_ERROR, "SessionManager[$]-ReadEvent AriseError", type, e);
-                    closeChannel(imtpsSession, type, "接收DataPacket出错");
+                    closeDataChannel(imtpsSession, selectionKey, "接收DataPacket出错");
                     return;
                 } finally {
                     imtpsSession.getDataChannel(type).setReading(false);
@@ -424,10 +920,28 @@ public class SessionManager extends Thread {
                         selector.wakeup();
                     }
                 }
-                imtpsLogger.trace("接收DataPacket[$]", dataPacket);
-                processingHub.handleDataPacket(dataPacket, (ImtpsSession) selectionKey.attachment());
+                for (DataPacket dataPacket : dataPackets) {
+                    receiveDataPacket(imtpsSession, dataPacket);
+                }
             });
         }
+        void receiveDataPacket(ImtpsSession imtpsSession, DataPacket dataPacket) {
+            imtpsLogger.trace("接收DataPacket[$]", dataPacket);
+            DataChannel dataChannel = imtpsSession.getDataChannel(type);
+            ReliableWindow reliableWindow = dataChannel.getReliableWindow();
+            if (reliableWindow.acknowledge(dataPacket.getAcknowledge()) && dataChannel.hasSendDataPacket()) {
+                addWriteEvent(imtpsSession);
+            }
+            boolean fresh = reliableWindow.receive(dataPacket.getSequence());
+            if (dataPacket.getSequence() != 0) {
+                delayedAck.schedule(imtpsSession, type);
+            }
+            if (fresh) {
+                processingHub.handleDataPacket(dataPacket, imtpsSession);
+            } else {
+                imtpsLogger.log(ImtpsLogger.LEVEL_DEBUG, "丢弃重复的DataPacket[$][$]", type, dataPacket.getSequence());
+            }
+        }
         private void writeEvent(SelectionKey selectionKey) {
             ImtpsSession imtpsSession = (ImtpsSession) selectionKey.attachment();
             if (imtpsSession.getDataChannel(type).isWriting()) {
@@ -435,22 +949,64 @@ public class SessionManager extends Thread {
             } else {
                 imtpsSession.getDataChannel(type).setWriting(true);
             }
+            // 每轮最多写出配额加赤字的字节数，剩余部分留在写出器中，重新关注可写事件后排到本轮就绪会话之后，
+            // 大文件在分块之间让出线程，不再长时间占用线程池
             threadPool.submit(() -> {
+                DataChannel dataChannel = imtpsSession.getDataChannel(type);
                 try {
-                    ConcurrentLinkedQueue<DataPacket> dataPacketQueue = imtpsSession.getDataChannel(type).getSendQueue();
-                    while (!dataPacketQueue.isEmpty()) {
-                        if (dataPacketQueue.poll() instanceof DataPacket dataPacket) {
-                            packetHandler.writeDataPacket(selectionKey, imtpsSession.getImtpsSecretKey(), dataPacket);
-                            processingHub.submitTaskToTimer(dataPacket.getTask());
+                    if (dataChannel.getDataFrameWriter() instanceof DataFrameWriter dataFrameWriter) {
+                        // 旧连接的可写事件不得写入新连接的帧写出器
+                        if (dataFrameWriter.getSelectionKey() == selectionKey) {
+                            writeFrames(imtpsSession, dataChannel, dataFrameWriter);
                         }
+                        return;
+                    }
+                    SendQueue<DataPacket> dataPacketQueue = dataChannel.getSendQueue();
+                    ReliableWindow reliableWindow = dataChannel.getReliableWindow();
+                    DataPacketWriter dataPacketWriter = dataChannel.getDataPacketWriter();
+                    AbstractTask<?> writingTask = dataChannel.getWritingTask();
+                    if (dataPacketWriter != null && dataPacketWriter.getSelectionKey() != selectionKey) {
+                        // 旧连接上未写完的数据包随连接作废
+                        dataChannel.releaseDataPacketWriter();
+                        dataPacketWriter = null;
+                        writingTask = null;
                     }
+                    long budget = dataChannel.getDeficit() + writeQuantum;
+                    while (budget > 0) {
+                        if (dataPacketWriter == null) {
+                            DataPacket next = reliableWindow.pollReplay();
+                            writingTask = null;
+                            if (next == null) {
+                                if (reliableWindow.isFull() || !(dataPacketQueue.poll() instanceof DataPacket dataPacket)) {
+                                    break;
+                                }
+                                next = reliableWindow.offer(dataPacket);
+                                writingTask = dataPacket.getTask();
+                            }
+                            dataPacketWriter = packetHandler.createDataPacketWriter(selectionKey, imtpsSession.getImtpsSecretKey(), next);
+                        }
+                        budget -= dataPacketWriter.write(budget);
+                        if (dataPacketWriter.isFinished()) {
+                            processingHub.submitTaskToTimer(writingTask);
+                            dataPacketWriter = null;
+                        } else if (dataPacketWriter.isBlocked()) {
+                            break;
+                        }
+                    }
+                    dataChannel.setDataPacketWriter(dataPacketWriter, writingTask);
+                    // 超出配额的部分从下一轮扣除，没有待写数据时不保留赤字
+                    dataChannel.setDeficit(dataChannel.hasSendDataPacket() ? Math.min(budget, 0) : 0);
                 } catch (Exception e) {
                     imtpsLogger.log(ImtpsLogger.LEVEL_ERROR, "SessionManager[$]-WriteEvent AriseError", type, e);
-                    closeChannel(imtpsSession, type, "发送DataPacket出错");
+                    dataChannel.releaseDataPacketWriter();
+                    closeDataChannel(imtpsSession, selectionKey, "发送DataPacket出错");
                 } finally {
                     imtpsSession.getDataChannel(type).setWriting(false);
+                    if (dataChannel.getStatus() != ImtpsChannel.STATUS.Connected) {
+                        dataChannel.releaseDataPacketWriter();
+                    }
                     if (imtpsSession.getDataChannel(type).getStatus() == ImtpsChannel.STATUS.Connected) {
-                        if (!imtpsSession.getDataChannel(type).getSendQueue().isEmpty()) {
+                        if (imtpsSession.getDataChannel(type).hasSendDataPacket()) {
                             eventQueue.add(() -> {
                                 if (selectionKey.isValid()) {
                                     selectionKey.interestOps(selectionKey.interestOps() | SelectionKey.OP_WRITE);
@@ -462,9 +1018,56 @@ public class SessionManager extends Thread {
                 }
             });
         }
+        /**
+         * 分帧模式的写出，数据包编码后交给帧写出器交错写出，单帧的小数据包排在大数据包剩余的帧之前
+         */
+        private void writeFrames(ImtpsSession imtpsSession, DataChannel dataChannel, DataFrameWriter dataFrameWriter) throws Exception {
+            SendQueue<DataPacket> dataPacketQueue = dataChannel.getSendQueue();
+            ReliableWindow reliableWindow = dataChannel.getReliableWindow();
+            long budget = dataChannel.getDeficit() + writeQuantum;
+            while (budget > 0) {
+                while (dataFrameWriter.isAcceptable()) {
+                    DataPacket next = reliableWindow.pollReplay();
+                    AbstractTask<?> task = null;
+                    if (next == null) {
+                        if (reliableWindow.isFull() || !(dataPacketQueue.poll() instanceof DataPacket dataPacket)) {
+                            break;
+                        }
+                        next = reliableWindow.offer(dataPacket);
+                        task = dataPacket.getTask();
+                    }
+                    if (next.getTaskId().isEmpty()) {
+                        next.setTaskId(AbstractTask.createTaskId());
+                    }
+                    imtpsLogger.trace("发送DataPacket[$]", next);
+                    dataFrameWriter.offer(packetHandler.encodeDataPacket(next, false), task);
+                }
+                // 每写出一帧检查一次发送队列，新到的小数据包可插到大数据包剩余的帧之前
+                long written = dataFrameWriter.write(Math.min(budget, DataFrameWriter.MAX_FRAME_PAYLOAD));
+                budget -= written;
+                while (dataFrameWriter.hasFinished()) {
+                    processingHub.submitTaskToTimer((AbstractTask<?>) dataFrameWriter.pollFinished());
+                }
+                if (written == 0 || dataFrameWriter.isBlocked()) {
+                    break;
+                }
+            }
+            dataChannel.setDeficit(dataChannel.hasSendDataPacket() ? Math.min(budget, 0) : 0);
+        }
 
         public void addWriteEvent(ImtpsSession imtpsSession) {
+            if (imtpsSession.getControlChannel().isMultiplexed()) {
+                // 多路复用模式下数据随控制连接写出，会话挂起期间数据留在发送队列中，恢复并重新协商后写出
+                if (imtpsSession.getDataChannel(type).getStatus() == ImtpsChannel.STATUS.Connected) {
+                    addControlWriteEvent(imtpsSession.getControlChannel().getSelectionKey());
+                }
+                return;
+            }
             if (imtpsSession.getDataChannel(type).getStatus() == ImtpsChannel.STATUS.Unconnected) {
+                // 会话挂起期间数据留在发送队列中，恢复后再请求连接
+                if (imtpsSession.getControlChannel().getStatus() != ImtpsChannel.STATUS.Connected) {
+                    return;
+                }
                 switch (type) {
                     case ImtpsChannel.TYPE.DataBasic -> putControlPacket(imtpsSession.getControlChannel().getSelectionKey(),
                             new ControlPacket(ControlPacket.WAY.PORT_DATA_BASIC, String.valueOf(addressManager.choose
@@ -486,116 +1089,115 @@ public class SessionManager extends Thread {
             }
         }
 
+        private void closeDataChannel(ImtpsSession imtpsSession, SelectionKey selectionKey, String reason) {
+            // 重连后旧连接的读写线程不得关闭新连接
+            if (imtpsSession.getDataChannel(type).getSelectionKey() == selectionKey) {
+                closeChannel(imtpsSession, type, reason);
+            } else {
+                selectionKey.cancel();
+                try {
+                    selectionKey.channel().close();
+                } catch (IOException ignored) {}
+            }
+        }
+
         public void setThreadPool(ExecutorService threadPool) {
             this.threadPool = threadPool;
         }
+        public void setWriteQuantum(long writeQuantum) {
+            this.writeQuantum = writeQuantum;
+        }
         public int getSelectionKeyCount() {
             return selector.keys().size();
         }
     }
 
-    class HeartBeat extends Thread {
-        private final ConcurrentHashMap<ImtpsChannel.TYPE, HeartBeatRunnable> heartBeatHashMap;
-        private final PriorityQueue<HeartBeatRunnable> heartBeatPriorityQueue;
+    class DelayedAck {
+        private static final int ACK_INTERVAL = 16;
+        private static final long ACK_DELAY = 200;
+        private final TimingWheel timingWheel;
 
-        public HeartBeat() {
-            heartBeatHashMap = new ConcurrentHashMap<>();
-            heartBeatPriorityQueue = new PriorityQueue<>();
-            setName("HeartBeat");
-            setDaemon(true);
+        public DelayedAck() {
+            timingWheel = new TimingWheel("DelayedAck", 10, TimeUnit.MILLISECONDS, 512);
         }
 
-        public void setHeartBeatRunnable(ImtpsChannel.TYPE type, int interval) {
-            synchronized (heartBeatPriorityQueue) {
-                if (heartBeatHashMap.remove(type) instanceof HeartBeatRunnable heartBeatRunnable) {
-                    heartBeatPriorityQueue.remove(heartBeatRunnable);
+        /**
+         * 累计未确认的数据包达到间隔时立即确认，否则延迟确认，期间反向数据包会捎带确认
+         *
+         * @param imtpsSession 会话
+         * @param type         通道类型
+         */
+        public void schedule(ImtpsSession imtpsSession, ImtpsChannel.TYPE type) {
+            ReliableWindow reliableWindow = imtpsSession.getDataChannel(type).getReliableWindow();
+            if (reliableWindow.getUnreportedCount() >= ACK_INTERVAL) {
+                send(imtpsSession, type);
+            } else {
+                synchronized (reliableWindow) {
+                    if (reliableWindow.getAckTimeout() == null) {
+                        reliableWindow.setAckTimeout(timingWheel.newTimeout(timeout -> {
+                            reliableWindow.setAckTimeout(null);
+                            send(imtpsSession, type);
+                        }, ACK_DELAY, TimeUnit.MILLISECONDS));
+                    }
                 }
-                HeartBeatRunnable heartBeatRunnable = new HeartBeatRunnable(type, interval);
-                heartBeatHashMap.put(type, heartBeatRunnable);
-                heartBeatPriorityQueue.offer(heartBeatRunnable);
-                heartBeatPriorityQueue.notifyAll();
             }
-            imtpsLogger.log(ImtpsLogger.LEVEL_DEBUG, "心跳验证间隔[$][$]秒", type, interval);
+        }
+        public void shutdown() {
+            timingWheel.stop();
         }
 
-        @Override
-        public void run() {
-            if (!heartBeatHashMap.containsKey(ImtpsChannel.TYPE.Control)) {
-                setHeartBeatRunnable(ImtpsChannel.TYPE.Control, 60);
-            }
-            if (!heartBeatHashMap.containsKey(ImtpsChannel.TYPE.DataBasic)) {
-                setHeartBeatRunnable(ImtpsChannel.TYPE.DataBasic, 300);
-            }
-            if (!heartBeatHashMap.containsKey(ImtpsChannel.TYPE.DataFile)) {
-                setHeartBeatRunnable(ImtpsChannel.TYPE.DataFile, 30);
-            }
-            while (live) {
-                imtpsLogger.log(ImtpsLogger.LEVEL_DEBUG, "HeartBeat StartRunning");
-                try {
-                    while (running) {
-                        HeartBeatRunnable heartBeatRunnable;
-                        synchronized (heartBeatPriorityQueue) {
-                            while (heartBeatPriorityQueue.isEmpty()) {
-                                heartBeatPriorityQueue.wait();
-                            }
-                            long nowTime = System.currentTimeMillis();
-                            heartBeatRunnable = heartBeatPriorityQueue.poll();
-                            if (heartBeatRunnable == null) {
-                                continue;
-                            }
-                            if (heartBeatRunnable.nextRunTime > nowTime) {
-                                heartBeatPriorityQueue.wait(heartBeatRunnable.nextRunTime - nowTime);
-                            }
-                        }
-                        heartBeatRunnable.run();
-                        synchronized (heartBeatPriorityQueue) {
-                            heartBeatPriorityQueue.offer(heartBeatRunnable);
-                        }
-                    }
-                    if (live) {
-                        synchronized (lock) {
-                            imtpsLogger.log(ImtpsLogger.LEVEL_DEBUG, "HeartBeat Stopping");
-                            lock.wait();
-                        }
-                    }
-                } catch (InterruptedException ignored) {
-                } catch (Exception e) {
-                    imtpsLogger.log(ImtpsLogger.LEVEL_DEBUG, "HeartBeat AriseError", e);
-                }
+        private void send(ImtpsSession imtpsSession, ImtpsChannel.TYPE type) {
+            long sequence = imtpsSession.getDataChannel(type).getReliableWindow().takeAck();
+            if (sequence < 0 || imtpsSession.getControlChannel().getStatus() != ImtpsChannel.STATUS.Connected) {
+                return;
             }
-            imtpsLogger.log(ImtpsLogger.LEVEL_DEBUG, "HeartBeat Shutdown");
+            putControlPacket(imtpsSession.getControlChannel().getSelectionKey(), new ControlPacket(type == ImtpsChannel.TYPE.DataBasic
+                    ? ControlPacket.WAY.ACK_DATA_BASIC : ControlPacket.WAY.ACK_DATA_FILE, ByteBuffer.allocate(Long.BYTES).putLong(sequence).array()));
         }
+    }
 
-        class HeartBeatRunnable implements Runnable, Comparable<HeartBeatRunnable> {
-            private long interval, nextRunTime;
-            private final ImtpsChannel.TYPE type;
+    class HeartBeat {
+        private final TimingWheel timingWheel;
+        private final ConcurrentHashMap<ImtpsChannel.TYPE, Long> intervalHashMap;
 
-            public HeartBeatRunnable(ImtpsChannel.TYPE type, int interval) {
-                this.type = type;
-                setHeartBeatInterval(interval);
-            }
+        public HeartBeat() {
+            timingWheel = new TimingWheel("HeartBeat", 1, TimeUnit.SECONDS, 512);
+            intervalHashMap = new ConcurrentHashMap<>();
+            intervalHashMap.put(ImtpsChannel.TYPE.Control, 60 * 1000L);
+            intervalHashMap.put(ImtpsChannel.TYPE.DataBasic, 300 * 1000L);
+            intervalHashMap.put(ImtpsChannel.TYPE.DataFile, 30 * 1000L);
+        }
 
-            public void setHeartBeatInterval(int interval) {
-                this.interval = interval * 1000L;
-                nextRunTime = interval + System.currentTimeMillis();
-            }
+        public void setHeartBeatInterval(ImtpsChannel.TYPE type, int interval) {
+            intervalHashMap.put(type, interval * 1000L);
+            imtpsLogger.log(ImtpsLogger.LEVEL_DEBUG, "心跳验证间隔[$][$]秒", type, interval);
+        }
+        public void watch(ImtpsSession imtpsSession, ImtpsChannel.TYPE type) {
+            ImtpsChannel imtpsChannel = imtpsSession.getChannel(type).updateLastActivityTime();
+            schedule(imtpsSession, imtpsChannel, intervalHashMap.get(type));
+        }
+        public long getPendingCount() {
+            return timingWheel.pendingTimeouts();
+        }
+        public void shutdown() {
+            timingWheel.stop();
+            imtpsLogger.log(ImtpsLogger.LEVEL_DEBUG, "HeartBeat Shutdown");
+        }
 
-            @Override
-            public void run() {
-                long nowTime = System.currentTimeMillis();
-                nextRunTime = interval + nowTime;
-                for (ImtpsSession imtpsSession : idToSessionHashMap.values()) {
-                    ImtpsChannel imtpsChannel = imtpsSession.getChannel(type);
-                    if (imtpsChannel.getStatus() == ImtpsChannel.STATUS.Connected && imtpsChannel.getLastActivityTime() + interval < nowTime
-                            && !imtpsChannel.isReading() && !imtpsChannel.isWriting()) {
-                        closeChannel(imtpsSession, type, "心跳超时");
-                    }
-                }
+        private void schedule(ImtpsSession imtpsSession, ImtpsChannel imtpsChannel, long delay) {
+            imtpsChannel.setHeartBeatTimeout(timingWheel.newTimeout(timeout -> expire(imtpsSession, imtpsChannel, timeout),
+                    delay, TimeUnit.MILLISECONDS));
+        }
+        private void expire(ImtpsSession imtpsSession, ImtpsChannel imtpsChannel, TimingWheel.Timeout timeout) {
+            if (imtpsChannel.getHeartBeatTimeout() != timeout || imtpsChannel.getStatus() != ImtpsChannel.STATUS.Connected) {
+                return;
             }
-
-            @Override
-            public int compareTo(HeartBeatRunnable o) {
-                return Long.compare(this.nextRunTime, o.nextRunTime);
+            long interval = intervalHashMap.get(imtpsChannel.getType());
+            long idleTime = System.currentTimeMillis() - imtpsChannel.getLastActivityTime();
+            if (running && idleTime >= interval && !imtpsChannel.isReading() && !imtpsChannel.isWriting()) {
+                closeChannel(imtpsSession, imtpsChannel.getType(), "心跳超时");
+            } else {
+                schedule(imtpsSession, imtpsChannel, idleTime < interval ? interval - idleTime : interval);
             }
         }
     }
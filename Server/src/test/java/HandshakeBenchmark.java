@@ -0,0 +1,139 @@
+import com.thezeroer.imtps.server.IMTPS_Server;
+import com.thezeroer.imtps.server.security.ImtpsSecretKey;
+import com.thezeroer.imtps.server.session.ImtpsSession;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 完整握手速率基准
+ * <p>在本机启动服务器，以原始套接字并发完成公钥交换与完成消息校验，客户端密钥对预先生成，不计入耗时。
+ * 先统计服务器一侧生成密钥对与密钥协商的单次开销，再统计每秒握手数与每核每秒握手数，以及被积压上限拒绝的次数和密钥对池未命中次数</p>
+ * <p>参数：[握手数，默认 5000] [并发连接数，默认 64] [密钥对池容量，默认 256]</p>
+ */
+public class HandshakeBenchmark {
+    public static void main(String[] args) throws Exception {
+        int total = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        int concurrency = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        int capacity = args.length > 2 ? Integer.parseInt(args[2]) : 256;
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        KeyPair[] keyPairs = new KeyPair[total];
+        for (int i = 0; i < total; i++) {
+            keyPairs[i] = ImtpsSecretKey.createKeyPair();
+        }
+        measureCrypto(keyPairs[0].getPublic().getEncoded(), 2000);
+
+        int port;
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            port = serverSocket.getLocalPort();
+        }
+        IMTPS_Server server = new IMTPS_Server();
+        server.setLoggerLevel((byte) 1);
+        server.setKeyPairPoolCapacity(capacity);
+        server.bindAllPort(port, 0, 0);
+        server.processingHubFreeze();
+        server.startRunning();
+        Thread.sleep(300);
+
+        InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+        AtomicInteger next = new AtomicInteger(), succeeded = new AtomicInteger(), closed = new AtomicInteger(), failed = new AtomicInteger();
+        ExecutorService executorService = Executors.newFixedThreadPool(concurrency);
+        List<Future<?>> futures = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int t = 0; t < concurrency; t++) {
+            futures.add(executorService.submit(() -> {
+                for (int i; (i = next.getAndIncrement()) < total; ) {
+                    try {
+                        switch (handshake(address, keyPairs[i])) {
+                            case 1 -> succeeded.incrementAndGet();
+                            case 0 -> closed.incrementAndGet();
+                            default -> failed.incrementAndGet();
+                        }
+                    } catch (Exception e) {
+                        failed.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        executorService.shutdownNow();
+
+        System.out.printf("handshakes=%d concurrency=%d cores=%d%n", total, concurrency, cores);
+        System.out.printf("ok=%d closed=%d failed=%d elapsed=%.2fs rate=%.0f/s perCore=%.0f/s%n", succeeded.get(), closed.get(), failed.get(),
+                elapsed, succeeded.get() / elapsed, succeeded.get() / elapsed / cores);
+        System.out.printf("server handshakes=%d shed=%d keyPairMiss=%d%n", server.getHandshakeCount(), server.getShedHandshakeCount(), server.getKeyPairMissCount());
+        server.shutdown();
+        System.exit(0);
+    }
+
+    /**
+     * 完成一次完整握手，成功返回 1，被服务器断开返回 0，完成消息不一致返回 -1
+     */
+    private static int handshake(InetSocketAddress address, KeyPair keyPair) throws Exception {
+        try (SocketChannel socketChannel = SocketChannel.open(address)) {
+            ByteBuffer byteBuffer = ByteBuffer.wrap(keyPair.getPublic().getEncoded());
+            while (byteBuffer.hasRemaining()) {
+                socketChannel.write(byteBuffer);
+            }
+            if (!readFully(socketChannel, byteBuffer.clear())) {
+                return 0;
+            }
+            byte[] finishedMessage = new ImtpsSecretKey(keyPair.getPrivate(), byteBuffer.array()).getFinishedMessage();
+            byteBuffer = ByteBuffer.wrap(finishedMessage.clone());
+            while (byteBuffer.hasRemaining()) {
+                socketChannel.write(byteBuffer);
+            }
+            byteBuffer = ByteBuffer.allocate(ImtpsSecretKey.FINISHEDMESSAGE_LENGTH + ImtpsSecretKey.NONCE_LENGTH + ImtpsSession.SESSIONID_LENGTH
+                    + ImtpsSecretKey.TICKET_LENGTH + ImtpsSecretKey.TAG_LENGTH);
+            if (!readFully(socketChannel, byteBuffer)) {
+                return 0;
+            }
+            return Arrays.equals(finishedMessage, Arrays.copyOf(byteBuffer.array(), ImtpsSecretKey.FINISHEDMESSAGE_LENGTH)) ? 1 : -1;
+        }
+    }
+    private static boolean readFully(SocketChannel socketChannel, ByteBuffer byteBuffer) throws IOException {
+        while (byteBuffer.hasRemaining()) {
+            if (socketChannel.read(byteBuffer) == -1) {
+                return false;
+            }
+        }
+        return true;
+    }
+    /**
+     * 统计服务器一侧单次握手的密码学开销，密钥对池命中时握手路径上只剩密钥协商
+     */
+    private static void measureCrypto(byte[] publicKey, int count) throws Exception {
+        for (int round = 0; round < 2; round++) {
+            long start = System.nanoTime();
+            KeyPair keyPair = null;
+            for (int i = 0; i < count; i++) {
+                keyPair = ImtpsSecretKey.createKeyPair();
+            }
+            long keyGeneration = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                new ImtpsSecretKey(keyPair.getPrivate(), publicKey).getFinishedMessage();
+            }
+            long agreement = System.nanoTime() - start;
+            if (round > 0) {
+                System.out.printf("crypto keyGeneration=%.1fus agreement=%.1fus%n", keyGeneration / 1e3 / count, agreement / 1e3 / count);
+            }
+        }
+    }
+}
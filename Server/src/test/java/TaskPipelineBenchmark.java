@@ -0,0 +1,89 @@
+import com.thezeroer.imtps.server.datapacket.DataPacket;
+import com.thezeroer.imtps.server.datapacket.PacketHandler;
+import com.thezeroer.imtps.server.log.ImtpsLogger;
+import com.thezeroer.imtps.server.process.ProcessingHub;
+import com.thezeroer.imtps.server.process.task.AbstractTask;
+import com.thezeroer.imtps.server.process.task.ImtpsTask;
+import com.thezeroer.imtps.server.session.ImtpsSession;
+import com.thezeroer.imtps.server.worker.SessionManager;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 队列模式任务流水线基准
+ * <p>以模拟往返时延的回声会话替代网络，同一排序键下提交一批队列模式任务，比较不同窗口大小的总耗时与单任务延迟</p>
+ * <p>参数：[任务数，默认 200] [往返时延毫秒，默认 5] [窗口大小列表，默认 1,2,4,8,16]</p>
+ */
+public class TaskPipelineBenchmark {
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int total = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        long rtt = args.length > 1 ? Long.parseLong(args[1]) : 5;
+        int[] windows = args.length > 2 ? Arrays.stream(args[2].split(",")).mapToInt(Integer::parseInt).toArray() : new int[]{1, 2, 4, 8, 16};
+
+        ImtpsLogger imtpsLogger = new ImtpsLogger();
+        PacketHandler packetHandler = new PacketHandler(imtpsLogger);
+        ProcessingHub processingHub = new ProcessingHub(packetHandler, imtpsLogger);
+        ScheduledExecutorService peer = Executors.newSingleThreadScheduledExecutor();
+        processingHub.transmitObject(new SessionManager(packetHandler, processingHub, null, null, imtpsLogger) {
+            @Override
+            public boolean putDataPacket(ImtpsSession imtpsSession, DataPacket dataPacket) {
+                processingHub.submitTaskToTimer(dataPacket.getTask());
+                DataPacket response = DataPacket.build(DataPacket.WAY.SERVER_OK).setTaskId(dataPacket.getTaskId());
+                peer.schedule(() -> processingHub.handleDataPacket(response, imtpsSession), rtt, TimeUnit.MILLISECONDS);
+                return true;
+            }
+        });
+
+        ServerSocketChannel listener = ServerSocketChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        SocketChannel socketChannel = SocketChannel.open(listener.getLocalAddress());
+        socketChannel.configureBlocking(false);
+        SelectionKey selectionKey = socketChannel.register(Selector.open(), 0);
+        ImtpsSession imtpsSession = new ImtpsSession(selectionKey, null, "benchmark");
+
+        System.out.printf("tasks=%d rtt=%dms%n", total, rtt);
+        for (int window : windows) {
+            processingHub.setTaskWindowSize(window);
+            long[] latencies = new long[total];
+            CountDownLatch latch = new CountDownLatch(total);
+            long start = System.nanoTime();
+            for (int i = 0; i < total; i++) {
+                int index = i;
+                long submitTime = System.nanoTime();
+                processingHub.submitTask(new ImtpsTask() {
+                    @Override
+                    public DataPacket request() {
+                        return DataPacket.build(DataPacket.WAY.DEFAULT);
+                    }
+                    @Override
+                    public void response() {
+                        latencies[index] = System.nanoTime() - submitTime;
+                        latch.countDown();
+                    }
+                }.setPattern(AbstractTask.PATTERN_QUEUE).setImtpsSession(imtpsSession));
+            }
+            if (!latch.await(total * rtt * 4 + 10000, TimeUnit.MILLISECONDS)) {
+                System.out.printf("window=%-3d 未全部完成，剩余 %d%n", window, latch.getCount());
+                continue;
+            }
+            long elapsed = System.nanoTime() - start;
+            Arrays.sort(latencies);
+            System.out.printf("window=%-3d elapsed=%8.1fms throughput=%8.1f/s p50=%8.1fms p99=%8.1fms%n", window,
+                    elapsed / 1e6, total * 1e9 / elapsed, latencies[total / 2] / 1e6, latencies[total * 99 / 100] / 1e6);
+        }
+        peer.shutdownNow();
+        socketChannel.close();
+        listener.close();
+        System.exit(0);
+    }
+}
@@ -0,0 +1,68 @@
+import com.thezeroer.imtps.server.process.TrieRouter;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 路由查找基准
+ * <p>注册一批 EXACT / SET / ANY 混合规则并冻结，先以按优先级线性扫描的结果校验 find，再统计缓存命中与未命中两种负载下每次查找的耗时和分配字节数</p>
+ * <p>参数：[规则数，默认 1000] [查找次数，默认 10000000]</p>
+ */
+public class TrieRouterBenchmark {
+    public static void main(String[] args) {
+        int ruleCount = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int lookups = args.length > 1 ? Integer.parseInt(args[1]) : 10_000_000;
+        Random random = new Random(42);
+
+        TrieRouter<Integer> router = new TrieRouter<>();
+        for (int i = 0; i < ruleCount; i++) {
+            router.register(randomMatcher(random, 64), randomMatcher(random, 16), randomMatcher(random, 4), i);
+        }
+        router.freeze();
+
+        int[][] keys = new int[4096][];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = new int[]{random.nextInt(72), random.nextInt(20), random.nextInt(6)};
+            List<Integer> expected = router.findAll(keys[i][0], keys[i][1], keys[i][2]);
+            Integer actual = router.find(keys[i][0], keys[i][1], keys[i][2]);
+            if (expected.isEmpty() ? actual != null : !expected.getFirst().equals(actual)) {
+                throw new IllegalStateException("find 与线性扫描结果不一致: " + actual + " != " + expected);
+            }
+        }
+
+        System.out.printf("rules=%d lookups=%d%n", ruleCount, lookups);
+        run("cached", router, keys, 64, lookups);
+        run("miss", router, keys, keys.length, lookups);
+    }
+
+    private static void run(String name, TrieRouter<Integer> router, int[][] keys, int spread, int lookups) {
+        long sink = 0;
+        for (int i = 0; i < lookups / 10; i++) {
+            int[] key = keys[i % spread];
+            Integer handler = router.find(key[0], key[1], key[2]);
+            sink += handler == null ? 0 : handler;
+        }
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().threadId();
+        long allocated = threadMXBean.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int i = 0; i < lookups; i++) {
+            int[] key = keys[i % spread];
+            Integer handler = router.find(key[0], key[1], key[2]);
+            sink += handler == null ? 0 : handler;
+        }
+        long elapsed = System.nanoTime() - start;
+        allocated = threadMXBean.getThreadAllocatedBytes(threadId) - allocated;
+        System.out.printf("%-6s %6.1f ns/op %8.3f B/op (sink %d)%n", name, (double) elapsed / lookups, (double) allocated / lookups, sink);
+    }
+
+    private static TrieRouter.IntMatcher randomMatcher(Random random, int range) {
+        return switch (random.nextInt(4)) {
+            case 0 -> TrieRouter.IntMatcher.any();
+            case 1 -> TrieRouter.IntMatcher.oneOf(random.ints(2 + random.nextInt(4), 0, range).toArray());
+            case 2 -> TrieRouter.IntMatcher.oneOf(random.ints(9 + random.nextInt(8), 0, range).toArray());
+            default -> TrieRouter.IntMatcher.eq(random.nextInt(range));
+        };
+    }
+}